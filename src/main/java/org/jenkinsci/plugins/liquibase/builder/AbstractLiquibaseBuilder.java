@@ -1,30 +1,53 @@
 package org.jenkinsci.plugins.liquibase.builder;
 
-import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import hudson.*;
 import hudson.model.*;
 import hudson.tasks.Builder;
 import hudson.tools.ToolInstallation;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
 import jenkins.tasks.SimpleBuildStep;
+import org.jenkinsci.plugins.liquibase.common.ChangeLogFingerprint;
 import org.jenkinsci.plugins.liquibase.common.LiquibaseProperty;
+import org.jenkinsci.plugins.liquibase.common.PhaseTimer;
 import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
+import org.jenkinsci.plugins.liquibase.execution.InProcessLiquibase;
+import org.jenkinsci.plugins.liquibase.install.DriverCache;
+import org.jenkinsci.plugins.liquibase.install.InstallationCache;
+import org.jenkinsci.plugins.liquibase.install.InstallationProbe;
 import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.lock.DatabaseLocks;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResultAction;
+import org.jenkinsci.plugins.liquibase.report.LiquibaseOutputParser;
+import org.jenkinsci.plugins.liquibase.report.PhaseTimingAction;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.Set;
 
 public abstract class AbstractLiquibaseBuilder extends Builder implements SimpleBuildStep {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractLiquibaseBuilder.class);
 
+    static final String DEFAULT_LOG_LEVEL = "info";
+    private static final Set<String> INFO_LOG_LEVELS = new HashSet<>(Arrays.asList(
+            "all", "finest", "finer", "fine", "debug", "config", "info"));
+    private static final Set<String> CHANGESET_REPORTING_COMMANDS = new HashSet<>(Arrays.asList(
+            "update", "updatecount", "updatetotag", "updatetestingrollback", "rollback", "rollbackcount",
+            "rollbacktodate"));
+
     protected String installationName;
 
     protected String changeLogFile;
@@ -35,6 +58,7 @@ public abstract class AbstractLiquibaseBuilder extends Builder implements Simple
     private String changeLogParameters;
     private String resourceDirectories;
     private String credentialsId;
+    private boolean runInProcess;
 
     @Deprecated
     protected transient String username;
@@ -46,38 +70,40 @@ public abstract class AbstractLiquibaseBuilder extends Builder implements Simple
     }
 
     public LiquibaseInstallation getInstallation(EnvVars env, TaskListener listener, FilePath workspace) throws IOException, InterruptedException {
-        LiquibaseInstallation foundInstallation = null;
-        if (installationName != null) {
-            final LiquibaseInstallation.DescriptorImpl installDescriptor = ToolInstallation.all().get(LiquibaseInstallation.DescriptorImpl.class);
-            if (installDescriptor != null) {
-                for (LiquibaseInstallation i : installDescriptor.getInstallations()) {
-                    if (installationName.equals(i.getName())) {
-                        foundInstallation = i;
-                        break;
-                    }
-                }
-            }
-        }
-
+        LiquibaseInstallation foundInstallation = findInstallation();
         if (foundInstallation == null) {
             return null;
         }
 
-        Computer computer = workspace.toComputer();
-        if (computer == null) {
-            return null;
-        }
-        Node node = computer.getNode();
+        Node node = getNode(workspace);
         if (node == null) {
             return null;
         }
 
-        LiquibaseInstallation returnInstaller = foundInstallation.forNode(node, listener);
+        LiquibaseInstallation returnInstaller = InstallationCache.forNode(foundInstallation, node, listener);
         returnInstaller = returnInstaller.forEnvironment(env);
 
         return returnInstaller;
     }
 
+    private LiquibaseInstallation findInstallation() {
+        if (installationName != null) {
+            final LiquibaseInstallation.DescriptorImpl installDescriptor = ToolInstallation.all().get(LiquibaseInstallation.DescriptorImpl.class);
+            if (installDescriptor != null) {
+                return installDescriptor.getInstallation(installationName);
+            }
+        }
+        return null;
+    }
+
+    private static Node getNode(FilePath workspace) {
+        Computer computer = workspace.toComputer();
+        if (computer == null) {
+            return null;
+        }
+        return computer.getNode();
+    }
+
     public String getInstallationName() {
         return installationName;
     }
@@ -102,55 +128,308 @@ public abstract class AbstractLiquibaseBuilder extends Builder implements Simple
         final PrintStream log = listener.getLogger();
         log.println("\n\nRunning "+getDescriptor().getDisplayName()+"....");
 
+        PhaseTimer timer = new PhaseTimer();
+        try {
+            perform(build, workspace, launcher, listener, timer);
+        } finally {
+            log.println("Liquibase phase timings: " + timer.toSummary());
+            PhaseTimingAction.forBuild(build).add(getDescriptor().getDisplayName(), timer.getPhases());
+        }
+    }
+
+    private void perform(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                         PhaseTimer timer) throws InterruptedException, IOException {
         final EnvVars environment = build.getEnvironment(listener);
+        timer.mark("environment");
 
-        Properties configProperties = PropertiesAssembler.createLiquibaseProperties(this, build, environment, workspace);
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(this, build, environment, workspace, timer);
 
-        LiquibaseInstallation installation = getInstallation(environment, listener, workspace);
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener, timer);
         if (installation == null) {
-            listener.fatalError("Liquibase installation was not found.");
-            build.setResult(Result.NOT_BUILT);
             return;
         }
-        log.println("Liquibase home: "+installation.getHome());
 
-        if (!installation.isValidLiquibaseHome()) {
-            listener.fatalError("Liquibase installation "+installation.getHome()+" is not a valid Liquibase install");
-            build.setResult(Result.NOT_BUILT);
+        ArgumentListBuilder cliCommand = createCliCommand(installation);
+        addGlobalArguments(cliCommand, configProperties, build, environment, listener);
+        addCommandAndArguments(cliCommand, configProperties, build, environment, listener);
+        timer.mark("arguments");
+
+        boolean skip = shouldSkipExecution(build, workspace, installation, configProperties, environment, listener);
+        timer.mark("skipCheck");
+        if (skip) {
             return;
         }
 
-
-        if (!Strings.isNullOrEmpty(installation.getDatabaseDriverUrl())) {
-            Iterable<String> urls = Splitter.on(",").trimResults().split(installation.getDatabaseDriverUrl());
-            for (String url : urls) {
-                String filename = url.substring(installation.getDatabaseDriverUrl().lastIndexOf("/") + 1);
-                File localJar = new File(installation.getHome(), "lib/" + filename);
-                if (!localJar.exists()) {
-                    log.println("Downloading " + url + " to " + localJar);
-                    URL downloadUrl = new URL(url);
-                    new FilePath(localJar).copyFrom(downloadUrl);
-                }
+        int exitStatus;
+        DatabaseLocks.Lease lease = lockDatabase(configProperties, listener);
+        timer.mark("lockWait");
+        LiquibaseOutputParser outputParser =
+                new LiquibaseOutputParser(listener.getLogger(), ChangeSetResultAction.forBuild(build));
+        try {
+            beforeExecution(build, workspace, launcher, installation, configProperties, environment, listener);
+            timer.mark("beforeExecution");
+            exitStatus = runLiquibase(cliCommand, installation, workspace, launcher,
+                    new StreamTaskListener(outputParser, StandardCharsets.UTF_8), timer);
+        } finally {
+            outputParser.close();
+            if (lease != null) {
+                lease.close();
             }
         }
+        boolean result = didErrorsOccur(build, exitStatus);
+        if (!result) {
+            throw new AbortException("Liquibase failed due to errors.");
+        }
+        onSuccessfulExecution(build, workspace, installation, configProperties, environment, listener,
+                outputParser.getParsedChangeSets());
+        timer.mark("reporting");
+    }
+
+    /**
+     * Resolves properties, installation and command line for this builder without running anything, for callers
+     * that manage the Liquibase process themselves (e.g. the asynchronous pipeline steps).
+     *
+     * @return the prepared command, or null if the installation couldn't be used.
+     */
+    public PreparedCommand prepareCommand(Run<?, ?> build, FilePath workspace, EnvVars environment,
+                                          TaskListener listener) throws IOException, InterruptedException {
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(this, build, environment, workspace);
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return null;
+        }
+        ArgumentListBuilder cliCommand = createCliCommand(installation);
+        addGlobalArguments(cliCommand, configProperties, build, environment, listener);
+        addCommandAndArguments(cliCommand, configProperties, build, environment, listener);
+        return new PreparedCommand(installation, cliCommand, configProperties);
+    }
+
+    /**
+     * {@link #shouldSkipExecution} for a command obtained from {@link #prepareCommand}.
+     */
+    public boolean shouldSkipCommand(Run<?, ?> build, FilePath workspace, PreparedCommand command,
+                                     EnvVars environment, TaskListener listener)
+            throws IOException, InterruptedException {
+        return shouldSkipExecution(build, workspace, command.getInstallation(), command.getConfigProperties(),
+                environment, listener);
+    }
+
+    /**
+     * {@link #beforeExecution} for a command obtained from {@link #prepareCommand}, once the database lock is held.
+     */
+    public void beforeCommand(Run<?, ?> build, FilePath workspace, Launcher launcher, PreparedCommand command,
+                              EnvVars environment, TaskListener listener) throws IOException, InterruptedException {
+        beforeExecution(build, workspace, launcher, command.getInstallation(), command.getConfigProperties(),
+                environment, listener);
+    }
+
+    /**
+     * Finishes a command obtained from {@link #prepareCommand} that exited successfully, doing whatever this builder
+     * does after a successful run.
+     */
+    public void completeCommand(Run<?, ?> build, FilePath workspace, PreparedCommand command, EnvVars environment,
+                                TaskListener listener, List<ChangeSetResult> changeSets)
+            throws IOException, InterruptedException {
+        onSuccessfulExecution(build, workspace, command.getInstallation(), command.getConfigProperties(),
+                environment, listener, changeSets);
+    }
+
+    /**
+     * Waits for the controller-side lock on the database in <code>configProperties</code>.
+     *
+     * @return the lease to close once Liquibase has finished, or null if no database URL is configured.
+     */
+    protected static DatabaseLocks.Lease lockDatabase(Properties configProperties, TaskListener listener)
+            throws InterruptedException {
+        String databaseUrl = configProperties.getProperty(LiquibaseProperty.URL.propertyName());
+        if (Strings.isNullOrEmpty(databaseUrl)) {
+            return null;
+        }
+        return DatabaseLocks.get().acquire(databaseUrl, listener);
+    }
+
+    /**
+     * The database URLs this builder is configured with, as entered, for checks made before the build starts.
+     */
+    public List<String> getConfiguredDatabaseUrls() {
+        return Strings.isNullOrEmpty(url) ? Collections.<String>emptyList() : Collections.singletonList(url);
+    }
+
+    /**
+     * Gives builders the chance to decide, once everything is resolved, that Liquibase needn't run at all.
+     */
+    protected boolean shouldSkipExecution(Run<?, ?> build, FilePath workspace, LiquibaseInstallation installation,
+                                          Properties configProperties, EnvVars environment, TaskListener listener)
+            throws IOException, InterruptedException {
+        return false;
+    }
+
+    /**
+     * Called just before Liquibase runs, while the database lock is held.
+     */
+    protected void beforeExecution(Run<?, ?> build, FilePath workspace, Launcher launcher,
+                                   LiquibaseInstallation installation, Properties configProperties,
+                                   EnvVars environment, TaskListener listener)
+            throws IOException, InterruptedException {
+    }
+
+    /**
+     * Called after Liquibase has run and exited successfully.
+     *
+     * @param changeSets the changesets this step reported on.
+     */
+    protected void onSuccessfulExecution(Run<?, ?> build, FilePath workspace, LiquibaseInstallation installation,
+                                         Properties configProperties, EnvVars environment, TaskListener listener,
+                                         List<ChangeSetResult> changeSets)
+            throws IOException, InterruptedException {
+    }
+
+    /**
+     * Resolves the configured installation for the node <code>workspace</code> belongs to and makes sure its
+     * database drivers are present.
+     *
+     * @return the installation, or null if it couldn't be used, in which case the build has been marked NOT_BUILT.
+     */
+    protected LiquibaseInstallation prepareInstallation(Run<?, ?> build, FilePath workspace, EnvVars environment,
+                                                        TaskListener listener)
+            throws IOException, InterruptedException {
+        return prepareInstallation(build, workspace, environment, listener, new PhaseTimer());
+    }
+
+    /**
+     * As {@link #prepareInstallation(Run, FilePath, EnvVars, TaskListener)}, marking the <code>installation</code>
+     * and <code>probe</code> (validity check and driver provisioning on the node) phases on <code>timer</code>.
+     */
+    protected LiquibaseInstallation prepareInstallation(Run<?, ?> build, FilePath workspace, EnvVars environment,
+                                                        TaskListener listener, PhaseTimer timer)
+            throws IOException, InterruptedException {
+        LiquibaseInstallation installation = getInstallation(environment, listener, workspace);
+        timer.mark("installation");
+        if (installation == null) {
+            listener.fatalError("Liquibase installation was not found.");
+            build.setResult(Result.NOT_BUILT);
+            return null;
+        }
+        listener.getLogger().println("Liquibase home: "+installation.getHome());
+
+        FilePath installationHome = new FilePath(workspace.getChannel(), installation.getHome());
+        FilePath driverCacheRoot = getDriverCacheRoot(workspace, installationHome);
+        Node node = getNode(workspace);
+        InstallationProbe.Result probe = node == null
+                ? InstallationProbe.probe(installationHome, driverCacheRoot, installation.getDatabaseDriverUrl(),
+                listener)
+                : InstallationCache.probe(installation, node, installationHome, driverCacheRoot, listener);
+        LiquibaseInstallation configuredInstallation = probe.isValid() || node == null ? null : findInstallation();
+        if (configuredInstallation != null) {
+            listener.getLogger().println("Liquibase installation "+installation.getHome()+
+                    " is not a valid Liquibase install; resolving it again.");
+            installation = InstallationCache.resolveAgain(configuredInstallation, node, listener)
+                    .forEnvironment(environment);
+            listener.getLogger().println("Liquibase home: "+installation.getHome());
+            installationHome = new FilePath(workspace.getChannel(), installation.getHome());
+            driverCacheRoot = getDriverCacheRoot(workspace, installationHome);
+            probe = InstallationCache.probe(installation, node, installationHome, driverCacheRoot, listener);
+        }
+        timer.mark("probe");
+        if (!probe.isValid()) {
+            listener.fatalError("Liquibase installation "+installation.getHome()+" is not a valid Liquibase install");
+            build.setResult(Result.NOT_BUILT);
+            return null;
+        }
+        return installation;
+    }
 
-
+    protected static ArgumentListBuilder createCliCommand(LiquibaseInstallation installation) {
         String liquibaseCmd;
         if (Functions.isWindows()) {
             liquibaseCmd = installation.getHome()+"\\liquibase.bat";
         } else {
             liquibaseCmd = installation.getHome()+"/liquibase";
         }
+        return new ArgumentListBuilder(liquibaseCmd);
+    }
+
+    /**
+     * Runs a fully composed command, either by launching the liquibase script or in-process on a warm worker.
+     *
+     * @return the command's exit status.
+     */
+    protected int runLiquibase(ArgumentListBuilder cliCommand, LiquibaseInstallation installation, FilePath workspace,
+                               Launcher launcher, TaskListener listener) throws IOException, InterruptedException {
+        return runLiquibase(cliCommand, installation, workspace, launcher, listener, new PhaseTimer());
+    }
+
+    /**
+     * As {@link #runLiquibase(ArgumentListBuilder, LiquibaseInstallation, FilePath, Launcher, TaskListener)},
+     * marking the <code>launch</code> (process spawn) and <code>liquibase</code> phases on <code>timer</code>.
+     */
+    protected int runLiquibase(ArgumentListBuilder cliCommand, LiquibaseInstallation installation, FilePath workspace,
+                               Launcher launcher, TaskListener listener, PhaseTimer timer)
+            throws IOException, InterruptedException {
+        if (runInProcess) {
+            int exitStatus = InProcessLiquibase.run(workspace, installation, cliCommand, listener);
+            timer.mark("liquibase");
+            return exitStatus;
+        }
+        Proc proc = launcher.launch().cmds(cliCommand).stdout(listener).start();
+        timer.mark("launch");
+        int exitStatus = proc.join();
+        timer.mark("liquibase");
+        return exitStatus;
+    }
+
+    /**
+     * Copies the configuration shared by every Liquibase builder onto <code>other</code>.
+     */
+    protected void copyCommonConfigurationTo(AbstractLiquibaseBuilder other) {
+        other.installationName = installationName;
+        other.changeLogFile = changeLogFile;
+        other.url = url;
+        other.contexts = contexts;
+        other.liquibasePropertiesPath = liquibasePropertiesPath;
+        other.labels = labels;
+        other.changeLogParameters = changeLogParameters;
+        other.resourceDirectories = resourceDirectories;
+        other.credentialsId = credentialsId;
+        other.runInProcess = runInProcess;
+    }
+
+    /**
+     * Driver jars are cached once per node, under the node's root directory.  Falls back to a cache inside the
+     * installation itself when the node can't be determined.
+     */
+    private static FilePath getDriverCacheRoot(FilePath workspace, FilePath installationHome) {
+        Computer computer = workspace.toComputer();
+        Node node = computer == null ? null : computer.getNode();
+        FilePath nodeRoot = node == null ? null : node.getRootPath();
+        if (nodeRoot == null) {
+            return installationHome.child(DriverCache.CACHE_DIRECTORY);
+        }
+        return nodeRoot.child(DriverCache.CACHE_DIRECTORY);
+    }
 
-        ArgumentListBuilder cliCommand = new ArgumentListBuilder(liquibaseCmd);
-        addGlobalArguments(cliCommand, configProperties, build, environment, listener);
-        addCommandAndArguments(cliCommand, configProperties, build, environment, listener);
+    /**
+     * Content hash of the configured changelog and every file it references, computed on the node holding
+     * <code>workspace</code>.  Unchanged files are not re-read between steps or builds.
+     *
+     * @return the fingerprint, or null when no changelog file is configured or a reference cannot be resolved.
+     */
+    protected String getChangeLogFingerprint(FilePath workspace, EnvVars environment)
+            throws IOException, InterruptedException {
+        return ChangeLogFingerprint.compute(workspace, Util.replaceMacro(getChangeLogFile(), environment),
+                Util.replaceMacro(getResourceDirectories(), environment));
+    }
 
-        int exitStatus = launcher.launch().cmds(cliCommand).stdout(listener).join();
-        boolean result = didErrorsOccur(build, exitStatus);
-        if (!result) {
-            throw new AbortException("Liquibase failed due to errors.");
-        }
+    /**
+     * As {@link #getChangeLogFingerprint(FilePath, EnvVars)}, also telling whether the changelog has changesets that
+     * an update may run again although it is unchanged.
+     */
+    protected ChangeLogFingerprint.Result scanChangeLog(FilePath workspace, EnvVars environment)
+            throws IOException, InterruptedException {
+        return ChangeLogFingerprint.scan(workspace, Util.replaceMacro(getChangeLogFile(), environment),
+                Util.replaceMacro(getResourceDirectories(), environment));
     }
 
     protected abstract void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties, Run<?, ?> build, EnvVars environment, TaskListener listener) throws IOException;
@@ -235,6 +514,15 @@ public abstract class AbstractLiquibaseBuilder extends Builder implements Simple
         this.credentialsId = credentialsId;
     }
 
+    public boolean isRunInProcess() {
+        return runInProcess;
+    }
+
+    @DataBoundSetter
+    public void setRunInProcess(boolean runInProcess) {
+        this.runInProcess = runInProcess;
+    }
+
     @DataBoundSetter
     public void setUsername(String username) {
         this.username = username;
@@ -284,6 +572,9 @@ public abstract class AbstractLiquibaseBuilder extends Builder implements Simple
             addArgument(cliCommand, "classpath", classpath.replaceAll("\\s*,\\s*", ";"));
         }
         addArgument(cliCommand, "defaultsFile", Util.replaceMacro(getLiquibasePropertiesPath(), environment));
+        if (isReportingChangeSets()) {
+            addLogLevel(cliCommand, configProperties, listener);
+        }
         addArgument(cliCommand, "changeLogFile", Util.replaceMacro(getChangeLogFile(), environment));
         addArgument(cliCommand, "url", Util.replaceMacro(getUrl(), environment));
         addArgument(cliCommand, "username", getProperty(configProperties, LiquibaseProperty.USERNAME));
@@ -292,4 +583,60 @@ public abstract class AbstractLiquibaseBuilder extends Builder implements Simple
         addArgument(cliCommand, "labels", Util.replaceMacro(getLabels(), environment));
     }
 
+    /**
+     * Whether this builder runs a command whose changeset results and timings are reported, such as update or
+     * rollback.  Only those have Liquibase's log level raised; see {@link #addLogLevel}.
+     */
+    protected boolean isReportingChangeSets() {
+        return false;
+    }
+
+    /**
+     * Whether the changeset results and timings of <code>command</code>, e.g. <code>updateCount</code>, are reported.
+     */
+    static boolean isReportingChangeSets(String command) {
+        return CHANGESET_REPORTING_COMMANDS.contains(command.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Changeset results and timings are parsed from Liquibase's INFO messages, which it doesn't print by default.
+     * Asks for them unless a log level is configured, and says so when the configured one hides them.
+     */
+    protected void addLogLevel(ArgumentListBuilder cliCommand, Properties configProperties, TaskListener listener) {
+        String logLevel = Util.fixEmptyAndTrim(getProperty(configProperties, LiquibaseProperty.LOG_LEVEL));
+        if (logLevel == null) {
+            addArgument(cliCommand, LiquibaseProperty.LOG_LEVEL.propertyName(), DEFAULT_LOG_LEVEL);
+        } else if (!INFO_LOG_LEVELS.contains(logLevel.toLowerCase(Locale.ENGLISH))) {
+            listener.getLogger().println("Liquibase log level '" + logLevel + "' hides the messages changeset " +
+                    "results and timings are read from; set it to 'info' or finer to have them reported.");
+        }
+    }
+
+    /**
+     * A builder's command line together with what it was resolved from.
+     */
+    public static class PreparedCommand {
+        private final LiquibaseInstallation installation;
+        private final ArgumentListBuilder cliCommand;
+        private final Properties configProperties;
+
+        PreparedCommand(LiquibaseInstallation installation, ArgumentListBuilder cliCommand,
+                        Properties configProperties) {
+            this.installation = installation;
+            this.cliCommand = cliCommand;
+            this.configProperties = configProperties;
+        }
+
+        public LiquibaseInstallation getInstallation() {
+            return installation;
+        }
+
+        public ArgumentListBuilder getCliCommand() {
+            return cliCommand;
+        }
+
+        public Properties getConfigProperties() {
+            return configProperties;
+        }
+    }
 }
@@ -0,0 +1,203 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.Builder;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
+import org.jenkinsci.plugins.liquibase.execution.InProcessLiquibase;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.lock.DatabaseLocks;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResultAction;
+import org.jenkinsci.plugins.liquibase.report.CommandBatchAction;
+import org.jenkinsci.plugins.liquibase.report.LiquibaseOutputParser;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs an ordered list of Liquibase commands (e.g. validate, update, tag) against one database as a single step.
+ * <p>
+ * Properties, credentials, the installation and the common arguments are resolved once for the whole batch, and
+ * every command runs on the same warm in-process worker, so the batch always runs in-process whatever the
+ * "Run In-Process" setting.  The batch stops at the first failing command and the outcome of each command is
+ * recorded on the build.
+ */
+public class CommandBatchBuilder extends AbstractLiquibaseBuilder {
+
+    @Extension
+    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+
+    private String commands;
+
+    @DataBoundConstructor
+    public CommandBatchBuilder() {
+        super();
+    }
+
+    @Override
+    public void perform(@Nonnull Run<?, ?> build,
+                        @Nonnull FilePath workspace,
+                        @Nonnull Launcher launcher,
+                        @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        final PrintStream log = listener.getLogger();
+        log.println("\n\nRunning " + getDescriptor().getDisplayName() + "....");
+
+        final EnvVars environment = build.getEnvironment(listener);
+        List<List<String>> batch = parseCommands(Util.replaceMacro(commands, environment));
+        if (batch.isEmpty()) {
+            throw new AbortException("No commands specified in '" + getDescriptor().getDisplayName() + "' configuration");
+        }
+
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(this, build, environment, workspace);
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return;
+        }
+
+        List<ArgumentListBuilder> cliCommands = new ArrayList<>();
+        for (List<String> command : batch) {
+            ArgumentListBuilder cliCommand = createCliCommand(installation);
+            addGlobalArguments(cliCommand, configProperties, build, environment, listener);
+            if (isReportingChangeSets(command.get(0))) {
+                addLogLevel(cliCommand, configProperties, listener);
+            }
+            cliCommand.add(command);
+            cliCommands.add(cliCommand);
+        }
+
+        LiquibaseOutputParser outputParser =
+                new LiquibaseOutputParser(log, ChangeSetResultAction.forBuild(build));
+        TaskListener commandListener = new StreamTaskListener(outputParser, StandardCharsets.UTF_8);
+        List<InProcessLiquibase.CommandOutcome> outcomes;
+        DatabaseLocks.Lease lease = lockDatabase(configProperties, listener);
+        try {
+            outcomes = InProcessLiquibase.runAll(workspace, installation, cliCommands, commandListener);
+        } finally {
+            outputParser.close();
+            if (lease != null) {
+                lease.close();
+            }
+        }
+
+        List<CommandBatchAction.CommandResult> results = toResults(batch, outcomes);
+        boolean failed = false;
+        for (CommandBatchAction.CommandResult result : results) {
+            log.println(result);
+            failed |= !result.isSuccessful();
+        }
+        CommandBatchAction.forBuild(build).addAll(results);
+        if (failed) {
+            throw new AbortException("Liquibase failed due to errors.");
+        }
+    }
+
+    /**
+     * Pairs each command with its outcome; commands after the first failure have none and are recorded as not run.
+     */
+    static List<CommandBatchAction.CommandResult> toResults(List<List<String>> batch,
+                                                            List<InProcessLiquibase.CommandOutcome> outcomes) {
+        List<CommandBatchAction.CommandResult> results = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String command = Util.join(batch.get(i), " ");
+            if (i < outcomes.size()) {
+                InProcessLiquibase.CommandOutcome outcome = outcomes.get(i);
+                results.add(CommandBatchAction.CommandResult.completed(command, outcome.getExitStatus(),
+                        outcome.getDurationMillis()));
+            } else {
+                results.add(CommandBatchAction.CommandResult.notRun(command));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * One command per line, e.g. <code>status --verbose</code> or <code>tag release-1</code>; blank lines and lines
+     * starting with <code>#</code> are ignored.
+     */
+    static List<List<String>> parseCommands(String commands) {
+        List<List<String>> batch = new ArrayList<>();
+        if (commands == null) {
+            return batch;
+        }
+        for (String line : commands.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            List<String> command = new ArrayList<>();
+            for (String token : trimmed.split("\\s+")) {
+                command.add(token);
+            }
+            batch.add(command);
+        }
+        return batch;
+    }
+
+    @Override
+    protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties,
+                                          Run<?, ?> build, EnvVars environment, TaskListener listener) {
+        // each command of the batch is added to its own copy of the common arguments in perform
+    }
+
+    @Override
+    public Descriptor<Builder> getDescriptor() {
+        return DESCRIPTOR;
+    }
+
+    /**
+     * Batches always run in-process; see the class description.
+     */
+    @Override
+    public boolean isRunInProcess() {
+        return true;
+    }
+
+    public String getCommands() {
+        return commands;
+    }
+
+    @DataBoundSetter
+    public void setCommands(String commands) {
+        this.commands = commands;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseDescriptor {
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        public DescriptorImpl(Class<? extends CommandBatchBuilder> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Command Batch";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.Builder;
+import hudson.util.ArgumentListBuilder;
+import org.jenkinsci.plugins.liquibase.common.LiquibaseProperty;
+import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
+import org.jenkinsci.plugins.liquibase.execution.ChangeLogChecksums;
+import org.jenkinsci.plugins.liquibase.execution.ChangeLogReader;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.DriftReportAction;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reports which of many databases differ from the changelog, without changing any of them.
+ * <p>
+ * The changelog's expected <code>DATABASECHANGELOG</code> rows, checksums included, are computed by parsing it with
+ * {@link ChangeLogChecksums}, so vendor-specific SQL needn't run anywhere.  The targets' tables are then read directly
+ * over JDBC, up to a configured number at once, and compared with them.
+ */
+public class DriftReportBuilder extends AbstractLiquibaseBuilder {
+
+    @Extension
+    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+
+    public static final int DEFAULT_MAX_PARALLEL = 8;
+
+    private String targets;
+    private String maxParallel;
+
+    @DataBoundConstructor
+    public DriftReportBuilder() {
+        super();
+    }
+
+    @Override
+    public void perform(@Nonnull Run<?, ?> build,
+                        @Nonnull FilePath workspace,
+                        @Nonnull Launcher launcher,
+                        @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        final PrintStream log = listener.getLogger();
+        log.println("\n\nRunning " + getDescriptor().getDisplayName() + "....");
+
+        final EnvVars environment = build.getEnvironment(listener);
+        List<MultiTargetUpdateBuilder.UpdateTarget> driftTargets =
+                MultiTargetUpdateBuilder.UpdateTarget.parse(Util.replaceMacro(targets, environment));
+        if (driftTargets.isEmpty()) {
+            throw new AbortException(
+                    "No targets specified in '" + getDescriptor().getDisplayName() + "' configuration");
+        }
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return;
+        }
+
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(this, build, environment, workspace);
+        String changeLogFile =
+                Util.fixEmptyAndTrim(configProperties.getProperty(LiquibaseProperty.CHANGELOG_FILE.propertyName()));
+        if (changeLogFile == null) {
+            throw new AbortException("A drift report needs a changelog file.");
+        }
+        List<ChangeLogReader.Row> expected;
+        try {
+            expected = ChangeLogChecksums.compute(workspace, installation, changeLogFile,
+                    Util.replaceMacro(getResourceDirectories(), environment),
+                    configProperties.getProperty(LiquibaseProperty.CONTEXTS.propertyName()),
+                    configProperties.getProperty(LiquibaseProperty.LABELS.propertyName()));
+        } catch (IOException e) {
+            throw new AbortException("Unable to compute the changelog's expected state: " + e.getMessage());
+        }
+        log.println("The changelog has " + expected.size() + " changesets to compare.");
+
+        List<ChangeLogReader.Source> sources = new ArrayList<>();
+        for (MultiTargetUpdateBuilder.UpdateTarget target : driftTargets) {
+            UpdateBuilder targetBuilder = target.applyTo(this);
+            sources.add(createSource(target.getUrl(),
+                    PropertiesAssembler.createLiquibaseProperties(targetBuilder, build, environment, workspace)));
+        }
+
+        int parallelism = resolveMaxParallel(environment);
+        log.println("Reading the changelog tables of " + driftTargets.size() + " databases, " + parallelism +
+                " at a time.");
+        List<ChangeLogReader.Result> results = ChangeLogReader.read(workspace, installation, sources, parallelism);
+        report(build, log, driftTargets, expected, results);
+    }
+
+    private static ChangeLogReader.Source createSource(String url, Properties configProperties) {
+        return new ChangeLogReader.Source(url,
+                configProperties.getProperty(LiquibaseProperty.USERNAME.propertyName()),
+                configProperties.getProperty(LiquibaseProperty.PASSWORD.propertyName()),
+                configProperties.getProperty("liquibaseSchemaName",
+                        configProperties.getProperty("defaultSchemaName")),
+                configProperties.getProperty("databaseChangeLogTableName"));
+    }
+
+    private static void report(Run<?, ?> build, PrintStream log, List<MultiTargetUpdateBuilder.UpdateTarget> targets,
+                               List<ChangeLogReader.Row> expected, List<ChangeLogReader.Result> results)
+            throws AbortException {
+        List<DriftReportAction.TargetDrift> drifts = new ArrayList<>();
+        for (int i = 0; i < targets.size(); i++) {
+            String url = targets.get(i).getUrl();
+            ChangeLogReader.Result result = results.get(i);
+            DriftReportAction.TargetDrift drift = result.getRows() == null
+                    ? DriftReportAction.TargetDrift.failed(url, result.getError())
+                    : DriftReportAction.TargetDrift.compare(url, expected, result.getRows());
+            log.println(drift);
+            drifts.add(drift);
+        }
+
+        DriftReportAction action = new DriftReportAction(drifts);
+        build.addAction(action);
+        if (action.getFailureCount() > 0) {
+            throw new AbortException("Unable to read the changelog table of " + action.getFailureCount() + " of " +
+                    drifts.size() + " databases.");
+        }
+        if (action.getDriftedCount() > 0) {
+            log.println(action.getDriftedCount() + " of " + drifts.size() + " databases differ from the changelog.");
+            build.setResult(Result.UNSTABLE);
+        }
+    }
+
+    protected int resolveMaxParallel(EnvVars environment) throws AbortException {
+        String resolved = Util.fixEmptyAndTrim(Util.replaceMacro(maxParallel, environment));
+        if (resolved == null) {
+            return DEFAULT_MAX_PARALLEL;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(resolved));
+        } catch (NumberFormatException e) {
+            throw new AbortException("Invalid value '" + maxParallel + "' for maximum parallel reads.");
+        }
+    }
+
+    /**
+     * Only reads the databases, so builds needn't wait for others using them.
+     */
+    @Override
+    public List<String> getConfiguredDatabaseUrls() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties,
+                                          Run<?, ?> build, EnvVars environment, TaskListener listener) {
+        cliCommand.add("status");
+    }
+
+    @Override
+    public Descriptor<Builder> getDescriptor() {
+        return DESCRIPTOR;
+    }
+
+    public String getTargets() {
+        return targets;
+    }
+
+    @DataBoundSetter
+    public void setTargets(String targets) {
+        this.targets = targets;
+    }
+
+    public String getMaxParallel() {
+        return maxParallel;
+    }
+
+    @DataBoundSetter
+    public void setMaxParallel(String maxParallel) {
+        this.maxParallel = maxParallel;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseDescriptor {
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        public DescriptorImpl(Class<? extends DriftReportBuilder> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Report Changelog Drift";
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.Builder;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.liquibase.common.LinePrefixingOutputStream;
+import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.lock.DatabaseLocks;
+import org.jenkinsci.plugins.liquibase.report.MultiTargetUpdateAction;
+import org.jenkinsci.plugins.liquibase.report.UpdateCheckpointAction;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies one changelog to many databases, running up to a configured number of updates at once.  A failing target
+ * doesn't hold up the others; the step fails once every target has been attempted.
+ * <p>
+ * Completed targets are checkpointed on the build along with the deployment fingerprint they were updated with (see
+ * {@link UpdateBuilder}), and are skipped if the step is retried within the build or, optionally, when a failed build
+ * is run again.  Checkpoints are kept per step, told apart by their configuration, so another multi-database step
+ * updating the same databases doesn't skip them.
+ */
+public class MultiTargetUpdateBuilder extends AbstractLiquibaseBuilder {
+
+    @Extension
+    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+
+    public static final int DEFAULT_MAX_PARALLEL = 4;
+
+    private String targets;
+    private String maxParallel;
+    private boolean resumeFailedBuild;
+
+    @DataBoundConstructor
+    public MultiTargetUpdateBuilder() {
+        super();
+    }
+
+    @Override
+    public void perform(@Nonnull Run<?, ?> build,
+                        @Nonnull FilePath workspace,
+                        @Nonnull Launcher launcher,
+                        @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        final PrintStream log = listener.getLogger();
+        log.println("\n\nRunning " + getDescriptor().getDisplayName() + "....");
+
+        final EnvVars environment = build.getEnvironment(listener);
+        List<UpdateTarget> updateTargets = UpdateTarget.parse(Util.replaceMacro(targets, environment));
+        if (updateTargets.isEmpty()) {
+            throw new AbortException("No targets specified in '" + getDescriptor().getDisplayName() + "' configuration");
+        }
+
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return;
+        }
+
+        int parallelism = resolveMaxParallel(environment);
+        log.println("Updating " + updateTargets.size() + " targets, " + parallelism + " at a time.");
+
+        UpdateCheckpointAction checkpoint = UpdateCheckpointAction.forBuild(build, resumeFailedBuild);
+
+        List<MultiTargetUpdateAction.TargetResult> results =
+                updateAll(updateTargets, parallelism, installation, build, workspace, launcher, listener, environment,
+                        checkpoint, getStepKey());
+
+        int failures = 0;
+        for (MultiTargetUpdateAction.TargetResult result : results) {
+            log.println(result);
+            if (!result.isSuccessful()) {
+                failures++;
+            }
+        }
+        build.addAction(new MultiTargetUpdateAction(results));
+        if (failures > 0) {
+            throw new AbortException(
+                    "Liquibase update failed for " + failures + " of " + results.size() + " targets.");
+        }
+    }
+
+    protected List<MultiTargetUpdateAction.TargetResult> updateAll(List<UpdateTarget> updateTargets,
+                                                                   int parallelism,
+                                                                   final LiquibaseInstallation installation,
+                                                                   final Run<?, ?> build,
+                                                                   final FilePath workspace,
+                                                                   final Launcher launcher,
+                                                                   final TaskListener listener,
+                                                                   final EnvVars environment,
+                                                                   final UpdateCheckpointAction checkpoint,
+                                                                   final String step)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, updateTargets.size()));
+        try {
+            List<Future<MultiTargetUpdateAction.TargetResult>> futures = new ArrayList<>();
+            for (final UpdateTarget target : updateTargets) {
+                futures.add(executor.submit(new Callable<MultiTargetUpdateAction.TargetResult>() {
+                    @Override
+                    public MultiTargetUpdateAction.TargetResult call() throws IOException, InterruptedException {
+                        String deploymentFingerprint =
+                                getDeploymentFingerprint(target, build, workspace, environment);
+                        if (checkpoint.isCompleted(step, target.getUrl(), deploymentFingerprint)) {
+                            return MultiTargetUpdateAction.TargetResult.skipped(target.getUrl());
+                        }
+                        MultiTargetUpdateAction.TargetResult result =
+                                update(target, installation, build, workspace, launcher, listener, environment);
+                        if (result.isSuccessful()) {
+                            recordCompletion(build, checkpoint, step, target, deploymentFingerprint);
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            List<MultiTargetUpdateAction.TargetResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(MultiTargetUpdateAction.TargetResult.failed(updateTargets.get(i).getUrl(), 0,
+                            String.valueOf(e.getCause())));
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The fingerprint {@link UpdateBuilder} gives an update of <code>target</code> with this step's configuration, or
+     * null when it can't be worked out, in which case the target is never skipped.
+     */
+    protected String getDeploymentFingerprint(UpdateTarget target, Run<?, ?> build, FilePath workspace,
+                                              EnvVars environment) throws IOException, InterruptedException {
+        UpdateBuilder targetBuilder = target.applyTo(this);
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(targetBuilder, build, environment, workspace);
+        return targetBuilder.getDeploymentFingerprint(workspace, configProperties, environment);
+    }
+
+    /**
+     * Identifies this step among the multi-database updates of a build by its configuration, so that a retried or
+     * rerun step finds its own checkpoints.
+     */
+    String getStepKey() {
+        StringBuilder step = new StringBuilder();
+        for (String value : new String[]{targets, getChangeLogFile(), getContexts(), getLabels(),
+                getChangeLogParameters(), getLiquibasePropertiesPath(), getResourceDirectories(),
+                getCredentialsId()}) {
+            step.append(Util.fixNull(value)).append('\n');
+        }
+        return Util.getDigestOf(step.toString());
+    }
+
+    /**
+     * Runs update against a single target, using this step's configuration with the target's URL and credentials.
+     */
+    protected MultiTargetUpdateAction.TargetResult update(UpdateTarget target,
+                                                          LiquibaseInstallation installation,
+                                                          Run<?, ?> build,
+                                                          FilePath workspace,
+                                                          Launcher launcher,
+                                                          TaskListener listener,
+                                                          EnvVars environment) {
+        long start = System.nanoTime();
+        StreamTaskListener targetListener = openTargetListener(target, listener);
+        try {
+            UpdateBuilder targetBuilder = target.applyTo(this);
+            Properties configProperties =
+                    PropertiesAssembler.createLiquibaseProperties(targetBuilder, build, environment, workspace);
+            ArgumentListBuilder cliCommand = createCliCommand(installation);
+            targetBuilder.addGlobalArguments(cliCommand, configProperties, build, environment, targetListener);
+            targetBuilder.addCommandAndArguments(cliCommand, configProperties, build, environment, targetListener);
+
+            int exitStatus;
+            DatabaseLocks.Lease lease = lockDatabase(configProperties, targetListener);
+            try {
+                exitStatus = runLiquibase(cliCommand, installation, workspace, launcher, targetListener);
+            } finally {
+                if (lease != null) {
+                    lease.close();
+                }
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (exitStatus == 0) {
+                return MultiTargetUpdateAction.TargetResult.successful(target.getUrl(), elapsed);
+            }
+            return MultiTargetUpdateAction.TargetResult.failed(target.getUrl(), elapsed, "exit status " + exitStatus);
+        } catch (IOException | RuntimeException e) {
+            targetListener.error(e.getMessage());
+            return MultiTargetUpdateAction.TargetResult.failed(target.getUrl(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), String.valueOf(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return MultiTargetUpdateAction.TargetResult.failed(target.getUrl(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), "interrupted");
+        } finally {
+            closeTargetListener(targetListener, listener);
+        }
+    }
+
+    /**
+     * Opens a listener that writes whole lines, prefixed with the target's URL, to the build log.
+     */
+    static StreamTaskListener openTargetListener(UpdateTarget target, TaskListener listener) {
+        return new StreamTaskListener(
+                new LinePrefixingOutputStream("[" + target.getUrl() + "] ", listener.getLogger()),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes a listener from {@link #openTargetListener}, writing out a final line that wasn't terminated.  The build
+     * log itself stays open.
+     */
+    static void closeTargetListener(StreamTaskListener targetListener, TaskListener listener) {
+        try {
+            targetListener.close();
+        } catch (IOException e) {
+            listener.error("Unable to flush target output: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the build after each completed target, so the checkpoint survives a crash or restart mid-run.
+     */
+    private static void recordCompletion(Run<?, ?> build, UpdateCheckpointAction checkpoint, String step,
+                                         UpdateTarget target, String deploymentFingerprint) throws IOException {
+        synchronized (checkpoint) {
+            checkpoint.markCompleted(step, target.getUrl(), deploymentFingerprint);
+            build.save();
+        }
+    }
+
+    protected int resolveMaxParallel(EnvVars environment) throws AbortException {
+        String resolved = Util.fixEmptyAndTrim(Util.replaceMacro(maxParallel, environment));
+        if (resolved == null) {
+            return DEFAULT_MAX_PARALLEL;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(resolved));
+        } catch (NumberFormatException e) {
+            throw new AbortException("Invalid value '" + maxParallel + "' for maximum parallel updates.");
+        }
+    }
+
+    @Override
+    public List<String> getConfiguredDatabaseUrls() {
+        List<String> urls = new ArrayList<>();
+        for (UpdateTarget target : UpdateTarget.parse(targets)) {
+            urls.add(target.getUrl());
+        }
+        return urls;
+    }
+
+    @Override
+    protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties,
+                                          Run<?, ?> build, EnvVars environment, TaskListener listener) {
+        cliCommand.add("update");
+    }
+
+    @Override
+    public Descriptor<Builder> getDescriptor() {
+        return DESCRIPTOR;
+    }
+
+    public String getTargets() {
+        return targets;
+    }
+
+    @DataBoundSetter
+    public void setTargets(String targets) {
+        this.targets = targets;
+    }
+
+    public String getMaxParallel() {
+        return maxParallel;
+    }
+
+    @DataBoundSetter
+    public void setMaxParallel(String maxParallel) {
+        this.maxParallel = maxParallel;
+    }
+
+    public boolean isResumeFailedBuild() {
+        return resumeFailedBuild;
+    }
+
+    @DataBoundSetter
+    public void setResumeFailedBuild(boolean resumeFailedBuild) {
+        this.resumeFailedBuild = resumeFailedBuild;
+    }
+
+    /**
+     * One database to update: a JDBC URL, optionally followed by the id of the credentials to connect with.  Targets
+     * without credentials use the step's own.
+     */
+    public static class UpdateTarget {
+        private final String url;
+        private final String credentialsId;
+
+        public UpdateTarget(String url, String credentialsId) {
+            this.url = url;
+            this.credentialsId = credentialsId;
+        }
+
+        /**
+         * Parses one target per line.  Blank lines and lines starting with <code>#</code> are ignored.
+         */
+        public static List<UpdateTarget> parse(String targets) {
+            List<UpdateTarget> parsed = new ArrayList<>();
+            if (targets == null) {
+                return parsed;
+            }
+            for (String line : targets.split("\\r?\\n")) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = trimmed.split("\\s+", 2);
+                parsed.add(new UpdateTarget(parts[0], parts.length > 1 ? parts[1].trim() : null));
+            }
+            return parsed;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getCredentialsId() {
+            return credentialsId;
+        }
+
+        UpdateBuilder applyTo(AbstractLiquibaseBuilder template) {
+            UpdateBuilder builder = new UpdateBuilder();
+            template.copyCommonConfigurationTo(builder);
+            builder.setUrl(url);
+            if (credentialsId != null) {
+                builder.setCredentialsId(credentialsId);
+            }
+            return builder;
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseDescriptor {
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        public DescriptorImpl(Class<? extends MultiTargetUpdateBuilder> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Update Multiple Databases";
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Computer;
+import hudson.model.Descriptor;
+import hudson.model.Node;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.slaves.WorkspaceList;
+import hudson.tasks.Builder;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.liquibase.common.LiquibaseProperty;
+import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.lock.DatabaseLocks;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResultAction;
+import org.jenkinsci.plugins.liquibase.report.LiquibaseOutputParser;
+import org.jenkinsci.plugins.liquibase.schema.H2Url;
+import org.jenkinsci.plugins.liquibase.schema.SchemaImageCache;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Brings an H2 test database to the state of the changelog from a cached image, rather than dropping everything and
+ * replaying the whole changelog each build.
+ * <p>
+ * Images are kept on each node, keyed by the changelog's content.  When the changelog is unchanged the image is
+ * copied into place and Liquibase isn't run at all; when it has changed, the latest image of the same changelog is
+ * copied and only the changesets added since are applied, and the result is cached in turn.  Should that fail, say
+ * because a changeset in the earlier image was edited, the full changelog is applied to an empty database instead.
+ * Databases other than H2 files, and steps without a changelog file, are refused unless
+ * {@link #isDropAllOtherDatabases} allows preparing them with <code>dropAll</code> and <code>update</code>.
+ */
+public class PrepareSchemaBuilder extends AbstractLiquibaseBuilder {
+
+    @Extension
+    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+
+    public static final int DEFAULT_CACHE_MEGABYTES = 2048;
+
+    private String cacheMegabytes;
+    private boolean dropAllOtherDatabases;
+
+    @DataBoundConstructor
+    public PrepareSchemaBuilder() {
+        super();
+    }
+
+    @Override
+    public void perform(@Nonnull Run<?, ?> build,
+                        @Nonnull FilePath workspace,
+                        @Nonnull Launcher launcher,
+                        @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        final PrintStream log = listener.getLogger();
+        log.println("\n\nRunning " + getDescriptor().getDisplayName() + "....");
+
+        final EnvVars environment = build.getEnvironment(listener);
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(this, build, environment, workspace);
+        H2Url h2Url = H2Url.parse(configProperties.getProperty(LiquibaseProperty.URL.propertyName()));
+        ImageKey imageKey = resolveImageKey(workspace, environment, configProperties);
+        if ((h2Url == null || imageKey == null) && !dropAllOtherDatabases) {
+            throw new AbortException("Schema images need a changelog file and an H2 file database. Enable " +
+                    "'Drop All Other Databases' to prepare other databases with dropAll and update instead.");
+        }
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return;
+        }
+
+        if (h2Url == null || imageKey == null) {
+            log.println("Schema images need a changelog file and an H2 file database; running dropAll and update.");
+            UpdateBuilder target = new UpdateBuilder();
+            copyCommonConfigurationTo(target);
+            run(build, workspace, launcher, listener, environment, target, installation, "dropAll");
+            run(build, workspace, launcher, listener, environment, target, installation, "update");
+            return;
+        }
+
+        FilePath databasePath = h2Url.isAbsolute()
+                ? new FilePath(workspace.getChannel(), h2Url.getPath())
+                : workspace.child(h2Url.getPath());
+        prepareDatabase(build, workspace, launcher, listener, environment, installation, imageKey, databasePath,
+                h2Url.withPath(databasePath.getRemote()), resolveCacheMegabytes(environment) * 1024L * 1024L);
+    }
+
+    /**
+     * Identifies the image this step's changelog would produce.
+     *
+     * @return the key, or null when no changelog file is configured.
+     */
+    public ImageKey resolveImageKey(FilePath workspace, EnvVars environment, Properties configProperties)
+            throws IOException, InterruptedException {
+        String changeLogFingerprint = getChangeLogFingerprint(workspace, environment);
+        if (changeLogFingerprint == null) {
+            return null;
+        }
+        String lineage = Util.getDigestOf(Util.fixNull(Util.replaceMacro(getChangeLogFile(), environment)) + "\n" +
+                Util.fixNull(configProperties.getProperty(LiquibaseProperty.CONTEXTS.propertyName())) + "\n" +
+                Util.fixNull(configProperties.getProperty(LiquibaseProperty.LABELS.propertyName())) + "\n" +
+                Util.fixNull(Util.replaceMacro(getChangeLogParameters(), environment)) + "\n" +
+                Util.fixNull(getInstallationName()));
+        return new ImageKey(Util.getDigestOf(lineage + "\n" + changeLogFingerprint), lineage);
+    }
+
+    /**
+     * Brings the H2 database at <code>databasePath</code> (without H2's extension) to the state of the changelog,
+     * from the cached image when there is one, caching the result otherwise.
+     *
+     * @return false if the installation couldn't be used, in which case the build has been marked NOT_BUILT.
+     */
+    public boolean prepareDatabase(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                                   EnvVars environment, ImageKey imageKey, FilePath databasePath)
+            throws IOException, InterruptedException {
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return false;
+        }
+        prepareDatabase(build, workspace, launcher, listener, environment, installation, imageKey, databasePath,
+                H2Url.fileUrl(databasePath.getRemote()), resolveCacheMegabytes(environment) * 1024L * 1024L);
+        return true;
+    }
+
+    private void prepareDatabase(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                                 EnvVars environment, LiquibaseInstallation installation, ImageKey imageKey,
+                                 FilePath databasePath, String databaseUrl, long budgetBytes)
+            throws IOException, InterruptedException {
+        PrintStream log = listener.getLogger();
+        FilePath cacheRoot = getCacheRoot(workspace);
+        SchemaImageCache.Match match =
+                SchemaImageCache.restore(cacheRoot, imageKey.getKey(), imageKey.getLineage(), databasePath);
+        switch (match) {
+            case EXACT:
+                log.println("Restored schema image " + imageKey.getKey() + "; the changelog is unchanged.");
+                return;
+            case BASE:
+                log.println("Restored an earlier schema image of this changelog; applying the changesets added since.");
+                break;
+            default:
+                log.println("No schema image of this changelog yet; applying the full changelog.");
+        }
+
+        UpdateBuilder target = new UpdateBuilder();
+        copyCommonConfigurationTo(target);
+        target.setUrl(databaseUrl);
+        if (match != SchemaImageCache.Match.BASE || !updateFromBase(build, workspace, launcher, listener, environment,
+                target, installation)) {
+            if (match == SchemaImageCache.Match.BASE) {
+                log.println("Applying the changesets added since the earlier image failed, possibly because a " +
+                        "changeset in it was edited; applying the full changelog to an empty database.");
+                SchemaImageCache.restore(cacheRoot, imageKey.getKey(), null, databasePath);
+            }
+            run(build, workspace, launcher, listener, environment, target, installation, "update");
+        }
+        SchemaImageCache.store(cacheRoot, imageKey.getKey(), imageKey.getLineage(), databasePath, budgetBytes);
+        log.println("Stored schema image " + imageKey.getKey() + ".");
+    }
+
+    /**
+     * Updates a database restored from an image of an earlier version of the changelog.  The changesets applied are
+     * only reported on the build if the update succeeds.
+     *
+     * @return whether the update succeeded.
+     */
+    private boolean updateFromBase(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                                   EnvVars environment, UpdateBuilder target, LiquibaseInstallation installation)
+            throws IOException, InterruptedException {
+        ChangeSetResultAction results = new ChangeSetResultAction();
+        try {
+            run(build, workspace, launcher, listener, environment, target, installation, results, "update");
+        } catch (AbortException e) {
+            return false;
+        }
+        ChangeSetResultAction buildResults = ChangeSetResultAction.forBuild(build);
+        for (ChangeSetResult result : results.getChangeSets()) {
+            buildResults.add(result);
+        }
+        return true;
+    }
+
+    private void run(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                     EnvVars environment, UpdateBuilder target, LiquibaseInstallation installation, String command)
+            throws IOException, InterruptedException {
+        run(build, workspace, launcher, listener, environment, target, installation,
+                ChangeSetResultAction.forBuild(build), command);
+    }
+
+    private void run(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                     EnvVars environment, UpdateBuilder target, LiquibaseInstallation installation,
+                     ChangeSetResultAction results, String command) throws IOException, InterruptedException {
+        Properties targetProperties =
+                PropertiesAssembler.createLiquibaseProperties(target, build, environment, workspace);
+        ArgumentListBuilder cliCommand = createCliCommand(installation);
+        target.addGlobalArguments(cliCommand, targetProperties, build, environment, listener);
+        cliCommand.add(command);
+
+        int exitStatus;
+        DatabaseLocks.Lease lease = lockDatabase(targetProperties, listener);
+        LiquibaseOutputParser outputParser = new LiquibaseOutputParser(listener.getLogger(), results);
+        try {
+            exitStatus = runLiquibase(cliCommand, installation, workspace, launcher,
+                    new StreamTaskListener(outputParser, StandardCharsets.UTF_8));
+        } finally {
+            outputParser.close();
+            if (lease != null) {
+                lease.close();
+            }
+        }
+        if (exitStatus != 0) {
+            throw new AbortException("Liquibase failed due to errors.");
+        }
+    }
+
+    /**
+     * Images are cached once per node, under the node's root directory, or in the workspace's temporary directory
+     * when the node can't be determined.
+     */
+    public static FilePath getCacheRoot(FilePath workspace) {
+        Computer computer = workspace.toComputer();
+        Node node = computer == null ? null : computer.getNode();
+        FilePath nodeRoot = node == null ? null : node.getRootPath();
+        if (nodeRoot == null) {
+            return WorkspaceList.tempDir(workspace).child(SchemaImageCache.CACHE_DIRECTORY);
+        }
+        return nodeRoot.child(SchemaImageCache.CACHE_DIRECTORY);
+    }
+
+    private long resolveCacheMegabytes(EnvVars environment) throws AbortException {
+        String resolved = Util.fixEmptyAndTrim(Util.replaceMacro(cacheMegabytes, environment));
+        if (resolved == null) {
+            return DEFAULT_CACHE_MEGABYTES;
+        }
+        try {
+            return Math.max(0, Long.parseLong(resolved));
+        } catch (NumberFormatException e) {
+            throw new AbortException("Invalid value '" + cacheMegabytes + "' for schema image cache size.");
+        }
+    }
+
+    @Override
+    protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties,
+                                          Run<?, ?> build, EnvVars environment, TaskListener listener) {
+        cliCommand.add("update");
+    }
+
+    @Override
+    public Descriptor<Builder> getDescriptor() {
+        return DESCRIPTOR;
+    }
+
+    public String getCacheMegabytes() {
+        return cacheMegabytes;
+    }
+
+    @DataBoundSetter
+    public void setCacheMegabytes(String cacheMegabytes) {
+        this.cacheMegabytes = cacheMegabytes;
+    }
+
+    public boolean isDropAllOtherDatabases() {
+        return dropAllOtherDatabases;
+    }
+
+    @DataBoundSetter
+    public void setDropAllOtherDatabases(boolean dropAllOtherDatabases) {
+        this.dropAllOtherDatabases = dropAllOtherDatabases;
+    }
+
+    /**
+     * Identifies a schema image: <code>key</code> by the changelog's content, <code>lineage</code> by the changelog
+     * alone, so that images of earlier versions of the same changelog can be found.
+     */
+    public static class ImageKey {
+        private final String key;
+        private final String lineage;
+
+        ImageKey(String key, String lineage) {
+            this.key = key;
+            this.lineage = lineage;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getLineage() {
+            return lineage;
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseDescriptor {
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        public DescriptorImpl(Class<? extends PrepareSchemaBuilder> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Prepare Schema From Cached Image";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import com.google.common.base.Strings;
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.BuildListenerAdapter;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.liquibase.common.JdbcUrls;
+import org.jenkinsci.plugins.liquibase.common.LiquibaseProperty;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.RollbackArtifactAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Produces, archives and fetches the precomputed rollback scripts recorded in {@link RollbackArtifactAction}.
+ * <p>
+ * A script is Liquibase's <code>futureRollbackSQL</code> output taken just before an update, so it undoes exactly the
+ * changesets the update applies, including their <code>DATABASECHANGELOG</code> rows.  It's archived gzipped with a
+ * plan listing those changesets.
+ */
+final class RollbackArtifacts {
+
+    static final String SCRIPT_NAME = "rollback.sql.gz";
+    static final String PLAN_NAME = "plan.txt";
+
+    private RollbackArtifacts() {
+    }
+
+    /**
+     * The database a script is recorded against, as identified by {@link JdbcUrls#identify(String)}, or null when no
+     * URL is configured.
+     */
+    static String getDatabase(Properties configProperties) {
+        String url = configProperties.getProperty(LiquibaseProperty.URL.propertyName());
+        return Strings.isNullOrEmpty(url) ? null : JdbcUrls.identify(url);
+    }
+
+    private static FilePath getStagingDirectory(Run<?, ?> build, FilePath workspace) {
+        return WorkspaceList.tempDir(workspace).child("liquibase-rollback-" + build.getNumber());
+    }
+
+    /**
+     * Has Liquibase write the SQL rolling back the changesets the coming update will apply.
+     *
+     * @return whether the script was written; the update goes ahead regardless.
+     */
+    static boolean generate(AbstractLiquibaseBuilder builder, Run<?, ?> build, FilePath workspace,
+                            Launcher launcher, LiquibaseInstallation installation, Properties configProperties,
+                            EnvVars environment, TaskListener listener) throws IOException, InterruptedException {
+        FilePath staging = getStagingDirectory(build, workspace);
+        staging.deleteRecursive();
+        staging.mkdirs();
+        FilePath script = staging.child("rollback.sql");
+
+        ArgumentListBuilder cliCommand = AbstractLiquibaseBuilder.createCliCommand(installation);
+        builder.addGlobalArguments(cliCommand, configProperties, build, environment, listener);
+        cliCommand.add("--outputFile=" + script.getRemote());
+        cliCommand.add("futureRollbackSQL");
+        listener.getLogger().println("Precomputing rollback script...");
+        int exitStatus = builder.runLiquibase(cliCommand, installation, workspace, launcher, listener);
+        if (exitStatus != 0 || !script.exists()) {
+            listener.getLogger().println("Unable to precompute rollback script; no rollback artifact will be " +
+                    "archived for this update.");
+            staging.deleteRecursive();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Archives the script written by {@link #generate} for a successful update and records it on the build.
+     */
+    static void archive(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                        String database, String tag, String marker, List<ChangeSetResult> changeSets)
+            throws IOException, InterruptedException {
+        FilePath staging = getStagingDirectory(build, workspace);
+        FilePath script = staging.child("rollback.sql");
+        if (!script.exists()) {
+            return;
+        }
+        RollbackArtifactAction action = RollbackArtifactAction.forBuild(build);
+        List<ChangeSetResult> rolledBack = getRolledBack(changeSets);
+        try {
+            script.act(new CompressCallable(staging.child(SCRIPT_NAME).getRemote()));
+            staging.child(PLAN_NAME).write(describePlan(build.getFullDisplayName(), database, tag, rolledBack),
+                    StandardCharsets.UTF_8.name());
+
+            String directory = action.allocateDirectory();
+            Map<String, String> artifacts = new HashMap<>();
+            artifacts.put(directory + "/" + SCRIPT_NAME, SCRIPT_NAME);
+            artifacts.put(directory + "/" + PLAN_NAME, PLAN_NAME);
+            build.pickArtifactManager().archive(staging, launcher, new BuildListenerAdapter(listener), artifacts);
+            action.add(new RollbackArtifactAction.RollbackArtifact(database, tag, marker,
+                    directory + "/" + SCRIPT_NAME, directory + "/" + PLAN_NAME, rolledBack.size()));
+            listener.getLogger().println("Archived rollback script for " + rolledBack.size() + " changesets as " +
+                    directory + "/" + SCRIPT_NAME + ".");
+        } finally {
+            staging.deleteRecursive();
+        }
+    }
+
+    /**
+     * The tag the build applied to <code>database</code> right before an update, which the update's script rolls
+     * back to; consumed by the update whether or not it precomputes a script.
+     */
+    static String takeTag(Run<?, ?> build, String database) {
+        RollbackArtifactAction action = build.getAction(RollbackArtifactAction.class);
+        return action == null ? null : action.takeTag(database);
+    }
+
+    /**
+     * Checks that the database is still as the update that precomputed <code>artifact</code> left it, failing when
+     * either marker is unknown since the script may then undo changesets it wasn't written for.
+     */
+    static void checkMarker(String marker, RollbackArtifactAction.RollbackArtifact artifact, String precomputedBy)
+            throws AbortException {
+        if (marker == null || artifact.getMarker() == null) {
+            throw new AbortException("Unable to confirm that the database's changelog is unchanged since " +
+                    precomputedBy + " precomputed its rollback script; roll back with another strategy.");
+        }
+        if (!marker.equals(artifact.getMarker())) {
+            throw new AbortException("The database's changelog has changed since " + precomputedBy +
+                    " precomputed its rollback script; roll back with another strategy.");
+        }
+    }
+
+    /**
+     * The changesets a script rolls back, most recent first, which is the order Liquibase rolls them back in.
+     */
+    static List<ChangeSetResult> getRolledBack(List<ChangeSetResult> changeSets) {
+        List<ChangeSetResult> rolledBack = new ArrayList<>();
+        for (ChangeSetResult changeSet : changeSets) {
+            if (changeSet.getOutcome() == ChangeSetResult.Outcome.EXECUTED) {
+                rolledBack.add(changeSet);
+            }
+        }
+        Collections.reverse(rolledBack);
+        return rolledBack;
+    }
+
+    static String describePlan(String buildName, String database, String tag, List<ChangeSetResult> rolledBack) {
+        StringBuilder plan = new StringBuilder();
+        plan.append("Rollback precomputed by ").append(buildName).append('\n');
+        plan.append("Database: ").append(database).append('\n');
+        plan.append("Rolls back to tag: ").append(tag == null ? "(none)" : tag).append('\n');
+        plan.append("Changesets rolled back, most recent first:").append('\n');
+        for (ChangeSetResult changeSet : rolledBack) {
+            plan.append("  ").append(changeSet.getKey()).append('\n');
+        }
+        return plan.toString();
+    }
+
+    static String readPlan(Run<?, ?> build, RollbackArtifactAction.RollbackArtifact artifact) throws IOException {
+        try (InputStream in = build.getArtifactManager().root().child(artifact.getPlanPath()).open()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Copies an archived script, uncompressed, to <code>target</code>.
+     */
+    static void fetch(Run<?, ?> build, RollbackArtifactAction.RollbackArtifact artifact, FilePath target)
+            throws IOException, InterruptedException {
+        try (InputStream in = new GZIPInputStream(
+                build.getArtifactManager().root().child(artifact.getScriptPath()).open())) {
+            target.copyFrom(in);
+        }
+    }
+
+    private static class CompressCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+
+        private final String target;
+
+        CompressCallable(String target) {
+            this.target = target;
+        }
+
+        @Override
+        public Void invoke(File script, VirtualChannel channel) throws IOException {
+            try (InputStream in = Files.newInputStream(script.toPath());
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(new File(target).toPath()))) {
+                IOUtils.copy(in, out);
+            }
+            Files.delete(script.toPath());
+            return null;
+        }
+    }
+}
@@ -1,27 +1,52 @@
 package org.jenkinsci.plugins.liquibase.builder;
 
+import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
 import hudson.Util;
 import hudson.model.AbstractProject;
+import hudson.model.AutoCompletionCandidates;
 import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.slaves.WorkspaceList;
 import hudson.tasks.Builder;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.FormValidation;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
 import org.jenkinsci.plugins.liquibase.exception.LiquibaseRuntimeException;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.lock.DatabaseLocks;
+import org.jenkinsci.plugins.liquibase.report.RollbackArtifactAction;
+import org.jenkinsci.plugins.liquibase.report.TagIndex;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 
+import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Build step that invoke's liquibase's rollback against a target database.
+ * <p>
+ * The {@link RollbackStrategy#ARTIFACT} strategy replays the rollback script an {@link UpdateBuilder} precomputed and
+ * archived instead, which runs as fast as the SQL itself since Liquibase needn't parse the changelog.
  */
 public class RollbackBuilder extends AbstractLiquibaseBuilder {
 
@@ -35,17 +60,119 @@ public class RollbackBuilder extends AbstractLiquibaseBuilder {
     private String rollbackLastHours;
     private String rollbackToTag;
     private String rollbackToDate;
+    private String rollbackArtifactJob;
+    private String rollbackArtifactBuild;
+    private String rollbackArtifactTag;
 
     private transient SimpleDateFormat simpleDateFormat = new SimpleDateFormat(DATE_PATTERN);
 
     public enum RollbackStrategy {
-        TAG, DATE, RELATIVE, COUNT
+        TAG, DATE, RELATIVE, COUNT, ARTIFACT
     }
 
     @DataBoundConstructor
     public RollbackBuilder() {
     }
 
+    @Override
+    public void perform(@Nonnull Run<?, ?> build,
+                        @Nonnull FilePath workspace,
+                        @Nonnull Launcher launcher,
+                        @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        if (!RollbackStrategy.ARTIFACT.name().equals(rollbackType)) {
+            super.perform(build, workspace, launcher, listener);
+            return;
+        }
+        final PrintStream log = listener.getLogger();
+        log.println("\n\nRunning " + getDescriptor().getDisplayName() + " from a precomputed rollback script....");
+
+        final EnvVars environment = build.getEnvironment(listener);
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(this, build, environment, workspace);
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return;
+        }
+        String database = RollbackArtifacts.getDatabase(configProperties);
+        if (database == null) {
+            throw new AbortException("Rolling back from a precomputed script needs a database URL.");
+        }
+
+        Job<?, ?> job = resolveArtifactJob(build, environment);
+        RollbackArtifactAction.Match match =
+                RollbackArtifactAction.find(job, database, resolveArtifactBuild(environment));
+        if (match == null) {
+            throw new AbortException("No precomputed rollback script for " + database + " was found in " +
+                    job.getFullDisplayName() + ".");
+        }
+        RollbackArtifactAction.RollbackArtifact artifact = match.getArtifact();
+        String tag = Util.fixEmptyAndTrim(Util.replaceMacro(rollbackArtifactTag, environment));
+        if (tag != null && !tag.equals(artifact.getTag())) {
+            throw new AbortException("The latest precomputed rollback script for " + database + ", from " +
+                    match.getBuild().getFullDisplayName() + ", rolls back to tag " + artifact.getTag() +
+                    ", not " + tag + ".");
+        }
+        log.print(RollbackArtifacts.readPlan(match.getBuild(), artifact));
+
+        int exitStatus;
+        DatabaseLocks.Lease lease = lockDatabase(configProperties, listener);
+        FilePath script = WorkspaceList.tempDir(workspace).child("liquibase-rollback-" + build.getNumber() + ".sql");
+        try {
+            RollbackArtifacts.checkMarker(UpdateBuilder.readMarker(workspace, installation, configProperties, listener),
+                    artifact, match.getBuild().getFullDisplayName());
+            RollbackArtifacts.fetch(match.getBuild(), artifact, script);
+
+            ArgumentListBuilder cliCommand = createCliCommand(installation);
+            addGlobalArguments(cliCommand, configProperties, build, environment, listener);
+            cliCommand.add("executeSql", "--sqlFile=" + script.getRemote());
+            exitStatus = runLiquibase(cliCommand, installation, workspace, launcher, listener);
+        } finally {
+            script.delete();
+            if (lease != null) {
+                lease.close();
+            }
+        }
+        if (exitStatus != 0) {
+            throw new AbortException("Liquibase failed due to errors.");
+        }
+    }
+
+    /**
+     * Finds the job to take the rollback script from, which the build's authentication must be allowed to read.
+     */
+    private Job<?, ?> resolveArtifactJob(Run<?, ?> build, EnvVars environment) throws AbortException {
+        String jobName = Util.fixEmptyAndTrim(Util.replaceMacro(rollbackArtifactJob, environment));
+        if (jobName == null) {
+            return build.getParent();
+        }
+        Authentication authentication = Jenkins.getAuthentication();
+        Job<?, ?> job;
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+            job = Jenkins.get().getItem(jobName, build.getParent(), Job.class);
+        }
+        if (job == null || !job.getACL().hasPermission(authentication, Item.READ)) {
+            throw new AbortException("Job '" + jobName + "' to take the rollback script from was not found.");
+        }
+        return job;
+    }
+
+    private Integer resolveArtifactBuild(EnvVars environment) throws AbortException {
+        String resolved = Util.fixEmptyAndTrim(Util.replaceMacro(rollbackArtifactBuild, environment));
+        if (resolved == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(resolved);
+        } catch (NumberFormatException e) {
+            throw new AbortException("Invalid value '" + rollbackArtifactBuild + "' for rollback script build.");
+        }
+    }
+
+    @Override
+    protected boolean isReportingChangeSets() {
+        return true;
+    }
+
     @Override
     protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties, Run<?, ?> build, EnvVars environment, TaskListener listener) throws IOException {
         try {
@@ -74,6 +201,11 @@ public class RollbackBuilder extends AbstractLiquibaseBuilder {
                 String resolvedTag = Util.replaceMacro(rollbackToTag, environment);
                 cliCommand.add("rollback", resolvedTag);
             }
+
+            if (rollbackStrategy == RollbackStrategy.ARTIFACT) {
+                throw new LiquibaseRuntimeException(
+                        "Rolling back from a precomputed script is only supported by the build step.");
+            }
         } catch (Exception e) {
             throw new IOException(e);
         }
@@ -148,6 +280,33 @@ public class RollbackBuilder extends AbstractLiquibaseBuilder {
         this.rollbackType = rollbackType;
     }
 
+    public String getRollbackArtifactJob() {
+        return rollbackArtifactJob;
+    }
+
+    @DataBoundSetter
+    public void setRollbackArtifactJob(String rollbackArtifactJob) {
+        this.rollbackArtifactJob = rollbackArtifactJob;
+    }
+
+    public String getRollbackArtifactBuild() {
+        return rollbackArtifactBuild;
+    }
+
+    @DataBoundSetter
+    public void setRollbackArtifactBuild(String rollbackArtifactBuild) {
+        this.rollbackArtifactBuild = rollbackArtifactBuild;
+    }
+
+    public String getRollbackArtifactTag() {
+        return rollbackArtifactTag;
+    }
+
+    @DataBoundSetter
+    public void setRollbackArtifactTag(String rollbackArtifactTag) {
+        this.rollbackArtifactTag = rollbackArtifactTag;
+    }
+
     public String getRollbackLastHours() {
         return rollbackLastHours;
     }
@@ -160,6 +319,8 @@ public class RollbackBuilder extends AbstractLiquibaseBuilder {
     @Extension
     public static class DescriptorImpl extends AbstractLiquibaseDescriptor {
 
+        static final int MAX_TAG_SUGGESTIONS = 20;
+
         public DescriptorImpl() {
             load();
         }
@@ -178,5 +339,42 @@ public class RollbackBuilder extends AbstractLiquibaseBuilder {
             return "Liquibase: Roll Back Changes";
         }
 
+        /**
+         * Suggests tags from the {@link TagIndex}, most recent first, limited to those applied by jobs the user can
+         * see.
+         */
+        public AutoCompletionCandidates doAutoCompleteRollbackToTag(@QueryParameter String value) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            Set<String> suggested = new HashSet<>();
+            for (TagIndex.Entry entry : TagIndex.get().getEntries(null)) {
+                if (suggested.size() >= MAX_TAG_SUGGESTIONS) {
+                    break;
+                }
+                if (entry.getTag().startsWith(Util.fixNull(value)) && !suggested.contains(entry.getTag())
+                        && isVisible(entry)) {
+                    suggested.add(entry.getTag());
+                    candidates.add(entry.getTag());
+                }
+            }
+            return candidates;
+        }
+
+        public FormValidation doCheckRollbackToTag(@QueryParameter String value) {
+            String tag = Util.fixEmptyAndTrim(value);
+            if (tag == null || tag.contains("$")) {
+                return FormValidation.ok();
+            }
+            TagIndex.Entry entry = TagIndex.get().find(null, tag);
+            if (entry == null || !isVisible(entry)) {
+                return FormValidation.warning("No tag step is known to have applied this tag.");
+            }
+            return FormValidation.ok("Applied to " + entry.getDatabase() + " by " + entry.getJob() + " #" +
+                    entry.getBuildNumber() + " on " + new Date(entry.getTimestamp()) + ".");
+        }
+
+        private static boolean isVisible(TagIndex.Entry entry) {
+            return Jenkins.get().getItemByFullName(entry.getJob(), Job.class) != null;
+        }
+
     }
 }
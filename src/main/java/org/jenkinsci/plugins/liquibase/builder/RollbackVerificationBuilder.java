@@ -0,0 +1,582 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.slaves.WorkspaceList;
+import hudson.tasks.Builder;
+import hudson.util.ArgumentListBuilder;
+import hudson.util.StreamTaskListener;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.jenkinsci.plugins.liquibase.common.LinePrefixingOutputStream;
+import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResultAction;
+import org.jenkinsci.plugins.liquibase.report.LiquibaseOutputParser;
+import org.jenkinsci.plugins.liquibase.report.RollbackVerificationAction;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that every changeset of a changelog can be rolled back and applied again, splitting the changelog into
+ * ranges that are verified in parallel in disposable sandbox databases.
+ * <p>
+ * Each sandbox is brought up to the start of its share of the changelog, then for each range applies it, rolls it
+ * back (by count, or to a tag set just before the range) and applies it again.  A range that fails is narrowed down
+ * to the individual changesets responsible, after which the sandbox is rebuilt and carries on with the next range.
+ * <p>
+ * Sandboxes are H2 databases in the workspace's temporary directory unless sandbox URLs are configured; those
+ * databases are wiped with <code>dropAll</code>.
+ */
+public class RollbackVerificationBuilder extends AbstractLiquibaseBuilder {
+
+    @Extension
+    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+
+    public static final int DEFAULT_SANDBOXES = 4;
+    public static final int DEFAULT_RANGE_SIZE = 50;
+
+    private static final Pattern PENDING_CHANGESETS =
+            Pattern.compile("(\\d+) change ?sets? ha(?:ve|s) not been applied", Pattern.CASE_INSENSITIVE);
+    private static final String TAG_PREFIX = "rollback-verification-";
+
+    private String sandboxes;
+    private String rangeSize;
+    private String sandboxUrls;
+    private String rollbackType = RollbackBuilder.RollbackStrategy.COUNT.name();
+
+    @DataBoundConstructor
+    public RollbackVerificationBuilder() {
+        super();
+    }
+
+    @Override
+    public void perform(@Nonnull Run<?, ?> build,
+                        @Nonnull FilePath workspace,
+                        @Nonnull Launcher launcher,
+                        @Nonnull TaskListener listener) throws InterruptedException, IOException {
+        final PrintStream log = listener.getLogger();
+        log.println("\n\nRunning " + getDescriptor().getDisplayName() + "....");
+
+        final EnvVars environment = build.getEnvironment(listener);
+        RollbackBuilder.RollbackStrategy strategy = resolveStrategy();
+        int size = resolvePositive(rangeSize, DEFAULT_RANGE_SIZE, "range size", environment);
+        List<String> configuredUrls = parseUrls(Util.replaceMacro(sandboxUrls, environment));
+
+        LiquibaseInstallation installation = prepareInstallation(build, workspace, environment, listener);
+        if (installation == null) {
+            return;
+        }
+
+        FilePath sandboxRoot = null;
+        List<String> urls = configuredUrls;
+        if (urls.isEmpty()) {
+            sandboxRoot = WorkspaceList.tempDir(workspace).child("liquibase-rollback-sandboxes");
+            urls = h2SandboxUrls(sandboxRoot, resolvePositive(sandboxes, DEFAULT_SANDBOXES, "number of sandboxes",
+                    environment));
+        }
+
+        List<StreamTaskListener> sandboxListeners = new ArrayList<>();
+        try {
+            List<Sandbox> sandboxList = new ArrayList<>();
+            for (int i = 0; i < urls.size(); i++) {
+                StreamTaskListener sandboxListener = new StreamTaskListener(
+                        new LinePrefixingOutputStream("[sandbox " + (i + 1) + "] ", listener.getLogger()),
+                        StandardCharsets.UTF_8);
+                sandboxListeners.add(sandboxListener);
+                sandboxList.add(new Sandbox(i + 1, strategy, sandboxListener, new LiquibaseCommands(urls.get(i),
+                        sandboxRoot == null, installation, build, workspace, launcher, sandboxListener, environment)));
+            }
+
+            int total = sandboxList.get(0).countChangeSets();
+            if (total == 0) {
+                log.println("No changesets to verify.");
+                return;
+            }
+            List<List<int[]>> shares = divide(total, size, sandboxList.size());
+            log.println("Verifying rollbacks of " + total + " changesets in ranges of " + size + ", using " +
+                    shares.size() + " sandboxes.");
+
+            List<Report> reports = verifyAll(sandboxList, shares);
+            List<RollbackVerificationAction.RangeResult> ranges = new ArrayList<>();
+            List<RollbackVerificationAction.ChangeSetFailure> failures = new ArrayList<>();
+            for (Report report : reports) {
+                ranges.addAll(report.ranges);
+                failures.addAll(report.failures);
+            }
+            for (RollbackVerificationAction.RangeResult range : ranges) {
+                log.println(range);
+            }
+            for (RollbackVerificationAction.ChangeSetFailure failure : failures) {
+                log.println(failure);
+            }
+            RollbackVerificationAction action = new RollbackVerificationAction(total, ranges, failures);
+            build.addAction(action);
+            if (!failures.isEmpty() || action.getUnverifiedCount() > 0) {
+                throw new AbortException("Rollback verification found " + failures.size() + " failing changesets; " +
+                        action.getUnverifiedCount() + " changesets could not be verified.");
+            }
+        } finally {
+            for (StreamTaskListener sandboxListener : sandboxListeners) {
+                MultiTargetUpdateBuilder.closeTargetListener(sandboxListener, listener);
+            }
+            if (sandboxRoot != null) {
+                sandboxRoot.deleteRecursive();
+            }
+        }
+    }
+
+    static List<Report> verifyAll(List<Sandbox> sandboxList, final List<List<int[]>> shares)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(shares.size());
+        try {
+            List<Future<Report>> futures = new ArrayList<>();
+            for (int i = 0; i < shares.size(); i++) {
+                final Sandbox sandbox = sandboxList.get(i);
+                final List<int[]> share = shares.get(i);
+                futures.add(executor.submit(new Callable<Report>() {
+                    @Override
+                    public Report call() throws Exception {
+                        return sandbox.verify(share);
+                    }
+                }));
+            }
+
+            List<Report> reports = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    reports.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    sandboxList.get(i).listener.error("Sandbox failed: " + e.getCause());
+                    reports.add(Report.notVerified(i + 1, shares.get(i)));
+                }
+            }
+            return reports;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits changesets 1 to <code>total</code> into ranges of <code>size</code>, and the ranges into at most
+     * <code>sandboxCount</code> runs of consecutive ranges, so that each sandbox applies a different stretch of the
+     * changelog.
+     *
+     * @return each sandbox's ranges, as {first, count} pairs.
+     */
+    static List<List<int[]>> divide(int total, int size, int sandboxCount) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int first = 1; first <= total; first += size) {
+            ranges.add(new int[]{first, Math.min(size, total - first + 1)});
+        }
+        int shareCount = Math.min(sandboxCount, ranges.size());
+        List<List<int[]>> shares = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < shareCount; i++) {
+            int end = start + (ranges.size() - start) / (shareCount - i);
+            shares.add(new ArrayList<>(ranges.subList(start, end)));
+            start = end;
+        }
+        return shares;
+    }
+
+    static List<String> parseUrls(String urls) {
+        List<String> parsed = new ArrayList<>();
+        if (urls == null) {
+            return parsed;
+        }
+        for (String line : urls.split("\\r?\\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                parsed.add(trimmed);
+            }
+        }
+        return parsed;
+    }
+
+    private static List<String> h2SandboxUrls(FilePath sandboxRoot, int count) {
+        List<String> urls = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            urls.add("jdbc:h2:file:" + sandboxRoot.child("sandbox-" + i).getRemote());
+        }
+        return urls;
+    }
+
+    static int parsePendingChangeSets(String statusOutput) {
+        Matcher matcher = PENDING_CHANGESETS.matcher(statusOutput);
+        if (matcher.find()) {
+            return Integer.parseInt(matcher.group(1));
+        }
+        return statusOutput.contains("is up to date") ? 0 : -1;
+    }
+
+    private RollbackBuilder.RollbackStrategy resolveStrategy() throws AbortException {
+        RollbackBuilder.RollbackStrategy strategy = rollbackType == null ? RollbackBuilder.RollbackStrategy.COUNT :
+                RollbackBuilder.RollbackStrategy.valueOf(rollbackType);
+        if (strategy != RollbackBuilder.RollbackStrategy.COUNT && strategy != RollbackBuilder.RollbackStrategy.TAG) {
+            throw new AbortException("Rollbacks can only be verified by COUNT or TAG.");
+        }
+        return strategy;
+    }
+
+    private static int resolvePositive(String value, int defaultValue, String description, EnvVars environment)
+            throws AbortException {
+        String resolved = Util.fixEmptyAndTrim(Util.replaceMacro(value, environment));
+        if (resolved == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(resolved));
+        } catch (NumberFormatException e) {
+            throw new AbortException("Invalid value '" + value + "' for " + description + ".");
+        }
+    }
+
+    @Override
+    protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties,
+                                          Run<?, ?> build, EnvVars environment, TaskListener listener) {
+        // each sandbox composes its own commands
+    }
+
+    @Override
+    public Descriptor<Builder> getDescriptor() {
+        return DESCRIPTOR;
+    }
+
+    public String getSandboxes() {
+        return sandboxes;
+    }
+
+    @DataBoundSetter
+    public void setSandboxes(String sandboxes) {
+        this.sandboxes = sandboxes;
+    }
+
+    public String getRangeSize() {
+        return rangeSize;
+    }
+
+    @DataBoundSetter
+    public void setRangeSize(String rangeSize) {
+        this.rangeSize = rangeSize;
+    }
+
+    public String getSandboxUrls() {
+        return sandboxUrls;
+    }
+
+    @DataBoundSetter
+    public void setSandboxUrls(String sandboxUrls) {
+        this.sandboxUrls = sandboxUrls;
+    }
+
+    public String getRollbackType() {
+        return rollbackType;
+    }
+
+    @DataBoundSetter
+    public void setRollbackType(String rollbackType) {
+        this.rollbackType = rollbackType;
+    }
+
+    /**
+     * What one sandbox found.
+     */
+    static class Report {
+        final List<RollbackVerificationAction.RangeResult> ranges = new ArrayList<>();
+        final List<RollbackVerificationAction.ChangeSetFailure> failures = new ArrayList<>();
+
+        static Report notVerified(int sandbox, List<int[]> share) {
+            Report report = new Report();
+            report.addNotVerified(sandbox, share, 0);
+            return report;
+        }
+
+        void addNotVerified(int sandbox, List<int[]> share, int from) {
+            for (int[] range : share.subList(from, share.size())) {
+                ranges.add(new RollbackVerificationAction.RangeResult(sandbox, range[0], range[1],
+                        RollbackVerificationAction.RangeOutcome.NOT_VERIFIED, 0));
+            }
+        }
+    }
+
+    /**
+     * The output and parsed changesets of one Liquibase command.
+     */
+    static class CommandRun {
+        private final int exitStatus;
+        private final List<ChangeSetResult> changeSets;
+
+        CommandRun(int exitStatus, List<ChangeSetResult> changeSets) {
+            this.exitStatus = exitStatus;
+            this.changeSets = changeSets;
+        }
+
+        boolean isSuccessful() {
+            return exitStatus == 0;
+        }
+
+        String describe(ChangeSetResult.Outcome outcome, String fallback) {
+            for (ChangeSetResult changeSet : changeSets) {
+                if (changeSet.getOutcome() == outcome) {
+                    return changeSet.getKey();
+                }
+            }
+            return fallback;
+        }
+
+        int count(ChangeSetResult.Outcome outcome) {
+            int count = 0;
+            for (ChangeSetResult changeSet : changeSets) {
+                if (changeSet.getOutcome() == outcome) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Runs Liquibase commands against one sandbox.
+     */
+    interface Commands {
+
+        /**
+         * @param capture also receives the command's output, if not null.
+         */
+        CommandRun run(OutputStream capture, String... arguments) throws IOException, InterruptedException;
+    }
+
+    /**
+     * One disposable database and the verification done in it.
+     */
+    static class Sandbox {
+        private final int number;
+        private final RollbackBuilder.RollbackStrategy strategy;
+        private final TaskListener listener;
+        private final Commands commands;
+
+        Sandbox(int number, RollbackBuilder.RollbackStrategy strategy, TaskListener listener, Commands commands) {
+            this.number = number;
+            this.strategy = strategy;
+            this.listener = listener;
+            this.commands = commands;
+        }
+
+        int countChangeSets() throws IOException, InterruptedException {
+            if (!reset(0)) {
+                throw new AbortException("Unable to clear sandbox " + number + ".");
+            }
+            ByteArrayOutputStream statusOutput = new ByteArrayOutputStream();
+            CommandRun status = run(statusOutput, "status");
+            int pending = parsePendingChangeSets(new String(statusOutput.toByteArray(), StandardCharsets.UTF_8));
+            if (!status.isSuccessful() || pending < 0) {
+                throw new AbortException("Unable to count the changesets to verify.");
+            }
+            return pending;
+        }
+
+        Report verify(List<int[]> share) throws IOException, InterruptedException {
+            Report report = new Report();
+            try {
+                if (!reset(share.get(0)[0] - 1)) {
+                    report.addNotVerified(number, share, 0);
+                    return report;
+                }
+                for (int i = 0; i < share.size(); i++) {
+                    int first = share.get(i)[0];
+                    int count = share.get(i)[1];
+                    long start = System.nanoTime();
+                    Boolean verified = verifyRange(first, count, report);
+                    if (verified == null) {
+                        report.addNotVerified(number, share, i);
+                        break;
+                    }
+                    report.ranges.add(new RollbackVerificationAction.RangeResult(number, first, count,
+                            verified ? RollbackVerificationAction.RangeOutcome.VERIFIED :
+                                    RollbackVerificationAction.RangeOutcome.FAILED,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                }
+                return report;
+            } finally {
+                listener.getLogger().flush();
+            }
+        }
+
+        /**
+         * Applies, rolls back and re-applies changesets <code>first</code> to <code>first + count - 1</code>,
+         * with the sandbox at <code>first - 1</code>, narrowing any failure down to single changesets.
+         *
+         * @return whether the range verified, leaving the sandbox at the end of the range, or null if the sandbox
+         * couldn't be brought there.
+         */
+        private Boolean verifyRange(int first, int count, Report report) throws IOException, InterruptedException {
+            boolean byTag = strategy == RollbackBuilder.RollbackStrategy.TAG && first > 1;
+            String tag = TAG_PREFIX + first;
+            if (byTag && !run(null, "tag", tag).isSuccessful()) {
+                return null;
+            }
+            CommandRun applied = run(null, "updateCount", String.valueOf(count));
+            if (!applied.isSuccessful()) {
+                report.failures.add(new RollbackVerificationAction.ChangeSetFailure(
+                        first + applied.count(ChangeSetResult.Outcome.EXECUTED),
+                        applied.describe(ChangeSetResult.Outcome.FAILED, "unknown"), "could not be applied"));
+                return null;
+            }
+
+            String problem = null;
+            CommandRun rolledBack = byTag
+                    ? run(null, "rollback", tag)
+                    : run(null, "rollbackCount", String.valueOf(count));
+            if (!rolledBack.isSuccessful()) {
+                problem = "could not be rolled back";
+            } else if (!run(null, "updateCount", String.valueOf(count)).isSuccessful()) {
+                problem = "could not be applied again after rolling back";
+            }
+            if (problem == null) {
+                return true;
+            }
+
+            if (count == 1) {
+                report.failures.add(new RollbackVerificationAction.ChangeSetFailure(first,
+                        applied.describe(ChangeSetResult.Outcome.EXECUTED, "changeset " + first), problem));
+                return reset(first) ? Boolean.FALSE : null;
+            }
+
+            listener.getLogger().println("Changesets " + first + "-" + (first + count - 1) + " " + problem +
+                    "; checking them one at a time.");
+            if (!reset(first - 1)) {
+                return null;
+            }
+            int failuresBefore = report.failures.size();
+            for (int i = 0; i < count; i++) {
+                if (verifyRange(first + i, 1, report) == null) {
+                    return null;
+                }
+            }
+            if (report.failures.size() == failuresBefore) {
+                report.failures.add(new RollbackVerificationAction.ChangeSetFailure(first,
+                        applied.describe(ChangeSetResult.Outcome.EXECUTED, "changeset " + first),
+                        "changesets " + first + "-" + (first + count - 1) + " " + problem +
+                                " together, though each passed on its own"));
+            }
+            return false;
+        }
+
+        /**
+         * Empties the sandbox and applies its first <code>position</code> changesets.
+         */
+        private boolean reset(int position) throws IOException, InterruptedException {
+            if (!run(null, "dropAll").isSuccessful()) {
+                return false;
+            }
+            return position == 0 || run(null, "updateCount", String.valueOf(position)).isSuccessful();
+        }
+
+        private CommandRun run(OutputStream capture, String... arguments) throws IOException, InterruptedException {
+            return commands.run(capture, arguments);
+        }
+    }
+
+    /**
+     * Runs the installation's Liquibase against a sandbox URL, with the rest of the configuration taken from this
+     * builder.
+     */
+    private class LiquibaseCommands implements Commands {
+        private final LiquibaseInstallation installation;
+        private final Run<?, ?> build;
+        private final FilePath workspace;
+        private final Launcher launcher;
+        private final TaskListener listener;
+        private final EnvVars environment;
+        private final UpdateBuilder target;
+        private final Properties configProperties;
+
+        LiquibaseCommands(String url, boolean useCredentials, LiquibaseInstallation installation, Run<?, ?> build,
+                          FilePath workspace, Launcher launcher, TaskListener listener, EnvVars environment)
+                throws IOException, InterruptedException {
+            this.installation = installation;
+            this.build = build;
+            this.workspace = workspace;
+            this.launcher = launcher;
+            this.listener = listener;
+            this.environment = environment;
+            target = new UpdateBuilder();
+            copyCommonConfigurationTo(target);
+            target.setUrl(url);
+            if (!useCredentials) {
+                target.setCredentialsId(null);
+            }
+            configProperties = PropertiesAssembler.createLiquibaseProperties(target, build, environment, workspace);
+        }
+
+        @Override
+        public CommandRun run(OutputStream capture, String... arguments) throws IOException, InterruptedException {
+            ArgumentListBuilder cliCommand = createCliCommand(installation);
+            target.addGlobalArguments(cliCommand, configProperties, build, environment, listener);
+            cliCommand.add(arguments);
+
+            OutputStream out = capture == null
+                    ? listener.getLogger()
+                    : new TeeOutputStream(listener.getLogger(), capture);
+            // sandbox runs are kept out of the build's changeset report
+            LiquibaseOutputParser outputParser = new LiquibaseOutputParser(out, new ChangeSetResultAction());
+            int exitStatus;
+            try {
+                exitStatus = runLiquibase(cliCommand, installation, workspace, launcher,
+                        new StreamTaskListener(outputParser, StandardCharsets.UTF_8));
+            } finally {
+                outputParser.close();
+            }
+            return new CommandRun(exitStatus, outputParser.getParsedChangeSets());
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseDescriptor {
+
+        public DescriptorImpl() {
+            load();
+        }
+
+        public DescriptorImpl(Class<? extends RollbackVerificationBuilder> clazz) {
+            super(clazz);
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Verify Rollbacks";
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.jenkinsci.plugins.liquibase.builder;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Util;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
@@ -9,9 +10,15 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.Builder;
 import hudson.util.ArgumentListBuilder;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.RollbackArtifactAction;
+import org.jenkinsci.plugins.liquibase.report.TagIndex;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -31,12 +38,33 @@ public class TagBuilder extends AbstractLiquibaseBuilder {
 
     @Override
     protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties, Run<?, ?> build, EnvVars environment, TaskListener listener) {
+        cliCommand.add("tag", resolveTag(build, environment));
+    }
+
+    /**
+     * Adds the tag to the {@link TagIndex}, and remembers it so that rollback scripts precomputed by later updates in
+     * the build are known to roll back to it.
+     */
+    @Override
+    protected void onSuccessfulExecution(Run<?, ?> build, FilePath workspace, LiquibaseInstallation installation,
+                                         Properties configProperties, EnvVars environment, TaskListener listener,
+                                         List<ChangeSetResult> changeSets) throws IOException, InterruptedException {
+        String database = RollbackArtifacts.getDatabase(configProperties);
+        if (database == null) {
+            return;
+        }
+        String tag = resolveTag(build, environment);
+        RollbackArtifactAction.forBuild(build).recordTag(database, tag);
+        TagIndex.get().record(new TagIndex.Entry(tag, database, build.getParent().getFullName(), build.getNumber(),
+                getChangeLogFingerprint(workspace, environment), System.currentTimeMillis()));
+    }
+
+    private String resolveTag(Run<?, ?> build, EnvVars environment) {
         String tagString = this.getTag();
         if (tagString == null || tagString.trim().equals("")) {
             tagString = build.getParent().getName() + "-" + build.getNumber();
         }
-
-        cliCommand.add("tag", Util.replaceMacro(tagString, environment));
+        return Util.replaceMacro(tagString, environment);
     }
 
     @Override
@@ -2,15 +2,36 @@ package org.jenkinsci.plugins.liquibase.builder;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
+import hudson.model.Job;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.Builder;
 import hudson.util.ArgumentListBuilder;
+import hudson.util.FormValidation;
+import org.jenkinsci.plugins.liquibase.common.ChangeLogFingerprint;
+import org.jenkinsci.plugins.liquibase.common.LiquibaseProperty;
+import org.jenkinsci.plugins.liquibase.exception.LiquibaseRuntimeException;
+import org.jenkinsci.plugins.liquibase.execution.ChangeLogMarker;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetTimingIndex;
+import org.jenkinsci.plugins.liquibase.report.DeploymentRecordAction;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 /**
  * Jenkins builder which evaluates liquibase changesets.
@@ -21,14 +42,239 @@ public class UpdateBuilder extends AbstractLiquibaseBuilder {
     @Extension
     public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
 
+    public static final long MINIMUM_REGRESSION_MILLIS = 1000;
+
+    private boolean skipWhenUnchanged;
+    private boolean testRollbacks;
+    private boolean precomputeRollback;
+    private String regressionFactor;
+    private String regressionResult;
+
     @DataBoundConstructor
     public UpdateBuilder() {
         super();
     }
 
+    /**
+     * When the changelog, target and contexts/labels match an earlier successful update and the database's changelog
+     * marker hasn't moved since, the update would apply nothing, so Liquibase isn't run at all.  Changelogs with
+     * changesets marked <code>runAlways</code> or <code>runOnChange</code> are always run.
+     */
+    @Override
+    protected boolean shouldSkipExecution(Run<?, ?> build, FilePath workspace, LiquibaseInstallation installation,
+                                          Properties configProperties, EnvVars environment, TaskListener listener)
+            throws IOException, InterruptedException {
+        if (!skipWhenUnchanged) {
+            return false;
+        }
+        ChangeLogFingerprint.Result changeLog = scanChangeLog(workspace, environment);
+        if (changeLog != null && changeLog.hasRerunningChangeSets()) {
+            listener.getLogger().println("Changelog has changesets marked runAlways or runOnChange; not skipping " +
+                    "update.");
+            return false;
+        }
+        String deploymentFingerprint = changeLog == null ? null :
+                getDeploymentFingerprint(changeLog.getDigest(), configProperties, environment);
+        String previousMarker = deploymentFingerprint == null ? null :
+                DeploymentRecordAction.findPreviousMarker(build, deploymentFingerprint);
+        if (previousMarker == null) {
+            return false;
+        }
+        String currentMarker = readMarker(workspace, installation, configProperties, listener);
+        if (previousMarker.equals(currentMarker)) {
+            listener.getLogger().println("Changelog and database are unchanged since the last successful update; " +
+                    "skipping update.");
+            DeploymentRecordAction.forBuild(build).record(deploymentFingerprint, currentMarker);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void beforeExecution(Run<?, ?> build, FilePath workspace, Launcher launcher,
+                                   LiquibaseInstallation installation, Properties configProperties,
+                                   EnvVars environment, TaskListener listener)
+            throws IOException, InterruptedException {
+        resolveRegressionFactor(environment);
+        if (precomputeRollback && RollbackArtifacts.getDatabase(configProperties) != null) {
+            RollbackArtifacts.generate(this, build, workspace, launcher, installation, configProperties, environment,
+                    listener);
+        }
+    }
+
+    @Override
+    protected void onSuccessfulExecution(Run<?, ?> build, FilePath workspace, LiquibaseInstallation installation,
+                                         Properties configProperties, EnvVars environment, TaskListener listener,
+                                         List<ChangeSetResult> changeSets)
+            throws IOException, InterruptedException {
+        recordTimings(build, environment, listener, changeSets);
+        if (skipWhenUnchanged) {
+            recordDeployment(build, workspace, installation, configProperties, environment, listener);
+        }
+        String database = RollbackArtifacts.getDatabase(configProperties);
+        if (database != null) {
+            String tag = RollbackArtifacts.takeTag(build, database);
+            if (precomputeRollback) {
+                RollbackArtifacts.archive(build, workspace, workspace.createLauncher(listener), listener, database,
+                        tag, readMarker(workspace, installation, configProperties, listener), changeSets);
+            }
+        }
+    }
+
+    /**
+     * Adds this step's changeset timings to the job's index, first comparing them against the history when a
+     * regression factor is configured.  Timings are indexed per changelog file and URL for the step total.
+     */
+    private void recordTimings(Run<?, ?> build, EnvVars environment, TaskListener listener,
+                               List<ChangeSetResult> changeSets) throws IOException {
+        Job<?, ?> job = build.getParent();
+        String totalKey = Util.replaceMacro(getChangeLogFile(), environment) + " @ " +
+                Util.replaceMacro(getUrl(), environment);
+        Double factor = resolveRegressionFactor(environment);
+        synchronized (ChangeSetTimingIndex.lockFor(job)) {
+            ChangeSetTimingIndex index = ChangeSetTimingIndex.load(job);
+            if (factor != null) {
+                checkForRegressions(build, listener, index, totalKey, changeSets, factor);
+            }
+            index.record(build.getNumber(), totalKey, changeSets);
+            index.save(job);
+        }
+    }
+
+    private void checkForRegressions(Run<?, ?> build, TaskListener listener, ChangeSetTimingIndex index,
+                                     String totalKey, List<ChangeSetResult> changeSets, double factor) {
+        List<String> regressions = new ArrayList<>();
+        long total = 0;
+        for (ChangeSetResult changeSet : changeSets) {
+            if (changeSet.getOutcome() != ChangeSetResult.Outcome.EXECUTED) {
+                continue;
+            }
+            total += changeSet.getDurationMillis();
+            if (isRegression(changeSet.getDurationMillis(), index.getBaseline(changeSet.getKey()), factor)) {
+                regressions.add(changeSet.getKey() + " took " + changeSet.getDurationMillis() + "ms, baseline " +
+                        index.getBaseline(changeSet.getKey()) + "ms");
+            }
+        }
+        long totalBaseline = index.getTotalBaseline(totalKey);
+        if (total > 0 && isRegression(total, totalBaseline, factor)) {
+            regressions.add("Update took " + total + "ms in total, baseline " + totalBaseline + "ms");
+        }
+
+        if (!regressions.isEmpty()) {
+            listener.getLogger().println("Liquibase migration time regressed by more than a factor of " + factor + ":");
+            for (String regression : regressions) {
+                listener.getLogger().println("  " + regression);
+            }
+            build.setResult(Result.fromString(Util.fixEmptyAndTrim(regressionResult) == null ?
+                    Result.UNSTABLE.toString() : regressionResult));
+        }
+    }
+
+    static boolean isRegression(long durationMillis, long baselineMillis, double factor) {
+        return baselineMillis >= 0 && durationMillis >= MINIMUM_REGRESSION_MILLIS &&
+                durationMillis > baselineMillis * factor;
+    }
+
+    /**
+     * Called before Liquibase runs as well, so a bad value fails the step before the database is touched.
+     */
+    private Double resolveRegressionFactor(EnvVars environment) {
+        String resolved = Util.fixEmptyAndTrim(Util.replaceMacro(regressionFactor, environment));
+        if (resolved == null) {
+            return null;
+        }
+        Double factor = parseRegressionFactor(resolved);
+        if (factor == null) {
+            throw new LiquibaseRuntimeException("Invalid value '" + regressionFactor + "' for regression factor; " +
+                    "expected a number greater than zero.");
+        }
+        return factor;
+    }
+
+    /**
+     * @return the factor, or null when <code>value</code> isn't a number greater than zero.
+     */
+    static Double parseRegressionFactor(String value) {
+        try {
+            double factor = Double.parseDouble(value.trim());
+            return factor > 0 && !Double.isInfinite(factor) ? factor : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void recordDeployment(Run<?, ?> build, FilePath workspace, LiquibaseInstallation installation,
+                                  Properties configProperties, EnvVars environment, TaskListener listener)
+            throws IOException, InterruptedException {
+        String deploymentFingerprint = getDeploymentFingerprint(workspace, configProperties, environment);
+        String marker = readMarker(workspace, installation, configProperties, listener);
+        if (deploymentFingerprint != null && marker != null) {
+            DeploymentRecordAction.forBuild(build).record(deploymentFingerprint, marker);
+        }
+    }
+
+    /**
+     * Digest of everything that decides what an update applies: the changelog content, changelog parameters, the
+     * credentials and the resolved configuration, which includes the defaults file's contents.  Only the password is
+     * left out.
+     */
+    String getDeploymentFingerprint(FilePath workspace, Properties configProperties, EnvVars environment)
+            throws IOException, InterruptedException {
+        String changeLogFingerprint = getChangeLogFingerprint(workspace, environment);
+        if (changeLogFingerprint == null) {
+            return null;
+        }
+        return getDeploymentFingerprint(changeLogFingerprint, configProperties, environment);
+    }
+
+    private String getDeploymentFingerprint(String changeLogFingerprint, Properties configProperties,
+                                            EnvVars environment) {
+        StringBuilder deployment = new StringBuilder(changeLogFingerprint).append('\n')
+                .append(Util.fixNull(Util.replaceMacro(getChangeLogParameters(), environment))).append('\n')
+                .append(Util.fixNull(getCredentialsId())).append('\n');
+        for (Map.Entry<String, String> property : sortedProperties(configProperties).entrySet()) {
+            if (!property.getKey().equals(LiquibaseProperty.PASSWORD.propertyName())) {
+                deployment.append(property.getKey()).append('=').append(property.getValue()).append('\n');
+            }
+        }
+        return Util.getDigestOf(deployment.toString());
+    }
+
+    private static Map<String, String> sortedProperties(Properties configProperties) {
+        Map<String, String> sorted = new TreeMap<>();
+        for (String name : configProperties.stringPropertyNames()) {
+            sorted.put(name, configProperties.getProperty(name));
+        }
+        return sorted;
+    }
+
+    /**
+     * Reads the marker, treating any failure as "unknown" so that the full update runs.
+     */
+    static String readMarker(FilePath workspace, LiquibaseInstallation installation,
+                                     Properties configProperties, TaskListener listener) throws InterruptedException {
+        try {
+            return ChangeLogMarker.read(workspace, installation,
+                    configProperties.getProperty(LiquibaseProperty.URL.propertyName()),
+                    configProperties.getProperty(LiquibaseProperty.USERNAME.propertyName()),
+                    configProperties.getProperty(LiquibaseProperty.PASSWORD.propertyName()),
+                    configProperties.getProperty("liquibaseSchemaName",
+                            configProperties.getProperty("defaultSchemaName")),
+                    configProperties.getProperty("databaseChangeLogTableName"));
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to read changelog marker: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    protected boolean isReportingChangeSets() {
+        return true;
+    }
+
     @Override
     protected void addCommandAndArguments(ArgumentListBuilder cliCommand, Properties configProperties, Run<?, ?> build, EnvVars environment, TaskListener listener) {
-        cliCommand.add("update");
+        cliCommand.add(testRollbacks ? "updateTestingRollback" : "update");
     }
 
     @Override
@@ -36,6 +282,58 @@ public class UpdateBuilder extends AbstractLiquibaseBuilder {
         return DESCRIPTOR;
     }
 
+    /**
+     * Whether each changeset is rolled back and applied again as part of the update.
+     */
+    public boolean isTestRollbacks() {
+        return testRollbacks;
+    }
+
+    @DataBoundSetter
+    public void setTestRollbacks(boolean testRollbacks) {
+        this.testRollbacks = testRollbacks;
+    }
+
+    /**
+     * Whether the SQL rolling this update back is worked out beforehand and archived, for
+     * {@link RollbackBuilder.RollbackStrategy#ARTIFACT} rollbacks to replay.
+     */
+    public boolean isPrecomputeRollback() {
+        return precomputeRollback;
+    }
+
+    @DataBoundSetter
+    public void setPrecomputeRollback(boolean precomputeRollback) {
+        this.precomputeRollback = precomputeRollback;
+    }
+
+    public String getRegressionFactor() {
+        return regressionFactor;
+    }
+
+    @DataBoundSetter
+    public void setRegressionFactor(String regressionFactor) {
+        this.regressionFactor = regressionFactor;
+    }
+
+    public String getRegressionResult() {
+        return regressionResult;
+    }
+
+    @DataBoundSetter
+    public void setRegressionResult(String regressionResult) {
+        this.regressionResult = regressionResult;
+    }
+
+    public boolean isSkipWhenUnchanged() {
+        return skipWhenUnchanged;
+    }
+
+    @DataBoundSetter
+    public void setSkipWhenUnchanged(boolean skipWhenUnchanged) {
+        this.skipWhenUnchanged = skipWhenUnchanged;
+    }
+
     @Extension
     public static class DescriptorImpl extends AbstractLiquibaseDescriptor {
 
@@ -56,6 +354,17 @@ public class UpdateBuilder extends AbstractLiquibaseBuilder {
         public String getDisplayName() {
             return "Liquibase: Update Database";
         }
+
+        public FormValidation doCheckRegressionFactor(@QueryParameter String value) {
+            String factor = Util.fixEmptyAndTrim(value);
+            if (factor == null || factor.contains("$")) {
+                return FormValidation.ok();
+            }
+            if (parseRegressionFactor(factor) == null) {
+                return FormValidation.error("Must be a number greater than zero, e.g. 3.");
+            }
+            return FormValidation.ok();
+        }
     }
 
 }
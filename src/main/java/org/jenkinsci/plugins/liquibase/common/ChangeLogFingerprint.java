@@ -0,0 +1,430 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.codec.binary.Hex;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a single content hash over everything a changelog can pull in: the changelog file, every file it
+ * references through <code>include</code>, <code>includeAll</code>, <code>sqlFile</code> and <code>loadData</code>
+ * (followed transitively), and the jars in the resource directories.
+ * <p>
+ * References are resolved the way Liquibase does: relative to the referencing changelog when
+ * <code>relativeToChangelogFile</code> is set, otherwise as absolute paths or against the workspace and the resource
+ * directories.  When a reference cannot be resolved to a file on the node (a property placeholder, a resource packed
+ * in a jar, a missing file), no fingerprint is produced, so callers never skip work on a partial hash.
+ * <p>
+ * While hashing, changesets marked <code>runAlways</code> or <code>runOnChange</code> are noted: an update may run them
+ * again even though the content hash hasn't changed, so callers deciding whether an update can be skipped must not
+ * rely on the hash alone for such changelogs.
+ * <p>
+ * Hashing happens on the node holding the workspace.  Per-file digests are kept in a JVM-wide LRU cache keyed by
+ * path, size and modification time, so steps in the same build and later builds only re-read files that changed.
+ */
+public class ChangeLogFingerprint {
+
+    static final int MAX_CACHED_FILES = 100000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> REFERENCING_ELEMENTS = new HashSet<>(Arrays.asList(
+            "include", "includeAll", "sqlFile", "loadData", "loadUpdateData", "createProcedure", "createView"));
+    private static final Set<String> CHANGELOG_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "xml", "yaml", "yml", "json", "sql"));
+    private static final Pattern STRUCTURED_REFERENCE = Pattern.compile(
+            "[\"']?\\b(file|path)[\"']?\\s*:\\s*[\"']?([^\"'\\s,}]+)");
+    private static final Pattern STRUCTURED_RERUN = Pattern.compile(
+            "[\"']?\\b(runAlways|runOnChange)[\"']?\\s*:\\s*[\"']?true\\b");
+    private static final Pattern FORMATTED_SQL_RERUN = Pattern.compile(
+            "^\\s*--\\s*changeset\\s.*\\b(runAlways|runOnChange):true\\b", Pattern.MULTILINE);
+    private static final String CLASSPATH_PREFIX = "classpath:";
+
+    private static final Map<String, CachedDigest> DIGESTS =
+            new LinkedHashMap<String, CachedDigest>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedDigest> eldest) {
+                    return size() > MAX_CACHED_FILES;
+                }
+            };
+
+    private ChangeLogFingerprint() {
+    }
+
+    /**
+     * @param changeLogFile       changelog path, absolute or relative to <code>workspace</code>.
+     * @param resourceDirectories comma separated directories, absolute or relative to <code>workspace</code>.
+     * @return hex encoded SHA-256 over the changelog and the files it references, or null when no changelog file is
+     * configured or a reference cannot be resolved.
+     */
+    public static String compute(FilePath workspace, String changeLogFile, String resourceDirectories)
+            throws IOException, InterruptedException {
+        Result result = scan(workspace, changeLogFile, resourceDirectories);
+        return result == null ? null : result.getDigest();
+    }
+
+    /**
+     * As {@link #compute(FilePath, String, String)}, also telling whether any changeset may be run again by an
+     * update of an unchanged changelog.
+     *
+     * @return the result, or null when no changelog file is configured or a reference cannot be resolved.
+     */
+    public static Result scan(FilePath workspace, String changeLogFile, String resourceDirectories)
+            throws IOException, InterruptedException {
+        if (Strings.isNullOrEmpty(changeLogFile)) {
+            return null;
+        }
+        List<String> directories = new ArrayList<>();
+        if (!Strings.isNullOrEmpty(resourceDirectories)) {
+            for (String directory : Splitter.on(",").trimResults().omitEmptyStrings().split(resourceDirectories)) {
+                directories.add(directory);
+            }
+        }
+        return workspace.act(new FingerprintCallable(changeLogFile, directories));
+    }
+
+    /**
+     * Hashes <code>changeLogFile</code>, everything it references and the jars in <code>resourceDirectories</code>.
+     *
+     * @return the fingerprint, or null when the changelog or one of its references cannot be resolved.
+     */
+    static String compute(File workspace, String changeLogFile, List<File> resourceDirectories) throws IOException {
+        Result result = scan(workspace, changeLogFile, resourceDirectories);
+        return result == null ? null : result.getDigest();
+    }
+
+    static Result scan(File workspace, String changeLogFile, List<File> resourceDirectories) throws IOException {
+        List<File> searchRoots = new ArrayList<>();
+        searchRoots.add(workspace);
+        searchRoots.addAll(resourceDirectories);
+
+        File root = resolve(changeLogFile, null, false, searchRoots);
+        if (root == null || !root.isFile()) {
+            return null;
+        }
+        Map<String, File> files = new TreeMap<>();
+        Deque<File> pending = new ArrayDeque<>();
+        pending.add(root);
+        boolean rerunsChangeSets = false;
+        while (!pending.isEmpty()) {
+            File file = pending.poll();
+            if (files.put(file.getCanonicalPath(), file) != null) {
+                continue;
+            }
+            ChangeLogContent content = read(file);
+            rerunsChangeSets |= content.rerunsChangeSets;
+            for (Reference reference : content.references) {
+                File target = resolve(reference.path, file.getParentFile(), reference.relative, searchRoots);
+                if (target == null) {
+                    return null;
+                }
+                if (target.isDirectory()) {
+                    collectChangeLogs(target, pending);
+                } else if (reference.changeLog) {
+                    pending.add(target);
+                } else {
+                    files.put(target.getCanonicalPath(), target);
+                }
+            }
+        }
+        for (File resourceDirectory : resourceDirectories) {
+            File[] jars = resourceDirectory.listFiles((directory, name) -> name.endsWith(".jar"));
+            if (jars != null) {
+                for (File jar : jars) {
+                    files.put(jar.getCanonicalPath(), jar);
+                }
+            }
+        }
+
+        String workspacePath = workspace.getCanonicalPath() + File.separator;
+        MessageDigest combined = newDigest();
+        update(combined, "changelog", changeLogFile);
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            String path = entry.getKey();
+            update(combined, path.startsWith(workspacePath) ? path.substring(workspacePath.length()) : path,
+                    digestOf(entry.getValue()));
+        }
+        return new Result(Hex.encodeHexString(combined.digest()), rerunsChangeSets);
+    }
+
+    /**
+     * @return the existing file or directory <code>path</code> refers to, or null when there is none.
+     */
+    private static File resolve(String path, File referencingDirectory, boolean relative, List<File> searchRoots) {
+        if (path.contains("${")) {
+            return null;
+        }
+        if (path.startsWith(CLASSPATH_PREFIX)) {
+            path = path.substring(CLASSPATH_PREFIX.length());
+            relative = false;
+        }
+        if (new File(path).isAbsolute()) {
+            File file = new File(path);
+            return file.exists() ? file : null;
+        }
+        if (relative) {
+            File file = new File(referencingDirectory, path);
+            return file.exists() ? file : null;
+        }
+        List<File> candidates = new ArrayList<>(searchRoots);
+        if (referencingDirectory != null) {
+            candidates.add(referencingDirectory);
+        }
+        for (File candidate : candidates) {
+            File file = new File(candidate, path);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queues the changelogs <code>includeAll</code> would pick up below <code>directory</code>; anything else in the
+     * directory, such as database files or build output, is ignored.
+     */
+    private static void collectChangeLogs(File directory, Deque<File> pending) {
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            if (name.startsWith(".")) {
+                continue;
+            }
+            File child = new File(directory, name);
+            if (child.isDirectory()) {
+                collectChangeLogs(child, pending);
+            } else if (child.isFile() && CHANGELOG_EXTENSIONS.contains(extensionOf(name))) {
+                pending.add(child);
+            }
+        }
+    }
+
+    private static ChangeLogContent read(File file) throws IOException {
+        String extension = extensionOf(file.getName());
+        if ("xml".equals(extension)) {
+            return readXml(file);
+        }
+        if ("yaml".equals(extension) || "yml".equals(extension) || "json".equals(extension)) {
+            return readStructured(file);
+        }
+        if ("sql".equals(extension)) {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            return new ChangeLogContent(Collections.<Reference>emptyList(),
+                    FORMATTED_SQL_RERUN.matcher(content).find());
+        }
+        return new ChangeLogContent(Collections.<Reference>emptyList(), false);
+    }
+
+    private static ChangeLogContent readXml(File file) throws IOException {
+        final List<Reference> references = new ArrayList<>();
+        final boolean[] rerunsChangeSets = new boolean[1];
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.newSAXParser().parse(file, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    if ("changeSet".equals(localName)) {
+                        rerunsChangeSets[0] |= Boolean.parseBoolean(attributes.getValue("runAlways")) ||
+                                Boolean.parseBoolean(attributes.getValue("runOnChange"));
+                        return;
+                    }
+                    if (!REFERENCING_ELEMENTS.contains(localName)) {
+                        return;
+                    }
+                    String path = attributes.getValue("file");
+                    if (path == null) {
+                        path = attributes.getValue("path");
+                    }
+                    if (path != null) {
+                        references.add(new Reference(path,
+                                Boolean.parseBoolean(attributes.getValue("relativeToChangelogFile")),
+                                "include".equals(localName) || "includeAll".equals(localName)));
+                    }
+                }
+            });
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Unable to read changelog " + file, e);
+        }
+        return new ChangeLogContent(references, rerunsChangeSets[0]);
+    }
+
+    /**
+     * YAML and JSON changelogs are scanned for <code>file</code> and <code>path</code> keys.  Whether a reference is
+     * relative to the changelog is not tracked, so the changelog directory is tried after the search roots.
+     */
+    private static ChangeLogContent readStructured(File file) throws IOException {
+        List<Reference> references = new ArrayList<>();
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Matcher matcher = STRUCTURED_REFERENCE.matcher(content);
+        while (matcher.find()) {
+            String path = matcher.group(2);
+            references.add(new Reference(path, false,
+                    !path.endsWith(".sql") && CHANGELOG_EXTENSIONS.contains(extensionOf(path))));
+        }
+        return new ChangeLogContent(references, STRUCTURED_RERUN.matcher(content).find());
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+    }
+
+    static String digestOf(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        synchronized (DIGESTS) {
+            CachedDigest cached = DIGESTS.get(key);
+            if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+                return cached.digest;
+            }
+        }
+
+        MessageDigest messageDigest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        String digest = Hex.encodeHexString(messageDigest.digest());
+        synchronized (DIGESTS) {
+            DIGESTS.put(key, new CachedDigest(length, lastModified, digest));
+        }
+        return digest;
+    }
+
+    private static void update(MessageDigest combined, String name, String value) {
+        combined.update(name.getBytes(StandardCharsets.UTF_8));
+        combined.update((byte) 0);
+        combined.update(value.getBytes(StandardCharsets.UTF_8));
+        combined.update((byte) '\n');
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The fingerprint of a changelog tree, and whether it has changesets an update may run again regardless.
+     */
+    public static class Result implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String digest;
+        private final boolean rerunsChangeSets;
+
+        Result(String digest, boolean rerunsChangeSets) {
+            this.digest = digest;
+            this.rerunsChangeSets = rerunsChangeSets;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * Whether any changeset is marked <code>runAlways</code> or <code>runOnChange</code>.
+         */
+        public boolean hasRerunningChangeSets() {
+            return rerunsChangeSets;
+        }
+    }
+
+    private static class ChangeLogContent {
+        private final List<Reference> references;
+        private final boolean rerunsChangeSets;
+
+        ChangeLogContent(List<Reference> references, boolean rerunsChangeSets) {
+            this.references = references;
+            this.rerunsChangeSets = rerunsChangeSets;
+        }
+    }
+
+    private static class CachedDigest {
+        private final long length;
+        private final long lastModified;
+        private final String digest;
+
+        CachedDigest(long length, long lastModified, String digest) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+
+    private static class Reference {
+        private final String path;
+        private final boolean relative;
+        private final boolean changeLog;
+
+        Reference(String path, boolean relative, boolean changeLog) {
+            this.path = path;
+            this.relative = relative;
+            this.changeLog = changeLog;
+        }
+    }
+
+    private static class FingerprintCallable extends MasterToSlaveFileCallable<Result> {
+        private static final long serialVersionUID = 1;
+
+        private final String changeLogFile;
+        private final List<String> resourceDirectories;
+
+        FingerprintCallable(String changeLogFile, List<String> resourceDirectories) {
+            this.changeLogFile = changeLogFile;
+            this.resourceDirectories = resourceDirectories;
+        }
+
+        @Override
+        public Result invoke(File workspace, VirtualChannel channel) throws IOException {
+            List<File> directories = new ArrayList<>();
+            for (String directory : resourceDirectories) {
+                File file = new File(directory);
+                directories.add(file.isAbsolute() ? file : new File(workspace, directory));
+            }
+            return scan(workspace, changeLogFile, directories);
+        }
+    }
+}
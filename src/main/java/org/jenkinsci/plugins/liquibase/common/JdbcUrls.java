@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Identifies databases by JDBC URL for records kept across builds, such as rollback scripts and tags.
+ * <p>
+ * Unlike the lock key of {@link org.jenkinsci.plugins.liquibase.lock.DatabaseLocks#normalize(String)}, which errs on
+ * the side of treating different URLs as the same database, an identity errs the other way: two URLs only identify
+ * the same database when they are the same, so that a script recorded against one database is never applied to
+ * another.
+ */
+public final class JdbcUrls {
+
+    /**
+     * Connection parameters, lower-cased, left out of identities so that credentials aren't recorded.
+     */
+    private static final Set<String> CREDENTIAL_PARAMETERS =
+            new HashSet<>(Arrays.asList("user", "username", "password"));
+
+    private JdbcUrls() {
+    }
+
+    /**
+     * The URL as configured, less surrounding whitespace and any credentials given as connection parameters.
+     */
+    public static String identify(String url) {
+        String trimmed = url.trim();
+        int parametersStart = -1;
+        for (int i = 0; i < trimmed.length() && parametersStart < 0; i++) {
+            char c = trimmed.charAt(i);
+            if (c == '?' || c == ';') {
+                parametersStart = i;
+            }
+        }
+        if (parametersStart < 0) {
+            return trimmed;
+        }
+        char firstSeparator = trimmed.charAt(parametersStart);
+        char separator = firstSeparator;
+        StringBuilder identity = new StringBuilder(trimmed.substring(0, parametersStart));
+        for (String parameter : trimmed.substring(parametersStart + 1).split("[;&]")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            if (parameter.isEmpty() || CREDENTIAL_PARAMETERS.contains(name.trim().toLowerCase(Locale.ENGLISH))) {
+                continue;
+            }
+            identity.append(separator).append(parameter);
+            separator = firstSeparator == '?' ? '&' : ';';
+        }
+        return identity.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Prefixes every line with a label before writing it, whole, to a shared stream.  Lets several Liquibase runs write
+ * to one build log at once without interleaving mid-line.
+ */
+public class LinePrefixingOutputStream extends LineTransformationOutputStream {
+
+    private final byte[] prefix;
+    private final OutputStream out;
+
+    public LinePrefixingOutputStream(String prefix, OutputStream out) {
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        this.out = out;
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        synchronized (out) {
+            out.write(prefix);
+            out.write(b, 0, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        flush();
+    }
+}
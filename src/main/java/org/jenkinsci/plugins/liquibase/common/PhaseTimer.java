@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Splits the time taken by a build step into consecutive named phases.  Each call to {@link #mark(String)} closes
+ * the phase that began at the previous mark (or at construction).
+ */
+public class PhaseTimer {
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long lastMark = System.nanoTime();
+
+    /**
+     * Attributes the time since the previous mark to <code>phase</code>.  Marking the same phase again adds to it.
+     */
+    public synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        Long previous = phases.get(phase);
+        phases.put(phase, (previous == null ? 0 : previous) + now - lastMark);
+        lastMark = now;
+    }
+
+    /**
+     * Phase durations in nanoseconds, in the order the phases were first marked.
+     */
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    /**
+     * One line summary, e.g. <code>properties 1.2ms, installation 0.4ms, liquibase 5321.0ms</code>.
+     */
+    public synchronized String toSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(phase.getKey()).append(' ')
+                    .append(String.format(Locale.ENGLISH, "%.1fms", phase.getValue() / 1000000d));
+        }
+        return summary.toString();
+    }
+}
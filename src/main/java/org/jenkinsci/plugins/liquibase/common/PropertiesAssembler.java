@@ -46,11 +46,26 @@ public class PropertiesAssembler {
     public static Properties createLiquibaseProperties(AbstractLiquibaseBuilder liquibaseBuilder,
                                                        Run<?, ?> build, Map environment, FilePath workspace)
             throws IOException, InterruptedException {
+        return createLiquibaseProperties(liquibaseBuilder, build, environment, workspace, new PhaseTimer());
+    }
+
+    /**
+     * As {@link #createLiquibaseProperties(AbstractLiquibaseBuilder, Run, Map, FilePath)}, marking the
+     * <code>propertiesFile</code>, <code>credentials</code> and <code>properties</code> phases on <code>timer</code>.
+     */
+    public static Properties createLiquibaseProperties(AbstractLiquibaseBuilder liquibaseBuilder,
+                                                       Run<?, ?> build, Map environment, FilePath workspace,
+                                                       PhaseTimer timer)
+            throws IOException, InterruptedException {
         Properties properties = new Properties();
 
         assembleDefaults(properties);
         assembleFromPropertiesFile(liquibaseBuilder, build, environment, workspace, properties);
-        assembleFromProjectConfiguration(liquibaseBuilder, properties, environment, build);
+        timer.mark("propertiesFile");
+        assembleFromCredentials(liquibaseBuilder, properties, build);
+        timer.mark("credentials");
+        assembleFromBuilderFields(liquibaseBuilder, properties, environment, build);
+        timer.mark("properties");
         return properties;
     }
 
@@ -70,8 +85,12 @@ public class PropertiesAssembler {
                                                            Properties properties,
                                                            Map environment, Run<?, ?> build)
             throws IOException, InterruptedException {
+        assembleFromCredentials(liquibaseBuilder, properties, build);
+        assembleFromBuilderFields(liquibaseBuilder, properties, environment, build);
+    }
 
-
+    private static void assembleFromCredentials(AbstractLiquibaseBuilder liquibaseBuilder, Properties properties,
+                                                Run<?, ?> build) {
         if (!Strings.isNullOrEmpty(liquibaseBuilder.getCredentialsId())) {
             StandardUsernamePasswordCredentials credentials =
                     CredentialsProvider.findCredentialById(liquibaseBuilder.getCredentialsId(),
@@ -86,6 +105,10 @@ public class PropertiesAssembler {
                 setProperty(properties, LiquibaseProperty.PASSWORD, credentials.getPassword().getPlainText());
             }
         }
+    }
+
+    private static void assembleFromBuilderFields(AbstractLiquibaseBuilder liquibaseBuilder, Properties properties,
+                                                  Map environment, Run<?, ?> build) {
         addPropertyIfDefined(properties, LiquibaseProperty.CHANGELOG_FILE, liquibaseBuilder.getChangeLogFile(),
                 environment, build);
 
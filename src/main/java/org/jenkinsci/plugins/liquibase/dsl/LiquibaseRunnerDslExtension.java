@@ -18,6 +18,7 @@ public class LiquibaseRunnerDslExtension extends ContextExtensionPoint {
         UpdateBuilder builder = new UpdateBuilder();
         LiquibaseContext context = composeContext(closure);
         setCommonBuilderProperties(builder, context);
+        builder.setTestRollbacks(context.isTestRollbacks());
 
         return builder;
     }
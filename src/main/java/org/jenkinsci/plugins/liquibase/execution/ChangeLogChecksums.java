@@ -0,0 +1,243 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the <code>DATABASECHANGELOG</code> rows, checksums included, that an update would record for a changelog,
+ * by parsing it with the installation's Liquibase on the build's node.  Nothing is run against a database.
+ * <p>
+ * Changesets outside the configured contexts and labels, and those marked <code>ignore</code>, are left out as an
+ * update leaves them out.  Only the database can tell whether changesets limited to some <code>dbms</code> or guarded
+ * by preconditions apply to it, so those are marked {@link ChangeLogReader.Row#isConditional() conditional}.
+ * <p>
+ * Liquibase is called reflectively in a worker's class loader, so this works with the 3.x and 4.x releases alike.
+ */
+public class ChangeLogChecksums {
+
+    private ChangeLogChecksums() {
+    }
+
+    /**
+     * @param changeLogFile       changelog path, absolute or relative to <code>workspace</code>.
+     * @param resourceDirectories comma separated directories, absolute or relative to <code>workspace</code>.
+     * @param contexts            contexts to run, or null for all.
+     * @param labels              label expression, or null for all.
+     * @return the rows, in changelog order.
+     */
+    public static List<ChangeLogReader.Row> compute(FilePath workspace, LiquibaseInstallation installation,
+                                                    String changeLogFile, String resourceDirectories,
+                                                    String contexts, String labels)
+            throws IOException, InterruptedException {
+        List<String> directories = new ArrayList<>();
+        if (!Strings.isNullOrEmpty(resourceDirectories)) {
+            for (String directory : Splitter.on(",").trimResults().omitEmptyStrings().split(resourceDirectories)) {
+                directories.add(directory);
+            }
+        }
+        return workspace.act(new ChecksumCallable(installation.getHome(), installation.getWorkerPoolSize(),
+                TimeUnit.MINUTES.toMillis(installation.getWorkerIdleMinutes()), changeLogFile, directories,
+                Strings.emptyToNull(contexts), Strings.emptyToNull(labels)));
+    }
+
+    static List<ChangeLogReader.Row> parse(ClassLoader classLoader, File workspace, List<File> resourceDirectories,
+                                           String changeLogFile, String contexts, String labels)
+            throws IOException, ReflectiveOperationException {
+        List<URL> urls = new ArrayList<>();
+        for (File directory : resourceDirectories) {
+            urls.add(directory.toURI().toURL());
+        }
+        try (URLClassLoader resourceLoader = new URLClassLoader(urls.toArray(new URL[0]), classLoader)) {
+            Class<?> accessorType = classLoader.loadClass("liquibase.resource.ResourceAccessor");
+            Object resourceAccessor =
+                    createResourceAccessor(classLoader, accessorType, workspace, resourceDirectories, resourceLoader);
+
+            Class<?> factoryType = classLoader.loadClass("liquibase.parser.ChangeLogParserFactory");
+            Object factory = factoryType.getMethod("getInstance").invoke(null);
+            Object parser = factoryType.getMethod("getParser", String.class, accessorType)
+                    .invoke(factory, changeLogFile, resourceAccessor);
+            Class<?> parametersType = classLoader.loadClass("liquibase.changelog.ChangeLogParameters");
+            Object changeLog = classLoader.loadClass("liquibase.parser.ChangeLogParser")
+                    .getMethod("parse", String.class, parametersType, accessorType)
+                    .invoke(parser, changeLogFile, parametersType.getConstructor().newInstance(), resourceAccessor);
+
+            Class<?> changeSetType = classLoader.loadClass("liquibase.changelog.ChangeSet");
+            Class<?> filterType = classLoader.loadClass("liquibase.changelog.filter.ChangeSetFilter");
+            Class<?> contextsType = classLoader.loadClass("liquibase.Contexts");
+            Class<?> labelsType = classLoader.loadClass("liquibase.LabelExpression");
+            List<Object> filters = new ArrayList<>();
+            filters.add(classLoader.loadClass("liquibase.changelog.filter.ContextChangeSetFilter")
+                    .getConstructor(contextsType)
+                    .newInstance(contextsType.getConstructor(String.class).newInstance(contexts)));
+            filters.add(classLoader.loadClass("liquibase.changelog.filter.LabelChangeSetFilter")
+                    .getConstructor(labelsType)
+                    .newInstance(labelsType.getConstructor(String.class).newInstance(labels)));
+            Method accepts = filterType.getMethod("accepts", changeSetType);
+            Method ignored = findMethod(changeSetType, "isIgnore");
+
+            boolean guardedChangeLog = hasPreconditions(changeLog);
+            List<ChangeLogReader.Row> rows = new ArrayList<>();
+            for (Object changeSet : (Collection<?>) changeLog.getClass().getMethod("getChangeSets").invoke(changeLog)) {
+                if (!isAccepted(changeSet, filters, accepts)
+                        || (ignored != null && Boolean.TRUE.equals(ignored.invoke(changeSet)))) {
+                    continue;
+                }
+                rows.add(new ChangeLogReader.Row(
+                        (String) changeSetType.getMethod("getFilePath").invoke(changeSet),
+                        (String) changeSetType.getMethod("getId").invoke(changeSet),
+                        (String) changeSetType.getMethod("getAuthor").invoke(changeSet),
+                        checksumOf(changeSet),
+                        guardedChangeLog || isLimitedToDbms(changeSet) || hasPreconditions(changeSet)));
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * The workspace and resource directories on the file system, and the resource directories and Liquibase's own
+     * jars as a class path, as the command line resolves changelogs run from the workspace.
+     */
+    private static Object createResourceAccessor(ClassLoader classLoader, Class<?> accessorType, File workspace,
+                                                 List<File> resourceDirectories, ClassLoader resourceLoader)
+            throws ReflectiveOperationException {
+        Class<?> fileSystemType = classLoader.loadClass("liquibase.resource.FileSystemResourceAccessor");
+        Object fileSystem;
+        try {
+            List<File> roots = new ArrayList<>();
+            roots.add(workspace);
+            roots.addAll(resourceDirectories);
+            fileSystem = fileSystemType.getConstructor(File[].class).newInstance((Object) roots.toArray(new File[0]));
+        } catch (NoSuchMethodException e) {
+            // Liquibase 3 resolves relative paths against a single base directory
+            fileSystem = fileSystemType.getConstructor(String.class).newInstance(workspace.getAbsolutePath());
+        }
+        Object classPath = classLoader.loadClass("liquibase.resource.ClassLoaderResourceAccessor")
+                .getConstructor(ClassLoader.class).newInstance(resourceLoader);
+        Object accessors = Array.newInstance(accessorType, 2);
+        Array.set(accessors, 0, fileSystem);
+        Array.set(accessors, 1, classPath);
+        return classLoader.loadClass("liquibase.resource.CompositeResourceAccessor")
+                .getConstructor(accessors.getClass()).newInstance(accessors);
+    }
+
+    private static boolean isAccepted(Object changeSet, List<Object> filters, Method accepts)
+            throws ReflectiveOperationException {
+        for (Object filter : filters) {
+            Object result = accepts.invoke(filter, changeSet);
+            if (!Boolean.TRUE.equals(result.getClass().getMethod("isAccepted").invoke(result))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The checksum as Liquibase writes it to <code>MD5SUM</code>, or null if this release can't compute one without
+     * being told the checksum version.
+     */
+    private static String checksumOf(Object changeSet) throws ReflectiveOperationException {
+        Method generateCheckSum = findMethod(changeSet.getClass(), "generateCheckSum");
+        if (generateCheckSum == null) {
+            return null;
+        }
+        Object checksum = generateCheckSum.invoke(changeSet);
+        return checksum == null ? null : checksum.toString();
+    }
+
+    private static boolean isLimitedToDbms(Object changeSet) throws ReflectiveOperationException {
+        Collection<?> dbms = (Collection<?>) changeSet.getClass().getMethod("getDbmsSet").invoke(changeSet);
+        return dbms != null && !dbms.isEmpty() && !(dbms.size() == 1 && dbms.contains("all"));
+    }
+
+    /**
+     * Whether a changeset or changelog has preconditions, which decide at update time whether it runs.
+     */
+    private static boolean hasPreconditions(Object changeSetOrLog) throws ReflectiveOperationException {
+        Object preconditions = changeSetOrLog.getClass().getMethod("getPreconditions").invoke(changeSetOrLog);
+        if (preconditions == null) {
+            return false;
+        }
+        Collection<?> nested =
+                (Collection<?>) preconditions.getClass().getMethod("getNestedPreconditions").invoke(preconditions);
+        return nested != null && !nested.isEmpty();
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static class ChecksumCallable extends MasterToSlaveFileCallable<List<ChangeLogReader.Row>> {
+        private static final long serialVersionUID = 1;
+
+        private final String liquibaseHome;
+        private final int workerPoolSize;
+        private final long workerIdleMillis;
+        private final String changeLogFile;
+        private final List<String> resourceDirectories;
+        private final String contexts;
+        private final String labels;
+
+        ChecksumCallable(String liquibaseHome, int workerPoolSize, long workerIdleMillis, String changeLogFile,
+                         List<String> resourceDirectories, String contexts, String labels) {
+            this.liquibaseHome = liquibaseHome;
+            this.workerPoolSize = workerPoolSize;
+            this.workerIdleMillis = workerIdleMillis;
+            this.changeLogFile = changeLogFile;
+            this.resourceDirectories = resourceDirectories;
+            this.contexts = contexts;
+            this.labels = labels;
+        }
+
+        @Override
+        public List<ChangeLogReader.Row> invoke(File workspace, VirtualChannel channel) throws IOException {
+            List<File> directories = new ArrayList<>();
+            for (String directory : resourceDirectories) {
+                File file = new File(directory);
+                directories.add(file.isAbsolute() ? file : new File(workspace, directory));
+            }
+            LiquibaseWorkerPool pool =
+                    LiquibaseWorkerPool.forHome(new File(liquibaseHome), workerPoolSize, workerIdleMillis);
+            LiquibaseWorkerPool.Worker worker;
+            try {
+                worker = pool.lease();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a Liquibase worker", e);
+            }
+            Thread thread = Thread.currentThread();
+            ClassLoader previous = thread.getContextClassLoader();
+            thread.setContextClassLoader(worker.getClassLoader());
+            try {
+                return parse(worker.getClassLoader(), workspace, directories, changeLogFile, contexts, labels);
+            } catch (InvocationTargetException e) {
+                throw new IOException("Unable to parse " + changeLogFile + ": " + e.getCause().getMessage(),
+                        e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new IOException("This Liquibase installation's changelog parser couldn't be used: " + e, e);
+            } finally {
+                thread.setContextClassLoader(previous);
+                pool.release(worker);
+            }
+        }
+    }
+}
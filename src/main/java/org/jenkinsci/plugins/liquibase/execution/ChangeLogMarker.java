@@ -0,0 +1,128 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import com.google.common.base.Strings;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveCallable;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a cheap summary of a database's <code>DATABASECHANGELOG</code> table: the number of rows and the highest
+ * execution order.  Any update, rollback or manual change to the history alters it, so an unchanged marker together
+ * with an unchanged changelog means an update would have nothing to do.
+ * <p>
+ * The query runs on the build's node using the JDBC drivers of the installation, loaded by a worker from the node's
+ * {@link LiquibaseWorkerPool}.
+ */
+public class ChangeLogMarker {
+
+    public static final String DEFAULT_TABLE_NAME = "DATABASECHANGELOG";
+
+    private ChangeLogMarker() {
+    }
+
+    /**
+     * @param schemaName optional schema holding the changelog table.
+     * @param tableName  changelog table name, {@link #DEFAULT_TABLE_NAME} if null.
+     * @return the marker, or null when the table doesn't exist yet.
+     */
+    public static String read(FilePath workspace, LiquibaseInstallation installation, String url, String username,
+                              String password, String schemaName, String tableName)
+            throws IOException, InterruptedException {
+        VirtualChannel channel = workspace.getChannel();
+        if (channel == null) {
+            throw new IOException(workspace + " is not connected");
+        }
+        String qualifiedTable = Strings.isNullOrEmpty(tableName) ? DEFAULT_TABLE_NAME : tableName;
+        if (!Strings.isNullOrEmpty(schemaName)) {
+            qualifiedTable = schemaName + "." + qualifiedTable;
+        }
+        return channel.call(new ReadCallable(installation.getHome(), installation.getWorkerPoolSize(),
+                TimeUnit.MINUTES.toMillis(installation.getWorkerIdleMinutes()), url, username, password,
+                qualifiedTable));
+    }
+
+    static String query(Connection connection, String qualifiedTable) {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT COUNT(*), MAX(ORDEREXECUTED) FROM " + qualifiedTable)) {
+            if (!resultSet.next()) {
+                return null;
+            }
+            return resultSet.getLong(1) + ":" + resultSet.getLong(2);
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    static Connection connect(ClassLoader classLoader, String url, String username, String password)
+            throws SQLException {
+        Properties info = new Properties();
+        if (username != null) {
+            info.setProperty("user", username);
+        }
+        if (password != null) {
+            info.setProperty("password", password);
+        }
+        for (Driver driver : ServiceLoader.load(Driver.class, classLoader)) {
+            if (driver.acceptsURL(url)) {
+                return driver.connect(url, info);
+            }
+        }
+        throw new SQLException("No JDBC driver in the Liquibase installation accepts " + url);
+    }
+
+    private static class ReadCallable extends MasterToSlaveCallable<String, IOException> {
+        private static final long serialVersionUID = 1;
+
+        private final String liquibaseHome;
+        private final int workerPoolSize;
+        private final long workerIdleMillis;
+        private final String url;
+        private final String username;
+        private final String password;
+        private final String qualifiedTable;
+
+        ReadCallable(String liquibaseHome, int workerPoolSize, long workerIdleMillis, String url, String username,
+                     String password, String qualifiedTable) {
+            this.liquibaseHome = liquibaseHome;
+            this.workerPoolSize = workerPoolSize;
+            this.workerIdleMillis = workerIdleMillis;
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            this.qualifiedTable = qualifiedTable;
+        }
+
+        @Override
+        public String call() throws IOException {
+            LiquibaseWorkerPool pool =
+                    LiquibaseWorkerPool.forHome(new File(liquibaseHome), workerPoolSize, workerIdleMillis);
+            LiquibaseWorkerPool.Worker worker;
+            try {
+                worker = pool.lease();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a Liquibase worker", e);
+            }
+            try (Connection connection = connect(worker.getClassLoader(), url, username, password)) {
+                return query(connection, qualifiedTable);
+            } catch (SQLException e) {
+                throw new IOException("Unable to read " + qualifiedTable + " from " + url, e);
+            } finally {
+                pool.release(worker);
+            }
+        }
+    }
+}
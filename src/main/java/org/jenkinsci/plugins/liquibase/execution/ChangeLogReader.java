@@ -0,0 +1,230 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import com.google.common.base.Strings;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.security.MasterToSlaveCallable;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the changesets recorded in the <code>DATABASECHANGELOG</code> tables of many databases at once.
+ * <p>
+ * All databases are read in one call to the build's node, which takes a single worker from the node's
+ * {@link LiquibaseWorkerPool} for its JDBC drivers and queries up to <code>parallelism</code> databases
+ * concurrently, so reading dozens of databases costs one round trip and the slowest few queries.
+ */
+public class ChangeLogReader {
+
+    static final int QUERY_TIMEOUT_SECONDS = 60;
+
+    private ChangeLogReader() {
+    }
+
+    /**
+     * @return one result per source, in the same order.
+     */
+    public static List<Result> read(FilePath workspace, LiquibaseInstallation installation, List<Source> sources,
+                                    int parallelism) throws IOException, InterruptedException {
+        VirtualChannel channel = workspace.getChannel();
+        if (channel == null) {
+            throw new IOException(workspace + " is not connected");
+        }
+        return channel.call(new ReadCallable(installation.getHome(), installation.getWorkerPoolSize(),
+                TimeUnit.MINUTES.toMillis(installation.getWorkerIdleMinutes()), sources, parallelism));
+    }
+
+    static List<Row> query(Connection connection, String qualifiedTable) throws SQLException {
+        List<Row> rows = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT FILENAME, ID, AUTHOR, MD5SUM FROM " + qualifiedTable + " ORDER BY ORDEREXECUTED")) {
+                while (resultSet.next()) {
+                    rows.add(new Row(resultSet.getString(1), resultSet.getString(2), resultSet.getString(3),
+                            resultSet.getString(4)));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * A database to read, with the credentials to connect with.
+     */
+    public static class Source implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String url;
+        private final String username;
+        private final String password;
+        private final String qualifiedTable;
+
+        /**
+         * @param schemaName optional schema holding the changelog table.
+         * @param tableName  changelog table name, {@link ChangeLogMarker#DEFAULT_TABLE_NAME} if null.
+         */
+        public Source(String url, String username, String password, String schemaName, String tableName) {
+            this.url = url;
+            this.username = username;
+            this.password = password;
+            String table = Strings.isNullOrEmpty(tableName) ? ChangeLogMarker.DEFAULT_TABLE_NAME : tableName;
+            this.qualifiedTable = Strings.isNullOrEmpty(schemaName) ? table : schemaName + "." + table;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+    }
+
+    /**
+     * One <code>DATABASECHANGELOG</code> row.
+     */
+    public static class Row implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String file;
+        private final String id;
+        private final String author;
+        private final String checksum;
+        private final boolean conditional;
+
+        public Row(String file, String id, String author, String checksum) {
+            this(file, id, author, checksum, false);
+        }
+
+        /**
+         * @param conditional whether an update might skip the changeset, e.g. because of its <code>dbms</code> or
+         *                    preconditions.
+         */
+        public Row(String file, String id, String author, String checksum, boolean conditional) {
+            this.file = file;
+            this.id = id;
+            this.author = author;
+            this.checksum = checksum;
+            this.conditional = conditional;
+        }
+
+        public String getKey() {
+            return file + "::" + id + "::" + author;
+        }
+
+        /**
+         * Liquibase's <code>MD5SUM</code>, e.g. <code>7:0a1b...</code>; null when checksums have been cleared.
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public boolean isConditional() {
+            return conditional;
+        }
+    }
+
+    /**
+     * The rows read from one database, or why they couldn't be.
+     */
+    public static class Result implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final List<Row> rows;
+        private final String error;
+
+        Result(List<Row> rows, String error) {
+            this.rows = rows;
+            this.error = error;
+        }
+
+        /**
+         * @return the rows, oldest first, or null if the database couldn't be read.
+         */
+        public List<Row> getRows() {
+            return rows;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    private static class ReadCallable extends MasterToSlaveCallable<List<Result>, IOException> {
+        private static final long serialVersionUID = 1;
+
+        private final String liquibaseHome;
+        private final int workerPoolSize;
+        private final long workerIdleMillis;
+        private final List<Source> sources;
+        private final int parallelism;
+
+        ReadCallable(String liquibaseHome, int workerPoolSize, long workerIdleMillis, List<Source> sources,
+                     int parallelism) {
+            this.liquibaseHome = liquibaseHome;
+            this.workerPoolSize = workerPoolSize;
+            this.workerIdleMillis = workerIdleMillis;
+            this.sources = new ArrayList<>(sources);
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public List<Result> call() throws IOException {
+            LiquibaseWorkerPool pool =
+                    LiquibaseWorkerPool.forHome(new File(liquibaseHome), workerPoolSize, workerIdleMillis);
+            LiquibaseWorkerPool.Worker worker;
+            try {
+                worker = pool.lease();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a Liquibase worker", e);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism,
+                    sources.size())));
+            try {
+                final ClassLoader classLoader = worker.getClassLoader();
+                List<Future<Result>> futures = new ArrayList<>();
+                for (final Source source : sources) {
+                    futures.add(executor.submit(new Callable<Result>() {
+                        @Override
+                        public Result call() {
+                            try (Connection connection = ChangeLogMarker.connect(classLoader, source.url,
+                                    source.username, source.password)) {
+                                return new Result(query(connection, source.qualifiedTable), null);
+                            } catch (SQLException | RuntimeException e) {
+                                return new Result(null, String.valueOf(e.getMessage()));
+                            }
+                        }
+                    }));
+                }
+                List<Result> results = new ArrayList<>();
+                for (Future<Result> future : futures) {
+                    try {
+                        results.add(future.get());
+                    } catch (ExecutionException e) {
+                        results.add(new Result(null, String.valueOf(e.getCause())));
+                    }
+                }
+                return results;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while reading changelog tables", e);
+            } finally {
+                executor.shutdownNow();
+                pool.release(worker);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import hudson.util.ProcessTree;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Liquibase process started on a node with its output and exit status written to a control directory, so that
+ * whoever started it can follow it by polling, and pick up again after a controller restart, instead of holding a
+ * thread on a pipe for the life of the process.
+ * <p>
+ * The process is only tracked by the node's JVM: if the agent itself restarts, the process is reported as lost.
+ * Like {@link hudson.Launcher}, each process is started with a cookie in its environment, so that killing it also
+ * kills the processes it started, such as the JVM the <code>liquibase</code> script runs.
+ */
+public class DetachedProcess {
+
+    static final String OUTPUT_FILE = "output.log";
+    static final String EXIT_STATUS_FILE = "exit-status";
+    static final String COOKIE_VARIABLE = "LIQUIBASE_RUNNER_COOKIE";
+    static final long KILL_TIMEOUT_SECONDS = 10;
+
+    private static final ConcurrentMap<String, Process> RUNNING = new ConcurrentHashMap<>();
+
+    private DetachedProcess() {
+    }
+
+    public static void launch(FilePath controlDirectory, FilePath workingDirectory, List<String> command,
+                              Map<String, String> environment) throws IOException, InterruptedException {
+        controlDirectory.act(new LaunchCallable(workingDirectory.getRemote(), new ArrayList<>(command),
+                new HashMap<>(environment)));
+    }
+
+    /**
+     * Returns up to <code>maxBytes</code> of output from <code>offset</code>, and the exit status once the process
+     * has finished.
+     */
+    public static Status poll(FilePath controlDirectory, long offset, int maxBytes)
+            throws IOException, InterruptedException {
+        return controlDirectory.act(new PollCallable(offset, maxBytes));
+    }
+
+    /**
+     * Kills the process and every process started from it.
+     *
+     * @return whether they are confirmed gone; if not, they may still be running and it's worth trying again.
+     */
+    public static boolean kill(FilePath controlDirectory) throws IOException, InterruptedException {
+        return controlDirectory.act(new KillCallable());
+    }
+
+    private static Map<String, String> cookieFor(File controlDirectory) {
+        return Collections.singletonMap(COOKIE_VARIABLE, controlDirectory.getName());
+    }
+
+    /**
+     * What has happened to a detached process since the last poll.
+     */
+    public static class Status implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final byte[] output;
+        private final Integer exitStatus;
+        private final boolean tracked;
+
+        Status(byte[] output, Integer exitStatus, boolean tracked) {
+            this.output = output;
+            this.exitStatus = exitStatus;
+            this.tracked = tracked;
+        }
+
+        public byte[] getOutput() {
+            return output;
+        }
+
+        /**
+         * @return the exit status, or null while the process is still running.
+         */
+        public Integer getExitStatus() {
+            return exitStatus;
+        }
+
+        /**
+         * @return false if the process neither finished nor is known to the node, i.e. it was lost with the agent.
+         */
+        public boolean isTracked() {
+            return tracked;
+        }
+    }
+
+    private static class LaunchCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+
+        private final String workingDirectory;
+        private final List<String> command;
+        private final Map<String, String> environment;
+
+        LaunchCallable(String workingDirectory, List<String> command, Map<String, String> environment) {
+            this.workingDirectory = workingDirectory;
+            this.command = command;
+            this.environment = environment;
+        }
+
+        @Override
+        public Void invoke(final File controlDirectory, VirtualChannel channel) throws IOException {
+            FileUtils.forceMkdir(controlDirectory);
+            ProcessBuilder processBuilder = new ProcessBuilder(command)
+                    .directory(new File(workingDirectory))
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(controlDirectory, OUTPUT_FILE));
+            processBuilder.environment().putAll(environment);
+            processBuilder.environment().putAll(cookieFor(controlDirectory));
+            final Process process = processBuilder.start();
+            final String key = controlDirectory.getAbsolutePath();
+            RUNNING.put(key, process);
+
+            Thread watcher = new Thread("Liquibase process watcher for " + controlDirectory) {
+                @Override
+                public void run() {
+                    try {
+                        writeExitStatus(controlDirectory, process.waitFor());
+                    } catch (InterruptedException | IOException e) {
+                        process.destroy();
+                    } finally {
+                        RUNNING.remove(key);
+                    }
+                }
+            };
+            watcher.setDaemon(true);
+            watcher.start();
+            return null;
+        }
+
+        private static void writeExitStatus(File controlDirectory, int exitStatus) throws IOException {
+            File update = new File(controlDirectory, EXIT_STATUS_FILE + ".tmp");
+            FileUtils.write(update, String.valueOf(exitStatus), StandardCharsets.UTF_8);
+            Files.move(update.toPath(), new File(controlDirectory, EXIT_STATUS_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static class PollCallable extends MasterToSlaveFileCallable<Status> {
+        private static final long serialVersionUID = 1;
+
+        private final long offset;
+        private final int maxBytes;
+
+        PollCallable(long offset, int maxBytes) {
+            this.offset = offset;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public Status invoke(File controlDirectory, VirtualChannel channel) throws IOException {
+            // read the exit status first: once it exists, all output has been written
+            File exitStatusFile = new File(controlDirectory, EXIT_STATUS_FILE);
+            Integer exitStatus = exitStatusFile.exists()
+                    ? Integer.valueOf(FileUtils.readFileToString(exitStatusFile, StandardCharsets.UTF_8).trim())
+                    : null;
+            boolean tracked = exitStatus != null || RUNNING.containsKey(controlDirectory.getAbsolutePath());
+
+            byte[] output = new byte[0];
+            File outputFile = new File(controlDirectory, OUTPUT_FILE);
+            if (outputFile.exists() && outputFile.length() > offset) {
+                try (RandomAccessFile file = new RandomAccessFile(outputFile, "r")) {
+                    output = new byte[(int) Math.min(maxBytes, file.length() - offset)];
+                    file.seek(offset);
+                    file.readFully(output);
+                }
+            }
+            return new Status(output, exitStatus, tracked);
+        }
+    }
+
+    private static class KillCallable extends MasterToSlaveFileCallable<Boolean> {
+        private static final long serialVersionUID = 1;
+
+        @Override
+        public Boolean invoke(File controlDirectory, VirtualChannel channel) throws InterruptedException {
+            Map<String, String> cookie = cookieFor(controlDirectory);
+            Process process = RUNNING.get(controlDirectory.getAbsolutePath());
+            if (process != null) {
+                ProcessTree.get().killAll(process, cookie);
+                if (!process.waitFor(KILL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    return false;
+                }
+            } else {
+                ProcessTree.get().killAll(cookie);
+            }
+            for (ProcessTree.OSProcess remaining : ProcessTree.get()) {
+                if (remaining.hasMatchingEnvVars(cookie)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
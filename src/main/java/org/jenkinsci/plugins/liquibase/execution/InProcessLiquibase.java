@@ -0,0 +1,504 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.ArgumentListBuilder;
+import jenkins.security.MasterToSlaveCallable;
+import org.jenkinsci.plugins.liquibase.exception.LiquibaseRuntimeException;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs Liquibase's command line entry point inside the JVM of the node performing the build, rather than forking the
+ * <code>liquibase</code> script.
+ * <p>
+ * Runs are handed to the node's {@link LiquibaseWorkerPool} for the installation, so class loading, service scanning
+ * and driver registration are paid once per worker rather than once per step.
+ * <p>
+ * Aborting the build doesn't just abandon a run: the thread running Liquibase on the node is interrupted and the
+ * caller waits up to {@link #STOP_GRACE_MILLIS} for it to end, so whatever database lock the caller holds is kept
+ * until Liquibase is done.  A run that ignores the interruption is left to finish on its own and the step fails; its
+ * worker, like that of any cancelled run, is discarded rather than reused.
+ */
+public class InProcessLiquibase {
+
+    static final String MAIN_CLASS = "liquibase.integration.commandline.Main";
+    static final long STOP_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final ConcurrentMap<String, ActiveRun> RUNNING = new ConcurrentHashMap<>();
+
+    private InProcessLiquibase() {
+    }
+
+    /**
+     * Executes <code>cliCommand</code> (whose first element is the path of the liquibase script, which is ignored) on
+     * the node <code>workspace</code> belongs to.
+     *
+     * @return the exit status the command line would have produced.
+     */
+    public static int run(FilePath workspace, LiquibaseInstallation installation, ArgumentListBuilder cliCommand,
+                          TaskListener listener) throws IOException, InterruptedException {
+        listener.getLogger().println("$ (in-process) " + toMaskedString(cliCommand));
+        List<String> arguments = cliCommand.toList();
+        String[] liquibaseArguments = arguments.subList(1, arguments.size()).toArray(new String[0]);
+        VirtualChannel channel = workspace.getChannel();
+        if (channel == null) {
+            throw new IOException("Unable to run Liquibase in-process; " + workspace + " is not connected");
+        }
+        String runId = UUID.randomUUID().toString();
+        return callCancellable(channel, runId, new RunCallable(runId, installation.getHome(),
+                installation.getWorkerPoolSize(), TimeUnit.MINUTES.toMillis(installation.getWorkerIdleMinutes()),
+                liquibaseArguments, listener), listener);
+    }
+
+    /**
+     * Executes several commands, in order, on a single worker leased for the whole batch, stopping at the first one
+     * that fails.
+     *
+     * @return an outcome for each command that ran.
+     */
+    public static List<CommandOutcome> runAll(FilePath workspace, LiquibaseInstallation installation,
+                                              List<ArgumentListBuilder> cliCommands, TaskListener listener)
+            throws IOException, InterruptedException {
+        List<String[]> commands = new ArrayList<>();
+        List<String> displayCommands = new ArrayList<>();
+        for (ArgumentListBuilder cliCommand : cliCommands) {
+            List<String> arguments = cliCommand.toList();
+            commands.add(arguments.subList(1, arguments.size()).toArray(new String[0]));
+            displayCommands.add(toMaskedString(cliCommand));
+        }
+        VirtualChannel channel = workspace.getChannel();
+        if (channel == null) {
+            throw new IOException("Unable to run Liquibase in-process; " + workspace + " is not connected");
+        }
+        String runId = UUID.randomUUID().toString();
+        return callCancellable(channel, runId, new RunAllCallable(runId, installation.getHome(),
+                installation.getWorkerPoolSize(), TimeUnit.MINUTES.toMillis(installation.getWorkerIdleMinutes()),
+                commands, displayCommands, listener), listener);
+    }
+
+    /**
+     * Waits for <code>callable</code>, cancelling the run on the node if the calling thread is interrupted and
+     * waiting for that to take effect before rethrowing the interruption.  If the run doesn't end in time its worker
+     * is discarded and the step fails.
+     */
+    private static <T> T callCancellable(VirtualChannel channel, String runId,
+                                         MasterToSlaveCallable<T, IOException> callable, TaskListener listener)
+            throws IOException, InterruptedException {
+        Future<T> future = channel.callAsync(callable);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            listener.getLogger().println("Aborting in-process Liquibase run...");
+            channel.call(new CancelCallable(runId));
+            if (!awaitUninterruptibly(future, STOP_GRACE_MILLIS)) {
+                channel.call(new DiscardCallable(runId));
+                throw new AbortException("Liquibase did not stop within " +
+                        TimeUnit.MILLISECONDS.toSeconds(STOP_GRACE_MILLIS) + "s of being interrupted; its worker " +
+                        "has been discarded, but it may still be using the database until it ends.");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether the future completed, in whatever way, within <code>timeoutMillis</code>.
+     */
+    private static boolean awaitUninterruptibly(Future<?> future, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    return true;
+                } catch (ExecutionException e) {
+                    return true;
+                } catch (TimeoutException e) {
+                    return false;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Registers the calling thread as running <code>runId</code>, so that it can be cancelled.
+     */
+    private static ActiveRun track(String runId, LiquibaseWorkerPool pool) {
+        ActiveRun run = new ActiveRun(Thread.currentThread(), pool);
+        RUNNING.put(runId, run);
+        return run;
+    }
+
+    /**
+     * Unregisters <code>runId</code> and returns its worker, if it got one, to the pool, or discards it if the run
+     * was cancelled.
+     */
+    private static void untrack(String runId, ActiveRun run) {
+        RUNNING.remove(runId, run);
+        if (run.isCancelled()) {
+            Thread.interrupted();
+        }
+        run.finish();
+    }
+
+    static String toMaskedString(ArgumentListBuilder cliCommand) {
+        List<String> arguments = cliCommand.toList();
+        boolean[] mask = cliCommand.toMaskArray();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i < arguments.size(); i++) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(mask[i] ? "********" : arguments.get(i));
+        }
+        return sb.toString();
+    }
+
+    static List<File> findJars(File liquibaseHome) throws IOException {
+        List<File> jars = new ArrayList<>();
+        File liquibaseJar = new File(liquibaseHome, "liquibase.jar");
+        if (liquibaseJar.exists()) {
+            jars.add(liquibaseJar);
+        }
+        addJars(jars, new File(liquibaseHome, "lib"));
+        addJars(jars, new File(liquibaseHome, "internal/lib"));
+        if (jars.isEmpty()) {
+            throw new IOException("No Liquibase jars found in " + liquibaseHome);
+        }
+        return jars;
+    }
+
+    private static void addJars(List<File> jars, File directory) {
+        File[] found = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(".jar");
+            }
+        });
+        if (found != null) {
+            Arrays.sort(found);
+            jars.addAll(Arrays.asList(found));
+        }
+    }
+
+    static String signatureOf(List<File> jars) {
+        StringBuilder sb = new StringBuilder();
+        for (File jar : jars) {
+            sb.append(jar.getAbsolutePath()).append(':').append(jar.length()).append(':')
+              .append(jar.lastModified()).append(';');
+        }
+        return sb.toString();
+    }
+
+    static URL[] toUrls(List<File> jars) throws MalformedURLException {
+        URL[] urls = new URL[jars.size()];
+        for (int i = 0; i < jars.size(); i++) {
+            urls[i] = jars.get(i).toURI().toURL();
+        }
+        return urls;
+    }
+
+    /**
+     * Invokes <code>Main.run</code> from the worker's class loader.  Liquibase writes to <code>System.out</code> and
+     * <code>System.err</code>, which are routed to <code>log</code> for the calling thread only.
+     */
+    static int invoke(ClassLoader classLoader, String[] arguments, PrintStream log) {
+        Thread thread = Thread.currentThread();
+        ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+        ThreadRoutingPrintStream.install();
+        try {
+            thread.setContextClassLoader(classLoader);
+            ThreadRoutingPrintStream.route(log);
+            Method run = Class.forName(MAIN_CLASS, true, classLoader).getMethod("run", String[].class);
+            Object exitStatus = run.invoke(null, (Object) arguments);
+            return exitStatus instanceof Integer ? (Integer) exitStatus : 0;
+        } catch (InvocationTargetException e) {
+            e.getCause().printStackTrace(log);
+            return 1;
+        } catch (ReflectiveOperationException e) {
+            throw new LiquibaseRuntimeException("Unable to invoke " + MAIN_CLASS + " in-process", e);
+        } finally {
+            ThreadRoutingPrintStream.clear();
+            thread.setContextClassLoader(originalContextClassLoader);
+            log.flush();
+        }
+    }
+
+    private static LiquibaseWorkerPool.Worker lease(LiquibaseWorkerPool pool) throws IOException {
+        try {
+            return pool.lease();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a Liquibase worker", e);
+        }
+    }
+
+    /**
+     * Exit status and duration of one command of a batch.
+     */
+    public static class CommandOutcome implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final int exitStatus;
+        private final long durationMillis;
+
+        public CommandOutcome(int exitStatus, long durationMillis) {
+            this.exitStatus = exitStatus;
+            this.durationMillis = durationMillis;
+        }
+
+        public int getExitStatus() {
+            return exitStatus;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+
+    /**
+     * A run in progress on this node: the thread running it and, once leased, its worker.
+     */
+    static class ActiveRun {
+        private final Thread thread;
+        private final LiquibaseWorkerPool pool;
+        private LiquibaseWorkerPool.Worker worker;
+        private boolean cancelled;
+        private boolean discarded;
+
+        ActiveRun(Thread thread, LiquibaseWorkerPool pool) {
+            this.thread = thread;
+            this.pool = pool;
+        }
+
+        /**
+         * Leases the run's worker, unless the run was given up while it waited for one.
+         */
+        LiquibaseWorkerPool.Worker lease() throws IOException {
+            LiquibaseWorkerPool.Worker leased = InProcessLiquibase.lease(pool);
+            synchronized (this) {
+                if (!discarded) {
+                    worker = leased;
+                    return leased;
+                }
+            }
+            pool.discard(leased);
+            throw new IOException("In-process Liquibase run was discarded");
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            thread.interrupt();
+        }
+
+        /**
+         * Gives up the run's worker while the run may still be using it, so that it is never leased again.
+         */
+        void discard() {
+            LiquibaseWorkerPool.Worker leased;
+            synchronized (this) {
+                cancelled = true;
+                if (discarded) {
+                    return;
+                }
+                discarded = true;
+                leased = worker;
+                worker = null;
+            }
+            if (leased != null) {
+                pool.discard(leased);
+            }
+        }
+
+        /**
+         * Returns the worker to the pool once the run has ended, or discards it if the run was cancelled.
+         */
+        void finish() {
+            LiquibaseWorkerPool.Worker leased;
+            boolean wasCancelled;
+            synchronized (this) {
+                leased = worker;
+                worker = null;
+                wasCancelled = cancelled;
+            }
+            if (leased == null) {
+                return;
+            }
+            if (wasCancelled) {
+                pool.discard(leased);
+            } else {
+                pool.release(leased);
+            }
+        }
+    }
+
+    /**
+     * Interrupts the thread running a run on this node.
+     */
+    private static class CancelCallable extends MasterToSlaveCallable<Void, RuntimeException> {
+        private static final long serialVersionUID = 1;
+
+        private final String runId;
+
+        CancelCallable(String runId) {
+            this.runId = runId;
+        }
+
+        @Override
+        public Void call() {
+            ActiveRun run = RUNNING.get(runId);
+            if (run != null) {
+                run.cancel();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Discards the worker of a cancelled run on this node that hasn't ended, leaving its thread to finish alone.
+     */
+    private static class DiscardCallable extends MasterToSlaveCallable<Void, RuntimeException> {
+        private static final long serialVersionUID = 1;
+
+        private final String runId;
+
+        DiscardCallable(String runId) {
+            this.runId = runId;
+        }
+
+        @Override
+        public Void call() {
+            ActiveRun run = RUNNING.remove(runId);
+            if (run != null) {
+                run.discard();
+            }
+            return null;
+        }
+    }
+
+    private static class RunCallable extends MasterToSlaveCallable<Integer, IOException> {
+        private static final long serialVersionUID = 1;
+
+        private final String runId;
+        private final String liquibaseHome;
+        private final int workerPoolSize;
+        private final long workerIdleMillis;
+        private final String[] arguments;
+        private final TaskListener listener;
+
+        RunCallable(String runId, String liquibaseHome, int workerPoolSize, long workerIdleMillis,
+                    String[] arguments, TaskListener listener) {
+            this.runId = runId;
+            this.liquibaseHome = liquibaseHome;
+            this.workerPoolSize = workerPoolSize;
+            this.workerIdleMillis = workerIdleMillis;
+            this.arguments = arguments;
+            this.listener = listener;
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            LiquibaseWorkerPool pool =
+                    LiquibaseWorkerPool.forHome(new File(liquibaseHome), workerPoolSize, workerIdleMillis);
+            ActiveRun run = track(runId, pool);
+            try {
+                LiquibaseWorkerPool.Worker worker = run.lease();
+                return invoke(worker.getClassLoader(), arguments, listener.getLogger());
+            } finally {
+                untrack(runId, run);
+            }
+        }
+    }
+
+    private static class RunAllCallable extends MasterToSlaveCallable<List<CommandOutcome>, IOException> {
+        private static final long serialVersionUID = 1;
+
+        private final String runId;
+        private final String liquibaseHome;
+        private final int workerPoolSize;
+        private final long workerIdleMillis;
+        private final List<String[]> commands;
+        private final List<String> displayCommands;
+        private final TaskListener listener;
+
+        RunAllCallable(String runId, String liquibaseHome, int workerPoolSize, long workerIdleMillis,
+                       List<String[]> commands, List<String> displayCommands, TaskListener listener) {
+            this.runId = runId;
+            this.liquibaseHome = liquibaseHome;
+            this.workerPoolSize = workerPoolSize;
+            this.workerIdleMillis = workerIdleMillis;
+            this.commands = commands;
+            this.displayCommands = displayCommands;
+            this.listener = listener;
+        }
+
+        @Override
+        public List<CommandOutcome> call() throws IOException {
+            LiquibaseWorkerPool pool =
+                    LiquibaseWorkerPool.forHome(new File(liquibaseHome), workerPoolSize, workerIdleMillis);
+            List<CommandOutcome> outcomes = new ArrayList<>();
+            ActiveRun run = track(runId, pool);
+            try {
+                LiquibaseWorkerPool.Worker worker = run.lease();
+                for (int i = 0; i < commands.size() && !run.isCancelled(); i++) {
+                    listener.getLogger().println("$ (in-process) " + displayCommands.get(i));
+                    long start = System.nanoTime();
+                    int exitStatus = invoke(worker.getClassLoader(), commands.get(i), listener.getLogger());
+                    outcomes.add(new CommandOutcome(exitStatus,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                    if (exitStatus != 0) {
+                        break;
+                    }
+                }
+                return outcomes;
+            } finally {
+                untrack(runId, run);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import jenkins.security.MasterToSlaveCallable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of warm Liquibase workers living in the JVM of a node, one pool per installation home.
+ * <p>
+ * A worker is an isolated class loader over the installation's jars.  Workers are created lazily, leased by one run
+ * at a time so that independent runs execute concurrently without sharing Liquibase's static state, and returned to
+ * the pool afterwards so JIT-compiled parsing code and loaded drivers carry over to the next step.  Workers idle for
+ * longer than the installation's idle timeout are closed.
+ */
+public class LiquibaseWorkerPool {
+    private static final Logger LOG = LoggerFactory.getLogger(LiquibaseWorkerPool.class);
+
+    private static final Map<String, LiquibaseWorkerPool> POOLS = new HashMap<>();
+    private static final long REAP_INTERVAL_SECONDS = 30;
+    private static ScheduledExecutorService reaper;
+
+    private final File liquibaseHome;
+    private final Deque<Worker> idle = new ArrayDeque<>();
+    private int maxWorkers;
+    private long idleTimeoutMillis;
+    private int leased;
+
+    LiquibaseWorkerPool(File liquibaseHome, int maxWorkers, long idleTimeoutMillis) {
+        this.liquibaseHome = liquibaseHome;
+        configure(maxWorkers, idleTimeoutMillis);
+    }
+
+    static LiquibaseWorkerPool forHome(File liquibaseHome, int maxWorkers, long idleTimeoutMillis) {
+        synchronized (POOLS) {
+            String key = liquibaseHome.getAbsolutePath();
+            LiquibaseWorkerPool pool = POOLS.get(key);
+            if (pool == null) {
+                pool = new LiquibaseWorkerPool(liquibaseHome, maxWorkers, idleTimeoutMillis);
+                POOLS.put(key, pool);
+                startReaper();
+            } else {
+                pool.configure(maxWorkers, idleTimeoutMillis);
+            }
+            return pool;
+        }
+    }
+
+    private synchronized void configure(int maxWorkers, long idleTimeoutMillis) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        notifyAll();
+    }
+
+    /**
+     * Leases a worker whose jars match the installation's current content, waiting while the pool is at capacity.
+     */
+    Worker lease() throws IOException, InterruptedException {
+        List<File> jars = InProcessLiquibase.findJars(liquibaseHome);
+        String signature = InProcessLiquibase.signatureOf(jars);
+        synchronized (this) {
+            while (true) {
+                Iterator<Worker> iterator = idle.iterator();
+                while (iterator.hasNext()) {
+                    Worker worker = iterator.next();
+                    iterator.remove();
+                    if (worker.signature.equals(signature)) {
+                        leased++;
+                        return worker;
+                    }
+                    worker.close();
+                }
+                if (leased < maxWorkers) {
+                    leased++;
+                    break;
+                }
+                wait();
+            }
+        }
+        try {
+            return new Worker(signature, InProcessLiquibase.toUrls(jars));
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                leased--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    synchronized void release(Worker worker) {
+        leased--;
+        worker.lastUsed = System.currentTimeMillis();
+        idle.addFirst(worker);
+        notifyAll();
+    }
+
+    /**
+     * Gives up a leased worker whose run was cancelled, since Liquibase's static state may have been left
+     * half-updated.
+     */
+    void discard(Worker worker) {
+        synchronized (this) {
+            leased--;
+            notifyAll();
+        }
+        worker.close();
+    }
+
+    synchronized int closeIdle(long now) {
+        int closed = 0;
+        Iterator<Worker> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            Worker worker = iterator.next();
+            if (now - worker.lastUsed >= idleTimeoutMillis) {
+                iterator.remove();
+                worker.close();
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Closes every idle worker in every pool on this JVM; leased workers are closed when they are next returned and
+     * found to be stale.
+     */
+    static void shutdownIdle() {
+        synchronized (POOLS) {
+            for (LiquibaseWorkerPool pool : POOLS.values()) {
+                pool.closeIdle(Long.MAX_VALUE);
+            }
+        }
+    }
+
+    private static void startReaper() {
+        if (reaper != null) {
+            return;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Liquibase worker pool reaper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                List<LiquibaseWorkerPool> pools;
+                synchronized (POOLS) {
+                    pools = new ArrayList<>(POOLS.values());
+                }
+                long now = System.currentTimeMillis();
+                for (LiquibaseWorkerPool pool : pools) {
+                    pool.closeIdle(now);
+                }
+            }
+        }, REAP_INTERVAL_SECONDS, REAP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    static class Worker {
+        private final String signature;
+        private final URLClassLoader classLoader;
+        private long lastUsed;
+
+        Worker(String signature, URL[] urls) {
+            this.signature = signature;
+            this.classLoader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        void close() {
+            try {
+                classLoader.close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close Liquibase worker class loader", e);
+            }
+        }
+    }
+
+    /**
+     * Shuts down idle workers on a node, e.g. after the installations have been reconfigured.
+     */
+    public static class ShutdownCallable extends MasterToSlaveCallable<Void, RuntimeException> {
+        private static final long serialVersionUID = 1;
+
+        @Override
+        public Void call() {
+            shutdownIdle();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Stands in for <code>System.out</code> and <code>System.err</code> so that concurrent in-process Liquibase runs
+ * each write to their own build log.  Threads without a target (and their children) write to the original stream.
+ */
+class ThreadRoutingPrintStream extends PrintStream {
+
+    private static final InheritableThreadLocal<PrintStream> TARGET = new InheritableThreadLocal<>();
+    private static boolean installed;
+
+    private final PrintStream fallback;
+
+    private ThreadRoutingPrintStream(final PrintStream fallback) {
+        super(new OutputStream() {
+            @Override
+            public void write(int b) {
+                current(fallback).write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                current(fallback).write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+                current(fallback).flush();
+            }
+        }, true);
+        this.fallback = fallback;
+    }
+
+    private static PrintStream current(PrintStream fallback) {
+        PrintStream target = TARGET.get();
+        return target == null ? fallback : target;
+    }
+
+    /**
+     * Replaces <code>System.out</code> and <code>System.err</code> with routing streams, once per JVM.
+     */
+    static synchronized void install() {
+        if (!installed) {
+            System.setOut(new ThreadRoutingPrintStream(System.out));
+            System.setErr(new ThreadRoutingPrintStream(System.err));
+            installed = true;
+        }
+    }
+
+    static void route(PrintStream target) {
+        TARGET.set(target);
+    }
+
+    static void clear() {
+        TARGET.remove();
+    }
+
+    @Override
+    public String toString() {
+        return "ThreadRoutingPrintStream[" + fallback + "]";
+    }
+}
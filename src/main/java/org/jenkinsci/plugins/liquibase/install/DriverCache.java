@@ -0,0 +1,409 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Node-level cache of JDBC driver jars shared by every Liquibase installation on that node.
+ * <p>
+ * Each jar is stored once under the SHA-256 digest of its content and linked into an installation's
+ * <code>lib</code> directory, so many installations on one agent download and store a driver only once.  A driver
+ * URL may carry a <code>#sha256=&lt;hex&gt;</code> fragment, in which case the downloaded content is verified
+ * against it.
+ * <p>
+ * Provisioning is safe for concurrent steps: within one JVM, steps needing the same URL share a single in-flight
+ * download, and across processes sharing the cache directory a file lock per URL serialises the work.  Downloads go
+ * to a temporary file and every file that appears in the cache or in <code>lib</code> does so by an atomic rename or
+ * link, so no step can load a partially written jar.
+ */
+public class DriverCache {
+
+    public static final String CACHE_DIRECTORY = "caches/liquibase-drivers";
+
+    static final String INDEX_FILENAME = "url-index.properties";
+    static final String LOCK_DIRECTORY = "locks";
+    static final String CHECKSUM_FRAGMENT = "sha256=";
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+
+    private static final ConcurrentMap<String, CompletableFuture<File>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Path, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final File root;
+
+    public DriverCache(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Makes every driver described by <code>databaseDriverUrl</code> available in the <code>lib</code> directory of
+     * the installation at <code>installationHome</code>.  Work happens on whichever node the paths belong to.
+     */
+    public static void provision(FilePath cacheRoot, FilePath installationHome, String databaseDriverUrl,
+                                 TaskListener listener) throws IOException, InterruptedException {
+        List<DriverSource> sources = parseDriverUrls(databaseDriverUrl);
+        if (!sources.isEmpty()) {
+            installationHome.act(new ProvisionCallable(cacheRoot.getRemote(), sources, listener));
+        }
+    }
+
+    public static List<DriverSource> parseDriverUrls(String databaseDriverUrl) {
+        List<DriverSource> sources = new ArrayList<>();
+        if (!Strings.isNullOrEmpty(databaseDriverUrl)) {
+            for (String url : Splitter.on(",").trimResults().omitEmptyStrings().split(databaseDriverUrl)) {
+                sources.add(DriverSource.parse(url));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Links each driver into <code>libDirectory</code>, downloading (in parallel) those not yet in the cache.
+     *
+     * @return the jars now present in <code>libDirectory</code>, in the order given.
+     */
+    public List<File> provision(List<DriverSource> sources, File libDirectory, PrintStream log)
+            throws IOException, InterruptedException {
+        Files.createDirectories(libDirectory.toPath());
+
+        Map<DriverSource, File> pending = new LinkedHashMap<>();
+        List<File> jars = new ArrayList<>();
+        for (DriverSource source : sources) {
+            File jar = new File(libDirectory, source.getFilename());
+            jars.add(jar);
+            if (!jar.exists()) {
+                pending.put(source, jar);
+            }
+        }
+        if (pending.isEmpty()) {
+            return jars;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(pending.size(), MAX_PARALLEL_DOWNLOADS));
+        try {
+            Map<DriverSource, Future<File>> blobs = new LinkedHashMap<>();
+            for (final DriverSource source : pending.keySet()) {
+                blobs.put(source, executor.submit(() -> resolve(source, log)));
+            }
+            for (Map.Entry<DriverSource, Future<File>> entry : blobs.entrySet()) {
+                link(getResult(entry.getValue()), pending.get(entry.getKey()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return jars;
+    }
+
+    /**
+     * Returns the cached blob for <code>source</code>, downloading it if the cache has not seen its URL before.  A
+     * caller arriving while the same URL is already being resolved for this cache waits for and shares that result.
+     */
+    File resolve(DriverSource source, PrintStream log) throws IOException, InterruptedException {
+        String key = root.getAbsolutePath() + '\u0000' + source.getUrl() + '\u0000' + source.getSha256();
+        CompletableFuture<File> inFlight = new CompletableFuture<>();
+        CompletableFuture<File> existing = IN_FLIGHT.putIfAbsent(key, inFlight);
+        if (existing != null) {
+            return getResult(existing);
+        }
+        try {
+            File blob = resolveLocked(source, log);
+            inFlight.complete(blob);
+            return blob;
+        } catch (IOException | RuntimeException e) {
+            inFlight.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(key, inFlight);
+        }
+    }
+
+    private File resolveLocked(final DriverSource source, final PrintStream log) throws IOException {
+        return underLock(lockFileFor(source.getUrl()), () -> {
+            File cached = findCached(source);
+            if (cached != null) {
+                return cached;
+            }
+            return download(source, log);
+        });
+    }
+
+    private File findCached(DriverSource source) throws IOException {
+        String digest = lookupDigest(source.getUrl());
+        if (digest == null || (source.getSha256() != null && !digest.equals(source.getSha256()))) {
+            return null;
+        }
+        File blob = blobFor(digest);
+        return blob.exists() ? blob : null;
+    }
+
+    private File download(DriverSource source, PrintStream log) throws IOException {
+        log.println("Downloading " + source.getUrl() + " to driver cache " + root);
+        File download = File.createTempFile("download", ".tmp", ensureRoot());
+        try {
+            String actualDigest = download(source.getUrl(), download);
+            if (source.getSha256() != null && !source.getSha256().equals(actualDigest)) {
+                throw new IOException("Checksum mismatch for " + source.getUrl() + ": expected " +
+                        source.getSha256() + " but was " + actualDigest);
+            }
+            File blob = blobFor(actualDigest);
+            if (!blob.exists()) {
+                moveAtomically(download.toPath(), blob.toPath());
+            }
+            recordDigest(source.getUrl(), actualDigest);
+            return blob;
+        } finally {
+            Files.deleteIfExists(download.toPath());
+        }
+    }
+
+    File blobFor(String digest) {
+        return new File(root, digest + ".jar");
+    }
+
+    private Path lockFileFor(String url) throws IOException {
+        File lockDirectory = new File(ensureRoot(), LOCK_DIRECTORY);
+        Files.createDirectories(lockDirectory.toPath());
+        return new File(lockDirectory, Hex.encodeHexString(newDigest().digest(url.getBytes(StandardCharsets.UTF_8)))
+                + ".lock").toPath();
+    }
+
+    private File ensureRoot() throws IOException {
+        Files.createDirectories(root.toPath());
+        return root;
+    }
+
+    private static String download(String url, File target) throws IOException {
+        MessageDigest messageDigest = newDigest();
+        try (InputStream in = new DigestInputStream(new URL(url).openStream(), messageDigest);
+             OutputStream out = new FileOutputStream(target)) {
+            IOUtils.copy(in, out);
+        }
+        return Hex.encodeHexString(messageDigest.digest());
+    }
+
+    /**
+     * Links <code>jar</code> to the cached blob, falling back to a symbolic link and finally a copy where the file
+     * system won't allow hard links (e.g. cache and installation on different volumes).  A copy is written beside
+     * <code>jar</code> and renamed into place.  If another step creates <code>jar</code> first, its file is kept.
+     */
+    static void link(File blob, File jar) throws IOException {
+        Path target = jar.toPath();
+        if (Files.exists(target)) {
+            return;
+        }
+        try {
+            Files.createLink(target, blob.toPath());
+        } catch (FileAlreadyExistsException e) {
+            // provisioned concurrently by another step
+        } catch (IOException | UnsupportedOperationException e) {
+            try {
+                Files.createSymbolicLink(target, blob.toPath());
+            } catch (FileAlreadyExistsException e2) {
+                // provisioned concurrently by another step
+            } catch (IOException | UnsupportedOperationException e2) {
+                copyAtomically(blob, jar);
+            }
+        }
+    }
+
+    private static void copyAtomically(File blob, File jar) throws IOException {
+        File copy = File.createTempFile(jar.getName(), ".tmp", jar.getParentFile());
+        try {
+            Files.copy(blob.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            if (!jar.exists()) {
+                moveAtomically(copy.toPath(), jar.toPath());
+            }
+        } finally {
+            Files.deleteIfExists(copy.toPath());
+        }
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private String lookupDigest(String url) throws IOException {
+        return loadIndex().getProperty(url);
+    }
+
+    /**
+     * Adds an entry to the index.  The index is shared by every URL, so it has its own lock, and it is rewritten via
+     * a temporary file so readers never see it half written.
+     */
+    private void recordDigest(final String url, final String digest) throws IOException {
+        underLock(new File(ensureRoot(), INDEX_FILENAME + ".lock").toPath(), () -> {
+            Properties index = loadIndex();
+            index.setProperty(url, digest);
+            File indexFile = new File(ensureRoot(), INDEX_FILENAME);
+            File update = File.createTempFile(INDEX_FILENAME, ".tmp", root);
+            try {
+                try (OutputStream out = new FileOutputStream(update)) {
+                    index.store(out, "JDBC driver URL to SHA-256 digest");
+                }
+                moveAtomically(update.toPath(), indexFile.toPath());
+            } finally {
+                Files.deleteIfExists(update.toPath());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs <code>action</code> holding both an in-JVM lock and an OS file lock on <code>lockFile</code>; the file
+     * lock alone can't be used by two threads of one JVM.
+     */
+    static <T> T underLock(Path lockFile, LockedAction<T> action) throws IOException {
+        ReentrantLock processLock = PROCESS_LOCKS.computeIfAbsent(lockFile.toAbsolutePath(), k -> new ReentrantLock());
+        processLock.lock();
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            return action.run();
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    private Properties loadIndex() throws IOException {
+        Properties index = new Properties();
+        File indexFile = new File(root, INDEX_FILENAME);
+        if (indexFile.exists()) {
+            try (InputStream in = new FileInputStream(indexFile)) {
+                index.load(in);
+            }
+        }
+        return index;
+    }
+
+    private static File getResult(Future<File> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * A driver URL, the filename it is stored under in <code>lib</code>, and its optional expected checksum.
+     */
+    public static class DriverSource implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String url;
+        private final String filename;
+        private final String sha256;
+
+        DriverSource(String url, String filename, String sha256) {
+            this.url = url;
+            this.filename = filename;
+            this.sha256 = sha256;
+        }
+
+        static DriverSource parse(String value) {
+            String url = value;
+            String sha256 = null;
+            int fragmentStart = value.indexOf('#');
+            if (fragmentStart >= 0) {
+                String fragment = value.substring(fragmentStart + 1);
+                url = value.substring(0, fragmentStart);
+                if (fragment.startsWith(CHECKSUM_FRAGMENT)) {
+                    sha256 = fragment.substring(CHECKSUM_FRAGMENT.length()).toLowerCase(Locale.ENGLISH);
+                }
+            }
+            String filename = url.substring(url.lastIndexOf('/') + 1);
+            return new DriverSource(url, filename, sha256);
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+    }
+
+    private static class ProvisionCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+
+        private final String cacheRoot;
+        private final List<DriverSource> sources;
+        private final TaskListener listener;
+
+        ProvisionCallable(String cacheRoot, List<DriverSource> sources, TaskListener listener) {
+            this.cacheRoot = cacheRoot;
+            this.sources = sources;
+            this.listener = listener;
+        }
+
+        @Override
+        public Void invoke(File installationHome, VirtualChannel channel) throws IOException, InterruptedException {
+            new DriverCache(new File(cacheRoot)).provision(sources, new File(installationHome, "lib"),
+                    listener.getLogger());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.XmlFile;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Saveable;
+import hudson.model.TaskListener;
+import hudson.model.listeners.SaveableListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers, per node, what each configured installation resolved to and the outcome of probing it there, so that
+ * repeated steps on the same agent skip tool installers, path translation and the remote validity and driver checks.
+ * <p>
+ * Everything is forgotten when the installations are reconfigured, and a node's entries when it connects,
+ * disconnects or is reconfigured (its tool locations included); a resolution made for an earlier configuration of a
+ * node is never reused.  Only successful probes are cached, and a cached probe is only reused after a cheap check that
+ * <code>liquibase.jar</code> and the linked driver jars are still there; otherwise the installation is probed again.
+ * When a probe finds the resolved installation unusable, builders resolve it once more with {@link #resolveAgain}.
+ * Concurrent steps needing the same entry wait for the first one to resolve it rather than all doing the work.
+ */
+public class InstallationCache {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private static final ConcurrentMap<String, Resolution> RESOLVED = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, InstallationProbe.Result> PROBES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private InstallationCache() {
+    }
+
+    /**
+     * {@link LiquibaseInstallation#forNode(Node, TaskListener)}, resolved once per node.
+     */
+    public static LiquibaseInstallation forNode(LiquibaseInstallation installation, Node node, TaskListener listener)
+            throws IOException, InterruptedException {
+        String key = key(node, installation.getName());
+        Resolution resolution = RESOLVED.get(key);
+        if (resolution != null && resolution.node == node) {
+            return resolution.installation;
+        }
+        synchronized (lockFor("forNode" + SEPARATOR + key)) {
+            resolution = RESOLVED.get(key);
+            if (resolution != null && resolution.node == node) {
+                return resolution.installation;
+            }
+            long generation = GENERATION.get();
+            LiquibaseInstallation resolved = installation.forNode(node, listener);
+            if (generation == GENERATION.get()) {
+                RESOLVED.put(key, new Resolution(node, resolved));
+            }
+            return resolved;
+        }
+    }
+
+    /**
+     * Forgets what <code>installation</code> resolved to on <code>node</code> and resolves it again, for when the
+     * remembered resolution turned out not to be a valid installation any more.
+     */
+    public static LiquibaseInstallation resolveAgain(LiquibaseInstallation installation, Node node,
+                                                     TaskListener listener)
+            throws IOException, InterruptedException {
+        String key = key(node, installation.getName());
+        synchronized (lockFor("forNode" + SEPARATOR + key)) {
+            RESOLVED.remove(key);
+            return forNode(installation, node, listener);
+        }
+    }
+
+    /**
+     * {@link InstallationProbe#probe(FilePath, FilePath, String, TaskListener)}, remembered per node once the
+     * installation has been found valid, and re-checked with {@link InstallationProbe#isStillValid} on reuse.
+     */
+    public static InstallationProbe.Result probe(LiquibaseInstallation installation, Node node, FilePath home,
+                                                 FilePath driverCacheRoot, TaskListener listener)
+            throws IOException, InterruptedException {
+        String key = key(node, installation.getHome() + SEPARATOR + installation.getDatabaseDriverUrl());
+        synchronized (lockFor("probe" + SEPARATOR + key)) {
+            InstallationProbe.Result result = PROBES.get(key);
+            if (result != null) {
+                if (InstallationProbe.isStillValid(home, result)) {
+                    return result;
+                }
+                PROBES.remove(key, result);
+            }
+            long generation = GENERATION.get();
+            result = InstallationProbe.probe(home, driverCacheRoot, installation.getDatabaseDriverUrl(), listener);
+            if (result.isValid() && generation == GENERATION.get()) {
+                PROBES.put(key, result);
+            }
+            return result;
+        }
+    }
+
+    public static void invalidateAll() {
+        GENERATION.incrementAndGet();
+        RESOLVED.clear();
+        PROBES.clear();
+    }
+
+    public static void invalidate(Node node) {
+        GENERATION.incrementAndGet();
+        String prefix = node.getNodeName() + SEPARATOR;
+        removeByPrefix(RESOLVED.keySet().iterator(), prefix);
+        removeByPrefix(PROBES.keySet().iterator(), prefix);
+    }
+
+    private static void removeByPrefix(Iterator<String> keys, String prefix) {
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static Object lockFor(String key) {
+        return LOCKS.computeIfAbsent(key, k -> new Object());
+    }
+
+    private static String key(Node node, String value) {
+        return node.getNodeName() + SEPARATOR + value;
+    }
+
+    /**
+     * What an installation resolved to, and the node instance it was resolved for; reconfiguring an agent replaces
+     * its node instance.
+     */
+    private static class Resolution {
+        private final Node node;
+        private final LiquibaseInstallation installation;
+
+        Resolution(Node node, LiquibaseInstallation installation) {
+            this.node = node;
+            this.installation = installation;
+        }
+    }
+
+    @Extension
+    public static class NodeConnectionListener extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            invalidate(c);
+        }
+
+        @Override
+        public void onOffline(Computer c, OfflineCause cause) {
+            invalidate(c);
+        }
+
+        private static void invalidate(Computer computer) {
+            Node node = computer.getNode();
+            if (node != null) {
+                InstallationCache.invalidate(node);
+            }
+        }
+    }
+
+    /**
+     * Forgets the built-in node's entries when the global configuration, which holds its tool locations, is saved.
+     * Reconfiguring an agent replaces its node instance instead, which {@link #forNode} notices.
+     */
+    @Extension
+    public static class NodeConfigurationListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins) {
+                invalidate((Jenkins) o);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks an installation and provisions its database drivers on the node it will run on, in a single remoting
+ * round trip.
+ */
+public class InstallationProbe {
+
+    private InstallationProbe() {
+    }
+
+    /**
+     * @param home            installation home, on the node the step runs on.
+     * @param driverCacheRoot that node's {@link DriverCache} directory.
+     */
+    public static Result probe(FilePath home, FilePath driverCacheRoot, String databaseDriverUrl,
+                               TaskListener listener) throws IOException, InterruptedException {
+        return home.act(new ProbeCallable(driverCacheRoot.getRemote(),
+                DriverCache.parseDriverUrls(databaseDriverUrl), listener));
+    }
+
+    /**
+     * Cheaply confirms that a valid result is still accurate: <code>liquibase.jar</code> and the driver jars it
+     * linked are still in <code>home</code>.
+     */
+    public static boolean isStillValid(FilePath home, Result result) throws IOException, InterruptedException {
+        return home.act(new StillValidCallable(result.driverJars));
+    }
+
+    /**
+     * Whether an installation home is usable and which driver jars were linked into its <code>lib</code> directory.
+     */
+    public static class Result implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final boolean valid;
+        private final List<String> driverJars;
+
+        Result(boolean valid, List<String> driverJars) {
+            this.valid = valid;
+            this.driverJars = driverJars;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public List<String> getDriverJars() {
+            return Collections.unmodifiableList(driverJars);
+        }
+    }
+
+    private static class ProbeCallable extends MasterToSlaveFileCallable<Result> {
+        private static final long serialVersionUID = 1;
+
+        private final String driverCacheRoot;
+        private final List<DriverCache.DriverSource> sources;
+        private final TaskListener listener;
+
+        ProbeCallable(String driverCacheRoot, List<DriverCache.DriverSource> sources, TaskListener listener) {
+            this.driverCacheRoot = driverCacheRoot;
+            this.sources = sources;
+            this.listener = listener;
+        }
+
+        @Override
+        public Result invoke(File home, VirtualChannel channel) throws IOException, InterruptedException {
+            if (!new File(home, "liquibase.jar").exists()) {
+                return new Result(false, Collections.<String>emptyList());
+            }
+            List<String> driverJars = new ArrayList<>();
+            if (!sources.isEmpty()) {
+                for (File jar : new DriverCache(new File(driverCacheRoot)).provision(sources, new File(home, "lib"),
+                        listener.getLogger())) {
+                    driverJars.add(jar.getName());
+                }
+            }
+            return new Result(true, driverJars);
+        }
+    }
+
+    private static class StillValidCallable extends MasterToSlaveFileCallable<Boolean> {
+        private static final long serialVersionUID = 1;
+
+        private final List<String> driverJars;
+
+        StillValidCallable(List<String> driverJars) {
+            this.driverJars = driverJars;
+        }
+
+        @Override
+        public Boolean invoke(File home, VirtualChannel channel) {
+            if (!new File(home, "liquibase.jar").isFile()) {
+                return false;
+            }
+            File lib = new File(home, "lib");
+            for (String driverJar : driverJars) {
+                if (!new File(lib, driverJar).isFile()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+import hudson.tools.InstallSourceProperty;
+import hudson.tools.ToolInstaller;
+import jenkins.model.Jenkins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Installs Liquibase in the background on nodes selected by a {@link LiquibaseInstaller}'s pre-warm label, so the
+ * first build there doesn't wait for the download and unpacking.
+ */
+@Extension
+public class InstallerPrewarmer extends ComputerListener {
+    private static final Logger LOG = LoggerFactory.getLogger(InstallerPrewarmer.class);
+
+    @Override
+    public void onOnline(Computer c, TaskListener listener) {
+        prewarm(c, listener);
+    }
+
+    /**
+     * Pre-warms every connected node; called when the installations are reconfigured.
+     */
+    static void prewarmOnlineNodes() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return;
+        }
+        for (Computer computer : jenkins.getComputers()) {
+            if (computer.isOnline()) {
+                prewarm(computer, TaskListener.NULL);
+            }
+        }
+    }
+
+    private static void prewarm(Computer computer, final TaskListener listener) {
+        final Node node = computer.getNode();
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (node == null || jenkins == null) {
+            return;
+        }
+        LiquibaseInstallation.DescriptorImpl descriptor =
+                jenkins.getDescriptorByType(LiquibaseInstallation.DescriptorImpl.class);
+        if (descriptor == null) {
+            return;
+        }
+        for (final LiquibaseInstallation installation : descriptor.getInstallations()) {
+            if (!shouldPrewarm(installation, node)) {
+                continue;
+            }
+            Computer.threadPoolForRemoting.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        listener.getLogger().println("Pre-warming Liquibase installation " + installation.getName());
+                        InstallationCache.forNode(installation, node, listener);
+                    } catch (IOException | InterruptedException | RuntimeException e) {
+                        LOG.warn("Unable to pre-warm Liquibase installation " + installation.getName() + " on " +
+                                node.getNodeName(), e);
+                    }
+                }
+            });
+        }
+    }
+
+    private static boolean shouldPrewarm(LiquibaseInstallation installation, Node node) {
+        InstallSourceProperty installSource = installation.getProperties().get(InstallSourceProperty.class);
+        if (installSource == null) {
+            return false;
+        }
+        for (ToolInstaller installer : installSource.installers) {
+            if (installer instanceof LiquibaseInstaller && ((LiquibaseInstaller) installer).shouldPrewarm(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,9 +3,11 @@ package org.jenkinsci.plugins.liquibase.install;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.Util;
+import hudson.model.Computer;
 import hudson.model.EnvironmentSpecific;
 import hudson.model.Node;
 import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
 import hudson.slaves.NodeSpecific;
 import hudson.tools.ToolDescriptor;
 import hudson.tools.ToolInstallation;
@@ -13,21 +15,32 @@ import hudson.tools.ToolInstaller;
 import hudson.tools.ToolProperty;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.liquibase.builder.UpdateBuilder;
+import org.jenkinsci.plugins.liquibase.execution.LiquibaseWorkerPool;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class LiquibaseInstallation extends ToolInstallation implements NodeSpecific<LiquibaseInstallation>, EnvironmentSpecific<LiquibaseInstallation> {
 
     private static final long serialVersionUID = 1;
+    private static final Logger LOG = LoggerFactory.getLogger(LiquibaseInstallation.class);
+
+    public static final int DEFAULT_WORKER_POOL_SIZE = 2;
+    public static final int DEFAULT_WORKER_IDLE_MINUTES = 10;
 
     private String liquibaseHome;
     private String databaseDriverUrl;
+    private Integer workerPoolSize;
+    private Integer workerIdleMinutes;
 
 
     @DataBoundConstructor
@@ -39,12 +52,18 @@ public class LiquibaseInstallation extends ToolInstallation implements NodeSpeci
 
     @Override
     public LiquibaseInstallation forEnvironment(EnvVars environment) {
-        return new LiquibaseInstallation(getName(), environment.expand(liquibaseHome), environment.expand(databaseDriverUrl), getProperties().toList());
+        return copyWorkerSettings(new LiquibaseInstallation(getName(), environment.expand(liquibaseHome), environment.expand(databaseDriverUrl), getProperties().toList()));
     }
 
     @Override
     public LiquibaseInstallation forNode(Node node, TaskListener log) throws IOException, InterruptedException {
-        return new LiquibaseInstallation(getName(), translateFor(node, log), databaseDriverUrl, getProperties().toList());
+        return copyWorkerSettings(new LiquibaseInstallation(getName(), translateFor(node, log), databaseDriverUrl, getProperties().toList()));
+    }
+
+    private LiquibaseInstallation copyWorkerSettings(LiquibaseInstallation installation) {
+        installation.workerPoolSize = workerPoolSize;
+        installation.workerIdleMinutes = workerIdleMinutes;
+        return installation;
     }
 
     @Override
@@ -63,6 +82,10 @@ public class LiquibaseInstallation extends ToolInstallation implements NodeSpeci
         return new File(liquibaseHome, "liquibase.jar");
     }
 
+    /**
+     * Checks the home on the local file system only; builds check the node they run on through
+     * {@link InstallationProbe}.
+     */
     public boolean isValidLiquibaseHome() {
         final File liquibaseJar = getLiquibaseJar();
         return liquibaseJar != null && liquibaseJar.exists();
@@ -77,10 +100,35 @@ public class LiquibaseInstallation extends ToolInstallation implements NodeSpeci
         this.databaseDriverUrl = databaseDriverUrl;
     }
 
+    /**
+     * Maximum number of warm in-process workers kept per node for this installation.
+     */
+    public int getWorkerPoolSize() {
+        return workerPoolSize == null ? DEFAULT_WORKER_POOL_SIZE : workerPoolSize;
+    }
+
+    @DataBoundSetter
+    public void setWorkerPoolSize(int workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    /**
+     * Minutes an in-process worker may sit unused before it is closed.
+     */
+    public int getWorkerIdleMinutes() {
+        return workerIdleMinutes == null ? DEFAULT_WORKER_IDLE_MINUTES : workerIdleMinutes;
+    }
+
+    @DataBoundSetter
+    public void setWorkerIdleMinutes(int workerIdleMinutes) {
+        this.workerIdleMinutes = workerIdleMinutes;
+    }
+
     @Extension
     public static class DescriptorImpl extends ToolDescriptor<LiquibaseInstallation> {
 
         private LiquibaseInstallation[] installations = new LiquibaseInstallation[0];
+        private transient volatile Map<String, LiquibaseInstallation> installationsByName;
 
         public DescriptorImpl() {
             load();
@@ -100,10 +148,60 @@ public class LiquibaseInstallation extends ToolInstallation implements NodeSpeci
             return Arrays.copyOf(installations, installations.length);
         }
 
+        /**
+         * Looks up an installation by name without copying the configured installations.
+         *
+         * @return the installation, or null if none has that name.
+         */
+        public LiquibaseInstallation getInstallation(String name) {
+            Map<String, LiquibaseInstallation> byName = installationsByName;
+            if (byName == null) {
+                byName = new HashMap<>();
+                for (LiquibaseInstallation installation : installations) {
+                    if (!byName.containsKey(installation.getName())) {
+                        byName.put(installation.getName(), installation);
+                    }
+                }
+                installationsByName = byName;
+            }
+            return byName.get(name);
+        }
+
         @Override
         public void setInstallations(LiquibaseInstallation... installations) {
             this.installations = installations;
+            installationsByName = null;
             save();
+            InstallationCache.invalidateAll();
+            shutdownIdleWorkers();
+            InstallerPrewarmer.prewarmOnlineNodes();
+        }
+
+        /**
+         * Installations may have been moved or removed, so warm workers on every connected node are let go rather
+         * than waiting for their idle timeout.
+         */
+        private static void shutdownIdleWorkers() {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            if (jenkins == null) {
+                return;
+            }
+            for (final Computer computer : jenkins.getComputers()) {
+                final VirtualChannel channel = computer.getChannel();
+                if (channel == null) {
+                    continue;
+                }
+                Computer.threadPoolForRemoting.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            channel.call(new LiquibaseWorkerPool.ShutdownCallable());
+                        } catch (IOException | InterruptedException e) {
+                            LOG.debug("Unable to shut down Liquibase workers on " + computer.getName(), e);
+                        }
+                    }
+                });
+            }
         }
     }
 }
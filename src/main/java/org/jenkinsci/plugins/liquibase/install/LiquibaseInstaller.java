@@ -1,25 +1,73 @@
 package org.jenkinsci.plugins.liquibase.install;
 
-import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import hudson.Extension;
 import hudson.FilePath;
+import hudson.model.Label;
 import hudson.model.Node;
 import hudson.model.TaskListener;
 import hudson.tools.DownloadFromUrlInstaller;
 import hudson.tools.ToolInstallation;
+import jenkins.model.Jenkins;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 public class LiquibaseInstaller extends DownloadFromUrlInstaller {
 
+    static final String INSTALLED_FROM = ".installedFrom";
+    private static final String MAVEN_ROOT = "/maven2/";
+    private static final String MAVEN_DIRECTORY = "org/liquibase/liquibase-core/";
+
+    private String mirrorUrl;
+    private String prewarmLabel;
+
     @DataBoundConstructor
     public LiquibaseInstaller(String id) {
         super(id);
     }
 
+    /**
+     * Directory on the controller, or a <code>file://</code> URL to one, holding Liquibase distributions either
+     * flat or in Maven repository layout.  When set, archives are taken from there instead of the internet.
+     */
+    public String getMirrorUrl() {
+        return mirrorUrl;
+    }
+
+    @DataBoundSetter
+    public void setMirrorUrl(String mirrorUrl) {
+        this.mirrorUrl = Strings.emptyToNull(mirrorUrl == null ? null : mirrorUrl.trim());
+    }
+
+    /**
+     * Label expression for nodes this installation is installed on as soon as they connect.
+     */
+    public String getPrewarmLabel() {
+        return prewarmLabel;
+    }
+
+    @DataBoundSetter
+    public void setPrewarmLabel(String prewarmLabel) {
+        this.prewarmLabel = Strings.emptyToNull(prewarmLabel == null ? null : prewarmLabel.trim());
+    }
+
+    public boolean shouldPrewarm(Node node) {
+        if (prewarmLabel == null) {
+            return false;
+        }
+        Label label = Jenkins.get().getLabel(prewarmLabel);
+        return label != null && label.contains(node);
+    }
+
     @Extension
     public static final class DescriptorImpl extends DownloadFromUrlInstaller.DescriptorImpl<LiquibaseInstaller> {
         public String getDisplayName() {
@@ -34,9 +82,119 @@ public class LiquibaseInstaller extends DownloadFromUrlInstaller {
 
     @Override
     public FilePath performInstallation(ToolInstallation tool, Node node, TaskListener log) throws IOException, InterruptedException {
-        final FilePath installationRoot = super.performInstallation(tool, node, log);
+        if (mirrorUrl == null) {
+            return super.performInstallation(tool, node, log);
+        }
+        File archive = findInMirror();
+        if (archive == null) {
+            log.getLogger().println("Liquibase " + id + " not found in mirror " + mirrorUrl +
+                    ", falling back to download");
+            return super.performInstallation(tool, node, log);
+        }
+
+        FilePath expected = preferredLocation(tool, node);
+        FilePath marker = expected.child(INSTALLED_FROM);
+        String source = archive.toURI().toString();
+        if (marker.exists() && marker.readToString().equals(source)) {
+            return expected;
+        }
+
+        log.getLogger().println("Installing Liquibase " + id + " from " + archive + " to " + expected + " on " +
+                node.getDisplayName());
+        FilePath partial = expected.getParent().child(expected.getName() + "." + archive.getName() + ".part");
+        MirrorTransfer.install(archive, partial, new UnpackTarget(expected.getRemote(), source), log);
+        return expected;
+    }
 
+    /**
+     * Unpacks a transferred distribution into the installation directory and records where it came from.  Runs on
+     * the node while the transfer's lock is held, so a concurrent install of the same version finds it done.
+     */
+    private static class UnpackTarget implements MirrorTransfer.Target {
+        private static final long serialVersionUID = 1;
 
-        return installationRoot;
+        private final String expected;
+        private final String source;
+
+        UnpackTarget(String expected, String source) {
+            this.expected = expected;
+            this.source = source;
+        }
+
+        @Override
+        public boolean isInstalled() throws IOException {
+            File marker = new File(expected, INSTALLED_FROM);
+            return marker.isFile() &&
+                    new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8).equals(source);
+        }
+
+        @Override
+        public void install(File archive) throws IOException, InterruptedException {
+            FilePath home = new FilePath(new File(expected));
+            if (home.exists()) {
+                home.deleteContents();
+            } else {
+                home.mkdirs();
+            }
+            if (source.endsWith(".zip")) {
+                new FilePath(archive).unzip(home);
+            } else {
+                new FilePath(archive).untar(home, FilePath.TarCompression.GZIP);
+            }
+
+            List<FilePath> children = home.list();
+            if (children.size() == 1 && children.get(0).isDirectory()) {
+                children.get(0).moveAllChildrenTo(home);
+            }
+            FilePath script = home.child("liquibase");
+            if (script.exists()) {
+                script.chmod(0755);
+            }
+            home.child(INSTALLED_FROM).write(source, StandardCharsets.UTF_8.name());
+        }
+    }
+
+    /**
+     * The archive for this version in the mirror, trying the path of the update center's URL relative to the Maven
+     * root first, then the usual distribution names in Maven and flat layouts.
+     */
+    File findInMirror() throws IOException {
+        File root = getMirrorRoot();
+        for (String candidate : getMirrorCandidates()) {
+            File archive = new File(root, candidate);
+            if (archive.isFile()) {
+                return archive;
+            }
+        }
+        return null;
+    }
+
+    private List<String> getMirrorCandidates() throws IOException {
+        List<String> candidates = new ArrayList<>();
+        Installable installable = getInstallable();
+        if (installable != null && installable.url != null) {
+            int mavenRoot = installable.url.indexOf(MAVEN_ROOT);
+            if (mavenRoot >= 0) {
+                candidates.add(installable.url.substring(mavenRoot + MAVEN_ROOT.length()));
+            }
+            candidates.add(installable.url.substring(installable.url.lastIndexOf('/') + 1));
+        }
+        for (String extension : new String[]{"tar.gz", "zip"}) {
+            candidates.add(MAVEN_DIRECTORY + id + "/liquibase-core-" + id + "-bin." + extension);
+            candidates.add("liquibase-core-" + id + "-bin." + extension);
+            candidates.add("liquibase-" + id + "." + extension);
+        }
+        return candidates;
+    }
+
+    private File getMirrorRoot() throws IOException {
+        if (mirrorUrl.startsWith("file:")) {
+            try {
+                return new File(new URI(mirrorUrl));
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                throw new IOException("Invalid mirror URL " + mirrorUrl, e);
+            }
+        }
+        return new File(mirrorUrl);
     }
 }
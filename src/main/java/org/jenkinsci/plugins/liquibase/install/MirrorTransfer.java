@@ -0,0 +1,219 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.RemoteInputStream;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Copies an archive from the controller's file system to a node, resuming from what already arrived when a transfer
+ * is interrupted, and verifies it against the checksum published next to it (<code>.sha256</code> or
+ * <code>.sha1</code>, as in a Maven repository).
+ * <p>
+ * The node pulls the archive and does all work on the partial file, including unpacking it, in a single call holding
+ * the same in-JVM and file lock per path as {@link DriverCache}, so concurrent installs of one version never append
+ * to, verify or unpack each other's partial file.
+ */
+class MirrorTransfer {
+
+    static final int MAX_ATTEMPTS = 5;
+
+    private MirrorTransfer() {
+    }
+
+    /**
+     * Brings <code>source</code> to <code>partial</code> on the target node and verifies it.
+     *
+     * @return <code>partial</code>, now complete and verified.
+     */
+    static FilePath fetch(File source, FilePath partial, TaskListener listener)
+            throws IOException, InterruptedException {
+        install(source, partial, null, listener);
+        return partial;
+    }
+
+    /**
+     * Brings <code>source</code> to <code>partial</code> on the target node, verifies it and, unless
+     * <code>target</code> is null, installs it from there and removes <code>partial</code>.  Nothing is transferred
+     * when <code>target</code> turns out to be installed already once the lock is held.
+     */
+    static void install(File source, FilePath partial, Target target, TaskListener listener)
+            throws IOException, InterruptedException {
+        String algorithm = null;
+        String expected = null;
+        for (String candidate : new String[]{"SHA-256", "SHA-1"}) {
+            File checksumFile = new File(source.getPath() + "." +
+                    candidate.replace("-", "").toLowerCase(Locale.ENGLISH));
+            if (checksumFile.exists()) {
+                algorithm = candidate;
+                expected = FileUtils.readFileToString(checksumFile, StandardCharsets.UTF_8).trim()
+                        .split("\\s+")[0].toLowerCase(Locale.ENGLISH);
+                break;
+            }
+        }
+        if (algorithm == null) {
+            listener.getLogger().println("WARNING: no .sha256 or .sha1 checksum published for " + source +
+                    ", archive not verified");
+        }
+        ArchiveSource archive = partial.getChannel().export(ArchiveSource.class, new FileArchiveSource(source));
+        partial.act(new TransferCallable(archive, source.getName(), source.length(), algorithm, expected, target,
+                listener));
+    }
+
+    /**
+     * Where a transferred archive ends up on the node.  Runs on the node, with the transfer's locks held.
+     */
+    interface Target extends Serializable {
+        boolean isInstalled() throws IOException;
+
+        void install(File archive) throws IOException, InterruptedException;
+    }
+
+    /**
+     * The archive on the controller, exported to the node so it can reopen it at any offset while holding its lock.
+     */
+    interface ArchiveSource {
+        InputStream open(long offset) throws IOException;
+    }
+
+    private static class FileArchiveSource implements ArchiveSource {
+        private final File source;
+
+        FileArchiveSource(File source) {
+            this.source = source;
+        }
+
+        @Override
+        public InputStream open(long offset) throws IOException {
+            InputStream in = new FileInputStream(source);
+            try {
+                IOUtils.skipFully(in, offset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return new RemoteInputStream(in, RemoteInputStream.Flag.GREEDY);
+        }
+    }
+
+    private static class TransferCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+
+        private final ArchiveSource source;
+        private final String name;
+        private final long size;
+        private final String algorithm;
+        private final String expectedDigest;
+        private final Target target;
+        private final TaskListener listener;
+
+        TransferCallable(ArchiveSource source, String name, long size, String algorithm, String expectedDigest,
+                         Target target, TaskListener listener) {
+            this.source = source;
+            this.name = name;
+            this.size = size;
+            this.algorithm = algorithm;
+            this.expectedDigest = expectedDigest;
+            this.target = target;
+            this.listener = listener;
+        }
+
+        @Override
+        public Void invoke(final File partial, VirtualChannel channel) throws IOException {
+            File parent = partial.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                FileUtils.forceMkdir(parent);
+            }
+            return DriverCache.underLock(new File(partial.getPath() + ".lock").toPath(), () -> {
+                if (target != null && target.isInstalled()) {
+                    return null;
+                }
+                transfer(partial);
+                verify(partial);
+                if (target != null) {
+                    try {
+                        target.install(partial);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while installing " + name, e);
+                    }
+                    Files.deleteIfExists(partial.toPath());
+                }
+                return null;
+            });
+        }
+
+        private void transfer(File partial) throws IOException {
+            IOException lastFailure = null;
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                long offset = partial.exists() ? partial.length() : 0;
+                if (offset > size) {
+                    Files.delete(partial.toPath());
+                    offset = 0;
+                }
+                if (offset == size) {
+                    break;
+                }
+                if (offset > 0) {
+                    listener.getLogger().println("Resuming transfer of " + name + " at " + offset + " of " +
+                            size + " bytes");
+                }
+                try (InputStream in = source.open(offset); OutputStream out = new FileOutputStream(partial, true)) {
+                    IOUtils.copy(in, out);
+                } catch (IOException e) {
+                    lastFailure = e;
+                    listener.getLogger().println("Transfer of " + name + " interrupted: " + e.getMessage());
+                }
+            }
+            if (!partial.exists() || partial.length() != size) {
+                throw new IOException("Unable to transfer " + name + " after " + MAX_ATTEMPTS + " attempts",
+                        lastFailure);
+            }
+        }
+
+        private void verify(File partial) throws IOException {
+            if (algorithm == null) {
+                return;
+            }
+            String actual = digest(partial);
+            if (!expectedDigest.equals(actual)) {
+                Files.deleteIfExists(partial.toPath());
+                throw new IOException("Checksum mismatch for " + name + ": expected " + expectedDigest +
+                        " but was " + actual);
+            }
+            listener.getLogger().println("Verified " + algorithm + " checksum of " + name);
+        }
+
+        private String digest(File file) throws IOException {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+            try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+                IOUtils.copy(in, new NullOutputStream());
+            }
+            return Hex.encodeHexString(digest.digest());
+        }
+    }
+}
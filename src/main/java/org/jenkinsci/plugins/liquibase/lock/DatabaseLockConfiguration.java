@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.liquibase.lock;
+
+import hudson.Extension;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import java.util.Map;
+
+/**
+ * Global settings for {@link DatabaseLocks}.
+ */
+@Extension
+public class DatabaseLockConfiguration extends GlobalConfiguration {
+
+    public static final int DEFAULT_MAX_HOLDERS = 1;
+
+    private int maxHoldersPerDatabase = DEFAULT_MAX_HOLDERS;
+
+    public DatabaseLockConfiguration() {
+        load();
+    }
+
+    /**
+     * The configured maximum, or the default when Jenkins isn't running.
+     */
+    static int getMaxHolders() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return DEFAULT_MAX_HOLDERS;
+        }
+        DatabaseLockConfiguration configuration = GlobalConfiguration.all().get(DatabaseLockConfiguration.class);
+        return configuration == null ? DEFAULT_MAX_HOLDERS : configuration.getMaxHoldersPerDatabase();
+    }
+
+    /**
+     * How many steps may work on the same database at once; 0 turns locking off.
+     */
+    public int getMaxHoldersPerDatabase() {
+        return maxHoldersPerDatabase;
+    }
+
+    @DataBoundSetter
+    public void setMaxHoldersPerDatabase(int maxHoldersPerDatabase) {
+        this.maxHoldersPerDatabase = Math.max(0, maxHoldersPerDatabase);
+    }
+
+    public Map<String, DatabaseLocks.Statistics> getStatistics() {
+        return DatabaseLocks.get().getStatistics();
+    }
+
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) {
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Database Locks";
+    }
+}
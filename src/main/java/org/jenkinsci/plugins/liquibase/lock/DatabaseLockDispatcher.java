@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.liquibase.lock;
+
+import hudson.Extension;
+import hudson.model.Project;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueTaskDispatcher;
+import hudson.tasks.Builder;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+
+/**
+ * Keeps builds of projects whose Liquibase steps target a locked database in the queue, rather than letting them
+ * take an executor only to wait for the lock.  Only URLs known before the build starts, i.e. configured without
+ * variables, are checked here; the rest are locked when the step runs.
+ */
+@Extension
+public class DatabaseLockDispatcher extends QueueTaskDispatcher {
+
+    @Override
+    public CauseOfBlockage canRun(Queue.Item item) {
+        if (!(item.task instanceof Project)) {
+            return null;
+        }
+        DatabaseLocks locks = DatabaseLocks.get();
+        for (Builder builder : ((Project<?, ?>) item.task).getBuildersList()) {
+            if (!(builder instanceof AbstractLiquibaseBuilder)) {
+                continue;
+            }
+            for (String url : ((AbstractLiquibaseBuilder) builder).getConfiguredDatabaseUrls()) {
+                if (!url.contains("$") && locks.isBusy(url)) {
+                    return new WaitingForDatabase(DatabaseLocks.normalize(url));
+                }
+            }
+        }
+        return null;
+    }
+
+    public static class WaitingForDatabase extends CauseOfBlockage {
+        private final String database;
+
+        WaitingForDatabase(String database) {
+            this.database = database;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "Waiting for Liquibase lock on " + database;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package org.jenkinsci.plugins.liquibase.lock;
+
+import hudson.model.TaskListener;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controller-side locks on databases, keyed by normalized JDBC URL, so that steps migrating the same database queue
+ * here, first come first served, rather than each starting Liquibase and spinning on
+ * <code>DATABASECHANGELOGLOCK</code>.  Up to {@link DatabaseLockConfiguration#getMaxHoldersPerDatabase()} steps may
+ * hold a database's lock at once.
+ * <p>
+ * Locks live in controller memory only and are released when the controller restarts.  URLs that aren't
+ * {@link #isShared(String) shared}, such as in-memory databases, are never locked.
+ */
+public class DatabaseLocks {
+
+    private static final String H2_PREFIX = "jdbc:h2:";
+
+    /**
+     * Connection parameters, lower-cased, that choose the database rather than how to connect to it.
+     */
+    private static final Set<String> DATABASE_PARAMETERS = new HashSet<>(Arrays.asList(
+            "databasename", "database", "dbname", "servicename", "service_name", "sid"));
+
+    private static final DatabaseLocks INSTANCE = new DatabaseLocks(new MaxHolders() {
+        @Override
+        public int get() {
+            return DatabaseLockConfiguration.getMaxHolders();
+        }
+    });
+
+    private final MaxHolders maxHolders;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Statistics> statistics = new HashMap<>();
+
+    DatabaseLocks(MaxHolders maxHolders) {
+        this.maxHolders = maxHolders;
+    }
+
+    public static DatabaseLocks get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reduces a JDBC URL to the database it points at: connection parameters after <code>?</code> or
+     * <code>;</code> and trailing slashes are dropped and the result lower-cased.  Parameters that pick the database,
+     * such as SQL Server's <code>databaseName</code>, are kept, sorted, so that two databases on one server don't share
+     * a lock.  URLs that otherwise differ only by case or by parameters share a lock, which errs on the side of
+     * serializing.
+     */
+    public static String normalize(String url) {
+        String normalized = url.trim();
+        String parameters = "";
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == '?' || c == ';') {
+                parameters = normalized.substring(i + 1);
+                normalized = normalized.substring(0, i);
+                break;
+            }
+        }
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        StringBuilder key = new StringBuilder(normalized);
+        for (String parameter : databaseParameters(parameters)) {
+            key.append(';').append(parameter);
+        }
+        return key.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static Set<String> databaseParameters(String parameters) {
+        Set<String> kept = new TreeSet<>();
+        for (String parameter : parameters.split("[;&?]")) {
+            int equals = parameter.indexOf('=');
+            if (equals <= 0) {
+                continue;
+            }
+            String name = parameter.substring(0, equals).trim().toLowerCase(Locale.ENGLISH);
+            if (DATABASE_PARAMETERS.contains(name)) {
+                kept.add(name + "=" + parameter.substring(equals + 1).trim());
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Whether <code>url</code> names a database other steps can reach.  In-memory databases and H2 files given by
+     * relative path belong to the process or workspace using them, so two steps with the same URL don't actually share
+     * a database and are not locked against each other.
+     */
+    public static boolean isShared(String url) {
+        String normalized = url.trim().toLowerCase(Locale.ENGLISH);
+        if (normalized.startsWith("jdbc:hsqldb:mem:") || normalized.startsWith("jdbc:derby:memory:")) {
+            return false;
+        }
+        if (!normalized.startsWith(H2_PREFIX)) {
+            return true;
+        }
+        String database = normalized.substring(H2_PREFIX.length());
+        int end = database.indexOf(';');
+        if (end >= 0) {
+            database = database.substring(0, end);
+        }
+        if (database.startsWith("mem:")) {
+            return false;
+        }
+        if (database.startsWith("file:")) {
+            database = database.substring("file:".length());
+        }
+        if (database.startsWith("/") || database.startsWith("\\") || database.startsWith("~")
+                || database.matches("[a-z]:.*")) {
+            return true;
+        }
+        // tcp:, ssl: and other server or file system prefixes name a database outside this workspace
+        return database.contains(":");
+    }
+
+    /**
+     * Joins the queue for <code>url</code>'s lock without waiting.
+     */
+    public synchronized Ticket enqueue(String url) {
+        String key = normalize(url);
+        if (!isShared(url)) {
+            return new Ticket(key, null);
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+        Ticket ticket = new Ticket(key, entry);
+        entry.waiters.addLast(ticket);
+        return ticket;
+    }
+
+    /**
+     * Waits for <code>url</code>'s lock, telling <code>listener</code> if it has to wait.
+     */
+    public Lease acquire(String url, TaskListener listener) throws InterruptedException {
+        Ticket ticket = enqueue(url);
+        synchronized (this) {
+            Lease lease = ticket.tryAcquire();
+            if (lease != null) {
+                return lease;
+            }
+            listener.getLogger().println("Waiting for database lock on " + ticket.getDatabase() + "...");
+            try {
+                while (lease == null) {
+                    wait();
+                    lease = ticket.tryAcquire();
+                }
+            } catch (InterruptedException e) {
+                ticket.cancel();
+                throw e;
+            }
+            listener.getLogger().println("Acquired database lock on " + ticket.getDatabase() + " after "
+                    + lease.getWaitMillis() + "ms.");
+            return lease;
+        }
+    }
+
+    /**
+     * Whether a step starting now would have to wait for <code>url</code>'s lock.
+     */
+    public synchronized boolean isBusy(String url) {
+        int max = maxHolders.get();
+        if (max <= 0 || !isShared(url)) {
+            return false;
+        }
+        Entry entry = entries.get(normalize(url));
+        return entry != null && (entry.holders >= max || !entry.waiters.isEmpty());
+    }
+
+    /**
+     * Lock wait statistics since the controller started, by normalized URL.
+     */
+    public synchronized Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> copy = new TreeMap<>();
+        for (Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    private void removeIfUnused(String key, Entry entry) {
+        if (entry.holders == 0 && entry.waiters.isEmpty()) {
+            entries.remove(key);
+        }
+    }
+
+    interface MaxHolders {
+        int get();
+    }
+
+    private static class Entry {
+        private int holders;
+        private final Deque<Ticket> waiters = new ArrayDeque<>();
+    }
+
+    /**
+     * A place in the queue for one database's lock.  Tickets for databases that aren't shared have no queue and are
+     * granted at once.
+     */
+    public class Ticket {
+        private final String key;
+        private final Entry entry;
+        private final long enqueuedAt = System.nanoTime();
+
+        Ticket(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        public String getDatabase() {
+            return key;
+        }
+
+        /**
+         * Takes the lock if this ticket is at the head of the queue and the database has a free slot.
+         *
+         * @return the lease, or null if the lock isn't available to this ticket yet.
+         */
+        public Lease tryAcquire() {
+            if (entry == null) {
+                return new Lease(key, null, 0);
+            }
+            synchronized (DatabaseLocks.this) {
+                int max = maxHolders.get();
+                if (entry.waiters.peekFirst() != this || (max > 0 && entry.holders >= max)) {
+                    return null;
+                }
+                entry.waiters.removeFirst();
+                entry.holders++;
+                long waitNanos = System.nanoTime() - enqueuedAt;
+                Statistics stats = statistics.get(key);
+                if (stats == null) {
+                    stats = new Statistics();
+                    statistics.put(key, stats);
+                }
+                stats.record(waitNanos);
+                // the next in line may fit as well
+                DatabaseLocks.this.notifyAll();
+                return new Lease(key, entry, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            }
+        }
+
+        /**
+         * Leaves the queue without taking the lock.
+         */
+        public void cancel() {
+            if (entry == null) {
+                return;
+            }
+            synchronized (DatabaseLocks.this) {
+                if (entry.waiters.remove(this)) {
+                    removeIfUnused(key, entry);
+                    DatabaseLocks.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * A held lock; closing it lets the next step in.
+     */
+    public class Lease implements Closeable {
+        private final String key;
+        private final Entry entry;
+        private final long waitMillis;
+        private boolean released;
+
+        Lease(String key, Entry entry, long waitMillis) {
+            this.key = key;
+            this.entry = entry;
+            this.waitMillis = waitMillis;
+        }
+
+        public String getDatabase() {
+            return key;
+        }
+
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        @Override
+        public void close() {
+            synchronized (DatabaseLocks.this) {
+                if (released || entry == null) {
+                    return;
+                }
+                released = true;
+                entry.holders--;
+                removeIfUnused(key, entry);
+                DatabaseLocks.this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * How often a database's lock was taken and how long steps waited for it.
+     */
+    public static class Statistics {
+        private long acquisitions;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        void record(long waitNanos) {
+            acquisitions++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+
+        Statistics copy() {
+            Statistics copy = new Statistics();
+            copy.acquisitions = acquisitions;
+            copy.totalWaitNanos = totalWaitNanos;
+            copy.maxWaitNanos = maxWaitNanos;
+            return copy;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        public long getTotalWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+        }
+
+        public long getAverageWaitMillis() {
+            return acquisitions == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / acquisitions);
+        }
+
+        public long getMaxWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+
+/**
+ * What happened to one changeset during a Liquibase run, as reported in Liquibase's output.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class ChangeSetResult implements Serializable {
+    private static final long serialVersionUID = 1;
+
+    public enum Outcome {
+        EXECUTED, FAILED, ROLLED_BACK
+    }
+
+    private final String file;
+    private final String id;
+    private final String author;
+    private final long durationMillis;
+    private final Outcome outcome;
+    private final long rowsAffected;
+
+    public ChangeSetResult(String file, String id, String author, long durationMillis, Outcome outcome,
+                           long rowsAffected) {
+        this.file = file;
+        this.id = id;
+        this.author = author;
+        this.durationMillis = durationMillis;
+        this.outcome = outcome;
+        this.rowsAffected = rowsAffected;
+    }
+
+    /**
+     * Parses Liquibase's <code>file::id::author</code> changeset identifier.
+     */
+    static ChangeSetResult fromIdentifier(String identifier, long durationMillis, Outcome outcome, long rowsAffected) {
+        int firstSeparator = identifier.indexOf("::");
+        int lastSeparator = identifier.lastIndexOf("::");
+        if (firstSeparator < 0 || firstSeparator == lastSeparator) {
+            return new ChangeSetResult(null, identifier, null, durationMillis, outcome, rowsAffected);
+        }
+        return new ChangeSetResult(identifier.substring(0, firstSeparator),
+                identifier.substring(firstSeparator + 2, lastSeparator),
+                identifier.substring(lastSeparator + 2), durationMillis, outcome, rowsAffected);
+    }
+
+    @Exported
+    public String getFile() {
+        return file;
+    }
+
+    @Exported
+    public String getId() {
+        return id;
+    }
+
+    @Exported
+    public String getAuthor() {
+        return author;
+    }
+
+    @Exported
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Exported
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    @Exported
+    public long getRowsAffected() {
+        return rowsAffected;
+    }
+
+    public String getKey() {
+        return file + "::" + id + "::" + author;
+    }
+
+    @Override
+    public String toString() {
+        return getKey() + " " + outcome + " in " + durationMillis + "ms";
+    }
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changesets run by the Liquibase steps of a build, parsed from their output.
+ */
+@ExportedBean
+public class ChangeSetResultAction implements Action {
+
+    private final List<ChangeSetResult> changeSets = new ArrayList<>();
+
+    public static ChangeSetResultAction forBuild(Run<?, ?> build) {
+        synchronized (build) {
+            ChangeSetResultAction action = build.getAction(ChangeSetResultAction.class);
+            if (action == null) {
+                action = new ChangeSetResultAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    public synchronized void add(ChangeSetResult result) {
+        changeSets.add(result);
+    }
+
+    @Exported
+    public synchronized List<ChangeSetResult> getChangeSets() {
+        return new ArrayList<>(changeSets);
+    }
+
+    public synchronized long getTotalDurationMillis() {
+        long total = 0;
+        for (ChangeSetResult changeSet : changeSets) {
+            total += changeSet.getDurationMillis();
+        }
+        return total;
+    }
+
+    public synchronized boolean isEmpty() {
+        return changeSets.isEmpty();
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Changesets";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -0,0 +1,177 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.XmlFile;
+import hudson.model.Job;
+import jenkins.model.Jenkins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact per-job history of changeset execution times, kept in the job's directory so trends and regressions can be
+ * evaluated without loading old builds.  Only the most recent samples of each changeset, and of each update step's
+ * total, are kept.
+ */
+public class ChangeSetTimingIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeSetTimingIndex.class);
+
+    static final String FILENAME = "liquibase-changeset-timings.xml";
+    static final int MAX_SAMPLES = 20;
+    static final int MAX_CHANGESETS = 5000;
+
+    private static final ConcurrentMap<String, Object> JOB_LOCKS = new ConcurrentHashMap<>();
+
+    private final Map<String, LinkedList<Sample>> changeSets = new LinkedHashMap<>();
+    private final Map<String, LinkedList<Sample>> totals = new LinkedHashMap<>();
+
+    public static ChangeSetTimingIndex load(Job<?, ?> job) {
+        XmlFile file = getFile(job);
+        if (file.exists()) {
+            try {
+                return (ChangeSetTimingIndex) file.read();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to read " + file + "; starting a new changeset timing index", e);
+            }
+        }
+        return new ChangeSetTimingIndex();
+    }
+
+    /**
+     * Lock to hold around loading, updating and saving the index of <code>job</code>, so concurrent builds of the
+     * same job don't lose each other's samples while builds of other jobs proceed.
+     */
+    public static Object lockFor(Job<?, ?> job) {
+        return JOB_LOCKS.computeIfAbsent(job.getFullName(), k -> new Object());
+    }
+
+    public void save(Job<?, ?> job) throws IOException {
+        getFile(job).write(this);
+    }
+
+    private static XmlFile getFile(Job<?, ?> job) {
+        return new XmlFile(Jenkins.XSTREAM2, new File(job.getRootDir(), FILENAME));
+    }
+
+    public synchronized void record(int buildNumber, String totalKey, List<ChangeSetResult> results) {
+        long total = 0;
+        int executed = 0;
+        for (ChangeSetResult result : results) {
+            if (result.getOutcome() == ChangeSetResult.Outcome.EXECUTED) {
+                add(changeSets, result.getKey(), new Sample(buildNumber, result.getDurationMillis()));
+                total += result.getDurationMillis();
+                executed++;
+            }
+        }
+        if (executed > 0) {
+            add(totals, totalKey, new Sample(buildNumber, total));
+        }
+        evictOldest();
+    }
+
+    /**
+     * @return median of the recorded durations of <code>changeSetKey</code>, or -1 if it has no history.
+     */
+    public synchronized long getBaseline(String changeSetKey) {
+        return median(changeSets.get(changeSetKey));
+    }
+
+    public synchronized long getTotalBaseline(String totalKey) {
+        return median(totals.get(totalKey));
+    }
+
+    public synchronized Map<String, List<Sample>> getTotals() {
+        Map<String, List<Sample>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, LinkedList<Sample>> entry : totals.entrySet()) {
+            copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * @return the changesets whose latest recorded run was slowest, slowest first.
+     */
+    public synchronized List<Map.Entry<String, List<Sample>>> getSlowest(int limit) {
+        List<Map.Entry<String, List<Sample>>> entries = new ArrayList<>();
+        for (Map.Entry<String, LinkedList<Sample>> entry : changeSets.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<String, List<Sample>>(
+                    entry.getKey(), new ArrayList<>(entry.getValue())));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, List<Sample>>>() {
+            @Override
+            public int compare(Map.Entry<String, List<Sample>> a, Map.Entry<String, List<Sample>> b) {
+                return Long.compare(last(b.getValue()), last(a.getValue()));
+            }
+        });
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    private static long last(List<Sample> samples) {
+        return samples.isEmpty() ? 0 : samples.get(samples.size() - 1).getDurationMillis();
+    }
+
+    private static void add(Map<String, LinkedList<Sample>> index, String key, Sample sample) {
+        LinkedList<Sample> samples = index.remove(key);
+        if (samples == null) {
+            samples = new LinkedList<>();
+        }
+        samples.add(sample);
+        while (samples.size() > MAX_SAMPLES) {
+            samples.removeFirst();
+        }
+        index.put(key, samples);
+    }
+
+    /**
+     * Changesets are re-inserted on every update, so the first entries are the ones least recently seen.
+     */
+    private void evictOldest() {
+        Iterator<String> keys = changeSets.keySet().iterator();
+        while (changeSets.size() > MAX_CHANGESETS && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    static long median(List<Sample> samples) {
+        if (samples == null || samples.isEmpty()) {
+            return -1;
+        }
+        List<Long> durations = new ArrayList<>();
+        for (Sample sample : samples) {
+            durations.add(sample.getDurationMillis());
+        }
+        Collections.sort(durations);
+        return durations.get(durations.size() / 2);
+    }
+
+    public static class Sample {
+        private final int buildNumber;
+        private final long durationMillis;
+
+        public Sample(int buildNumber, long durationMillis) {
+            this.buildNumber = buildNumber;
+            this.durationMillis = durationMillis;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import jenkins.model.TransientActionFactory;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Job page showing how Liquibase update times have moved across builds, read from the job's
+ * {@link ChangeSetTimingIndex}.
+ */
+public class ChangeSetTrendAction implements Action {
+
+    static final int SLOWEST_SHOWN = 25;
+
+    private final Job<?, ?> job;
+
+    public ChangeSetTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    public Map<String, List<ChangeSetTimingIndex.Sample>> getTotals() {
+        return ChangeSetTimingIndex.load(job).getTotals();
+    }
+
+    public List<Map.Entry<String, List<ChangeSetTimingIndex.Sample>>> getSlowestChangeSets() {
+        return ChangeSetTimingIndex.load(job).getSlowest(SLOWEST_SHOWN);
+    }
+
+    /**
+     * Width, as a percentage of the longest sample, of the bar drawn for <code>sample</code>.
+     */
+    public static long getBarWidth(ChangeSetTimingIndex.Sample sample, List<ChangeSetTimingIndex.Sample> samples) {
+        long longest = 1;
+        for (ChangeSetTimingIndex.Sample candidate : samples) {
+            longest = Math.max(longest, candidate.getDurationMillis());
+        }
+        return Math.max(1, sample.getDurationMillis() * 100 / longest);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "/plugin/liquibase-runner/liquibase_icon24x24.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Timing Trend";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "liquibase-trend";
+    }
+
+    @Extension
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @Nonnull
+        @Override
+        public Collection<? extends Action> createFor(@Nonnull Job target) {
+            if (!new File(target.getRootDir(), ChangeSetTimingIndex.FILENAME).exists()) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new ChangeSetTrendAction(target));
+        }
+    }
+}
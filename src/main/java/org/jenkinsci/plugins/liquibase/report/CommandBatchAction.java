@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of each command run by the command batch steps of a build.
+ */
+@ExportedBean
+public class CommandBatchAction implements Action {
+
+    private final List<CommandResult> results = new ArrayList<>();
+
+    public static CommandBatchAction forBuild(Run<?, ?> build) {
+        synchronized (build) {
+            CommandBatchAction action = build.getAction(CommandBatchAction.class);
+            if (action == null) {
+                action = new CommandBatchAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    public synchronized void addAll(List<CommandResult> commandResults) {
+        results.addAll(commandResults);
+    }
+
+    @Exported
+    public synchronized List<CommandResult> getResults() {
+        return new ArrayList<>(results);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Command Batch";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class CommandResult implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String command;
+        private final Integer exitStatus;
+        private final long durationMillis;
+
+        CommandResult(String command, Integer exitStatus, long durationMillis) {
+            this.command = command;
+            this.exitStatus = exitStatus;
+            this.durationMillis = durationMillis;
+        }
+
+        public static CommandResult completed(String command, int exitStatus, long durationMillis) {
+            return new CommandResult(command, exitStatus, durationMillis);
+        }
+
+        /**
+         * A command not run because an earlier one in its batch failed.
+         */
+        public static CommandResult notRun(String command) {
+            return new CommandResult(command, null, 0);
+        }
+
+        @Exported
+        public String getCommand() {
+            return command;
+        }
+
+        @Exported
+        public boolean isRun() {
+            return exitStatus != null;
+        }
+
+        @Exported
+        public boolean isSuccessful() {
+            return exitStatus != null && exitStatus == 0;
+        }
+
+        @Exported
+        public Integer getExitStatus() {
+            return exitStatus;
+        }
+
+        @Exported
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            if (exitStatus == null) {
+                return command + ": NOT RUN";
+            }
+            return command + ": " + (exitStatus == 0 ? "SUCCESS" : "FAILED (exit status " + exitStatus + ")") +
+                    " in " + durationMillis + "ms";
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records, for each successful update in a build, the deployment fingerprint (changelog hash, target URL, contexts
+ * and labels) and the changelog marker read from the database right afterwards.
+ */
+public class DeploymentRecordAction extends InvisibleAction {
+
+    static final int MAX_BUILDS_SEARCHED = 50;
+
+    private final Map<String, String> markers = new HashMap<>();
+
+    public static DeploymentRecordAction forBuild(Run<?, ?> build) {
+        synchronized (build) {
+            DeploymentRecordAction action = build.getAction(DeploymentRecordAction.class);
+            if (action == null) {
+                action = new DeploymentRecordAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    /**
+     * Finds the marker recorded for <code>deploymentFingerprint</code> by the most recent earlier build that has one.
+     */
+    public static String findPreviousMarker(Run<?, ?> build, String deploymentFingerprint) {
+        Run<?, ?> previous = build.getPreviousBuild();
+        for (int i = 0; previous != null && i < MAX_BUILDS_SEARCHED; i++) {
+            DeploymentRecordAction action = previous.getAction(DeploymentRecordAction.class);
+            if (action != null) {
+                String marker = action.getMarker(deploymentFingerprint);
+                if (marker != null) {
+                    return marker;
+                }
+            }
+            previous = previous.getPreviousBuild();
+        }
+        return null;
+    }
+
+    public synchronized String getMarker(String deploymentFingerprint) {
+        return markers.get(deploymentFingerprint);
+    }
+
+    public synchronized void record(String deploymentFingerprint, String marker) {
+        markers.put(deploymentFingerprint, marker);
+    }
+}
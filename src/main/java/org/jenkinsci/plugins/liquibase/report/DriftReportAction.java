@@ -0,0 +1,173 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.Action;
+import org.jenkinsci.plugins.liquibase.execution.ChangeLogReader;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records, for each database of a drift report, how its <code>DATABASECHANGELOG</code> differs from the changelog:
+ * changesets not yet applied, changesets applied that the changelog doesn't have, and changesets applied from a
+ * different version of their definition.
+ */
+@ExportedBean
+public class DriftReportAction implements Action {
+
+    private final List<TargetDrift> targets;
+
+    public DriftReportAction(List<TargetDrift> targets) {
+        this.targets = new ArrayList<>(targets);
+    }
+
+    @Exported
+    public List<TargetDrift> getTargets() {
+        return Collections.unmodifiableList(targets);
+    }
+
+    public int getDriftedCount() {
+        int drifted = 0;
+        for (TargetDrift target : targets) {
+            if (target.isDrifted()) {
+                drifted++;
+            }
+        }
+        return drifted;
+    }
+
+    public int getFailureCount() {
+        int failures = 0;
+        for (TargetDrift target : targets) {
+            if (target.getError() != null) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Drift Report";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class TargetDrift implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String url;
+        private final List<String> pending;
+        private final List<String> unknown;
+        private final List<String> mismatched;
+        private final String error;
+
+        TargetDrift(String url, List<String> pending, List<String> unknown, List<String> mismatched, String error) {
+            this.url = url;
+            this.pending = pending;
+            this.unknown = unknown;
+            this.mismatched = mismatched;
+            this.error = error;
+        }
+
+        public static TargetDrift failed(String url, String error) {
+            List<String> none = Collections.emptyList();
+            return new TargetDrift(url, none, none, none, error);
+        }
+
+        /**
+         * Compares a database's changelog rows with those the changelog produces.  Checksums are only compared when
+         * both are present and were computed by the same checksum version, since Liquibase upgrades them in place.
+         * {@link ChangeLogReader.Row#isConditional() Conditional} changesets missing from the database aren't pending,
+         * since the update may have skipped them for it.
+         */
+        public static TargetDrift compare(String url, List<ChangeLogReader.Row> expected,
+                                          List<ChangeLogReader.Row> actual) {
+            Map<String, ChangeLogReader.Row> applied = new LinkedHashMap<>();
+            for (ChangeLogReader.Row row : actual) {
+                applied.put(row.getKey(), row);
+            }
+            List<String> pending = new ArrayList<>();
+            List<String> mismatched = new ArrayList<>();
+            for (ChangeLogReader.Row row : expected) {
+                ChangeLogReader.Row appliedRow = applied.remove(row.getKey());
+                if (appliedRow == null) {
+                    if (!row.isConditional()) {
+                        pending.add(row.getKey());
+                    }
+                } else if (checksumsDiffer(row.getChecksum(), appliedRow.getChecksum())) {
+                    mismatched.add(row.getKey());
+                }
+            }
+            return new TargetDrift(url, pending, new ArrayList<>(applied.keySet()), mismatched, null);
+        }
+
+        static boolean checksumsDiffer(String expected, String actual) {
+            if (expected == null || actual == null) {
+                return false;
+            }
+            int expectedVersion = expected.indexOf(':');
+            int actualVersion = actual.indexOf(':');
+            if (expectedVersion < 0 || actualVersion < 0
+                    || !expected.substring(0, expectedVersion).equals(actual.substring(0, actualVersion))) {
+                return false;
+            }
+            return !expected.equals(actual);
+        }
+
+        @Exported
+        public String getUrl() {
+            return url;
+        }
+
+        @Exported
+        public List<String> getPending() {
+            return Collections.unmodifiableList(pending);
+        }
+
+        @Exported
+        public List<String> getUnknown() {
+            return Collections.unmodifiableList(unknown);
+        }
+
+        @Exported
+        public List<String> getMismatched() {
+            return Collections.unmodifiableList(mismatched);
+        }
+
+        /**
+         * Why the database couldn't be read, or null if it was.
+         */
+        @Exported
+        public String getError() {
+            return error;
+        }
+
+        public boolean isDrifted() {
+            return !pending.isEmpty() || !unknown.isEmpty() || !mismatched.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return url + ": UNREADABLE (" + error + ")";
+            }
+            return url + ": " + pending.size() + " pending, " + unknown.size() + " unknown, " + mismatched.size() +
+                    " checksum mismatches";
+        }
+    }
+}
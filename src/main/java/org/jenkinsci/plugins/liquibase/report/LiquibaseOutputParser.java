@@ -0,0 +1,157 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Passes Liquibase's output straight through to the build log while picking changeset results out of it.
+ * <p>
+ * Only the current line is held, in a reused buffer; a line is decoded into a string only once it is known to
+ * describe a changeset, so arbitrarily large logs pass through with no per-line allocation.
+ */
+public class LiquibaseOutputParser extends OutputStream {
+
+    static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    private static final byte[] CHANGESET = bytes("ChangeSet ");
+    private static final byte[] RAN_SUCCESSFULLY = bytes(" ran successfully in ");
+    private static final byte[] MIGRATION_FAILED = bytes("Migration failed for change set ");
+    private static final byte[] ROLLING_BACK = bytes("Rolling Back Changeset:");
+    private static final byte[] ROWS_AFFECTED = bytes(" row(s) affected");
+    private static final byte[] ROW_INSERTED = bytes("New row inserted into ");
+
+    private final OutputStream out;
+    private final ChangeSetResultAction results;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int length;
+    private long pendingRows;
+    private final List<ChangeSetResult> parsed = new ArrayList<>();
+
+    public LiquibaseOutputParser(OutputStream out, ChangeSetResultAction results) {
+        this.out = out;
+        this.results = results;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        append((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        for (int i = off; i < off + len; i++) {
+            append(b[i]);
+        }
+    }
+
+    private void append(byte b) {
+        if (b == '\n') {
+            endOfLine();
+        } else if (length < line.length) {
+            line[length++] = b;
+        }
+    }
+
+    private void endOfLine() {
+        int end = length;
+        if (end > 0 && line[end - 1] == '\r') {
+            end--;
+        }
+        length = 0;
+
+        int index;
+        if ((index = indexOf(MIGRATION_FAILED, 0, end)) >= 0) {
+            int start = index + MIGRATION_FAILED.length;
+            int stop = end > start && line[end - 1] == ':' ? end - 1 : end;
+            record(decode(start, stop), 0, ChangeSetResult.Outcome.FAILED);
+        } else if ((index = indexOf(ROLLING_BACK, 0, end)) >= 0) {
+            record(decode(index + ROLLING_BACK.length, end), 0, ChangeSetResult.Outcome.ROLLED_BACK);
+        } else if ((index = indexOf(CHANGESET, 0, end)) >= 0) {
+            int start = index + CHANGESET.length;
+            int ran = indexOf(RAN_SUCCESSFULLY, start, end);
+            if (ran >= 0) {
+                long duration = parseLong(ran + RAN_SUCCESSFULLY.length, end);
+                record(decode(start, ran), duration, ChangeSetResult.Outcome.EXECUTED);
+            }
+        } else if ((index = indexOf(ROWS_AFFECTED, 0, end)) >= 0) {
+            pendingRows += parseTrailingLong(index);
+        } else if (indexOf(ROW_INSERTED, 0, end) >= 0) {
+            pendingRows++;
+        }
+    }
+
+    private void record(String identifier, long durationMillis, ChangeSetResult.Outcome outcome) {
+        ChangeSetResult result = ChangeSetResult.fromIdentifier(identifier.trim(), durationMillis, outcome, pendingRows);
+        parsed.add(result);
+        results.add(result);
+        pendingRows = 0;
+    }
+
+    /**
+     * @return the changesets parsed from this stream, as opposed to every step of the build.
+     */
+    public List<ChangeSetResult> getParsedChangeSets() {
+        return new ArrayList<>(parsed);
+    }
+
+    private int indexOf(byte[] needle, int from, int to) {
+        outer:
+        for (int i = from; i <= to - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (line[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private long parseLong(int from, int to) {
+        long value = 0;
+        for (int i = from; i < to && line[i] >= '0' && line[i] <= '9'; i++) {
+            value = value * 10 + (line[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parses the number immediately preceding <code>index</code>.
+     */
+    private long parseTrailingLong(int index) {
+        int start = index;
+        while (start > 0 && line[start - 1] >= '0' && line[start - 1] <= '9') {
+            start--;
+        }
+        return parseLong(start, index);
+    }
+
+    private String decode(int from, int to) {
+        return new String(line, from, Math.max(0, to - from), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Parses any unterminated last line.  The underlying stream is flushed but left open.
+     */
+    @Override
+    public void close() throws IOException {
+        if (length > 0) {
+            endOfLine();
+        }
+        out.flush();
+    }
+}
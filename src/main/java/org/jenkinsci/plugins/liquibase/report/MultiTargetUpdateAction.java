@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the outcome and duration of each target of a multi-database update.
+ */
+@ExportedBean
+public class MultiTargetUpdateAction implements Action {
+
+    private final List<TargetResult> results;
+
+    public MultiTargetUpdateAction(List<TargetResult> results) {
+        this.results = new ArrayList<>(results);
+    }
+
+    @Exported
+    public List<TargetResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public int getFailureCount() {
+        int failures = 0;
+        for (TargetResult result : results) {
+            if (!result.isSuccessful()) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Multi-Database Update";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class TargetResult implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String url;
+        private final boolean successful;
+        private final boolean skipped;
+        private final long durationMillis;
+        private final String message;
+
+        TargetResult(String url, boolean successful, boolean skipped, long durationMillis, String message) {
+            this.url = url;
+            this.successful = successful;
+            this.skipped = skipped;
+            this.durationMillis = durationMillis;
+            this.message = message;
+        }
+
+        public static TargetResult successful(String url, long durationMillis) {
+            return new TargetResult(url, true, false, durationMillis, null);
+        }
+
+        /**
+         * A target already brought up to date with the same changelog by an earlier attempt.
+         */
+        public static TargetResult skipped(String url) {
+            return new TargetResult(url, true, true, 0, "already updated by an earlier attempt");
+        }
+
+        public static TargetResult failed(String url, long durationMillis, String message) {
+            return new TargetResult(url, false, false, durationMillis, message);
+        }
+
+        @Exported
+        public String getUrl() {
+            return url;
+        }
+
+        @Exported
+        public boolean isSuccessful() {
+            return successful;
+        }
+
+        @Exported
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        @Exported
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Exported
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            if (skipped) {
+                return url + ": SKIPPED (" + message + ")";
+            }
+            return url + ": " + (successful ? "SUCCESS" : "FAILED (" + message + ")") + " in " + durationMillis + "ms";
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where the time went in each Liquibase step of a build, phase by phase.  Exported through the REST API (e.g.
+ * <code>.../api/json?tree=actions[steps[*,phases[*]]]</code>) so timings can be aggregated across builds.
+ */
+@ExportedBean
+public class PhaseTimingAction implements Action {
+
+    private final List<StepTiming> steps = new ArrayList<>();
+
+    public static PhaseTimingAction forBuild(Run<?, ?> build) {
+        synchronized (build) {
+            PhaseTimingAction action = build.getAction(PhaseTimingAction.class);
+            if (action == null) {
+                action = new PhaseTimingAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    public synchronized void add(String stepName, Map<String, Long> phaseNanos) {
+        List<Phase> phases = new ArrayList<>();
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            phases.add(new Phase(phase.getKey(), phase.getValue() / 1000));
+        }
+        steps.add(new StepTiming(stepName, phases));
+    }
+
+    @Exported
+    public synchronized List<StepTiming> getSteps() {
+        return new ArrayList<>(steps);
+    }
+
+    public synchronized boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Phase Timings";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @ExportedBean(defaultVisibility = 2)
+    public static class StepTiming implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String name;
+        private final List<Phase> phases;
+
+        StepTiming(String name, List<Phase> phases) {
+            this.name = name;
+            this.phases = phases;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        @Exported
+        public List<Phase> getPhases() {
+            return phases;
+        }
+
+        @Exported
+        public long getTotalMicros() {
+            long total = 0;
+            for (Phase phase : phases) {
+                total += phase.getMicros();
+            }
+            return total;
+        }
+    }
+
+    @ExportedBean(defaultVisibility = 3)
+    public static class Phase implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final String name;
+        private final long micros;
+
+        Phase(String name, long micros) {
+            this.name = name;
+            this.micros = micros;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        @Exported
+        public long getMicros() {
+            return micros;
+        }
+
+        public double getMillis() {
+            return micros / 1000d;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the rollback scripts a build archived, one for each update run with rollback precomputation, so that a
+ * later rollback can replay one instead of having Liquibase work the rollback out again.  Also records the tags the
+ * build applied, which is what an update's script rolls the database back to.
+ */
+public class RollbackArtifactAction extends InvisibleAction {
+
+    static final int MAX_BUILDS_SEARCHED = 100;
+
+    private final List<RollbackArtifact> artifacts = new ArrayList<>();
+    private final Map<String, String> tags = new HashMap<>();
+    private int nextIndex;
+
+    public static RollbackArtifactAction forBuild(Run<?, ?> build) {
+        synchronized (build) {
+            RollbackArtifactAction action = build.getAction(RollbackArtifactAction.class);
+            if (action == null) {
+                action = new RollbackArtifactAction();
+                build.addAction(action);
+            }
+            return action;
+        }
+    }
+
+    /**
+     * Finds the most recent rollback script for <code>database</code> in <code>job</code>.  Only the most recent
+     * one can apply, since each update's script assumes nothing was deployed after it.
+     *
+     * @param buildNumber if not null, only that build is searched.
+     * @return the script and the build that archived it, or null if there is none.
+     */
+    public static Match find(Job<?, ?> job, String database, Integer buildNumber) {
+        if (buildNumber != null) {
+            Run<?, ?> build = job.getBuildByNumber(buildNumber);
+            return build == null ? null : findIn(build, database);
+        }
+        Run<?, ?> build = job.getLastBuild();
+        for (int i = 0; build != null && i < MAX_BUILDS_SEARCHED; i++) {
+            Match match = findIn(build, database);
+            if (match != null) {
+                return match;
+            }
+            build = build.getPreviousBuild();
+        }
+        return null;
+    }
+
+    private static Match findIn(Run<?, ?> build, String database) {
+        RollbackArtifactAction action = build.getAction(RollbackArtifactAction.class);
+        RollbackArtifact artifact = action == null ? null : action.getLatest(database);
+        return artifact == null ? null : new Match(build, artifact);
+    }
+
+    /**
+     * The script for <code>database</code> archived last in this build, since it undoes the database's latest state.
+     */
+    public synchronized RollbackArtifact getLatest(String database) {
+        for (int i = artifacts.size() - 1; i >= 0; i--) {
+            RollbackArtifact artifact = artifacts.get(i);
+            if (artifact.getDatabase().equals(database)) {
+                return artifact;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<RollbackArtifact> getArtifacts() {
+        return Collections.unmodifiableList(new ArrayList<>(artifacts));
+    }
+
+    /**
+     * Reserves the directory a new script is archived in.
+     */
+    public synchronized String allocateDirectory() {
+        return "liquibase-rollback/" + nextIndex++;
+    }
+
+    public synchronized void add(RollbackArtifact artifact) {
+        artifacts.add(artifact);
+    }
+
+    /**
+     * The tag this build applied to <code>database</code> since it was last updated, forgetting it: once updated, the
+     * database no longer has the tag's state.
+     */
+    public synchronized String takeTag(String database) {
+        return tags.remove(database);
+    }
+
+    public synchronized void recordTag(String database, String tag) {
+        tags.put(database, tag);
+    }
+
+    public static class RollbackArtifact {
+        private final String database;
+        private final String tag;
+        private final String marker;
+        private final String scriptPath;
+        private final String planPath;
+        private final int changeSetCount;
+
+        public RollbackArtifact(String database, String tag, String marker, String scriptPath, String planPath,
+                                int changeSetCount) {
+            this.database = database;
+            this.tag = tag;
+            this.marker = marker;
+            this.scriptPath = scriptPath;
+            this.planPath = planPath;
+            this.changeSetCount = changeSetCount;
+        }
+
+        /**
+         * The database the script applies to, as identified by
+         * {@link org.jenkinsci.plugins.liquibase.common.JdbcUrls#identify(String)}.
+         */
+        public String getDatabase() {
+            return database;
+        }
+
+        /**
+         * The tag the database had when the update ran, and so is back at once the script has run; null if the
+         * build hadn't tagged it.
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * The database's changelog marker right after the update; the script only applies while it's unchanged.
+         */
+        public String getMarker() {
+            return marker;
+        }
+
+        public String getScriptPath() {
+            return scriptPath;
+        }
+
+        public String getPlanPath() {
+            return planPath;
+        }
+
+        public int getChangeSetCount() {
+            return changeSetCount;
+        }
+    }
+
+    public static class Match {
+        private final Run<?, ?> build;
+        private final RollbackArtifact artifact;
+
+        Match(Run<?, ?> build, RollbackArtifact artifact) {
+            this.build = build;
+            this.artifact = artifact;
+        }
+
+        public Run<?, ?> getBuild() {
+            return build;
+        }
+
+        public RollbackArtifact getArtifact() {
+            return artifact;
+        }
+    }
+}
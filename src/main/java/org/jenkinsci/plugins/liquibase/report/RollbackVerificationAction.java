@@ -0,0 +1,168 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.Action;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a rollback verification: which ranges of the changelog were verified in which sandbox, and which
+ * changesets failed to roll back.
+ */
+@ExportedBean
+public class RollbackVerificationAction implements Action {
+
+    private final int changeSetCount;
+    private final List<RangeResult> ranges;
+    private final List<ChangeSetFailure> failures;
+
+    public RollbackVerificationAction(int changeSetCount, List<RangeResult> ranges, List<ChangeSetFailure> failures) {
+        this.changeSetCount = changeSetCount;
+        this.ranges = new ArrayList<>(ranges);
+        this.failures = new ArrayList<>(failures);
+    }
+
+    @Exported
+    public int getChangeSetCount() {
+        return changeSetCount;
+    }
+
+    @Exported
+    public List<RangeResult> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    @Exported
+    public List<ChangeSetFailure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    public int getUnverifiedCount() {
+        int unverified = 0;
+        for (RangeResult range : ranges) {
+            if (range.getOutcome() == RangeOutcome.NOT_VERIFIED) {
+                unverified += range.getCount();
+            }
+        }
+        return unverified;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Liquibase Rollback Verification";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    public enum RangeOutcome {
+        VERIFIED, FAILED, NOT_VERIFIED
+    }
+
+    /**
+     * A run of consecutive changesets, numbered from 1 in changelog order, checked together in one sandbox.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class RangeResult implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final int sandbox;
+        private final int first;
+        private final int count;
+        private final RangeOutcome outcome;
+        private final long durationMillis;
+
+        public RangeResult(int sandbox, int first, int count, RangeOutcome outcome, long durationMillis) {
+            this.sandbox = sandbox;
+            this.first = first;
+            this.count = count;
+            this.outcome = outcome;
+            this.durationMillis = durationMillis;
+        }
+
+        @Exported
+        public int getSandbox() {
+            return sandbox;
+        }
+
+        @Exported
+        public int getFirst() {
+            return first;
+        }
+
+        @Exported
+        public int getLast() {
+            return first + count - 1;
+        }
+
+        @Exported
+        public int getCount() {
+            return count;
+        }
+
+        @Exported
+        public RangeOutcome getOutcome() {
+            return outcome;
+        }
+
+        @Exported
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Changesets " + first + "-" + getLast() + " (sandbox " + sandbox + "): " + outcome + " in " +
+                    durationMillis + "ms";
+        }
+    }
+
+    /**
+     * A changeset that could be applied but not rolled back, or not applied again after its rollback.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class ChangeSetFailure implements Serializable {
+        private static final long serialVersionUID = 1;
+
+        private final int position;
+        private final String changeSet;
+        private final String reason;
+
+        public ChangeSetFailure(int position, String changeSet, String reason) {
+            this.position = position;
+            this.changeSet = changeSet;
+            this.reason = reason;
+        }
+
+        @Exported
+        public int getPosition() {
+            return position;
+        }
+
+        @Exported
+        public String getChangeSet() {
+            return changeSet;
+        }
+
+        @Exported
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + position + " " + changeSet + ": " + reason;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of every tag applied by a Liquibase tag step, across all jobs, kept in Jenkins' home so rollback targets can
+ * be looked up without loading old builds or connecting to the database.  Entries are keyed by database and tag;
+ * tagging a database with a tag it already had replaces the entry.  Only the most recent tags are kept.
+ */
+public class TagIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(TagIndex.class);
+
+    static final String FILENAME = "liquibase-tag-index.xml";
+    static final int MAX_ENTRIES = 10000;
+
+    private static TagIndex instance;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private transient File file;
+
+    public static synchronized TagIndex get() {
+        if (instance == null) {
+            instance = load(new File(Jenkins.get().getRootDir(), FILENAME));
+        }
+        return instance;
+    }
+
+    static TagIndex load(File file) {
+        XmlFile xmlFile = new XmlFile(Jenkins.XSTREAM2, file);
+        TagIndex index = null;
+        if (xmlFile.exists()) {
+            try {
+                index = (TagIndex) xmlFile.read();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to read " + file + "; starting a new tag index", e);
+            }
+        }
+        if (index == null) {
+            index = new TagIndex();
+        }
+        index.file = file;
+        return index;
+    }
+
+    /**
+     * Adds <code>entry</code> and saves the index.
+     */
+    public synchronized void record(Entry entry) throws IOException {
+        String key = entry.getDatabase() + "\n" + entry.getTag();
+        entries.remove(key);
+        entries.put(key, entry);
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > MAX_ENTRIES && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        if (file != null) {
+            new XmlFile(Jenkins.XSTREAM2, file).write(this);
+        }
+    }
+
+    /**
+     * @param database the database as identified by
+     *                 {@link org.jenkinsci.plugins.liquibase.common.JdbcUrls#identify(String)}, or null for any.
+     * @return the most recent entry for <code>tag</code>, or null if the tag isn't known.
+     */
+    public synchronized Entry find(String database, String tag) {
+        for (Entry entry : getEntries(database)) {
+            if (entry.getTag().equals(tag)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param database as for {@link #find}.
+     * @return the entries for <code>database</code>, most recent first.
+     */
+    public synchronized List<Entry> getEntries(String database) {
+        List<Entry> matching = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (database == null || entry.getDatabase().equals(database)) {
+                matching.add(entry);
+            }
+        }
+        Collections.reverse(matching);
+        return matching;
+    }
+
+    public static class Entry {
+        private final String tag;
+        private final String database;
+        private final String job;
+        private final int buildNumber;
+        private final String changeLogHash;
+        private final long timestamp;
+
+        public Entry(String tag, String database, String job, int buildNumber, String changeLogHash,
+                     long timestamp) {
+            this.tag = tag;
+            this.database = database;
+            this.job = job;
+            this.buildNumber = buildNumber;
+            this.changeLogHash = changeLogHash;
+            this.timestamp = timestamp;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public String getDatabase() {
+            return database;
+        }
+
+        /**
+         * Full name of the job whose build applied the tag.
+         */
+        public String getJob() {
+            return job;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        /**
+         * Fingerprint of the changelog when the tag was applied, or null if it couldn't be read.
+         */
+        public String getChangeLogHash() {
+            return changeLogHash;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Result;
+import hudson.model.Run;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers which targets of each multi-database update step completed, and with which deployment fingerprint, so a
+ * retried step or a rerun of a failed build can skip them without connecting to the database.  A target only counts
+ * as completed for the step that updated it and for an identical deployment: same changelog content, contexts,
+ * labels, changelog parameters, defaults file and credentials.
+ */
+public class UpdateCheckpointAction extends InvisibleAction {
+
+    private final Map<String, String> completedTargets = new HashMap<>();
+
+    /**
+     * Returns the checkpoint attached to <code>build</code>, attaching a new one if needed.  When
+     * <code>resumeFromPrevious</code> is set and the previous build did not succeed, its completed targets are
+     * carried over.
+     */
+    public static UpdateCheckpointAction forBuild(Run<?, ?> build, boolean resumeFromPrevious) {
+        synchronized (build) {
+            UpdateCheckpointAction checkpoint = build.getAction(UpdateCheckpointAction.class);
+            if (checkpoint == null) {
+                checkpoint = new UpdateCheckpointAction();
+                if (resumeFromPrevious) {
+                    Run<?, ?> previous = build.getPreviousCompletedBuild();
+                    UpdateCheckpointAction previousCheckpoint =
+                            previous == null ? null : previous.getAction(UpdateCheckpointAction.class);
+                    if (previousCheckpoint != null && previous.getResult() != Result.SUCCESS) {
+                        checkpoint.completedTargets.putAll(previousCheckpoint.getCompletedTargets());
+                    }
+                }
+                build.addAction(checkpoint);
+            }
+            return checkpoint;
+        }
+    }
+
+    public synchronized boolean isCompleted(String step, String target, String deploymentFingerprint) {
+        return deploymentFingerprint != null && deploymentFingerprint.equals(completedTargets.get(key(step, target)));
+    }
+
+    public synchronized void markCompleted(String step, String target, String deploymentFingerprint) {
+        if (deploymentFingerprint != null) {
+            completedTargets.put(key(step, target), deploymentFingerprint);
+        }
+    }
+
+    private static String key(String step, String target) {
+        return step + ' ' + target;
+    }
+
+    public synchronized Map<String, String> getCompletedTargets() {
+        return new HashMap<>(completedTargets);
+    }
+}
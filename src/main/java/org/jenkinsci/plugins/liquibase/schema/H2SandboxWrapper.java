@@ -0,0 +1,238 @@
+package org.jenkinsci.plugins.liquibase.schema;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildWrapperDescriptor;
+import jenkins.model.Jenkins;
+import jenkins.tasks.SimpleBuildWrapper;
+import org.jenkinsci.plugins.liquibase.builder.PrepareSchemaBuilder;
+import org.jenkinsci.plugins.liquibase.common.PropertiesAssembler;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Properties;
+
+/**
+ * Gives the build an H2 database already migrated to its changelog, leased from the node's {@link SandboxPool}, and
+ * exposes its JDBC URL in an environment variable.  The sandbox is discarded when the build finishes, and the pool
+ * is topped up again in the background from the cached {@link SchemaImageCache schema image}, so builds don't wait
+ * for a database to be copied or migrated unless the changelog has just changed.
+ */
+public class H2SandboxWrapper extends SimpleBuildWrapper {
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+    public static final String DEFAULT_VARIABLE_NAME = "LIQUIBASE_SANDBOX_URL";
+
+    private String installationName;
+    private String changeLogFile;
+    private String contexts;
+    private String labels;
+    private String changeLogParameters;
+    private String resourceDirectories;
+    private String poolSize;
+    private String variableName;
+
+    @DataBoundConstructor
+    public H2SandboxWrapper() {
+        super();
+    }
+
+    @Override
+    public void setUp(Context context, Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener,
+                      EnvVars initialEnvironment) throws IOException, InterruptedException {
+        PrintStream log = listener.getLogger();
+        PrepareSchemaBuilder preparer = createPreparer();
+        Properties configProperties =
+                PropertiesAssembler.createLiquibaseProperties(preparer, build, initialEnvironment, workspace);
+        PrepareSchemaBuilder.ImageKey imageKey =
+                preparer.resolveImageKey(workspace, initialEnvironment, configProperties);
+        if (imageKey == null) {
+            throw new AbortException("An H2 sandbox needs a changelog file.");
+        }
+
+        FilePath imageRoot = PrepareSchemaBuilder.getCacheRoot(workspace);
+        FilePath pool = getPoolDirectory(imageRoot, imageKey);
+        int size = resolvePoolSize(initialEnvironment);
+        String leased = SandboxPool.lease(pool);
+        FilePath sandbox;
+        if (leased != null) {
+            sandbox = new FilePath(workspace.getChannel(), leased);
+            log.println("Leased pre-migrated H2 sandbox " + sandbox.getName() + ".");
+        } else {
+            sandbox = SandboxPool.newLeasePath(pool);
+            log.println("No pre-migrated H2 sandbox is ready; preparing one.");
+            if (!preparer.prepareDatabase(build, workspace, launcher, listener, initialEnvironment, imageKey,
+                    sandbox)) {
+                throw new AbortException("Liquibase installation could not be used.");
+            }
+        }
+        if (size > 0) {
+            SandboxPool.replenishInBackground(pool, imageRoot, imageKey.getKey(), size);
+        }
+
+        context.env(getVariableName(), H2Url.fileUrl(sandbox.getRemote()));
+        context.setDisposer(new SandboxDisposer(sandbox.getRemote(), pool.getRemote(), imageRoot.getRemote(),
+                imageKey.getKey(), size));
+    }
+
+    private PrepareSchemaBuilder createPreparer() {
+        PrepareSchemaBuilder preparer = new PrepareSchemaBuilder();
+        preparer.setInstallationName(installationName);
+        preparer.setChangeLogFile(changeLogFile);
+        preparer.setContexts(contexts);
+        preparer.setLabels(labels);
+        preparer.setChangeLogParameters(changeLogParameters);
+        preparer.setResourceDirectories(resourceDirectories);
+        return preparer;
+    }
+
+    /**
+     * Sandboxes are pooled per image, next to the image cache on the node.
+     */
+    static FilePath getPoolDirectory(FilePath imageRoot, PrepareSchemaBuilder.ImageKey imageKey) {
+        return imageRoot.getParent().child(SandboxPool.POOL_DIRECTORY)
+                .child(imageKey.getLineage()).child(imageKey.getKey());
+    }
+
+    private int resolvePoolSize(EnvVars environment) throws AbortException {
+        String resolved = Util.fixEmptyAndTrim(Util.replaceMacro(poolSize, environment));
+        if (resolved == null) {
+            return DEFAULT_POOL_SIZE;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(resolved));
+        } catch (NumberFormatException e) {
+            throw new AbortException("Invalid value '" + poolSize + "' for H2 sandbox pool size.");
+        }
+    }
+
+    public String getInstallationName() {
+        return installationName;
+    }
+
+    @DataBoundSetter
+    public void setInstallationName(String installationName) {
+        this.installationName = installationName;
+    }
+
+    public String getChangeLogFile() {
+        return changeLogFile;
+    }
+
+    @DataBoundSetter
+    public void setChangeLogFile(String changeLogFile) {
+        this.changeLogFile = changeLogFile;
+    }
+
+    public String getContexts() {
+        return contexts;
+    }
+
+    @DataBoundSetter
+    public void setContexts(String contexts) {
+        this.contexts = contexts;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    @DataBoundSetter
+    public void setLabels(String labels) {
+        this.labels = labels;
+    }
+
+    public String getChangeLogParameters() {
+        return changeLogParameters;
+    }
+
+    @DataBoundSetter
+    public void setChangeLogParameters(String changeLogParameters) {
+        this.changeLogParameters = changeLogParameters;
+    }
+
+    public String getResourceDirectories() {
+        return resourceDirectories;
+    }
+
+    @DataBoundSetter
+    public void setResourceDirectories(String resourceDirectories) {
+        this.resourceDirectories = resourceDirectories;
+    }
+
+    public String getPoolSize() {
+        return poolSize;
+    }
+
+    @DataBoundSetter
+    public void setPoolSize(String poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public String getVariableName() {
+        return Util.fixEmptyAndTrim(variableName) == null ? DEFAULT_VARIABLE_NAME : variableName.trim();
+    }
+
+    @DataBoundSetter
+    public void setVariableName(String variableName) {
+        this.variableName = variableName;
+    }
+
+    private static class SandboxDisposer extends Disposer {
+        private static final long serialVersionUID = 1;
+
+        private final String sandbox;
+        private final String pool;
+        private final String imageRoot;
+        private final String key;
+        private final int size;
+
+        SandboxDisposer(String sandbox, String pool, String imageRoot, String key, int size) {
+            this.sandbox = sandbox;
+            this.pool = pool;
+            this.imageRoot = imageRoot;
+            this.key = key;
+            this.size = size;
+        }
+
+        @Override
+        public void tearDown(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener)
+                throws IOException, InterruptedException {
+            SandboxPool.release(new FilePath(workspace.getChannel(), sandbox));
+            if (size > 0) {
+                SandboxPool.replenishInBackground(new FilePath(workspace.getChannel(), pool),
+                        new FilePath(workspace.getChannel(), imageRoot), key, size);
+            }
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends BuildWrapperDescriptor {
+
+        @Override
+        public boolean isApplicable(AbstractProject<?, ?> item) {
+            return true;
+        }
+
+        @Nonnull
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: H2 Sandbox Database";
+        }
+
+        public LiquibaseInstallation[] getInstallations() {
+            return Jenkins.get().getDescriptorByType(LiquibaseInstallation.DescriptorImpl.class).getInstallations();
+        }
+    }
+}
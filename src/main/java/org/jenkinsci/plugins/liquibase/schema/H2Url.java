@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.liquibase.schema;
+
+import java.io.File;
+
+/**
+ * The parts of an H2 JDBC URL that point at a database file on disk.
+ */
+public class H2Url {
+
+    private static final String PREFIX = "jdbc:h2:";
+    private static final String FILE_PREFIX = "file:";
+    private static final String[] NOT_ON_DISK = {"mem:", "tcp:", "ssl:", "zip:", "nio", "split:", "async:"};
+
+    /**
+     * The file extension of an H2 (MVStore) database.
+     */
+    public static final String DATABASE_SUFFIX = ".mv.db";
+
+    private final String path;
+    private final String parameters;
+
+    private H2Url(String path, String parameters) {
+        this.path = path;
+        this.parameters = parameters;
+    }
+
+    /**
+     * @return the parsed URL, or null if <code>url</code> isn't an H2 database held in a local file.
+     */
+    public static H2Url parse(String url) {
+        if (url == null || !url.trim().regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            return null;
+        }
+        String rest = url.trim().substring(PREFIX.length());
+        if (rest.regionMatches(true, 0, FILE_PREFIX, 0, FILE_PREFIX.length())) {
+            rest = rest.substring(FILE_PREFIX.length());
+        } else {
+            for (String prefix : NOT_ON_DISK) {
+                if (rest.regionMatches(true, 0, prefix, 0, prefix.length())) {
+                    return null;
+                }
+            }
+        }
+        int separator = rest.indexOf(';');
+        String path = separator < 0 ? rest : rest.substring(0, separator);
+        String parameters = separator < 0 ? "" : rest.substring(separator);
+        if (path.isEmpty() || path.startsWith("~")) {
+            return null;
+        }
+        return new H2Url(path, parameters);
+    }
+
+    /**
+     * The URL of the H2 database at <code>databasePath</code>, given without H2's extension.
+     */
+    public static String fileUrl(String databasePath) {
+        return PREFIX + FILE_PREFIX + databasePath;
+    }
+
+    /**
+     * The database path as given, without the <code>.mv.db</code> extension H2 adds.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isAbsolute() {
+        return new File(path).isAbsolute() || path.startsWith("/");
+    }
+
+    /**
+     * The same URL, pointing at <code>databasePath</code> instead.
+     */
+    public String withPath(String databasePath) {
+        return PREFIX + FILE_PREFIX + databasePath + parameters;
+    }
+}
@@ -0,0 +1,221 @@
+package org.jenkinsci.plugins.liquibase.schema;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A node's pool of H2 sandbox databases already migrated to one version of a changelog, ready to be leased by a
+ * build.
+ * <p>
+ * Ready sandboxes are database files in the pool's <code>ready</code> directory; a build leases one by renaming it
+ * into <code>leased</code>, which only one build can do, and deletes it when done.  The pool is topped up in the
+ * background on the node by copying the changelog's {@link SchemaImageCache schema image}.  Ready sandboxes of other
+ * versions of the same changelog, and leases abandoned by builds that never finished, are cleared out when it is.
+ * Other versions' leases are left alone until abandoned, since other jobs or branches may still be using them.
+ */
+public class SandboxPool {
+
+    public static final String POOL_DIRECTORY = "liquibase-sandboxes";
+
+    static final String READY = "ready";
+    static final String LEASED = "leased";
+    static final String STAGING = "staging";
+    static final long ABANDONED_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final Logger LOG = LoggerFactory.getLogger(SandboxPool.class);
+    private static final ConcurrentMap<String, ReentrantLock> REPLENISHING = new ConcurrentHashMap<>();
+
+    private final File directory;
+
+    public SandboxPool(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the leased sandbox's path, without H2's extension, or null if none is ready.
+     */
+    public static String lease(FilePath poolDirectory) throws IOException, InterruptedException {
+        return poolDirectory.act(new LeaseCallable());
+    }
+
+    /**
+     * A path, without H2's extension, for a sandbox created for a lease because none was ready.
+     */
+    public static FilePath newLeasePath(FilePath poolDirectory) {
+        return poolDirectory.child(LEASED).child(UUID.randomUUID().toString());
+    }
+
+    public static void release(FilePath leasedPath) throws IOException, InterruptedException {
+        leasedPath.act(new ReleaseCallable());
+    }
+
+    /**
+     * Starts topping the pool up to <code>size</code> sandboxes on the node, without waiting for it.
+     */
+    public static void replenishInBackground(FilePath poolDirectory, FilePath imageRoot, String key, int size)
+            throws IOException, InterruptedException {
+        poolDirectory.act(new ReplenishCallable(imageRoot.getRemote(), key, size));
+    }
+
+    public File lease() throws IOException {
+        File leasedDirectory = new File(directory, LEASED);
+        FileUtils.forceMkdir(leasedDirectory);
+        for (File candidate : listDatabases(new File(directory, READY))) {
+            File leased = new File(leasedDirectory, UUID.randomUUID() + H2Url.DATABASE_SUFFIX);
+            try {
+                Files.move(candidate.toPath(), leased.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                // leases are judged abandoned by age, which must count from now rather than from when it was copied
+                leased.setLastModified(System.currentTimeMillis());
+                return pathOf(leased);
+            } catch (NoSuchFileException e) {
+                // leased by another build in the meantime
+            }
+        }
+        return null;
+    }
+
+    public static void release(File leasedPath) throws IOException {
+        Files.deleteIfExists(new File(leasedPath.getPath() + H2Url.DATABASE_SUFFIX).toPath());
+        Files.deleteIfExists(new File(leasedPath.getPath() + ".trace.db").toPath());
+    }
+
+    /**
+     * Tops the pool up to <code>size</code> ready sandboxes from the image for <code>key</code>.  Does nothing if
+     * the pool is already being topped up.
+     *
+     * @return the number of sandboxes added.
+     */
+    public int replenish(SchemaImageCache images, String key, int size) throws IOException {
+        ReentrantLock lock = REPLENISHING.computeIfAbsent(directory.getAbsolutePath(), k -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            return 0;
+        }
+        try {
+            clearOtherVersions();
+            clearAbandonedLeases(directory);
+
+            File ready = new File(directory, READY);
+            File staging = new File(directory, STAGING);
+            FileUtils.forceMkdir(ready);
+            FileUtils.forceMkdir(staging);
+            int added = 0;
+            for (int i = listDatabases(ready).length; i < size; i++) {
+                String name = UUID.randomUUID().toString();
+                File stagingPath = new File(staging, name);
+                if (images.restore(key, null, stagingPath) != SchemaImageCache.Match.EXACT) {
+                    break;
+                }
+                Files.move(new File(stagingPath.getPath() + H2Url.DATABASE_SUFFIX).toPath(),
+                        new File(ready, name + H2Url.DATABASE_SUFFIX).toPath(), StandardCopyOption.ATOMIC_MOVE);
+                added++;
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clearOtherVersions() throws IOException {
+        File[] siblings = directory.getParentFile() == null ? null : directory.getParentFile().listFiles();
+        if (siblings == null) {
+            return;
+        }
+        for (File sibling : siblings) {
+            if (sibling.isDirectory() && !sibling.equals(directory)) {
+                FileUtils.deleteQuietly(new File(sibling, READY));
+                clearAbandonedLeases(sibling);
+            }
+        }
+    }
+
+    private static void clearAbandonedLeases(File poolDirectory) throws IOException {
+        long abandonedBefore = System.currentTimeMillis() - ABANDONED_MILLIS;
+        for (File leased : listDatabases(new File(poolDirectory, LEASED))) {
+            if (leased.lastModified() < abandonedBefore) {
+                release(pathOf(leased));
+            }
+        }
+    }
+
+    private static File[] listDatabases(File directory) {
+        File[] databases = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(H2Url.DATABASE_SUFFIX);
+            }
+        });
+        return databases == null ? new File[0] : databases;
+    }
+
+    private static File pathOf(File database) {
+        String name = database.getPath();
+        return new File(name.substring(0, name.length() - H2Url.DATABASE_SUFFIX.length()));
+    }
+
+    private static class LeaseCallable extends MasterToSlaveFileCallable<String> {
+        private static final long serialVersionUID = 1;
+
+        @Override
+        public String invoke(File directory, VirtualChannel channel) throws IOException {
+            File leased = new SandboxPool(directory).lease();
+            return leased == null ? null : leased.getPath();
+        }
+    }
+
+    private static class ReleaseCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+
+        @Override
+        public Void invoke(File leasedPath, VirtualChannel channel) throws IOException {
+            release(leasedPath);
+            return null;
+        }
+    }
+
+    private static class ReplenishCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+
+        private final String imageRoot;
+        private final String key;
+        private final int size;
+
+        ReplenishCallable(String imageRoot, String key, int size) {
+            this.imageRoot = imageRoot;
+            this.key = key;
+            this.size = size;
+        }
+
+        @Override
+        public Void invoke(final File directory, VirtualChannel channel) {
+            Thread replenisher = new Thread("Liquibase sandbox pool replenisher for " + directory) {
+                @Override
+                public void run() {
+                    try {
+                        new SandboxPool(directory).replenish(new SchemaImageCache(new File(imageRoot)), key, size);
+                    } catch (IOException e) {
+                        LOG.warn("Unable to replenish Liquibase sandbox pool " + directory, e);
+                    }
+                }
+            };
+            replenisher.setDaemon(true);
+            replenisher.start();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.jenkinsci.plugins.liquibase.schema;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Node-level cache of H2 database images, each the result of applying a changelog to an empty database, stored under
+ * a key derived from the changelog's content.
+ * <p>
+ * Images also record a lineage, which identifies the changelog independent of its content, so that when the
+ * changelog has changed the most recently used image of the same lineage can be restored and only the changesets
+ * added since applied.  Images are evicted least recently used first once the cache exceeds its disk budget; images
+ * used in the last few minutes are never evicted, as a step may still be copying them.
+ */
+public class SchemaImageCache {
+
+    public static final String CACHE_DIRECTORY = "caches/liquibase-schema-images";
+
+    static final String LINEAGE_SUFFIX = ".lineage";
+    static final String LOCK_FILENAME = "cache.lock";
+    static final long IN_USE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final ConcurrentMap<String, ReentrantLock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    public enum Match {
+        /**
+         * An image of exactly this changelog was restored.
+         */
+        EXACT,
+        /**
+         * An image of an earlier version of this changelog was restored.
+         */
+        BASE,
+        /**
+         * No image was found; the database was removed so that it starts empty.
+         */
+        NONE
+    }
+
+    private final File root;
+
+    public SchemaImageCache(File root) {
+        this.root = root;
+    }
+
+    public static Match restore(FilePath cacheRoot, String key, String lineage, FilePath databasePath)
+            throws IOException, InterruptedException {
+        return cacheRoot.act(new RestoreCallable(key, lineage, databasePath.getRemote()));
+    }
+
+    public static void store(FilePath cacheRoot, String key, String lineage, FilePath databasePath, long budgetBytes)
+            throws IOException, InterruptedException {
+        cacheRoot.act(new StoreCallable(key, lineage, databasePath.getRemote(), budgetBytes));
+    }
+
+    /**
+     * Replaces the database at <code>databasePath</code> (without H2's extension) with the image for
+     * <code>key</code>, or else the most recently used image of <code>lineage</code>, if one is given.
+     */
+    public Match restore(final String key, final String lineage, File databasePath) throws IOException {
+        File database = new File(databasePath.getPath() + H2Url.DATABASE_SUFFIX);
+        Files.deleteIfExists(database.toPath());
+        Files.deleteIfExists(new File(databasePath.getPath() + ".trace.db").toPath());
+        FileUtils.forceMkdir(database.getParentFile());
+
+        if (!root.isDirectory()) {
+            return Match.NONE;
+        }
+        final Match[] match = new Match[1];
+        File image = underLock(new Locked<File>() {
+            @Override
+            public File run() throws IOException {
+                File found = imageFile(key);
+                match[0] = Match.EXACT;
+                if (!found.isFile()) {
+                    found = findLatest(lineage);
+                    match[0] = Match.BASE;
+                }
+                if (found != null) {
+                    // marks the image as used, which also keeps it from eviction while it is copied
+                    found.setLastModified(System.currentTimeMillis());
+                }
+                return found;
+            }
+        });
+        if (image == null) {
+            return Match.NONE;
+        }
+
+        File partial = new File(database.getPath() + ".part-" + UUID.randomUUID());
+        try {
+            Files.copy(image.toPath(), partial.toPath());
+            Files.move(partial.toPath(), database.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial.toPath());
+        }
+        return match[0];
+    }
+
+    /**
+     * Stores the database at <code>databasePath</code> as the image for <code>key</code>, then evicts images until
+     * the cache is within <code>budgetBytes</code>.
+     */
+    public void store(final String key, final String lineage, File databasePath, final long budgetBytes)
+            throws IOException {
+        FileUtils.forceMkdir(root);
+        File database = new File(databasePath.getPath() + H2Url.DATABASE_SUFFIX);
+        final File partial = new File(root, key + ".part-" + UUID.randomUUID());
+        try {
+            Files.copy(database.toPath(), partial.toPath());
+            underLock(new Locked<Void>() {
+                @Override
+                public Void run() throws IOException {
+                    Files.move(partial.toPath(), imageFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    FileUtils.write(new File(root, key + LINEAGE_SUFFIX), lineage, StandardCharsets.UTF_8);
+                    evict(budgetBytes, key);
+                    return null;
+                }
+            });
+        } finally {
+            Files.deleteIfExists(partial.toPath());
+        }
+    }
+
+    /**
+     * Deletes least recently used images, other than <code>keep</code> and those in use, until the cache is within
+     * <code>budgetBytes</code>.
+     */
+    void evict(long budgetBytes, String keep) throws IOException {
+        File[] images = listImages();
+        long total = 0;
+        for (File image : images) {
+            total += image.length();
+        }
+        Arrays.sort(images, Comparator.comparingLong(File::lastModified));
+        long inUseSince = System.currentTimeMillis() - IN_USE_MILLIS;
+        for (File image : images) {
+            if (total <= budgetBytes) {
+                break;
+            }
+            String imageKey = keyOf(image);
+            if (imageKey.equals(keep) || image.lastModified() > inUseSince) {
+                continue;
+            }
+            long length = image.length();
+            Files.deleteIfExists(image.toPath());
+            Files.deleteIfExists(new File(root, imageKey + LINEAGE_SUFFIX).toPath());
+            total -= length;
+        }
+    }
+
+    private File findLatest(String lineage) throws IOException {
+        if (lineage == null) {
+            return null;
+        }
+        File latest = null;
+        for (File image : listImages()) {
+            File lineageFile = new File(root, keyOf(image) + LINEAGE_SUFFIX);
+            if (!lineageFile.isFile()
+                    || !lineage.equals(FileUtils.readFileToString(lineageFile, StandardCharsets.UTF_8))) {
+                continue;
+            }
+            if (latest == null || image.lastModified() > latest.lastModified()) {
+                latest = image;
+            }
+        }
+        return latest;
+    }
+
+    private File[] listImages() {
+        File[] images = root.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(H2Url.DATABASE_SUFFIX);
+            }
+        });
+        return images == null ? new File[0] : images;
+    }
+
+    private File imageFile(String key) {
+        return new File(root, key + H2Url.DATABASE_SUFFIX);
+    }
+
+    private static String keyOf(File image) {
+        String name = image.getName();
+        return name.substring(0, name.length() - H2Url.DATABASE_SUFFIX.length());
+    }
+
+    List<String> getKeys() {
+        List<String> keys = new ArrayList<>();
+        for (File image : listImages()) {
+            keys.add(keyOf(image));
+        }
+        return keys;
+    }
+
+    /**
+     * Holds both an in-JVM lock and an OS file lock on the cache, so that agents sharing a cache directory don't
+     * evict each other's images mid-store.
+     */
+    private <T> T underLock(Locked<T> action) throws IOException {
+        ReentrantLock processLock = lockFor(root);
+        processLock.lock();
+        Path lockFile = new File(root, LOCK_FILENAME).toPath();
+        try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = lockChannel.lock()) {
+            return action.run();
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    private static ReentrantLock lockFor(File root) {
+        return PROCESS_LOCKS.computeIfAbsent(root.getAbsolutePath(), k -> new ReentrantLock());
+    }
+
+    private interface Locked<T> {
+        T run() throws IOException;
+    }
+
+    private static class RestoreCallable extends MasterToSlaveFileCallable<Match> {
+        private static final long serialVersionUID = 1;
+
+        private final String key;
+        private final String lineage;
+        private final String databasePath;
+
+        RestoreCallable(String key, String lineage, String databasePath) {
+            this.key = key;
+            this.lineage = lineage;
+            this.databasePath = databasePath;
+        }
+
+        @Override
+        public Match invoke(File root, VirtualChannel channel) throws IOException {
+            return new SchemaImageCache(root).restore(key, lineage, new File(databasePath));
+        }
+    }
+
+    private static class StoreCallable extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1;
+
+        private final String key;
+        private final String lineage;
+        private final String databasePath;
+        private final long budgetBytes;
+
+        StoreCallable(String key, String lineage, String databasePath, long budgetBytes) {
+            this.key = key;
+            this.lineage = lineage;
+            this.databasePath = databasePath;
+            this.budgetBytes = budgetBytes;
+        }
+
+        @Override
+        public Void invoke(File root, VirtualChannel channel) throws IOException {
+            new SchemaImageCache(root).store(key, lineage, new File(databasePath), budgetBytes);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import com.google.common.collect.ImmutableSet;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.Set;
+
+/**
+ * Base for the pipeline steps running a Liquibase command asynchronously.  Each step holds the configuration shared
+ * by all Liquibase builders and creates the builder it corresponds to, which composes the command line.
+ */
+public abstract class AbstractLiquibaseStep extends Step {
+
+    private String installationName;
+    private String changeLogFile;
+    private String url;
+    private String credentialsId;
+    private String contexts;
+    private String labels;
+    private String liquibasePropertiesPath;
+    private String changeLogParameters;
+    private String resourceDirectories;
+
+    /**
+     * Creates the builder for this step's command, with the step-specific settings applied.
+     */
+    protected abstract AbstractLiquibaseBuilder createCommandBuilder();
+
+    AbstractLiquibaseBuilder createBuilder() {
+        AbstractLiquibaseBuilder builder = createCommandBuilder();
+        builder.setInstallationName(installationName);
+        builder.setChangeLogFile(changeLogFile);
+        builder.setUrl(url);
+        builder.setCredentialsId(credentialsId);
+        builder.setContexts(contexts);
+        builder.setLabels(labels);
+        builder.setLiquibasePropertiesPath(liquibasePropertiesPath);
+        builder.setChangeLogParameters(changeLogParameters);
+        builder.setResourceDirectories(resourceDirectories);
+        return builder;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new LiquibaseStepExecution(this, context);
+    }
+
+    public String getInstallationName() {
+        return installationName;
+    }
+
+    @DataBoundSetter
+    public void setInstallationName(String installationName) {
+        this.installationName = installationName;
+    }
+
+    public String getChangeLogFile() {
+        return changeLogFile;
+    }
+
+    @DataBoundSetter
+    public void setChangeLogFile(String changeLogFile) {
+        this.changeLogFile = changeLogFile;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @DataBoundSetter
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getCredentialsId() {
+        return credentialsId;
+    }
+
+    @DataBoundSetter
+    public void setCredentialsId(String credentialsId) {
+        this.credentialsId = credentialsId;
+    }
+
+    public String getContexts() {
+        return contexts;
+    }
+
+    @DataBoundSetter
+    public void setContexts(String contexts) {
+        this.contexts = contexts;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    @DataBoundSetter
+    public void setLabels(String labels) {
+        this.labels = labels;
+    }
+
+    public String getLiquibasePropertiesPath() {
+        return liquibasePropertiesPath;
+    }
+
+    @DataBoundSetter
+    public void setLiquibasePropertiesPath(String liquibasePropertiesPath) {
+        this.liquibasePropertiesPath = liquibasePropertiesPath;
+    }
+
+    public String getChangeLogParameters() {
+        return changeLogParameters;
+    }
+
+    @DataBoundSetter
+    public void setChangeLogParameters(String changeLogParameters) {
+        this.changeLogParameters = changeLogParameters;
+    }
+
+    public String getResourceDirectories() {
+        return resourceDirectories;
+    }
+
+    @DataBoundSetter
+    public void setResourceDirectories(String resourceDirectories) {
+        this.resourceDirectories = resourceDirectories;
+    }
+
+    public abstract static class AbstractLiquibaseStepDescriptor extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return ImmutableSet.of(Run.class, FilePath.class, Launcher.class, TaskListener.class, EnvVars.class);
+        }
+    }
+}
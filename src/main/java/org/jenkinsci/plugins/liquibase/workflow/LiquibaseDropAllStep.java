@@ -0,0 +1,35 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.Extension;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+import org.jenkinsci.plugins.liquibase.builder.DropAllBuilder;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * <code>liquibaseDropAll</code>: drops every database object owned by the user.
+ */
+public class LiquibaseDropAllStep extends AbstractLiquibaseStep {
+
+    @DataBoundConstructor
+    public LiquibaseDropAllStep() {
+    }
+
+    @Override
+    protected AbstractLiquibaseBuilder createCommandBuilder() {
+        return new DropAllBuilder();
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseStepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "liquibaseDropAll";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Drop All";
+        }
+    }
+}
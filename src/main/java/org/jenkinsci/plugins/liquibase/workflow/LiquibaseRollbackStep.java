@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.Extension;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+import org.jenkinsci.plugins.liquibase.builder.RollbackBuilder;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * <code>liquibaseRollback</code>: rolls back by count, to a tag, to a date or by a number of hours.
+ */
+public class LiquibaseRollbackStep extends AbstractLiquibaseStep {
+
+    private String rollbackType = RollbackBuilder.RollbackStrategy.COUNT.name();
+    private String rollbackCount;
+    private String rollbackToTag;
+    private String rollbackToDate;
+    private String rollbackLastHours;
+
+    @DataBoundConstructor
+    public LiquibaseRollbackStep() {
+    }
+
+    @Override
+    protected AbstractLiquibaseBuilder createCommandBuilder() {
+        RollbackBuilder builder = new RollbackBuilder();
+        builder.setRollbackType(rollbackType);
+        builder.setNumberOfChangesetsToRollback(rollbackCount);
+        builder.setRollbackToTag(rollbackToTag);
+        builder.setRollbackToDate(rollbackToDate);
+        builder.setRollbackLastHours(rollbackLastHours);
+        return builder;
+    }
+
+    /**
+     * One of {@link RollbackBuilder.RollbackStrategy}: COUNT (the default), TAG, DATE or RELATIVE.
+     */
+    public String getRollbackType() {
+        return rollbackType;
+    }
+
+    /**
+     * @throws IllegalArgumentException for ARTIFACT, which only the build step supports, so that a pipeline asking for
+     *                                  it fails before touching the database.
+     */
+    @DataBoundSetter
+    public void setRollbackType(String rollbackType) {
+        if (RollbackBuilder.RollbackStrategy.ARTIFACT.name().equals(rollbackType)) {
+            throw new IllegalArgumentException("liquibaseRollback can't roll back from a precomputed script; " +
+                    "rollbackType must be COUNT, TAG, DATE or RELATIVE.");
+        }
+        this.rollbackType = rollbackType;
+    }
+
+    public String getRollbackCount() {
+        return rollbackCount;
+    }
+
+    @DataBoundSetter
+    public void setRollbackCount(String rollbackCount) {
+        this.rollbackCount = rollbackCount;
+    }
+
+    public String getRollbackToTag() {
+        return rollbackToTag;
+    }
+
+    @DataBoundSetter
+    public void setRollbackToTag(String rollbackToTag) {
+        this.rollbackToTag = rollbackToTag;
+    }
+
+    public String getRollbackToDate() {
+        return rollbackToDate;
+    }
+
+    @DataBoundSetter
+    public void setRollbackToDate(String rollbackToDate) {
+        this.rollbackToDate = rollbackToDate;
+    }
+
+    public String getRollbackLastHours() {
+        return rollbackLastHours;
+    }
+
+    @DataBoundSetter
+    public void setRollbackLastHours(String rollbackLastHours) {
+        this.rollbackLastHours = rollbackLastHours;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseStepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "liquibaseRollback";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Rollback";
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.slaves.WorkspaceList;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+import org.jenkinsci.plugins.liquibase.common.LiquibaseProperty;
+import org.jenkinsci.plugins.liquibase.execution.DetachedProcess;
+import org.jenkinsci.plugins.liquibase.lock.DatabaseLocks;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResultAction;
+import org.jenkinsci.plugins.liquibase.report.LiquibaseOutputParser;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a Liquibase command for a pipeline step without holding a thread while it runs.  The process is started
+ * detached on the node, and its output and exit status are polled for each second, so a pipeline can have many
+ * Liquibase steps in flight in parallel branches at the cost of one short poll per step each second.  Preparing,
+ * polling and completing steps involve remote calls, so they run on a small executor of their own rather than on
+ * Jenkins' shared timer.
+ * <p>
+ * The step survives a controller restart as long as the agent running Liquibase stays up: polling carries on from
+ * the last output read.  The work a builder does after a successful run (e.g. recording deployments) needs the
+ * resolved command, so it is only done if the controller didn't restart in between.  The restart releases the
+ * database lock; the step takes it again if it is still free, and otherwise says that Liquibase carries on without it.
+ * <p>
+ * Steps wait their turn for the {@link DatabaseLocks database lock} the same way, by trying for it on each poll.  The
+ * builder's skip check runs once the command is prepared and its before-run work once the lock is held, as in a
+ * freestyle build.  When a step is stopped, the lock is only released once the Liquibase process and everything it
+ * started are confirmed gone; until then they are killed again on each poll.
+ */
+public class LiquibaseStepExecution extends StepExecution {
+
+    private static final long serialVersionUID = 1;
+    private static final Logger LOG = LoggerFactory.getLogger(LiquibaseStepExecution.class);
+
+    static final long POLL_INTERVAL_MILLIS = 1000;
+    static final int EXECUTOR_THREADS = 4;
+    private static final int MAX_OUTPUT_PER_POLL = 1024 * 1024;
+
+    private static final ScheduledExecutorService EXECUTOR = new ScheduledThreadPoolExecutor(EXECUTOR_THREADS,
+            new NamingThreadFactory(new DaemonThreadFactory(), "LiquibaseStepExecution"));
+
+    private final transient AbstractLiquibaseStep step;
+    private transient AbstractLiquibaseBuilder builder;
+    private transient AbstractLiquibaseBuilder.PreparedCommand preparedCommand;
+    private transient LiquibaseOutputParser outputParser;
+    private transient volatile ScheduledFuture<?> task;
+    private transient DatabaseLocks.Ticket lockTicket;
+    private transient DatabaseLocks.Lease lease;
+    private transient boolean reportedWaiting;
+    private transient boolean awaitingKill;
+
+    private String controlDirectory;
+    private String displayCommand;
+    private String lockedDatabase;
+    private long offset;
+    private long startedAt;
+    private volatile boolean done;
+
+    LiquibaseStepExecution(AbstractLiquibaseStep step, StepContext context) {
+        super(context);
+        this.step = step;
+    }
+
+    @Override
+    public boolean start() {
+        EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    boolean run = prepare();
+                    synchronized (LiquibaseStepExecution.this) {
+                        if (run && !done) {
+                            schedulePolling();
+                        }
+                    }
+                } catch (Exception e) {
+                    finish(e);
+                }
+            }
+        });
+        return false;
+    }
+
+    /**
+     * @return whether Liquibase is to be run; if not, the step has already completed.
+     */
+    private boolean prepare() throws IOException, InterruptedException {
+        Run<?, ?> build = getContext().get(Run.class);
+        FilePath workspace = getContext().get(FilePath.class);
+        EnvVars environment = getContext().get(EnvVars.class);
+        TaskListener listener = getContext().get(TaskListener.class);
+
+        builder = step.createBuilder();
+        listener.getLogger().println("Running " + builder.getDescriptor().getDisplayName() + "....");
+        preparedCommand = builder.prepareCommand(build, workspace, environment, listener);
+        if (preparedCommand == null) {
+            throw new AbortException("Liquibase installation could not be used.");
+        }
+        displayCommand = preparedCommand.getCliCommand().toString();
+        if (builder.shouldSkipCommand(build, workspace, preparedCommand, environment, listener)) {
+            synchronized (this) {
+                if (!done) {
+                    done = true;
+                    getContext().onSuccess(describeResult(0, 0, true, Collections.<ChangeSetResult>emptyList()));
+                }
+            }
+            return false;
+        }
+
+        String databaseUrl =
+                preparedCommand.getConfigProperties().getProperty(LiquibaseProperty.URL.propertyName());
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            if (databaseUrl != null && !databaseUrl.isEmpty()) {
+                lockTicket = DatabaseLocks.get().enqueue(databaseUrl);
+                if (DatabaseLocks.isShared(databaseUrl)) {
+                    lockedDatabase = lockTicket.getDatabase();
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Takes the database lock if it's free, without waiting for it.
+     *
+     * @return whether Liquibase may be launched.
+     */
+    private boolean tryLockDatabase() throws IOException, InterruptedException {
+        if (lockTicket == null) {
+            return true;
+        }
+        lease = lockTicket.tryAcquire();
+        if (lease == null) {
+            if (!reportedWaiting) {
+                getContext().get(TaskListener.class).getLogger()
+                        .println("Waiting for database lock on " + lockTicket.getDatabase() + "...");
+                reportedWaiting = true;
+            }
+            return false;
+        }
+        lockTicket = null;
+        if (reportedWaiting) {
+            getContext().get(TaskListener.class).getLogger().println("Acquired database lock on "
+                    + lease.getDatabase() + " after " + lease.getWaitMillis() + "ms.");
+        }
+        return true;
+    }
+
+    private void launch() throws IOException, InterruptedException {
+        Run<?, ?> build = getContext().get(Run.class);
+        FilePath workspace = getContext().get(FilePath.class);
+        Launcher launcher = getContext().get(Launcher.class);
+        EnvVars environment = getContext().get(EnvVars.class);
+        TaskListener listener = getContext().get(TaskListener.class);
+
+        builder.beforeCommand(build, workspace, launcher, preparedCommand, environment, listener);
+        FilePath control = WorkspaceList.tempDir(workspace).child("liquibase-" + UUID.randomUUID());
+        listener.getLogger().println("$ " + displayCommand);
+        startedAt = System.currentTimeMillis();
+        DetachedProcess.launch(control, workspace, preparedCommand.getCliCommand().toList(), environment);
+        controlDirectory = control.getRemote();
+    }
+
+    private void schedulePolling() {
+        task = EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void poll() {
+        if (awaitingKill) {
+            retryKill();
+            return;
+        }
+        if (done) {
+            return;
+        }
+        try {
+            if (controlDirectory == null) {
+                if (tryLockDatabase()) {
+                    try {
+                        launch();
+                    } catch (IOException e) {
+                        finish(e);
+                    }
+                }
+                return;
+            }
+            FilePath workspace = getContext().get(FilePath.class);
+            if (workspace == null || workspace.getChannel() == null) {
+                // the agent is reconnecting; the process carries on without us
+                return;
+            }
+            FilePath control = new FilePath(workspace.getChannel(), controlDirectory);
+            DetachedProcess.Status status;
+            do {
+                status = DetachedProcess.poll(control, offset, MAX_OUTPUT_PER_POLL);
+                getOutputParser().write(status.getOutput());
+                offset += status.getOutput().length;
+            } while (status.getOutput().length == MAX_OUTPUT_PER_POLL);
+
+            if (!status.isTracked()) {
+                throw new AbortException("Liquibase process was lost; the agent may have been restarted.");
+            }
+            if (status.getExitStatus() != null) {
+                complete(workspace, control, status.getExitStatus());
+            }
+        } catch (IOException e) {
+            LOG.debug("Unable to poll Liquibase process in " + controlDirectory, e);
+            if (e instanceof AbortException) {
+                finish(e);
+            }
+        } catch (Exception e) {
+            finish(e);
+        }
+    }
+
+    private void complete(FilePath workspace, FilePath control, int exitStatus)
+            throws IOException, InterruptedException {
+        Run<?, ?> build = getContext().get(Run.class);
+        TaskListener listener = getContext().get(TaskListener.class);
+        getOutputParser().close();
+        List<ChangeSetResult> changeSets = getOutputParser().getParsedChangeSets();
+        long duration = System.currentTimeMillis() - startedAt;
+        control.deleteRecursive();
+
+        if (exitStatus != 0) {
+            finish(new AbortException("Liquibase failed due to errors."));
+            return;
+        }
+        if (preparedCommand != null) {
+            builder.completeCommand(build, workspace, preparedCommand, getContext().get(EnvVars.class), listener,
+                    changeSets);
+        } else {
+            listener.getLogger().println("Liquibase completed across a restart; post-run reporting was skipped.");
+        }
+
+        stopPolling();
+        releaseLock();
+        done = true;
+        getContext().onSuccess(describeResult(exitStatus, duration, false, changeSets));
+    }
+
+    private Map<String, Object> describeResult(int exitStatus, long duration, boolean skipped,
+                                               List<ChangeSetResult> changeSets) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("exitStatus", exitStatus);
+        result.put("successful", true);
+        result.put("skipped", skipped);
+        result.put("durationMillis", duration);
+        result.put("command", displayCommand);
+        result.put("changeSets", describe(changeSets));
+        return result;
+    }
+
+    private static List<Map<String, Object>> describe(List<ChangeSetResult> changeSets) {
+        List<Map<String, Object>> described = new ArrayList<>();
+        for (ChangeSetResult changeSet : changeSets) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("file", changeSet.getFile());
+            entry.put("id", changeSet.getId());
+            entry.put("author", changeSet.getAuthor());
+            entry.put("outcome", changeSet.getOutcome().name());
+            entry.put("durationMillis", changeSet.getDurationMillis());
+            described.add(entry);
+        }
+        return described;
+    }
+
+    private LiquibaseOutputParser getOutputParser() throws IOException, InterruptedException {
+        if (outputParser == null) {
+            outputParser = new LiquibaseOutputParser(getContext().get(TaskListener.class).getLogger(),
+                    ChangeSetResultAction.forBuild(getContext().get(Run.class)));
+        }
+        return outputParser;
+    }
+
+    private void finish(Throwable cause) {
+        stopPolling();
+        releaseLock();
+        done = true;
+        getContext().onFailure(cause);
+    }
+
+    private void releaseLock() {
+        if (lockTicket != null) {
+            lockTicket.cancel();
+            lockTicket = null;
+        }
+        if (lease != null) {
+            lease.close();
+            lease = null;
+        }
+    }
+
+    private void stopPolling() {
+        ScheduledFuture<?> polling = task;
+        if (polling != null) {
+            polling.cancel(false);
+        }
+    }
+
+    @Override
+    public synchronized void stop(Throwable cause) throws Exception {
+        if (controlDirectory != null && !done && !killProcess()) {
+            getContext().get(TaskListener.class).getLogger().println("Liquibase process could not be confirmed " +
+                    "stopped; the database lock is kept until it is.");
+            awaitingKill = true;
+            if (task == null) {
+                schedulePolling();
+            }
+        } else {
+            stopPolling();
+            releaseLock();
+        }
+        done = true;
+        getContext().onFailure(cause);
+    }
+
+    /**
+     * Kills the Liquibase process tree.
+     *
+     * @return whether it's confirmed gone.
+     */
+    private boolean killProcess() throws InterruptedException {
+        try {
+            FilePath workspace = getContext().get(FilePath.class);
+            if (workspace == null || workspace.getChannel() == null) {
+                return false;
+            }
+            return DetachedProcess.kill(new FilePath(workspace.getChannel(), controlDirectory));
+        } catch (IOException e) {
+            LOG.debug("Unable to kill Liquibase process in " + controlDirectory, e);
+            return false;
+        }
+    }
+
+    private void retryKill() {
+        try {
+            if (killProcess()) {
+                awaitingKill = false;
+                stopPolling();
+                releaseLock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onResume() {
+        if (done) {
+            return;
+        }
+        if (controlDirectory == null) {
+            finish(new AbortException("Jenkins restarted before Liquibase was started."));
+        } else {
+            synchronized (this) {
+                relockDatabase();
+                schedulePolling();
+            }
+        }
+    }
+
+    /**
+     * Takes the database lock the restart released.  Liquibase is already running, so this doesn't wait for it: if
+     * another step has it, that is only logged.
+     */
+    private void relockDatabase() {
+        if (lockedDatabase == null) {
+            return;
+        }
+        DatabaseLocks.Ticket ticket = DatabaseLocks.get().enqueue(lockedDatabase);
+        lease = ticket.tryAcquire();
+        if (lease == null) {
+            ticket.cancel();
+        }
+        try {
+            getContext().get(TaskListener.class).getLogger().println(lease != null
+                    ? "Re-acquired database lock on " + lockedDatabase + " after Jenkins restarted."
+                    : "Database lock on " + lockedDatabase + " was taken by another step while Jenkins restarted; "
+                    + "Liquibase carries on without it.");
+        } catch (IOException e) {
+            LOG.debug("Unable to report database lock on " + lockedDatabase, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String getStatus() {
+        if (controlDirectory == null) {
+            return lockTicket == null ? "preparing Liquibase command" : "waiting for database lock";
+        }
+        return "running " + displayCommand + " (" + offset + " bytes of output read)";
+    }
+}
@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.Extension;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+import org.jenkinsci.plugins.liquibase.builder.TagBuilder;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * <code>liquibaseTag</code>: tags the current database state.
+ */
+public class LiquibaseTagStep extends AbstractLiquibaseStep {
+
+    private String tag;
+
+    @DataBoundConstructor
+    public LiquibaseTagStep() {
+    }
+
+    @Override
+    protected AbstractLiquibaseBuilder createCommandBuilder() {
+        TagBuilder builder = new TagBuilder();
+        builder.setTag(tag);
+        return builder;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    @DataBoundSetter
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseStepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "liquibaseTag";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Tag";
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import org.acegisecurity.Authentication;
+import org.jenkinsci.plugins.liquibase.common.JdbcUrls;
+import org.jenkinsci.plugins.liquibase.report.TagIndex;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousStepExecution;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * <code>liquibaseTags</code>: looks tags up in the {@link TagIndex}, returning a list of maps (tag, database, job,
+ * buildNumber, changeLogHash, timestamp), most recent first.  Filtered by database <code>url</code> and by
+ * <code>tag</code> when given, and to tags applied by jobs the build's authentication can read.
+ */
+public class LiquibaseTagsStep extends Step {
+
+    private String url;
+    private String tag;
+
+    @DataBoundConstructor
+    public LiquibaseTagsStep() {
+    }
+
+    @Override
+    public StepExecution start(StepContext context) {
+        return new Execution(this, context);
+    }
+
+    List<Map<String, Object>> query(TagIndex index, Predicate<TagIndex.Entry> visible) {
+        String database = Util.fixEmptyAndTrim(url) == null ? null : JdbcUrls.identify(url);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (TagIndex.Entry entry : index.getEntries(database)) {
+            if ((tag != null && !tag.equals(entry.getTag())) || !visible.test(entry)) {
+                continue;
+            }
+            Map<String, Object> described = new LinkedHashMap<>();
+            described.put("tag", entry.getTag());
+            described.put("database", entry.getDatabase());
+            described.put("job", entry.getJob());
+            described.put("buildNumber", entry.getBuildNumber());
+            described.put("changeLogHash", entry.getChangeLogHash());
+            described.put("timestamp", entry.getTimestamp());
+            result.add(described);
+        }
+        return result;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @DataBoundSetter
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    @DataBoundSetter
+    public void setTag(String tag) {
+        this.tag = Util.fixEmptyAndTrim(tag);
+    }
+
+    private static class Execution extends SynchronousStepExecution<List<Map<String, Object>>> {
+        private static final long serialVersionUID = 1;
+
+        private final transient LiquibaseTagsStep step;
+
+        Execution(LiquibaseTagsStep step, StepContext context) {
+            super(context);
+            this.step = step;
+        }
+
+        /**
+         * Runs as the build's authentication, which is what the entries' jobs are checked against.
+         */
+        @Override
+        protected List<Map<String, Object>> run() {
+            final Authentication authentication = Jenkins.getAuthentication();
+            return step.query(TagIndex.get(), entry -> canRead(authentication, findJob(entry.getJob())));
+        }
+    }
+
+    static boolean canRead(Authentication authentication, Job<?, ?> job) {
+        return job != null && job.getACL().hasPermission(authentication, Item.READ);
+    }
+
+    /**
+     * Looks the job up whether or not the build can see it, leaving the permission check to {@link #canRead}.
+     */
+    private static Job<?, ?> findJob(String fullName) {
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+            return Jenkins.get().getItemByFullName(fullName, Job.class);
+        }
+    }
+
+    @Extension
+    public static class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "liquibaseTags";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Look Up Tags";
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.Extension;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+import org.jenkinsci.plugins.liquibase.builder.UpdateBuilder;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * <code>liquibaseUpdate</code>: applies pending changesets.
+ */
+public class LiquibaseUpdateStep extends AbstractLiquibaseStep {
+
+    private boolean testRollbacks;
+
+    @DataBoundConstructor
+    public LiquibaseUpdateStep() {
+    }
+
+    @Override
+    protected AbstractLiquibaseBuilder createCommandBuilder() {
+        UpdateBuilder builder = new UpdateBuilder();
+        builder.setTestRollbacks(testRollbacks);
+        return builder;
+    }
+
+    public boolean isTestRollbacks() {
+        return testRollbacks;
+    }
+
+    @DataBoundSetter
+    public void setTestRollbacks(boolean testRollbacks) {
+        this.testRollbacks = testRollbacks;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractLiquibaseStepDescriptor {
+
+        @Override
+        public String getFunctionName() {
+            return "liquibaseUpdate";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Liquibase: Update";
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import org.jenkinsci.plugins.liquibase.execution.InProcessLiquibase;
+import org.jenkinsci.plugins.liquibase.report.CommandBatchAction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CommandBatchBuilderTest {
+
+    @Test
+    public void should_parse_commands_in_order() {
+        List<List<String>> batch = CommandBatchBuilder.parseCommands(
+                "# check first\nvalidate\n\n  status   --verbose\r\nupdate\ntag release-1\n");
+
+        assertThat(batch.size(), is(4));
+        assertThat(batch.get(0), is(Arrays.asList("validate")));
+        assertThat(batch.get(1), is(Arrays.asList("status", "--verbose")));
+        assertThat(batch.get(3), is(Arrays.asList("tag", "release-1")));
+    }
+
+    @Test
+    public void should_treat_missing_commands_as_empty() {
+        assertThat(CommandBatchBuilder.parseCommands(null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void should_record_commands_after_a_failure_as_not_run() {
+        List<List<String>> batch = CommandBatchBuilder.parseCommands("validate\nupdate\ntag release-1\n");
+
+        List<CommandBatchAction.CommandResult> results = CommandBatchBuilder.toResults(batch, Arrays.asList(
+                new InProcessLiquibase.CommandOutcome(0, 10), new InProcessLiquibase.CommandOutcome(1, 20)));
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(1).toString(), is("update: FAILED (exit status 1) in 20ms"));
+        assertThat(results.get(2).isRun(), is(false));
+        assertThat(results.get(2).getCommand(), is("tag release-1"));
+    }
+
+    @Test
+    public void should_always_run_in_process() {
+        CommandBatchBuilder builder = new CommandBatchBuilder();
+        builder.setRunInProcess(false);
+
+        assertThat(builder.isRunInProcess(), is(true));
+    }
+}
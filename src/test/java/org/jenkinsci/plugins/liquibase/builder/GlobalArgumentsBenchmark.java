@@ -0,0 +1,66 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Cost of building the common Liquibase command line, including macro expansion against a large environment.
+ */
+@JmhBenchmark
+public class GlobalArgumentsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ArgumentsState {
+
+        @Param({"100", "10000"})
+        public int environmentSize;
+
+        UpdateBuilder builder;
+        Properties configProperties;
+        EnvVars environment;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            environment = new EnvVars();
+            for (int i = 0; i < environmentSize; i++) {
+                environment.put("PARAM_" + i, "value" + i);
+            }
+
+            StringBuilder resourceDirectories = new StringBuilder();
+            for (int i = 0; i < 50; i++) {
+                resourceDirectories.append("resources/${PARAM_").append(i).append("} , ");
+            }
+
+            builder = new UpdateBuilder();
+            builder.setChangeLogFile("db/${PARAM_0}/changelog.xml");
+            builder.setUrl("jdbc:h2:mem:${PARAM_1}");
+            builder.setContexts("${PARAM_2},${PARAM_3}");
+            builder.setLabels("${PARAM_4}");
+            builder.setLiquibasePropertiesPath("${PARAM_5}.properties");
+            builder.setResourceDirectories(resourceDirectories.toString());
+
+            configProperties = new Properties();
+            configProperties.setProperty("username", "sa");
+            configProperties.setProperty("password", "secret");
+        }
+    }
+
+    @Benchmark
+    public ArgumentListBuilder addGlobalArguments(ArgumentsState state) throws IOException, InterruptedException {
+        ArgumentListBuilder cliCommand = new ArgumentListBuilder("liquibase");
+        state.builder.addGlobalArguments(cliCommand, state.configProperties, null, state.environment,
+                TaskListener.NULL);
+        return cliCommand;
+    }
+}
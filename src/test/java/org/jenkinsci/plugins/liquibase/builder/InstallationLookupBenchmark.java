@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.tools.ToolProperty;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Cost of resolving a builder's Liquibase installation when the controller has many installations configured.
+ */
+@JmhBenchmark
+public class InstallationLookupBenchmark {
+
+    public static class LookupState extends JmhBenchmarkState {
+
+        @Param({"10", "5000"})
+        public int installationCount;
+
+        UpdateBuilder builder;
+        FilePath workspace;
+        EnvVars environment;
+
+        @Override
+        public void setup() throws Exception {
+            LiquibaseInstallation[] installations = new LiquibaseInstallation[installationCount];
+            for (int i = 0; i < installationCount; i++) {
+                installations[i] = new LiquibaseInstallation("liquibase-" + i, "/opt/liquibase-" + i, null,
+                        Collections.<ToolProperty<?>>emptyList());
+            }
+            getJenkins().getDescriptorByType(LiquibaseInstallation.DescriptorImpl.class)
+                    .setInstallations(installations);
+
+            builder = new UpdateBuilder();
+            builder.setInstallationName("liquibase-" + (installationCount - 1));
+            workspace = getJenkins().getRootPath();
+            environment = new EnvVars();
+        }
+    }
+
+    @Benchmark
+    public LiquibaseInstallation getInstallation(LookupState state) throws IOException, InterruptedException {
+        return state.builder.getInstallation(state.environment, TaskListener.NULL, state.workspace);
+    }
+}
@@ -0,0 +1,250 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.MultiTargetUpdateAction;
+import org.jenkinsci.plugins.liquibase.report.UpdateCheckpointAction;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class MultiTargetUpdateBuilderTest {
+
+    @Test
+    public void should_parse_targets_with_optional_credentials() {
+        List<MultiTargetUpdateBuilder.UpdateTarget> targets = MultiTargetUpdateBuilder.UpdateTarget.parse(
+                "jdbc:h2:mem:one  one-credentials\n\n# skipped\r\n  jdbc:h2:mem:two\n");
+
+        assertThat(targets.size(), is(2));
+        assertThat(targets.get(0).getUrl(), is("jdbc:h2:mem:one"));
+        assertThat(targets.get(0).getCredentialsId(), is("one-credentials"));
+        assertThat(targets.get(1).getUrl(), is("jdbc:h2:mem:two"));
+        assertThat(targets.get(1).getCredentialsId(), nullValue());
+    }
+
+    @Test
+    public void should_apply_target_to_copy_of_configuration() {
+        MultiTargetUpdateBuilder template = new MultiTargetUpdateBuilder();
+        template.setChangeLogFile("changelog.xml");
+        template.setContexts("staging");
+        template.setCredentialsId("default-credentials");
+
+        UpdateBuilder applied = new MultiTargetUpdateBuilder.UpdateTarget("jdbc:h2:mem:one", null).applyTo(template);
+
+        assertThat(applied.getUrl(), is("jdbc:h2:mem:one"));
+        assertThat(applied.getChangeLogFile(), is("changelog.xml"));
+        assertThat(applied.getContexts(), is("staging"));
+        assertThat(applied.getCredentialsId(), is("default-credentials"));
+    }
+
+    @Test
+    public void should_update_targets_in_parallel_up_to_the_limit() throws InterruptedException {
+        final CountDownLatch allStarted = new CountDownLatch(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        MultiTargetUpdateBuilder builder = new FingerprintedBuilder() {
+            @Override
+            protected MultiTargetUpdateAction.TargetResult update(UpdateTarget target,
+                                                                  LiquibaseInstallation installation, Run<?, ?> build,
+                                                                  FilePath workspace, Launcher launcher,
+                                                                  TaskListener listener, EnvVars environment) {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+                try {
+                    allStarted.countDown();
+                    boolean parallel = allStarted.await(10, TimeUnit.SECONDS);
+                    return parallel ? MultiTargetUpdateAction.TargetResult.successful(target.getUrl(), 0)
+                            : MultiTargetUpdateAction.TargetResult.failed(target.getUrl(), 0, "ran alone");
+                } catch (InterruptedException e) {
+                    return MultiTargetUpdateAction.TargetResult.failed(target.getUrl(), 0, "interrupted");
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+
+        List<MultiTargetUpdateAction.TargetResult> results = updateAll(builder, new UpdateCheckpointAction(), 2,
+                "jdbc:h2:mem:one", "jdbc:h2:mem:two", "jdbc:h2:mem:three", "jdbc:h2:mem:four");
+
+        assertThat(results.size(), is(4));
+        for (MultiTargetUpdateAction.TargetResult result : results) {
+            assertThat(result.toString(), result.isSuccessful(), is(true));
+        }
+        assertThat(maxRunning.get(), is(2));
+    }
+
+    @Test
+    public void should_keep_updating_other_targets_when_one_fails() throws InterruptedException {
+        MultiTargetUpdateBuilder builder = new FingerprintedBuilder() {
+            @Override
+            protected MultiTargetUpdateAction.TargetResult update(UpdateTarget target,
+                                                                  LiquibaseInstallation installation, Run<?, ?> build,
+                                                                  FilePath workspace, Launcher launcher,
+                                                                  TaskListener listener, EnvVars environment) {
+                if (target.getUrl().endsWith("two")) {
+                    throw new IllegalStateException("connection refused");
+                }
+                return MultiTargetUpdateAction.TargetResult.successful(target.getUrl(), 0);
+            }
+        };
+        UpdateCheckpointAction checkpoint = new UpdateCheckpointAction();
+
+        List<MultiTargetUpdateAction.TargetResult> results = updateAll(builder, checkpoint, 1,
+                "jdbc:h2:mem:one", "jdbc:h2:mem:two", "jdbc:h2:mem:three");
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).isSuccessful(), is(true));
+        assertThat(results.get(1).isSuccessful(), is(false));
+        assertThat(results.get(2).isSuccessful(), is(true));
+        String step = builder.getStepKey();
+        assertThat(checkpoint.isCompleted(step, "jdbc:h2:mem:one", "fingerprint"), is(true));
+        assertThat(checkpoint.isCompleted(step, "jdbc:h2:mem:two", "fingerprint"), is(false));
+        assertThat(checkpoint.isCompleted(step, "jdbc:h2:mem:three", "fingerprint"), is(true));
+    }
+
+    @Test
+    public void should_skip_checkpointed_targets_and_retry_failed_ones_when_rerun() throws InterruptedException {
+        final Set<String> failing = new HashSet<>(Collections.singleton("jdbc:h2:mem:two"));
+        final List<String> updated = Collections.synchronizedList(new ArrayList<String>());
+        MultiTargetUpdateBuilder builder = new FingerprintedBuilder() {
+            @Override
+            protected MultiTargetUpdateAction.TargetResult update(UpdateTarget target,
+                                                                  LiquibaseInstallation installation, Run<?, ?> build,
+                                                                  FilePath workspace, Launcher launcher,
+                                                                  TaskListener listener, EnvVars environment) {
+                updated.add(target.getUrl());
+                if (failing.contains(target.getUrl())) {
+                    return MultiTargetUpdateAction.TargetResult.failed(target.getUrl(), 0, "exit status 1");
+                }
+                return MultiTargetUpdateAction.TargetResult.successful(target.getUrl(), 0);
+            }
+        };
+        Run<?, ?> failedBuild = mock(Run.class);
+        UpdateCheckpointAction firstCheckpoint = UpdateCheckpointAction.forBuild(failedBuild, true);
+        updateAll(builder, firstCheckpoint, 1, "jdbc:h2:mem:one", "jdbc:h2:mem:two");
+        doReturn(firstCheckpoint).when(failedBuild).getAction(UpdateCheckpointAction.class);
+        doReturn(Result.FAILURE).when(failedBuild).getResult();
+
+        Run<?, ?> rerun = mock(Run.class);
+        doReturn(failedBuild).when(rerun).getPreviousCompletedBuild();
+        failing.clear();
+        updated.clear();
+        List<MultiTargetUpdateAction.TargetResult> results = updateAll(builder,
+                UpdateCheckpointAction.forBuild(rerun, true), 1, "jdbc:h2:mem:one", "jdbc:h2:mem:two");
+
+        assertThat(updated, is(Collections.singletonList("jdbc:h2:mem:two")));
+        assertThat(results.get(0).toString(), results.get(0).isSkipped(), is(true));
+        assertThat(results.get(1).isSuccessful(), is(true));
+    }
+
+    @Test
+    public void should_update_again_when_rerun_with_different_configuration() throws InterruptedException {
+        final List<String> updated = Collections.synchronizedList(new ArrayList<String>());
+        MultiTargetUpdateBuilder builder = new RecordingBuilder(updated);
+        builder.setContexts("staging");
+        Run<?, ?> failedBuild = mock(Run.class);
+        UpdateCheckpointAction firstCheckpoint = UpdateCheckpointAction.forBuild(failedBuild, true);
+        updateAll(builder, firstCheckpoint, 1, "jdbc:h2:mem:one");
+        doReturn(firstCheckpoint).when(failedBuild).getAction(UpdateCheckpointAction.class);
+        doReturn(Result.FAILURE).when(failedBuild).getResult();
+
+        Run<?, ?> rerun = mock(Run.class);
+        doReturn(failedBuild).when(rerun).getPreviousCompletedBuild();
+        updated.clear();
+        builder.setContexts("production");
+        updateAll(builder, UpdateCheckpointAction.forBuild(rerun, true), 1, "jdbc:h2:mem:one");
+
+        assertThat(updated, is(Collections.singletonList("jdbc:h2:mem:one")));
+    }
+
+    @Test
+    public void should_keep_checkpoints_of_each_step_separate() throws InterruptedException {
+        final List<String> updated = Collections.synchronizedList(new ArrayList<String>());
+        MultiTargetUpdateBuilder first = new RecordingBuilder(updated);
+        first.setChangeLogFile("schema.xml");
+        MultiTargetUpdateBuilder second = new RecordingBuilder(updated);
+        second.setChangeLogFile("data.xml");
+        UpdateCheckpointAction checkpoint = new UpdateCheckpointAction();
+
+        updateAll(first, checkpoint, 1, "jdbc:h2:mem:one");
+        updateAll(second, checkpoint, 1, "jdbc:h2:mem:one");
+        updateAll(first, checkpoint, 1, "jdbc:h2:mem:one");
+
+        assertThat(updated, is(Arrays.asList("jdbc:h2:mem:one", "jdbc:h2:mem:one")));
+    }
+
+    @Test
+    public void should_write_unterminated_last_line_when_target_listener_is_closed() {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        TaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+        StreamTaskListener targetListener = MultiTargetUpdateBuilder.openTargetListener(
+                new MultiTargetUpdateBuilder.UpdateTarget("jdbc:h2:mem:one", null), listener);
+
+        targetListener.getLogger().print("first\nLiquibase command failed");
+        MultiTargetUpdateBuilder.closeTargetListener(targetListener, listener);
+
+        assertThat(new String(log.toByteArray(), StandardCharsets.UTF_8),
+                is("[jdbc:h2:mem:one] first\n[jdbc:h2:mem:one] Liquibase command failed"));
+    }
+
+    private static List<MultiTargetUpdateAction.TargetResult> updateAll(MultiTargetUpdateBuilder builder,
+                                                                        UpdateCheckpointAction checkpoint,
+                                                                        int parallelism, String... urls)
+            throws InterruptedException {
+        StringBuilder targets = new StringBuilder();
+        for (String url : urls) {
+            targets.append(url).append('\n');
+        }
+        return builder.updateAll(MultiTargetUpdateBuilder.UpdateTarget.parse(targets.toString()), parallelism, null,
+                mock(Run.class), null, null, TaskListener.NULL, new EnvVars(), checkpoint, builder.getStepKey());
+    }
+
+    /**
+     * Gives targets a deployment fingerprint that depends only on the contexts, so that no workspace is needed.
+     */
+    private static class FingerprintedBuilder extends MultiTargetUpdateBuilder {
+        @Override
+        protected String getDeploymentFingerprint(UpdateTarget target, Run<?, ?> build, FilePath workspace,
+                                                  EnvVars environment) {
+            return getContexts() == null ? "fingerprint" : "fingerprint " + getContexts();
+        }
+    }
+
+    private static class RecordingBuilder extends FingerprintedBuilder {
+        private final List<String> updated;
+
+        RecordingBuilder(List<String> updated) {
+            this.updated = updated;
+        }
+
+        @Override
+        protected MultiTargetUpdateAction.TargetResult update(UpdateTarget target, LiquibaseInstallation installation,
+                                                              Run<?, ?> build, FilePath workspace, Launcher launcher,
+                                                              TaskListener listener, EnvVars environment) {
+            updated.add(target.getUrl());
+            return MultiTargetUpdateAction.TargetResult.successful(target.getUrl(), 0);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.AbortException;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.RollbackArtifactAction;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RollbackArtifactsTest {
+
+    @Test
+    public void should_roll_back_executed_changesets_most_recent_first() {
+        List<ChangeSetResult> rolledBack = RollbackArtifacts.getRolledBack(Arrays.asList(
+                changeSet("1", ChangeSetResult.Outcome.EXECUTED),
+                changeSet("2", ChangeSetResult.Outcome.FAILED),
+                changeSet("3", ChangeSetResult.Outcome.EXECUTED)));
+
+        assertThat(rolledBack.size(), is(2));
+        assertThat(rolledBack.get(0).getId(), is("3"));
+        assertThat(rolledBack.get(1).getId(), is("1"));
+    }
+
+    @Test
+    public void should_describe_plan() {
+        String plan = RollbackArtifacts.describePlan("app #12", "jdbc:h2:mem:test", null,
+                Arrays.asList(changeSet("3", ChangeSetResult.Outcome.EXECUTED)));
+
+        assertThat(plan, is("Rollback precomputed by app #12\n" +
+                "Database: jdbc:h2:mem:test\n" +
+                "Rolls back to tag: (none)\n" +
+                "Changesets rolled back, most recent first:\n" +
+                "  changelog.xml::3::author\n"));
+    }
+
+    @Test
+    public void should_find_latest_script_for_database() {
+        RollbackArtifactAction action = new RollbackArtifactAction();
+        action.add(artifact("jdbc:h2:mem:a", "v1"));
+        action.add(artifact("jdbc:h2:mem:b", "v1"));
+        action.add(artifact("jdbc:h2:mem:a", "v2"));
+
+        assertThat(action.getLatest("jdbc:h2:mem:a").getTag(), is("v2"));
+        assertThat(action.getLatest("jdbc:h2:mem:b").getTag(), is("v1"));
+        assertThat(action.getLatest("jdbc:h2:mem:c"), is(nullValue()));
+    }
+
+    @Test
+    public void should_forget_tag_once_taken() {
+        RollbackArtifactAction action = new RollbackArtifactAction();
+        action.recordTag("jdbc:h2:mem:a", "v1");
+
+        assertThat(action.takeTag("jdbc:h2:mem:a"), is("v1"));
+        assertThat(action.takeTag("jdbc:h2:mem:a"), is(nullValue()));
+    }
+
+    @Test
+    public void should_allocate_distinct_directories() {
+        RollbackArtifactAction action = new RollbackArtifactAction();
+
+        assertThat(action.allocateDirectory(), is("liquibase-rollback/0"));
+        assertThat(action.allocateDirectory(), is("liquibase-rollback/1"));
+    }
+
+    @Test
+    public void should_accept_script_while_marker_is_unchanged() throws AbortException {
+        RollbackArtifacts.checkMarker("1:1", artifact("jdbc:h2:mem:a", "v1"), "app #12");
+    }
+
+    @Test(expected = AbortException.class)
+    public void should_refuse_script_when_marker_has_changed() throws AbortException {
+        RollbackArtifacts.checkMarker("2:2", artifact("jdbc:h2:mem:a", "v1"), "app #12");
+    }
+
+    @Test(expected = AbortException.class)
+    public void should_refuse_script_when_database_marker_is_unknown() throws AbortException {
+        RollbackArtifacts.checkMarker(null, artifact("jdbc:h2:mem:a", "v1"), "app #12");
+    }
+
+    @Test(expected = AbortException.class)
+    public void should_refuse_script_when_recorded_marker_is_unknown() throws AbortException {
+        RollbackArtifacts.checkMarker("1:1",
+                new RollbackArtifactAction.RollbackArtifact("jdbc:h2:mem:a", "v1", null, "script", "plan", 1),
+                "app #12");
+    }
+
+    @Test
+    public void should_record_scripts_against_exact_database() {
+        Properties first = new Properties();
+        first.setProperty("url", "jdbc:sqlserver://db.example.com;databaseName=app;password=secret");
+        Properties second = new Properties();
+        second.setProperty("url", "jdbc:sqlserver://db.example.com;databaseName=reports");
+
+        assertThat(RollbackArtifacts.getDatabase(first), is("jdbc:sqlserver://db.example.com;databaseName=app"));
+        assertThat(RollbackArtifacts.getDatabase(second), is("jdbc:sqlserver://db.example.com;databaseName=reports"));
+        assertThat(RollbackArtifacts.getDatabase(new Properties()), is(nullValue()));
+    }
+
+    private static ChangeSetResult changeSet(String id, ChangeSetResult.Outcome outcome) {
+        return new ChangeSetResult("changelog.xml", id, "author", 10, outcome, 0);
+    }
+
+    private static RollbackArtifactAction.RollbackArtifact artifact(String database, String tag) {
+        return new RollbackArtifactAction.RollbackArtifact(database, tag, "1:1", "script", "plan", 1);
+    }
+}
@@ -0,0 +1,254 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.RollbackVerificationAction.ChangeSetFailure;
+import org.jenkinsci.plugins.liquibase.report.RollbackVerificationAction.RangeOutcome;
+import org.jenkinsci.plugins.liquibase.report.RollbackVerificationAction.RangeResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RollbackVerificationBuilderTest {
+
+    @Test
+    public void should_divide_changesets_into_consecutive_shares() {
+        List<List<int[]>> shares = RollbackVerificationBuilder.divide(230, 50, 2);
+
+        assertThat(shares.size(), is(2));
+        assertThat(shares.get(0).size(), is(2));
+        assertThat(shares.get(0).get(0)[0], is(1));
+        assertThat(shares.get(0).get(1)[0], is(51));
+        assertThat(shares.get(1).size(), is(3));
+        assertThat(shares.get(1).get(0)[0], is(101));
+        assertThat(shares.get(1).get(2)[0], is(201));
+        assertThat(shares.get(1).get(2)[1], is(30));
+    }
+
+    @Test
+    public void should_use_no_more_sandboxes_than_ranges() {
+        List<List<int[]>> shares = RollbackVerificationBuilder.divide(7, 5, 4);
+
+        assertThat(shares.size(), is(2));
+        assertThat(shares.get(1).get(0)[1], is(2));
+    }
+
+    @Test
+    public void should_parse_pending_changeset_count_from_status() {
+        assertThat(RollbackVerificationBuilder.parsePendingChangeSets(
+                "5000 change sets have not been applied to SA@jdbc:h2:file:/tmp/sandbox-1"), is(5000));
+        assertThat(RollbackVerificationBuilder.parsePendingChangeSets(
+                "1 changeset has not been applied to SA@jdbc:h2:file:/tmp/sandbox-1"), is(1));
+        assertThat(RollbackVerificationBuilder.parsePendingChangeSets(
+                "SA@jdbc:h2:file:/tmp/sandbox-1 is up to date"), is(0));
+        assertThat(RollbackVerificationBuilder.parsePendingChangeSets("Unexpected error"), is(-1));
+    }
+
+    @Test
+    public void should_parse_sandbox_urls() {
+        List<String> urls = RollbackVerificationBuilder.parseUrls("jdbc:h2:mem:one\n\n# skipped\r\n jdbc:h2:mem:two ");
+
+        assertThat(urls.size(), is(2));
+        assertThat(urls.get(1), is("jdbc:h2:mem:two"));
+    }
+
+    @Test
+    public void should_narrow_failing_range_down_to_changeset_that_cannot_be_rolled_back() throws Exception {
+        H2ChangeLog changeLog = new H2ChangeLog("narrow-count", 10);
+        changeLog.brokenRollbacks.add(7);
+
+        RollbackVerificationBuilder.Report report = verify(RollbackBuilder.RollbackStrategy.COUNT, 5, changeLog).get(0);
+
+        assertThat(outcomes(report.ranges), is(Arrays.asList(RangeOutcome.VERIFIED, RangeOutcome.FAILED)));
+        assertThat(report.failures.size(), is(1));
+        ChangeSetFailure failure = report.failures.get(0);
+        assertThat(failure.getPosition(), is(7));
+        assertThat(failure.getChangeSet(), is("changelog.xml::7::test"));
+        assertThat(failure.getReason(), is("could not be rolled back"));
+    }
+
+    @Test
+    public void should_narrow_failing_range_when_rolling_back_to_tag() throws Exception {
+        H2ChangeLog changeLog = new H2ChangeLog("narrow-tag", 6);
+        changeLog.leakyRollbacks.add(5);
+
+        RollbackVerificationBuilder.Report report = verify(RollbackBuilder.RollbackStrategy.TAG, 3, changeLog).get(0);
+
+        assertThat(outcomes(report.ranges), is(Arrays.asList(RangeOutcome.VERIFIED, RangeOutcome.FAILED)));
+        assertThat(report.failures.size(), is(1));
+        assertThat(report.failures.get(0).getPosition(), is(5));
+        assertThat(report.failures.get(0).getReason(), is("could not be applied again after rolling back"));
+    }
+
+    @Test
+    public void should_report_share_of_failed_sandbox_as_not_verified() throws Exception {
+        H2ChangeLog working = new H2ChangeLog("working", 6);
+        H2ChangeLog unreachable = new H2ChangeLog("unreachable", 6);
+        unreachable.url = "jdbc:h2:file:/nonexistent/liquibase-sandbox;IFEXISTS=TRUE";
+
+        List<RollbackVerificationBuilder.Report> reports =
+                verify(RollbackBuilder.RollbackStrategy.COUNT, 2, working, unreachable);
+
+        assertThat(outcomes(reports.get(0).ranges), is(Collections.singletonList(RangeOutcome.VERIFIED)));
+        assertThat(outcomes(reports.get(1).ranges),
+                is(Arrays.asList(RangeOutcome.NOT_VERIFIED, RangeOutcome.NOT_VERIFIED)));
+        assertThat(reports.get(1).ranges.get(0).getFirst(), is(3));
+    }
+
+    @Test
+    public void should_report_remaining_ranges_as_not_verified_when_sandbox_cannot_be_rebuilt() throws Exception {
+        H2ChangeLog changeLog = new H2ChangeLog("unbuildable", 6);
+        changeLog.brokenRollbacks.add(2);
+        changeLog.failingDropAll = 2;
+
+        RollbackVerificationBuilder.Report report = verify(RollbackBuilder.RollbackStrategy.COUNT, 2, changeLog).get(0);
+
+        assertThat(outcomes(report.ranges), is(Arrays.asList(RangeOutcome.NOT_VERIFIED, RangeOutcome.NOT_VERIFIED,
+                RangeOutcome.NOT_VERIFIED)));
+        assertThat(report.failures.isEmpty(), is(true));
+    }
+
+    private static List<RollbackVerificationBuilder.Report> verify(RollbackBuilder.RollbackStrategy strategy,
+                                                                   int rangeSize, H2ChangeLog... changeLogs)
+            throws InterruptedException {
+        List<RollbackVerificationBuilder.Sandbox> sandboxes = new ArrayList<>();
+        for (int i = 0; i < changeLogs.length; i++) {
+            sandboxes.add(new RollbackVerificationBuilder.Sandbox(i + 1, strategy, TaskListener.NULL, changeLogs[i]));
+        }
+        return RollbackVerificationBuilder.verifyAll(sandboxes,
+                RollbackVerificationBuilder.divide(changeLogs[0].total, rangeSize, changeLogs.length));
+    }
+
+    private static List<RangeOutcome> outcomes(List<RangeResult> ranges) {
+        List<RangeOutcome> outcomes = new ArrayList<>();
+        for (RangeResult range : ranges) {
+            outcomes.add(range.getOutcome());
+        }
+        return outcomes;
+    }
+
+    /**
+     * Plays Liquibase against an H2 database: changeset n creates table <code>CS_n</code> and its rollback drops it,
+     * with applied changesets and tags kept in a <code>CHANGELOG</code> table.  Broken rollbacks fail; leaky ones
+     * succeed without dropping the table, so that applying the changeset again fails.
+     */
+    private static class H2ChangeLog implements RollbackVerificationBuilder.Commands {
+        private String url;
+        private final int total;
+        private final Set<Integer> brokenRollbacks = new HashSet<>();
+        private final Set<Integer> leakyRollbacks = new HashSet<>();
+        private int failingDropAll;
+        private int dropAllCount;
+
+        H2ChangeLog(String name, int total) {
+            this.url = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+            this.total = total;
+        }
+
+        @Override
+        public RollbackVerificationBuilder.CommandRun run(OutputStream capture, String... arguments)
+                throws IOException {
+            try (Connection connection = DriverManager.getConnection(url, "sa", "");
+                 Statement statement = connection.createStatement()) {
+                if (arguments[0].equals("dropAll")) {
+                    dropAllCount++;
+                    if (dropAllCount == failingDropAll) {
+                        return result(1);
+                    }
+                    statement.execute("DROP ALL OBJECTS");
+                    return result(0);
+                }
+                statement.execute("CREATE TABLE IF NOT EXISTS CHANGELOG(POSITION INT PRIMARY KEY, TAG VARCHAR(255))");
+                int position = position(statement);
+                switch (arguments[0]) {
+                    case "status":
+                        String status = total == position ? "SA@" + url + " is up to date"
+                                : (total - position) + " change sets have not been applied to SA@" + url;
+                        capture.write(status.getBytes(StandardCharsets.UTF_8));
+                        return result(0);
+                    case "updateCount":
+                        return update(statement, position, Integer.parseInt(arguments[1]));
+                    case "rollbackCount":
+                        return rollBack(statement, position, position - Integer.parseInt(arguments[1]));
+                    case "tag":
+                        statement.executeUpdate("UPDATE CHANGELOG SET TAG = '" + arguments[1] + "' WHERE POSITION = " +
+                                position);
+                        return result(0);
+                    case "rollback":
+                        try (ResultSet tagged = statement.executeQuery(
+                                "SELECT POSITION FROM CHANGELOG WHERE TAG = '" + arguments[1] + "'")) {
+                            if (!tagged.next()) {
+                                return result(1);
+                            }
+                            return rollBack(statement, position, tagged.getInt(1));
+                        }
+                    default:
+                        throw new IllegalArgumentException(arguments[0]);
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private RollbackVerificationBuilder.CommandRun update(Statement statement, int position, int count) {
+            List<ChangeSetResult> results = new ArrayList<>();
+            for (int i = position + 1; i <= Math.min(total, position + count); i++) {
+                try {
+                    statement.execute("CREATE TABLE CS_" + i + "(ID INT)");
+                    statement.executeUpdate("INSERT INTO CHANGELOG(POSITION) VALUES (" + i + ")");
+                    results.add(changeSet(i, ChangeSetResult.Outcome.EXECUTED));
+                } catch (SQLException e) {
+                    results.add(changeSet(i, ChangeSetResult.Outcome.FAILED));
+                    return new RollbackVerificationBuilder.CommandRun(1, results);
+                }
+            }
+            return new RollbackVerificationBuilder.CommandRun(0, results);
+        }
+
+        private RollbackVerificationBuilder.CommandRun rollBack(Statement statement, int position, int to)
+                throws SQLException {
+            for (int i = position; i > to; i--) {
+                if (brokenRollbacks.contains(i)) {
+                    return result(1);
+                }
+                if (!leakyRollbacks.contains(i)) {
+                    statement.execute("DROP TABLE CS_" + i);
+                }
+                statement.executeUpdate("DELETE FROM CHANGELOG WHERE POSITION = " + i);
+            }
+            return result(0);
+        }
+
+        private static int position(Statement statement) throws SQLException {
+            try (ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(POSITION), 0) FROM CHANGELOG")) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        }
+
+        private static ChangeSetResult changeSet(int position, ChangeSetResult.Outcome outcome) {
+            return new ChangeSetResult("changelog.xml", String.valueOf(position), "test", 0, outcome, 0);
+        }
+
+        private static RollbackVerificationBuilder.CommandRun result(int exitStatus) {
+            return new RollbackVerificationBuilder.CommandRun(exitStatus,
+                    Collections.<ChangeSetResult>emptyList());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.jenkinsci.plugins.liquibase.builder;
+
+import groovy.lang.Closure;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.ArgumentListBuilder;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.liquibase.common.LiquibaseProperty;
+import org.jenkinsci.plugins.liquibase.dsl.LiquibaseContext;
+import org.jenkinsci.plugins.liquibase.dsl.LiquibaseRunnerDslExtension;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.DeploymentRecordAction;
+import org.jenkinsci.plugins.liquibase.workflow.LiquibaseUpdateStep;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class UpdateBuilderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void should_test_rollbacks_when_enabled_in_job_dsl() {
+        Object builder = new LiquibaseRunnerDslExtension().liquibaseUpdate(new Closure<Void>(null) {
+            public Object doCall() {
+                ((LiquibaseContext) getDelegate()).testRollbacks(true);
+                return null;
+            }
+        });
+
+        assertThat(command((UpdateBuilder) builder), is("updateTestingRollback"));
+    }
+
+    @Test
+    public void should_test_rollbacks_when_enabled_on_pipeline_step() {
+        UpdateStep step = new UpdateStep();
+        step.setTestRollbacks(true);
+
+        assertThat(command(step.createBuilder()), is("updateTestingRollback"));
+    }
+
+    @Test
+    public void should_update_when_not_testing_rollbacks() {
+        assertThat(command(new UpdateBuilder()), is("update"));
+        assertThat(command(new UpdateStep().createBuilder()), is("update"));
+    }
+
+    @Test
+    public void should_ask_for_info_messages_when_reporting_changesets() throws Exception {
+        assertThat(globalArguments(new UpdateBuilder()).contains("--logLevel=info"), is(true));
+        assertThat(globalArguments(new RollbackBuilder()).contains("--logLevel=info"), is(true));
+    }
+
+    @Test
+    public void should_leave_log_level_alone_for_other_commands() throws Exception {
+        assertThat(globalArguments(new DropAllBuilder()).contains("--logLevel"), is(false));
+        assertThat(globalArguments(new RawCliBuilder()).contains("--logLevel"), is(false));
+        assertThat(globalArguments(new TagBuilder()).contains("--logLevel"), is(false));
+    }
+
+    @Test
+    public void should_skip_update_when_nothing_changed() throws Exception {
+        UnchangedDeployment deployment = new UnchangedDeployment("<changeSet id=\"1\" author=\"a\"/>");
+
+        assertThat(deployment.shouldSkip(), is(true));
+    }
+
+    @Test
+    public void should_update_when_changelog_changed() throws Exception {
+        UnchangedDeployment deployment = new UnchangedDeployment("<changeSet id=\"1\" author=\"a\"/>");
+        deployment.writeChangeLog("<changeSet id=\"1\" author=\"a\"/><changeSet id=\"2\" author=\"a\"/>");
+
+        assertThat(deployment.shouldSkip(), is(false));
+    }
+
+    @Test
+    public void should_update_when_changelog_parameters_changed() throws Exception {
+        UnchangedDeployment deployment = new UnchangedDeployment("<changeSet id=\"1\" author=\"a\"/>");
+        deployment.builder.setChangeLogParameters("schema=other");
+
+        assertThat(deployment.shouldSkip(), is(false));
+    }
+
+    @Test
+    public void should_update_when_database_history_changed() throws Exception {
+        UnchangedDeployment deployment = new UnchangedDeployment("<changeSet id=\"1\" author=\"a\"/>");
+        deployment.execute("INSERT INTO DATABASECHANGELOG VALUES ('2', 2)");
+
+        assertThat(deployment.shouldSkip(), is(false));
+    }
+
+    @Test
+    public void should_update_when_changelog_has_changesets_that_run_again() throws Exception {
+        UnchangedDeployment deployment = new UnchangedDeployment(
+                "<changeSet id=\"1\" author=\"a\" runAlways=\"true\"/>");
+
+        assertThat(deployment.shouldSkip(), is(false));
+    }
+
+    private static String globalArguments(AbstractLiquibaseBuilder builder) throws Exception {
+        ArgumentListBuilder cliCommand = new ArgumentListBuilder();
+        builder.addGlobalArguments(cliCommand, new Properties(), null, new EnvVars(), TaskListener.NULL);
+        return cliCommand.toString();
+    }
+
+    private static String command(UpdateBuilder builder) {
+        ArgumentListBuilder cliCommand = new ArgumentListBuilder();
+        builder.addCommandAndArguments(cliCommand, new Properties(), null, new EnvVars(), TaskListener.NULL);
+        return cliCommand.toString();
+    }
+
+    private static class UpdateStep extends LiquibaseUpdateStep {
+        UpdateBuilder createBuilder() {
+            return (UpdateBuilder) createCommandBuilder();
+        }
+    }
+
+    /**
+     * An H2 database and changelog recorded as deployed by the previous build.  The changelog marker is read through
+     * an installation whose only jar is H2's, as it would be on a node.
+     */
+    private class UnchangedDeployment {
+        private final UpdateBuilder builder = new UpdateBuilder();
+        private final File workspace;
+        private final String url;
+        private final Properties configProperties = new Properties();
+        private final LiquibaseInstallation installation = mock(LiquibaseInstallation.class);
+        private final Run<?, ?> build = mock(Run.class);
+
+        UnchangedDeployment(String changeSets) throws Exception {
+            workspace = temporaryFolder.newFolder("workspace");
+            writeChangeLog(changeSets);
+            url = "jdbc:h2:file:" + new File(temporaryFolder.getRoot(), "database").getAbsolutePath();
+            execute("CREATE TABLE DATABASECHANGELOG (ID VARCHAR(255), ORDEREXECUTED INT)");
+            execute("INSERT INTO DATABASECHANGELOG VALUES ('1', 1)");
+
+            File liquibaseHome = temporaryFolder.newFolder("liquibase");
+            File h2Jar = new File(org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            FileUtils.copyFile(h2Jar, new File(liquibaseHome, "lib/h2.jar"));
+            doReturn(liquibaseHome.getAbsolutePath()).when(installation).getHome();
+            doReturn(1).when(installation).getWorkerPoolSize();
+            doReturn(1).when(installation).getWorkerIdleMinutes();
+
+            builder.setChangeLogFile("changelog.xml");
+            builder.setSkipWhenUnchanged(true);
+            configProperties.setProperty(LiquibaseProperty.URL.propertyName(), url);
+
+            Run<?, ?> previous = mock(Run.class);
+            DeploymentRecordAction record = new DeploymentRecordAction();
+            record.record(builder.getDeploymentFingerprint(workspace(), configProperties, new EnvVars()), "1:1");
+            doReturn(record).when(previous).getAction(DeploymentRecordAction.class);
+            doReturn(previous).when(build).getPreviousBuild();
+        }
+
+        boolean shouldSkip() throws IOException, InterruptedException {
+            return builder.shouldSkipExecution(build, workspace(), installation, configProperties, new EnvVars(),
+                    TaskListener.NULL);
+        }
+
+        void writeChangeLog(String changeSets) throws IOException {
+            FileUtils.write(new File(workspace, "changelog.xml"),
+                    "<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\">" + changeSets +
+                            "</databaseChangeLog>", StandardCharsets.UTF_8);
+        }
+
+        void execute(String sql) throws SQLException {
+            try (Connection connection = DriverManager.getConnection(url);
+                 Statement statement = connection.createStatement()) {
+                statement.execute(sql);
+            }
+        }
+
+        private FilePath workspace() {
+            return new FilePath(FilePath.localChannel, workspace.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ChangeLogFingerprintTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File workspace;
+    protected File changeLogFile;
+    protected File includedFile;
+    protected File resourceDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        workspace = temporaryFolder.newFolder("workspace");
+        changeLogFile = new File(workspace, "master.xml");
+        includedFile = new File(workspace, "include/one.xml");
+        resourceDirectory = temporaryFolder.newFolder("resources");
+        writeChangeLog(changeLogFile,
+                "<include file=\"include/one.xml\" relativeToChangelogFile=\"true\"/>",
+                "<loadData file=\"data.csv\" tableName=\"t\"/>");
+        writeChangeLog(includedFile);
+        FileUtils.write(new File(resourceDirectory, "data.csv"), "a,b", StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void should_be_stable_for_unchanged_tree() throws IOException {
+        String first = compute();
+        String second = compute();
+
+        assertThat(first, notNullValue());
+        assertThat(second, is(first));
+    }
+
+    @Test
+    public void should_change_when_included_file_changes() throws IOException {
+        String before = compute();
+        writeChangeLog(includedFile, "<!-- changed -->");
+
+        String after = compute();
+
+        assertThat(after, not(is(before)));
+    }
+
+    @Test
+    public void should_resolve_references_against_resource_directories() throws IOException {
+        String before = compute();
+        FileUtils.write(new File(resourceDirectory, "data.csv"), "c,d", StandardCharsets.UTF_8);
+
+        String after = compute();
+
+        assertThat(after, not(is(before)));
+    }
+
+    @Test
+    public void should_ignore_unreferenced_files_next_to_the_changelog() throws IOException {
+        String before = compute();
+        FileUtils.write(new File(workspace, "builder-db.mv.db"), "data", StandardCharsets.UTF_8);
+        FileUtils.write(new File(workspace, "target/output.log"), "log", StandardCharsets.UTF_8);
+
+        String after = compute();
+
+        assertThat(after, is(before));
+    }
+
+    @Test
+    public void should_follow_includes_outside_the_changelog_directory() throws IOException {
+        File shared = new File(temporaryFolder.getRoot(), "shared/common.xml");
+        File absolute = new File(temporaryFolder.getRoot(), "absolute/other.xml");
+        writeChangeLog(shared);
+        writeChangeLog(absolute);
+        writeChangeLog(includedFile,
+                "<include file=\"../../shared/common.xml\" relativeToChangelogFile=\"true\"/>",
+                "<include file=\"" + absolute.getAbsolutePath() + "\"/>");
+        String before = compute();
+
+        writeChangeLog(shared, "<!-- changed -->");
+        String afterRelative = compute();
+        writeChangeLog(absolute, "<!-- changed -->");
+        String afterAbsolute = compute();
+
+        assertThat(afterRelative, not(is(before)));
+        assertThat(afterAbsolute, not(is(afterRelative)));
+    }
+
+    @Test
+    public void should_follow_include_all_directories() throws IOException {
+        File all = new File(workspace, "all/001.xml");
+        writeChangeLog(all);
+        writeChangeLog(includedFile, "<includeAll path=\"all/\"/>");
+        String before = compute();
+
+        writeChangeLog(new File(workspace, "all/002.xml"));
+        String after = compute();
+
+        assertThat(after, not(is(before)));
+    }
+
+    @Test
+    public void should_not_fingerprint_unresolvable_includes() throws IOException {
+        writeChangeLog(includedFile, "<include file=\"missing.xml\"/>");
+        assertThat(compute(), nullValue());
+
+        writeChangeLog(includedFile, "<include file=\"${changes}/one.xml\"/>");
+        assertThat(compute(), nullValue());
+    }
+
+    @Test
+    public void should_note_changesets_that_run_again_in_included_changelogs() throws IOException {
+        assertThat(scan().hasRerunningChangeSets(), is(false));
+
+        writeChangeLog(includedFile, "<changeSet id=\"1\" author=\"a\" runAlways=\"true\"/>");
+        assertThat(scan().hasRerunningChangeSets(), is(true));
+
+        File sql = new File(workspace, "include/views.sql");
+        FileUtils.write(sql, "--liquibase formatted sql\n--changeset a:views runOnChange:true\nselect 1;\n",
+                StandardCharsets.UTF_8);
+        writeChangeLog(includedFile, "<include file=\"views.sql\" relativeToChangelogFile=\"true\"/>");
+        assertThat(scan().hasRerunningChangeSets(), is(true));
+
+        FileUtils.write(sql, "--liquibase formatted sql\n--changeset a:views\nselect 1;\n", StandardCharsets.UTF_8);
+        assertThat(scan().hasRerunningChangeSets(), is(false));
+    }
+
+    private ChangeLogFingerprint.Result scan() throws IOException {
+        return ChangeLogFingerprint.scan(workspace, "master.xml", Collections.singletonList(resourceDirectory));
+    }
+
+    private String compute() throws IOException {
+        return ChangeLogFingerprint.compute(workspace, "master.xml", Collections.singletonList(resourceDirectory));
+    }
+
+    private static void writeChangeLog(File file, String... elements) throws IOException {
+        StringBuilder changeLog = new StringBuilder("<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\">\n");
+        for (String element : elements) {
+            changeLog.append("    ").append(element).append('\n');
+        }
+        changeLog.append("</databaseChangeLog>\n");
+        FileUtils.write(file, changeLog.toString(), StandardCharsets.UTF_8);
+    }
+}
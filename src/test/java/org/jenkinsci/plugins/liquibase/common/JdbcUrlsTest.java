@@ -0,0 +1,26 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JdbcUrlsTest {
+
+    @Test
+    public void should_identify_database_by_url_as_configured() {
+        assertThat(JdbcUrls.identify(" jdbc:postgresql://db.example.com:5432/App?ssl=true "),
+                is("jdbc:postgresql://db.example.com:5432/App?ssl=true"));
+        assertThat(JdbcUrls.identify("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1"), is("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1"));
+    }
+
+    @Test
+    public void should_leave_credentials_out_of_identity() {
+        assertThat(JdbcUrls.identify("jdbc:postgresql://db.example.com/app?user=sa&password=secret&ssl=true"),
+                is("jdbc:postgresql://db.example.com/app?ssl=true"));
+        assertThat(JdbcUrls.identify("jdbc:sqlserver://db.example.com;Password=secret;databaseName=app"),
+                is("jdbc:sqlserver://db.example.com;databaseName=app"));
+        assertThat(JdbcUrls.identify("jdbc:postgresql://db.example.com/app?password=secret"),
+                is("jdbc:postgresql://db.example.com/app"));
+    }
+}
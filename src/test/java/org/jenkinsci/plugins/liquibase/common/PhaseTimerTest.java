@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PhaseTimerTest {
+
+    protected PhaseTimer timer = new PhaseTimer();
+
+    @Test
+    public void should_keep_phases_in_order() {
+        timer.mark("properties");
+        timer.mark("installation");
+        timer.mark("liquibase");
+
+        assertThat(new ArrayList<>(timer.getPhases().keySet()), contains("properties", "installation", "liquibase"));
+    }
+
+    @Test
+    public void should_accumulate_repeated_phase() throws InterruptedException {
+        timer.mark("liquibase");
+        Thread.sleep(5);
+        timer.mark("liquibase");
+
+        Map<String, Long> phases = timer.getPhases();
+        assertThat(phases.size(), is(1));
+        assertThat(phases.get("liquibase"), greaterThanOrEqualTo(5000000L));
+    }
+
+    @Test
+    public void should_summarise_in_millis() {
+        timer.mark("properties");
+
+        assertThat(timer.toSummary().matches("properties \\d+\\.\\dms"), is(true));
+    }
+}
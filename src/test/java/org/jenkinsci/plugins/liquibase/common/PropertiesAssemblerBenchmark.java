@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.liquibase.common;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Cost of assembling Liquibase properties from a large properties file and a large build environment.
+ */
+@JmhBenchmark
+public class PropertiesAssemblerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class AssemblerState {
+
+        @Param({"100", "10000"})
+        public int propertyCount;
+
+        @Param({"100", "10000"})
+        public int environmentSize;
+
+        BuilderStub builder;
+        AbstractBuild build;
+        EnvVars environment;
+        FilePath workspace;
+        private File workspaceDir;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            workspaceDir = Files.createTempDirectory("properties-benchmark").toFile();
+            try (Writer writer = new OutputStreamWriter(
+                    new FileOutputStream(new File(workspaceDir, "liquibase.properties")),
+                    StandardCharsets.UTF_8)) {
+                for (int i = 0; i < propertyCount; i++) {
+                    writer.write("parameter.value" + i + "=some value number " + i + "\n");
+                }
+            }
+            workspace = new FilePath(workspaceDir);
+
+            environment = new EnvVars();
+            for (int i = 0; i < environmentSize; i++) {
+                environment.put("PARAM_" + i, "value" + i);
+            }
+            environment.put("token", "changelog.xml");
+
+            build = mock(AbstractBuild.class);
+            builder = new BuilderStub();
+            builder.setLiquibasePropertiesPath("liquibase.properties");
+            builder.setUrl("jdbc:h2:mem:${PARAM_1}");
+            builder.setContexts("${PARAM_2},staging");
+            builder.setLabels("${PARAM_3}");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException, InterruptedException {
+            new FilePath(workspaceDir).deleteRecursive();
+        }
+    }
+
+    @Benchmark
+    public Properties createLiquibaseProperties(AssemblerState state) throws IOException, InterruptedException {
+        return PropertiesAssembler.createLiquibaseProperties(state.builder, state.build, state.environment,
+                state.workspace);
+    }
+}
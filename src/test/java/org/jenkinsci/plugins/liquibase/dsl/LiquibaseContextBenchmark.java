@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.liquibase.dsl;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cost of flattening a Job DSL changelog parameter map into the builder's string form.
+ */
+@JmhBenchmark
+public class LiquibaseContextBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ContextState {
+
+        @Param({"10", "10000"})
+        public int parameterCount;
+
+        LiquibaseContext context;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Map<String, String> parameters = new LinkedHashMap<>();
+            for (int i = 0; i < parameterCount; i++) {
+                parameters.put("parameter" + i, "value" + i);
+            }
+            context = new LiquibaseContext();
+            context.changeLogParameters(parameters);
+        }
+    }
+
+    @Benchmark
+    public String composeChangeLogString(ContextState state) {
+        return state.context.composeChangeLogString();
+    }
+}
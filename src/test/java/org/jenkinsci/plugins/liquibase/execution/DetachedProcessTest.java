@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import hudson.FilePath;
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DetachedProcessTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected FilePath controlDirectory;
+    protected FilePath workingDirectory;
+
+    @Before
+    public void setup() throws IOException {
+        Assume.assumeTrue(new File("/bin/sh").canExecute());
+        controlDirectory = new FilePath(new File(temporaryFolder.getRoot(), "control"));
+        workingDirectory = new FilePath(temporaryFolder.newFolder("workspace"));
+    }
+
+    @Test
+    public void should_report_output_and_exit_status() throws IOException, InterruptedException {
+        DetachedProcess.launch(controlDirectory, workingDirectory,
+                Arrays.asList("/bin/sh", "-c", "echo $GREETING; exit 3"),
+                Collections.singletonMap("GREETING", "hello"));
+
+        DetachedProcess.Status status = awaitExit();
+
+        assertThat(new String(status.getOutput(), StandardCharsets.UTF_8).trim(), is("hello"));
+        assertThat(status.getExitStatus(), is(3));
+    }
+
+    @Test
+    public void should_read_output_from_offset() throws IOException, InterruptedException {
+        DetachedProcess.launch(controlDirectory, workingDirectory, Arrays.asList("/bin/sh", "-c", "echo abcdef"),
+                Collections.<String, String>emptyMap());
+        awaitExit();
+
+        DetachedProcess.Status status = DetachedProcess.poll(controlDirectory, 2, 3);
+
+        assertThat(new String(status.getOutput(), StandardCharsets.UTF_8), is("cde"));
+    }
+
+    @Test
+    public void should_report_running_process_until_killed() throws IOException, InterruptedException {
+        DetachedProcess.launch(controlDirectory, workingDirectory, Arrays.asList("/bin/sh", "-c", "sleep 60"),
+                Collections.<String, String>emptyMap());
+
+        DetachedProcess.Status running = DetachedProcess.poll(controlDirectory, 0, 1024);
+        assertThat(running.isTracked(), is(true));
+        assertThat(running.getExitStatus(), nullValue());
+
+        assertThat(DetachedProcess.kill(controlDirectory), is(true));
+        assertThat(awaitExit().isTracked(), is(true));
+    }
+
+    @Test
+    public void should_kill_processes_started_by_the_process() throws IOException, InterruptedException {
+        Assume.assumeTrue(new File("/proc/self").exists());
+        File childPid = new File(temporaryFolder.getRoot(), "child.pid");
+        DetachedProcess.launch(controlDirectory, workingDirectory,
+                Arrays.asList("/bin/sh", "-c", "sleep 60 & echo $! > " + childPid.getAbsolutePath() + "; wait"),
+                Collections.<String, String>emptyMap());
+        for (int i = 0; i < 200 && childPid.length() == 0; i++) {
+            Thread.sleep(50);
+        }
+        String pid = FileUtils.readFileToString(childPid, StandardCharsets.UTF_8).trim();
+
+        assertThat(DetachedProcess.kill(controlDirectory), is(true));
+        File childProcess = new File("/proc/" + pid);
+        for (int i = 0; i < 100 && childProcess.exists(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(childProcess.exists(), is(false));
+    }
+
+    @Test
+    public void should_report_unknown_process_as_lost() throws IOException, InterruptedException {
+        controlDirectory.mkdirs();
+
+        DetachedProcess.Status status = DetachedProcess.poll(controlDirectory, 0, 1024);
+
+        assertThat(status.isTracked(), is(false));
+    }
+
+    private DetachedProcess.Status awaitExit() throws IOException, InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            DetachedProcess.Status status = DetachedProcess.poll(controlDirectory, 0, 1024);
+            if (status.getExitStatus() != null) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("process did not exit");
+    }
+}
@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.liquibase.execution;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class LiquibaseWorkerPoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File liquibaseHome;
+    protected LiquibaseWorkerPool pool;
+
+    @Before
+    public void setup() throws IOException {
+        liquibaseHome = temporaryFolder.newFolder("liquibase");
+        new File(liquibaseHome, "liquibase.jar").createNewFile();
+        pool = new LiquibaseWorkerPool(liquibaseHome, 2, TimeUnit.MINUTES.toMillis(10));
+    }
+
+    @Test
+    public void should_reuse_released_worker() throws IOException, InterruptedException {
+        LiquibaseWorkerPool.Worker first = pool.lease();
+        pool.release(first);
+
+        LiquibaseWorkerPool.Worker second = pool.lease();
+
+        assertThat(second, sameInstance(first));
+    }
+
+    @Test
+    public void should_isolate_concurrent_leases() throws IOException, InterruptedException {
+        LiquibaseWorkerPool.Worker first = pool.lease();
+        LiquibaseWorkerPool.Worker second = pool.lease();
+
+        assertThat(second.getClassLoader(), not(sameInstance(first.getClassLoader())));
+    }
+
+    @Test
+    public void should_replace_worker_when_jars_change() throws IOException, InterruptedException {
+        LiquibaseWorkerPool.Worker first = pool.lease();
+        pool.release(first);
+        new File(liquibaseHome, "lib").mkdirs();
+        new File(liquibaseHome, "lib/driver.jar").createNewFile();
+
+        LiquibaseWorkerPool.Worker second = pool.lease();
+
+        assertThat(second, not(sameInstance(first)));
+    }
+
+    @Test
+    public void should_close_idle_workers() throws IOException, InterruptedException {
+        pool.release(pool.lease());
+
+        pool.closeIdle(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(11));
+
+        assertThat(pool.getIdleCount(), is(0));
+    }
+
+    @Test
+    public void should_not_reuse_discarded_worker_but_free_its_slot() throws IOException, InterruptedException {
+        LiquibaseWorkerPool.Worker first = pool.lease();
+        LiquibaseWorkerPool.Worker second = pool.lease();
+
+        pool.discard(first);
+        LiquibaseWorkerPool.Worker third = pool.lease();
+
+        assertThat(third, not(sameInstance(first)));
+        assertThat(third, not(sameInstance(second)));
+        assertThat(pool.getIdleCount(), is(0));
+    }
+}
@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DriverCacheTest {
+
+    private static final String DRIVER_CONTENT = "not really a jdbc driver";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected PrintStream log = new PrintStream(new NullOutputStream());
+    protected File cacheDirectory;
+    protected DriverCache driverCache;
+    protected File driverJar;
+
+    @Before
+    public void setup() throws IOException {
+        cacheDirectory = temporaryFolder.newFolder("cache");
+        driverCache = new DriverCache(cacheDirectory);
+        driverJar = temporaryFolder.newFile("sample-driver-1.0.jar");
+        FileUtils.write(driverJar, DRIVER_CONTENT, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void should_share_cached_driver_between_installations() throws IOException, InterruptedException {
+        File firstLib = temporaryFolder.newFolder("first", "lib");
+        File secondLib = temporaryFolder.newFolder("second", "lib");
+        List<DriverCache.DriverSource> sources = DriverCache.parseDriverUrls(driverJar.toURI().toString());
+
+        driverCache.provision(sources, firstLib, log);
+        FileUtils.deleteQuietly(driverJar);
+        driverCache.provision(sources, secondLib, log);
+
+        File first = new File(firstLib, "sample-driver-1.0.jar");
+        File second = new File(secondLib, "sample-driver-1.0.jar");
+        assertThat(FileUtils.readFileToString(second, StandardCharsets.UTF_8), is(DRIVER_CONTENT));
+        assertThat(Files.isSameFile(first.toPath(), second.toPath()) ||
+                FileUtils.contentEquals(first, second), is(true));
+    }
+
+    @Test
+    public void should_accept_matching_checksum() throws IOException, InterruptedException {
+        File lib = temporaryFolder.newFolder("lib");
+        String url = driverJar.toURI() + "#sha256=" + DigestUtils.sha256Hex(DRIVER_CONTENT);
+
+        driverCache.provision(DriverCache.parseDriverUrls(url), lib, log);
+
+        assertThat(new File(lib, "sample-driver-1.0.jar").exists(), is(true));
+    }
+
+    @Test(expected = IOException.class)
+    public void should_reject_checksum_mismatch() throws IOException, InterruptedException {
+        File lib = temporaryFolder.newFolder("lib");
+        String url = driverJar.toURI() + "#sha256=" + DigestUtils.sha256Hex("something else");
+
+        driverCache.provision(DriverCache.parseDriverUrls(url), lib, log);
+    }
+
+    @Test
+    public void should_download_once_for_concurrent_steps() throws Exception {
+        final List<DriverCache.DriverSource> sources = DriverCache.parseDriverUrls(driverJar.toURI().toString());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final PrintStream sharedLog = new PrintStream(output, true, "UTF-8");
+        List<Future<List<File>>> results = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 8; i++) {
+                final File lib = temporaryFolder.newFolder("executor" + i, "lib");
+                results.add(executor.submit(() -> new DriverCache(cacheDirectory).provision(sources, lib, sharedLog)));
+            }
+            for (Future<List<File>> result : results) {
+                File jar = result.get().get(0);
+                assertThat(FileUtils.readFileToString(jar, StandardCharsets.UTF_8), is(DRIVER_CONTENT));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(StringUtils.countMatches(output.toString("UTF-8"), "Downloading"), is(1));
+    }
+
+    @Test
+    public void should_parse_multiple_urls() {
+        List<DriverCache.DriverSource> sources =
+                DriverCache.parseDriverUrls("http://example.com/a/one.jar, http://example.com/b/two.jar#sha256=ABC");
+
+        assertThat(sources.size(), is(2));
+        assertThat(sources.get(0).getFilename(), is("one.jar"));
+        assertThat(sources.get(1).getFilename(), is("two.jar"));
+        assertThat(sources.get(1).getUrl(), is("http://example.com/b/two.jar"));
+        assertThat(sources.get(1).getSha256(), is("abc"));
+    }
+}
@@ -0,0 +1,172 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstallationCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private LiquibaseInstallation installation;
+
+    @Mock
+    private LiquibaseInstallation resolved;
+
+    @Mock
+    private Node node;
+
+    @Mock
+    private Node otherNode;
+
+    @Before
+    public void setup() throws IOException, InterruptedException {
+        InstallationCache.invalidateAll();
+        when(installation.getName()).thenReturn("liquibase");
+        when(installation.forNode(node, TaskListener.NULL)).thenReturn(resolved);
+        when(installation.forNode(otherNode, TaskListener.NULL)).thenReturn(resolved);
+        when(resolved.getHome()).thenReturn("/opt/liquibase");
+        when(node.getNodeName()).thenReturn("agent1");
+        when(otherNode.getNodeName()).thenReturn("agent2");
+    }
+
+    @After
+    public void cleanup() {
+        InstallationCache.invalidateAll();
+    }
+
+    @Test
+    public void should_resolve_once_per_node() throws IOException, InterruptedException {
+        assertThat(InstallationCache.forNode(installation, node, TaskListener.NULL), sameInstance(resolved));
+        InstallationCache.forNode(installation, node, TaskListener.NULL);
+        InstallationCache.forNode(installation, otherNode, TaskListener.NULL);
+
+        verify(installation, times(1)).forNode(node, TaskListener.NULL);
+        verify(installation, times(1)).forNode(otherNode, TaskListener.NULL);
+    }
+
+    @Test
+    public void should_resolve_again_after_node_reconnects() throws IOException, InterruptedException {
+        InstallationCache.forNode(installation, node, TaskListener.NULL);
+        InstallationCache.invalidate(node);
+        InstallationCache.forNode(installation, node, TaskListener.NULL);
+
+        verify(installation, times(2)).forNode(node, TaskListener.NULL);
+    }
+
+    @Test
+    public void should_resolve_again_for_reconfigured_node() throws IOException, InterruptedException {
+        Node reconfigured = mock(Node.class);
+        when(reconfigured.getNodeName()).thenReturn("agent1");
+        when(installation.forNode(reconfigured, TaskListener.NULL)).thenReturn(resolved);
+
+        InstallationCache.forNode(installation, node, TaskListener.NULL);
+        InstallationCache.forNode(installation, reconfigured, TaskListener.NULL);
+        InstallationCache.forNode(installation, reconfigured, TaskListener.NULL);
+
+        verify(installation, times(1)).forNode(node, TaskListener.NULL);
+        verify(installation, times(1)).forNode(reconfigured, TaskListener.NULL);
+    }
+
+    @Test
+    public void should_forget_resolution_when_resolving_again() throws IOException, InterruptedException {
+        LiquibaseInstallation reinstalled = mock(LiquibaseInstallation.class);
+        when(installation.forNode(node, TaskListener.NULL)).thenReturn(resolved, reinstalled);
+
+        assertThat(InstallationCache.forNode(installation, node, TaskListener.NULL), sameInstance(resolved));
+        assertThat(InstallationCache.resolveAgain(installation, node, TaskListener.NULL), sameInstance(reinstalled));
+        assertThat(InstallationCache.forNode(installation, node, TaskListener.NULL), sameInstance(reinstalled));
+
+        verify(installation, times(2)).forNode(node, TaskListener.NULL);
+    }
+
+    @Test
+    public void should_only_remember_valid_probes() throws IOException, InterruptedException {
+        File home = temporaryFolder.newFolder("liquibase");
+        FilePath homePath = new FilePath(home);
+        FilePath cacheRoot = new FilePath(temporaryFolder.newFolder("drivers"));
+        when(resolved.getHome()).thenReturn(home.getAbsolutePath());
+
+        assertThat(InstallationCache.probe(resolved, node, homePath, cacheRoot, TaskListener.NULL).isValid(),
+                is(false));
+
+        File liquibaseJar = new File(home, "liquibase.jar");
+        assertThat(liquibaseJar.createNewFile(), is(true));
+        assertThat(InstallationCache.probe(resolved, node, homePath, cacheRoot, TaskListener.NULL).isValid(),
+                is(true));
+
+        assertThat(liquibaseJar.delete(), is(true));
+        assertThat(InstallationCache.probe(resolved, node, homePath, cacheRoot, TaskListener.NULL).isValid(),
+                is(false));
+        assertThat(InstallationCache.probe(resolved, otherNode, homePath, cacheRoot, TaskListener.NULL).isValid(),
+                is(false));
+
+        assertThat(liquibaseJar.createNewFile(), is(true));
+        assertThat(InstallationCache.probe(resolved, node, homePath, cacheRoot, TaskListener.NULL).isValid(),
+                is(true));
+    }
+
+    @Test
+    public void should_resolve_once_when_steps_on_a_node_start_together() throws Exception {
+        final CountDownLatch resolving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(installation.forNode(node, TaskListener.NULL)).thenAnswer(new Answer<LiquibaseInstallation>() {
+            @Override
+            public LiquibaseInstallation answer(InvocationOnMock invocation) throws InterruptedException {
+                resolving.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return resolved;
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<LiquibaseInstallation> lookup = new Callable<LiquibaseInstallation>() {
+                @Override
+                public LiquibaseInstallation call() throws Exception {
+                    return InstallationCache.forNode(installation, node, TaskListener.NULL);
+                }
+            };
+            Future<LiquibaseInstallation> first = executor.submit(lookup);
+            assertThat(resolving.await(10, TimeUnit.SECONDS), is(true));
+            Future<LiquibaseInstallation> second = executor.submit(lookup);
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(first.get(10, TimeUnit.SECONDS), sameInstance(resolved));
+            assertThat(second.get(10, TimeUnit.SECONDS), sameInstance(resolved));
+            verify(installation, times(1)).forNode(node, TaskListener.NULL);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
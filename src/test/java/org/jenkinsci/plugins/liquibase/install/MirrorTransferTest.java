@@ -0,0 +1,127 @@
+package org.jenkinsci.plugins.liquibase.install;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MirrorTransferTest {
+
+    private static final String ARCHIVE_CONTENT = "pretend this is a liquibase distribution";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File archive;
+    protected File partial;
+
+    @Before
+    public void setup() throws IOException {
+        archive = new File(temporaryFolder.newFolder("mirror"), "liquibase-3.8.9.tar.gz");
+        FileUtils.write(archive, ARCHIVE_CONTENT, StandardCharsets.UTF_8);
+        partial = new File(temporaryFolder.newFolder("tools"), "liquibase.part");
+    }
+
+    @Test
+    public void should_resume_partial_transfer() throws IOException, InterruptedException {
+        FileUtils.write(partial, ARCHIVE_CONTENT.substring(0, 10), StandardCharsets.UTF_8);
+
+        MirrorTransfer.fetch(archive, new FilePath(partial), TaskListener.NULL);
+
+        assertThat(FileUtils.readFileToString(partial, StandardCharsets.UTF_8), is(ARCHIVE_CONTENT));
+    }
+
+    @Test
+    public void should_verify_published_checksum() throws IOException, InterruptedException {
+        FileUtils.write(new File(archive.getPath() + ".sha256"),
+                DigestUtils.sha256Hex(ARCHIVE_CONTENT) + "  liquibase-3.8.9.tar.gz", StandardCharsets.UTF_8);
+
+        MirrorTransfer.fetch(archive, new FilePath(partial), TaskListener.NULL);
+
+        assertThat(partial.exists(), is(true));
+    }
+
+    @Test
+    public void should_discard_transfer_with_wrong_checksum() throws IOException, InterruptedException {
+        FileUtils.write(new File(archive.getPath() + ".sha1"), DigestUtils.sha1Hex("something else"),
+                StandardCharsets.UTF_8);
+
+        try {
+            MirrorTransfer.fetch(archive, new FilePath(partial), TaskListener.NULL);
+        } catch (IOException expected) {
+            assertThat(partial.exists(), is(false));
+            return;
+        }
+        throw new AssertionError("checksum mismatch not detected");
+    }
+
+    @Test
+    public void should_install_once_when_installs_run_concurrently() throws Exception {
+        final File home = temporaryFolder.newFolder("home");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> installs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                installs.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        MirrorTransfer.install(archive, new FilePath(partial), new CopyTarget(home),
+                                TaskListener.NULL);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> install : installs) {
+                install.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(FileUtils.readFileToString(new File(home, "installed"), StandardCharsets.UTF_8),
+                is(ARCHIVE_CONTENT));
+        assertThat(partial.exists(), is(false));
+    }
+
+    /**
+     * Appends the archive to <code>installed</code>, so installing twice would show.
+     */
+    private static class CopyTarget implements MirrorTransfer.Target {
+        private static final long serialVersionUID = 1;
+
+        private final File home;
+
+        CopyTarget(File home) {
+            this.home = home;
+        }
+
+        @Override
+        public boolean isInstalled() {
+            return new File(home, "installed").exists();
+        }
+
+        @Override
+        public void install(File archive) throws IOException {
+            FileUtils.write(new File(home, "installed"), FileUtils.readFileToString(archive, StandardCharsets.UTF_8),
+                    StandardCharsets.UTF_8, true);
+        }
+    }
+}
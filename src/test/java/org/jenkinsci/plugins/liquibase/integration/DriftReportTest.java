@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.liquibase.integration;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.tools.ToolProperty;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.liquibase.builder.DriftReportBuilder;
+import org.jenkinsci.plugins.liquibase.builder.UpdateBuilder;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.DriftReportAction;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares H2 file databases with a changelog whose expected state is parsed rather than run.  Needs an unpacked
+ * Liquibase distribution:
+ * <pre>
+ * mvn test -Dtest=DriftReportTest -Dliquibase.home=/opt/liquibase
+ * </pre>
+ */
+public class DriftReportTest {
+
+    private static final String INSTALLATION_NAME = "drift";
+
+    private static final String POSTGRESQL_ONLY_CHANGESET =
+            "    <changeSet author=\"keith\" id=\"postgresql-only\">\n" +
+            "        <sql dbms=\"postgresql\">CREATE EXTENSION IF NOT EXISTS pgcrypto</sql>\n" +
+            "    </changeSet>\n" +
+            "    <changeSet author=\"keith\" id=\"postgresql-table\" dbms=\"postgresql\">\n" +
+            "        <sql>CREATE TABLE jsonb_table (payload JSONB)</sql>\n" +
+            "    </changeSet>\n";
+    private static final String ADDED_CHANGESET =
+            "    <changeSet author=\"keith\" id=\"create-size-table\">\n" +
+            "        <createTable tableName=\"size\">\n" +
+            "            <column name=\"id\" type=\"int\"/>\n" +
+            "        </createTable>\n" +
+            "    </changeSet>\n";
+
+    @ClassRule
+    public static JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected File changeLog;
+
+    @Before
+    public void setup() throws Exception {
+        String liquibaseHome = System.getProperty("liquibase.home");
+        assumeTrue("liquibase.home not set", liquibaseHome != null);
+
+        String h2DriverUrl = org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        jenkinsRule.jenkins.getDescriptorByType(LiquibaseInstallation.DescriptorImpl.class).setInstallations(
+                new LiquibaseInstallation(INSTALLATION_NAME, liquibaseHome, h2DriverUrl,
+                        Collections.<ToolProperty<?>>emptyList()));
+        changeLog = LiquibaseTestUtil.createErrorFreeChangeset(temporaryFolder);
+        addChangeSets(POSTGRESQL_ONLY_CHANGESET);
+    }
+
+    @Test
+    public void should_find_no_drift_in_updated_database() throws Exception {
+        String url = LiquibaseTestUtil.composeJdbcUrl(temporaryFolder.newFile());
+        update(url);
+
+        FreeStyleBuild build = reportDrift(url);
+
+        jenkinsRule.assertBuildStatus(Result.SUCCESS, build);
+        assertThat(build.getAction(DriftReportAction.class).getDriftedCount(), is(0));
+    }
+
+    @Test
+    public void should_report_changesets_added_since_update_as_pending() throws Exception {
+        String url = LiquibaseTestUtil.composeJdbcUrl(temporaryFolder.newFile());
+        update(url);
+        addChangeSets(ADDED_CHANGESET);
+
+        FreeStyleBuild build = reportDrift(url);
+
+        jenkinsRule.assertBuildStatus(Result.UNSTABLE, build);
+        DriftReportAction.TargetDrift drift = build.getAction(DriftReportAction.class).getTargets().get(0);
+        assertThat(drift.getPending(), is(Collections.singletonList(
+                changeLog.getAbsolutePath() + "::create-size-table::keith")));
+    }
+
+    private void addChangeSets(String changeSets) throws Exception {
+        String content = FileUtils.readFileToString(changeLog, StandardCharsets.UTF_8);
+        FileUtils.write(changeLog, content.replace("</databaseChangeLog>", changeSets + "</databaseChangeLog>"),
+                StandardCharsets.UTF_8);
+    }
+
+    private void update(String url) throws Exception {
+        UpdateBuilder builder = new UpdateBuilder();
+        builder.setInstallationName(INSTALLATION_NAME);
+        builder.setChangeLogFile(changeLog.getAbsolutePath());
+        builder.setUrl(url);
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(builder);
+        jenkinsRule.assertBuildStatusSuccess(project.scheduleBuild2(0));
+    }
+
+    private FreeStyleBuild reportDrift(String url) throws Exception {
+        DriftReportBuilder builder = new DriftReportBuilder();
+        builder.setInstallationName(INSTALLATION_NAME);
+        builder.setChangeLogFile(changeLog.getAbsolutePath());
+        builder.setTargets(url);
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(builder);
+        return project.scheduleBuild2(0).get();
+    }
+}
@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.liquibase.integration;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.tools.ToolProperty;
+import org.jenkinsci.plugins.liquibase.builder.UpdateBuilder;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResult;
+import org.jenkinsci.plugins.liquibase.report.ChangeSetResultAction;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the same update through the <code>liquibase</code> script and in-process, against separate H2 file databases,
+ * and checks both report the same outcome.  Needs an unpacked Liquibase distribution:
+ * <pre>
+ * mvn test -Dtest=InProcessParityTest -Dliquibase.home=/opt/liquibase
+ * </pre>
+ */
+public class InProcessParityTest {
+
+    private static final String INSTALLATION_NAME = "parity";
+
+    @ClassRule
+    public static JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() {
+        String liquibaseHome = System.getProperty("liquibase.home");
+        assumeTrue("liquibase.home not set", liquibaseHome != null);
+
+        String h2DriverUrl = org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        jenkinsRule.jenkins.getDescriptorByType(LiquibaseInstallation.DescriptorImpl.class).setInstallations(
+                new LiquibaseInstallation(INSTALLATION_NAME, liquibaseHome, h2DriverUrl,
+                        Collections.<ToolProperty<?>>emptyList()));
+    }
+
+    @Test
+    public void should_report_same_outcome_for_successful_update() throws Exception {
+        File changeLog = LiquibaseTestUtil.createErrorFreeChangeset(temporaryFolder);
+
+        FreeStyleBuild cli = update(changeLog, false);
+        FreeStyleBuild inProcess = update(changeLog, true);
+
+        assertSameOutcome(cli, inProcess);
+    }
+
+    @Test
+    public void should_report_same_outcome_for_failed_update() throws Exception {
+        File changeLog = LiquibaseTestUtil.createChangesetFileWithError(temporaryFolder);
+
+        FreeStyleBuild cli = update(changeLog, false);
+        FreeStyleBuild inProcess = update(changeLog, true);
+
+        assertThat(cli.getResult(), not(is(Result.SUCCESS)));
+        assertSameOutcome(cli, inProcess);
+    }
+
+    private FreeStyleBuild update(File changeLog, boolean runInProcess) throws Exception {
+        UpdateBuilder builder = new UpdateBuilder();
+        builder.setInstallationName(INSTALLATION_NAME);
+        builder.setChangeLogFile(changeLog.getAbsolutePath());
+        builder.setUrl(LiquibaseTestUtil.composeJdbcUrl(temporaryFolder.newFile()));
+        builder.setRunInProcess(runInProcess);
+
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.getBuildersList().add(builder);
+        return project.scheduleBuild2(0).get();
+    }
+
+    private static void assertSameOutcome(FreeStyleBuild cli, FreeStyleBuild inProcess) throws Exception {
+        assertThat(inProcess.getResult(), is(cli.getResult()));
+        assertThat(changeSets(inProcess), is(changeSets(cli)));
+        assertThat(liquibaseOutput(inProcess), is(liquibaseOutput(cli)));
+    }
+
+    private static List<String> changeSets(FreeStyleBuild build) {
+        List<String> changeSets = new ArrayList<>();
+        ChangeSetResultAction action = build.getAction(ChangeSetResultAction.class);
+        if (action != null) {
+            for (ChangeSetResult changeSet : action.getChangeSets()) {
+                changeSets.add(changeSet.getKey() + " " + changeSet.getOutcome());
+            }
+        }
+        return changeSets;
+    }
+
+    /**
+     * The lines Liquibase printed, without the command line, the phase timings (the CLI has a launch phase), the
+     * database URL, and figures such as durations and dates that differ from run to run.
+     */
+    private static List<String> liquibaseOutput(FreeStyleBuild build) throws Exception {
+        List<String> lines = new ArrayList<>();
+        boolean started = false;
+        for (String line : build.getLog(Integer.MAX_VALUE)) {
+            if (line.startsWith("$ ")) {
+                started = true;
+                continue;
+            }
+            if (!started || line.startsWith("Liquibase phase timings: ") || line.startsWith("Finished: ")) {
+                continue;
+            }
+            String normalized = line.replaceAll("jdbc:h2:file:\\S+", "jdbc:h2:file:<database>")
+                                    .replaceAll("\\d+", "#")
+                                    .trim();
+            if (!normalized.isEmpty()) {
+                lines.add(normalized);
+            }
+        }
+        return lines;
+    }
+}
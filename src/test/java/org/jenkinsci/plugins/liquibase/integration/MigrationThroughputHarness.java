@@ -0,0 +1,175 @@
+package org.jenkinsci.plugins.liquibase.integration;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.slaves.DumbSlave;
+import hudson.tasks.Builder;
+import hudson.tools.ToolProperty;
+import jenkins.security.MasterToSlaveCallable;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.liquibase.builder.AbstractLiquibaseBuilder;
+import org.jenkinsci.plugins.liquibase.builder.DropAllBuilder;
+import org.jenkinsci.plugins.liquibase.builder.RollbackBuilder;
+import org.jenkinsci.plugins.liquibase.builder.TagBuilder;
+import org.jenkinsci.plugins.liquibase.builder.UpdateBuilder;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.jenkinsci.plugins.liquibase.matchers.BuildResultMatcher.isSuccessful;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Load test running synthetic changelogs through every builder against H2 file databases on a separate agent JVM.
+ * Not part of the normal test run; use the <code>throughput</code> profile and point <code>liquibase.home</code> at
+ * an unpacked Liquibase distribution:
+ * <pre>
+ * mvn test -Pthroughput -Dliquibase.home=/opt/liquibase [-Dthroughput.sizes=1000,10000]
+ * </pre>
+ * Each step's wall time, controller CPU, agent-side CPU (the agent JVM plus the Liquibase processes it waited for) and
+ * console log volume are logged and written to <code>target/throughput-report.csv</code>, once for the CLI and once
+ * for in-process execution.
+ */
+public class MigrationThroughputHarness {
+    private static final Logger LOG = LoggerFactory.getLogger(MigrationThroughputHarness.class);
+
+    private static final String DEFAULT_SIZES = "1000,10000,50000";
+    private static final String INSTALLATION_NAME = "throughput";
+
+    @Rule
+    public JenkinsRule jenkinsRule = createJenkinsRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected DumbSlave agent;
+    protected List<String> report = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        String liquibaseHome = System.getProperty("liquibase.home");
+        assumeTrue("liquibase.home not set", liquibaseHome != null);
+
+        String h2DriverUrl = org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        jenkinsRule.jenkins.getDescriptorByType(LiquibaseInstallation.DescriptorImpl.class).setInstallations(
+                new LiquibaseInstallation(INSTALLATION_NAME, liquibaseHome, h2DriverUrl,
+                        Collections.<ToolProperty<?>>emptyList()));
+        agent = jenkinsRule.createOnlineSlave();
+        report.add("changesets,mode,step,wallMillis,controllerCpuMillis,agentCpuMillis,logBytes");
+    }
+
+    @Test
+    public void measure_throughput() throws Exception {
+        for (String size : System.getProperty("throughput.sizes", DEFAULT_SIZES).split(",")) {
+            int changeSetCount = Integer.parseInt(size.trim());
+            File changeLog = SyntheticChangeLog.write(temporaryFolder.getRoot(), changeSetCount);
+            measureAllSteps(changeLog, changeSetCount, false);
+            measureAllSteps(changeLog, changeSetCount, true);
+        }
+
+        File reportFile = new File("target", "throughput-report.csv");
+        FileUtils.writeLines(reportFile, StandardCharsets.UTF_8.name(), report);
+        LOG.info("Throughput report written to {}", reportFile.getAbsolutePath());
+    }
+
+    private void measureAllSteps(File changeLog, int changeSetCount, boolean runInProcess) throws Exception {
+        String jdbcUrl = LiquibaseTestUtil.composeJdbcUrl(temporaryFolder.newFile());
+
+        TagBuilder tag = new TagBuilder();
+        tag.setTag("throughput");
+
+        RollbackBuilder rollback = new RollbackBuilder();
+        rollback.setRollbackType(RollbackBuilder.RollbackStrategy.COUNT.name());
+        rollback.setNumberOfChangesetsToRollback(String.valueOf(changeSetCount));
+
+        measure(changeSetCount, runInProcess, "update", new UpdateBuilder(), changeLog, jdbcUrl);
+        measure(changeSetCount, runInProcess, "tag", tag, changeLog, jdbcUrl);
+        measure(changeSetCount, runInProcess, "rollback", rollback, changeLog, jdbcUrl);
+        measure(changeSetCount, runInProcess, "dropAll", new DropAllBuilder(), changeLog, jdbcUrl);
+    }
+
+    private void measure(int changeSetCount, boolean runInProcess, String step, AbstractLiquibaseBuilder builder,
+                         File changeLog, String jdbcUrl) throws Exception {
+        builder.setInstallationName(INSTALLATION_NAME);
+        builder.setChangeLogFile(changeLog.getAbsolutePath());
+        builder.setUrl(jdbcUrl);
+        builder.setRunInProcess(runInProcess);
+
+        FreeStyleProject project = jenkinsRule.createFreeStyleProject();
+        project.setAssignedNode(agent);
+        project.getBuildersList().add((Builder) builder);
+
+        long controllerCpuBefore = getControllerCpuNanos();
+        long agentCpuBefore = agent.getChannel().call(new AgentCpuCallable());
+        long start = System.nanoTime();
+        FreeStyleBuild build = project.scheduleBuild2(0).get();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long controllerCpuMillis = TimeUnit.NANOSECONDS.toMillis(getControllerCpuNanos() - controllerCpuBefore);
+        long agentCpuMillis = agent.getChannel().call(new AgentCpuCallable()) - agentCpuBefore;
+        long logBytes = build.getLogFile().length();
+
+        assertThat(build, isSuccessful());
+        String mode = runInProcess ? "in-process" : "cli";
+        LOG.info("{} changesets, {} {}: wall {}ms, controller cpu {}ms, agent cpu {}ms, log {} bytes",
+                changeSetCount, mode, step, wallMillis, controllerCpuMillis, agentCpuMillis, logBytes);
+        report.add(changeSetCount + "," + mode + "," + step + "," + wallMillis + "," + controllerCpuMillis + "," +
+                agentCpuMillis + "," + logBytes);
+    }
+
+    private static long getControllerCpuNanos() {
+        java.lang.management.OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    private static JenkinsRule createJenkinsRule() {
+        JenkinsRule rule = new JenkinsRule();
+        // the largest changelogs take far longer than the default per-test timeout
+        rule.timeout = 0;
+        return rule;
+    }
+
+    /**
+     * CPU milliseconds used by the agent JVM and by the child processes it has waited for, read from
+     * <code>/proc/self/stat</code>.  Returns 0 where that isn't available.
+     */
+    private static class AgentCpuCallable extends MasterToSlaveCallable<Long, IOException> {
+        private static final long serialVersionUID = 1;
+        // USER_HZ is 100 on every mainstream Linux build
+        private static final long MILLIS_PER_TICK = 10;
+
+        @Override
+        public Long call() throws IOException {
+            File stat = new File("/proc/self/stat");
+            if (!stat.exists()) {
+                return 0L;
+            }
+            String content = FileUtils.readFileToString(stat, StandardCharsets.UTF_8);
+            // fields after the parenthesised command name, starting at field 3 (state)
+            String[] fields = content.substring(content.lastIndexOf(')') + 2).split(" ");
+            long ticks = 0;
+            for (int field = 14; field <= 17; field++) {
+                ticks += Long.parseLong(fields[field - 3]);
+            }
+            return ticks * MILLIS_PER_TICK;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.jenkinsci.plugins.liquibase.integration;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes changelogs of arbitrary size for load testing.  Every tenth changeset creates a table and the nine after it
+ * add a column to that table, so every changeset can be rolled back automatically.
+ */
+public class SyntheticChangeLog {
+
+    static final int COLUMNS_PER_TABLE = 9;
+
+    public static File write(File parent, int changeSetCount) throws IOException {
+        File changeLog = new File(parent, "synthetic-" + changeSetCount + ".xml");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(changeLog), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<databaseChangeLog\n" +
+                    "        xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\"\n" +
+                    "        xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+                    "        xsi:schemaLocation=\"http://www.liquibase.org/xml/ns/dbchangelog " +
+                    "http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.5.xsd\">\n");
+            for (int i = 0; i < changeSetCount; i++) {
+                writeChangeSet(writer, i);
+            }
+            writer.write("</databaseChangeLog>\n");
+        }
+        return changeLog;
+    }
+
+    private static void writeChangeSet(Writer writer, int index) throws IOException {
+        int table = index / (COLUMNS_PER_TABLE + 1);
+        int column = index % (COLUMNS_PER_TABLE + 1);
+        writer.write("    <changeSet author=\"synthetic\" id=\"" + index + "\">\n");
+        if (column == 0) {
+            writer.write("        <createTable tableName=\"t" + table + "\">\n" +
+                    "            <column name=\"id\" type=\"int\">\n" +
+                    "                <constraints primaryKey=\"true\" nullable=\"false\"/>\n" +
+                    "            </column>\n" +
+                    "        </createTable>\n");
+        } else {
+            writer.write("        <addColumn tableName=\"t" + table + "\">\n" +
+                    "            <column name=\"c" + column + "\" type=\"varchar(50)\"/>\n" +
+                    "        </addColumn>\n");
+        }
+        writer.write("    </changeSet>\n");
+    }
+}
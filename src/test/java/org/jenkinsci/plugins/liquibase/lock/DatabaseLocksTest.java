@@ -0,0 +1,159 @@
+package org.jenkinsci.plugins.liquibase.lock;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DatabaseLocksTest {
+
+    private static final String URL = "jdbc:postgresql://db.example.com:5432/app";
+
+    protected int maxHolders;
+    protected DatabaseLocks locks;
+    protected TaskListener listener;
+
+    @Before
+    public void setup() {
+        maxHolders = 1;
+        locks = new DatabaseLocks(new DatabaseLocks.MaxHolders() {
+            @Override
+            public int get() {
+                return maxHolders;
+            }
+        });
+        listener = new StreamTaskListener(System.out, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void should_normalize_parameters_case_and_trailing_slashes() {
+        assertThat(DatabaseLocks.normalize(" JDBC:PostgreSQL://DB.example.com:5432/app/?ssl=true "),
+                is("jdbc:postgresql://db.example.com:5432/app"));
+        assertThat(DatabaseLocks.normalize("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1"), is("jdbc:h2:mem:test"));
+    }
+
+    @Test
+    public void should_keep_parameters_that_choose_the_database() {
+        String server = "jdbc:sqlserver://db.example.com:1433";
+
+        assertThat(DatabaseLocks.normalize(server + ";encrypt=true;DatabaseName=App"),
+                is("jdbc:sqlserver://db.example.com:1433;databasename=app"));
+        assertThat(DatabaseLocks.normalize(server + ";databaseName=app"),
+                is(DatabaseLocks.normalize(server + ";databaseName=app;loginTimeout=5")));
+        assertThat(DatabaseLocks.normalize(server + ";databaseName=app").equals(
+                DatabaseLocks.normalize(server + ";databaseName=reports")), is(false));
+    }
+
+    @Test
+    public void should_not_share_in_memory_or_relative_databases() {
+        assertThat(DatabaseLocks.isShared("jdbc:h2:mem:builder-db"), is(false));
+        assertThat(DatabaseLocks.isShared("jdbc:h2:./target/db;AUTO_SERVER=TRUE"), is(false));
+        assertThat(DatabaseLocks.isShared("jdbc:h2:file:db"), is(false));
+        assertThat(DatabaseLocks.isShared("jdbc:hsqldb:mem:test"), is(false));
+
+        assertThat(DatabaseLocks.isShared("jdbc:h2:/var/lib/app/db"), is(true));
+        assertThat(DatabaseLocks.isShared("jdbc:h2:~/db"), is(true));
+        assertThat(DatabaseLocks.isShared("jdbc:h2:file:C:/data/db"), is(true));
+        assertThat(DatabaseLocks.isShared("jdbc:h2:tcp://db.example.com/app"), is(true));
+        assertThat(DatabaseLocks.isShared(URL), is(true));
+    }
+
+    @Test
+    public void should_not_lock_databases_that_are_not_shared() {
+        String url = "jdbc:h2:mem:builder-db";
+
+        DatabaseLocks.Lease first = locks.enqueue(url).tryAcquire();
+        DatabaseLocks.Lease second = locks.enqueue(url).tryAcquire();
+
+        assertThat(first, notNullValue());
+        assertThat(second, notNullValue());
+        assertThat(locks.isBusy(url), is(false));
+        first.close();
+        assertThat(locks.getStatistics().isEmpty(), is(true));
+    }
+
+    @Test
+    public void should_grant_lock_in_arrival_order() {
+        DatabaseLocks.Lease held = locks.enqueue(URL).tryAcquire();
+        DatabaseLocks.Ticket first = locks.enqueue(URL);
+        DatabaseLocks.Ticket second = locks.enqueue(URL);
+
+        held.close();
+
+        assertThat(second.tryAcquire(), nullValue());
+        assertThat(first.tryAcquire(), notNullValue());
+    }
+
+    @Test
+    public void should_allow_configured_number_of_holders() {
+        maxHolders = 2;
+
+        DatabaseLocks.Lease first = locks.enqueue(URL).tryAcquire();
+        DatabaseLocks.Lease second = locks.enqueue(URL + "?ssl=true").tryAcquire();
+        DatabaseLocks.Ticket third = locks.enqueue(URL);
+
+        assertThat(first, notNullValue());
+        assertThat(second, notNullValue());
+        assertThat(third.tryAcquire(), nullValue());
+        assertThat(locks.isBusy(URL), is(true));
+    }
+
+    @Test
+    public void should_not_lock_when_disabled() {
+        maxHolders = 0;
+
+        locks.enqueue(URL).tryAcquire();
+
+        assertThat(locks.isBusy(URL), is(false));
+        assertThat(locks.enqueue(URL).tryAcquire(), notNullValue());
+    }
+
+    @Test
+    public void should_let_next_waiter_in_when_ticket_cancelled() {
+        DatabaseLocks.Lease held = locks.enqueue(URL).tryAcquire();
+        DatabaseLocks.Ticket cancelled = locks.enqueue(URL);
+        DatabaseLocks.Ticket next = locks.enqueue(URL);
+
+        cancelled.cancel();
+        held.close();
+
+        assertThat(next.tryAcquire(), notNullValue());
+        assertThat(locks.getStatistics().get(DatabaseLocks.normalize(URL)).getAcquisitions(), is(2L));
+    }
+
+    @Test
+    public void should_wake_blocked_waiter_on_release() throws InterruptedException {
+        DatabaseLocks.Lease held = locks.acquire(URL, listener);
+        final AtomicReference<DatabaseLocks.Lease> acquired = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    acquired.set(locks.acquire(URL, listener));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        waiter.start();
+
+        assertThat(done.await(200, TimeUnit.MILLISECONDS), is(false));
+        held.close();
+
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(acquired.get(), notNullValue());
+    }
+}
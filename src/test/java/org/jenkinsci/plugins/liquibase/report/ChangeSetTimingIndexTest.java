@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import hudson.model.Job;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChangeSetTimingIndexTest {
+
+    private static final String TOTAL_KEY = "master.xml @ jdbc:h2:mem:test";
+
+    protected ChangeSetTimingIndex index = new ChangeSetTimingIndex();
+
+    @Test
+    public void should_use_median_as_baseline() {
+        record(1, 100);
+        record(2, 5000);
+        record(3, 120);
+
+        assertThat(index.getBaseline("master.xml::1::keith"), is(120L));
+        assertThat(index.getTotalBaseline(TOTAL_KEY), is(120L));
+    }
+
+    @Test
+    public void should_report_missing_history() {
+        assertThat(index.getBaseline("master.xml::1::keith"), is(-1L));
+    }
+
+    @Test
+    public void should_keep_limited_samples() {
+        for (int i = 0; i < ChangeSetTimingIndex.MAX_SAMPLES + 5; i++) {
+            record(i, i);
+        }
+
+        assertThat(index.getTotals().get(TOTAL_KEY).size(), is(ChangeSetTimingIndex.MAX_SAMPLES));
+    }
+
+    @Test
+    public void should_not_record_total_for_empty_update() {
+        index.record(1, TOTAL_KEY, Collections.<ChangeSetResult>emptyList());
+
+        assertThat(index.getTotals().isEmpty(), is(true));
+    }
+
+    @Test
+    public void should_lock_per_job() {
+        Job<?, ?> job = mock(Job.class);
+        Job<?, ?> sameJob = mock(Job.class);
+        Job<?, ?> otherJob = mock(Job.class);
+        when(job.getFullName()).thenReturn("folder/app");
+        when(sameJob.getFullName()).thenReturn("folder/app");
+        when(otherJob.getFullName()).thenReturn("folder/other");
+
+        assertThat(ChangeSetTimingIndex.lockFor(sameJob), sameInstance(ChangeSetTimingIndex.lockFor(job)));
+        assertThat(ChangeSetTimingIndex.lockFor(otherJob), not(sameInstance(ChangeSetTimingIndex.lockFor(job))));
+    }
+
+    private void record(int buildNumber, long duration) {
+        index.record(buildNumber, TOTAL_KEY, Arrays.asList(new ChangeSetResult("master.xml", "1", "keith", duration,
+                ChangeSetResult.Outcome.EXECUTED, 0)));
+    }
+}
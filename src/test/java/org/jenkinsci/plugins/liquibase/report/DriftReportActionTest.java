@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import org.jenkinsci.plugins.liquibase.execution.ChangeLogReader;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DriftReportActionTest {
+
+    private static final String URL = "jdbc:h2:mem:test";
+
+    @Test
+    public void should_report_no_drift_for_matching_rows() {
+        DriftReportAction.TargetDrift drift = DriftReportAction.TargetDrift.compare(URL,
+                Arrays.asList(row("1", "7:aaa"), row("2", "7:bbb")),
+                Arrays.asList(row("1", "7:aaa"), row("2", "7:bbb")));
+
+        assertThat(drift.isDrifted(), is(false));
+    }
+
+    @Test
+    public void should_report_pending_unknown_and_mismatched_changesets() {
+        DriftReportAction.TargetDrift drift = DriftReportAction.TargetDrift.compare(URL,
+                Arrays.asList(row("1", "7:aaa"), row("2", "7:bbb"), row("3", "7:ccc")),
+                Arrays.asList(row("1", "7:aaa"), row("2", "7:changed"), row("hotfix", "7:ddd")));
+
+        assertThat(drift.getPending(), is(Collections.singletonList("changelog.xml::3::author")));
+        assertThat(drift.getUnknown(), is(Collections.singletonList("changelog.xml::hotfix::author")));
+        assertThat(drift.getMismatched(), is(Collections.singletonList("changelog.xml::2::author")));
+        assertThat(drift.isDrifted(), is(true));
+    }
+
+    @Test
+    public void should_not_report_missing_conditional_changesets_as_pending() {
+        DriftReportAction.TargetDrift drift = DriftReportAction.TargetDrift.compare(URL,
+                Arrays.asList(row("1", "7:aaa"), new ChangeLogReader.Row("changelog.xml", "oracle-only", "author",
+                        "7:bbb", true)),
+                Collections.singletonList(row("1", "7:aaa")));
+
+        assertThat(drift.getPending().isEmpty(), is(true));
+        assertThat(drift.isDrifted(), is(false));
+    }
+
+    @Test
+    public void should_not_compare_cleared_or_other_version_checksums() {
+        assertThat(DriftReportAction.TargetDrift.checksumsDiffer("7:aaa", null), is(false));
+        assertThat(DriftReportAction.TargetDrift.checksumsDiffer("8:aaa", "7:bbb"), is(false));
+        assertThat(DriftReportAction.TargetDrift.checksumsDiffer("7:aaa", "7:bbb"), is(true));
+    }
+
+    @Test
+    public void should_count_drifted_and_unreadable_targets() {
+        DriftReportAction action = new DriftReportAction(Arrays.asList(
+                DriftReportAction.TargetDrift.compare("a", Collections.singletonList(row("1", "7:aaa")),
+                        Collections.<ChangeLogReader.Row>emptyList()),
+                DriftReportAction.TargetDrift.compare("b", Collections.singletonList(row("1", "7:aaa")),
+                        Collections.singletonList(row("1", "7:aaa"))),
+                DriftReportAction.TargetDrift.failed("c", "connection refused")));
+
+        assertThat(action.getDriftedCount(), is(1));
+        assertThat(action.getFailureCount(), is(1));
+    }
+
+    private static ChangeLogReader.Row row(String id, String checksum) {
+        return new ChangeLogReader.Row("changelog.xml", id, "author", checksum);
+    }
+}
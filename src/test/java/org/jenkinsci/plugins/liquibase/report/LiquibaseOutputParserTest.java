@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LiquibaseOutputParserTest {
+
+    protected ByteArrayOutputStream log = new ByteArrayOutputStream();
+    protected ChangeSetResultAction results;
+    protected LiquibaseOutputParser parser;
+
+    @Before
+    public void setup() {
+        results = new ChangeSetResultAction();
+        parser = new LiquibaseOutputParser(log, results);
+    }
+
+    @Test
+    public void should_pass_output_through_unchanged() throws IOException {
+        String output = "Liquibase Community 3.8.9 by Datical\nLiquibase: Update has been successful.\n";
+
+        write(output);
+
+        assertThat(log.toString("UTF-8"), is(output));
+    }
+
+    @Test
+    public void should_parse_executed_changesets() throws IOException {
+        write("INFO 10/18/26 1:00 PM: liquibase.changelog.ChangeSet: Table person created\r\n" +
+                "New row inserted into person\n" +
+                "New row inserted into person\n" +
+                "INFO: liquibase.changelog.ChangeSet: ChangeSet db/master.xml::create-person::keith ran successfully in 12ms\n");
+
+        List<ChangeSetResult> changeSets = results.getChangeSets();
+        assertThat(changeSets.size(), is(1));
+        ChangeSetResult changeSet = changeSets.get(0);
+        assertThat(changeSet.getFile(), is("db/master.xml"));
+        assertThat(changeSet.getId(), is("create-person"));
+        assertThat(changeSet.getAuthor(), is("keith"));
+        assertThat(changeSet.getDurationMillis(), is(12L));
+        assertThat(changeSet.getRowsAffected(), is(2L));
+        assertThat(changeSet.getOutcome(), is(ChangeSetResult.Outcome.EXECUTED));
+    }
+
+    @Test
+    public void should_parse_failed_changeset_split_across_writes() throws IOException {
+        write("Unexpected error running Liquibase: Migration failed for change ");
+        write("set changeset-with-error.xml::bad::keith:\n     Reason: boom");
+        parser.close();
+
+        List<ChangeSetResult> changeSets = results.getChangeSets();
+        assertThat(changeSets.size(), is(1));
+        assertThat(changeSets.get(0).getId(), is("bad"));
+        assertThat(changeSets.get(0).getOutcome(), is(ChangeSetResult.Outcome.FAILED));
+    }
+
+    @Test
+    public void should_parse_rolled_back_changesets() throws IOException {
+        write("INFO: Rolling Back Changeset:master.xml::2::keith\n");
+
+        assertThat(results.getChangeSets().get(0).getOutcome(), is(ChangeSetResult.Outcome.ROLLED_BACK));
+    }
+
+    private void write(String output) throws IOException {
+        parser.write(output.getBytes(StandardCharsets.UTF_8));
+    }
+}
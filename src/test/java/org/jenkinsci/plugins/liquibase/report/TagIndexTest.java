@@ -0,0 +1,71 @@
+package org.jenkinsci.plugins.liquibase.report;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TagIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected TagIndex index = new TagIndex();
+
+    @Test
+    public void should_find_tags_by_database() throws IOException {
+        index.record(entry("v1", "jdbc:h2:mem:a", 1));
+        index.record(entry("v1", "jdbc:h2:mem:b", 2));
+
+        assertThat(index.find("jdbc:h2:mem:a", "v1").getBuildNumber(), is(1));
+        assertThat(index.find("jdbc:h2:mem:b", "v1").getBuildNumber(), is(2));
+        assertThat(index.find(null, "v1").getBuildNumber(), is(2));
+        assertThat(index.find("jdbc:h2:mem:a", "v2"), is(nullValue()));
+    }
+
+    @Test
+    public void should_list_most_recent_first_and_replace_retagged() throws IOException {
+        index.record(entry("v1", "jdbc:h2:mem:a", 1));
+        index.record(entry("v2", "jdbc:h2:mem:a", 2));
+        index.record(entry("v1", "jdbc:h2:mem:a", 3));
+
+        List<TagIndex.Entry> entries = index.getEntries("jdbc:h2:mem:a");
+
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(0).getTag(), is("v1"));
+        assertThat(entries.get(0).getBuildNumber(), is(3));
+        assertThat(entries.get(1).getTag(), is("v2"));
+    }
+
+    @Test
+    public void should_keep_limited_entries() throws IOException {
+        for (int i = 0; i < TagIndex.MAX_ENTRIES + 5; i++) {
+            index.record(entry("tag-" + i, "jdbc:h2:mem:a", i));
+        }
+
+        assertThat(index.getEntries(null).size(), is(TagIndex.MAX_ENTRIES));
+        assertThat(index.find(null, "tag-0"), is(nullValue()));
+    }
+
+    @Test
+    public void should_persist_entries() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), TagIndex.FILENAME);
+        TagIndex.load(file).record(entry("v1", "jdbc:h2:mem:a", 7));
+
+        TagIndex reloaded = TagIndex.load(file);
+
+        assertThat(reloaded.find("jdbc:h2:mem:a", "v1").getJob(), is("folder/app"));
+        assertThat(reloaded.find("jdbc:h2:mem:a", "v1").getBuildNumber(), is(7));
+    }
+
+    private static TagIndex.Entry entry(String tag, String database, int buildNumber) {
+        return new TagIndex.Entry(tag, database, "folder/app", buildNumber, "hash", 1000L * buildNumber);
+    }
+}
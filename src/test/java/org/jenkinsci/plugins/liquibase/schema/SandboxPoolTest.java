@@ -0,0 +1,124 @@
+package org.jenkinsci.plugins.liquibase.schema;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SandboxPoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected SchemaImageCache images;
+    protected File poolsRoot;
+    protected SandboxPool pool;
+
+    @Before
+    public void setup() throws IOException {
+        images = new SchemaImageCache(new File(temporaryFolder.getRoot(), "images"));
+        poolsRoot = new File(temporaryFolder.getRoot(), "sandboxes");
+        pool = new SandboxPool(new File(poolsRoot, "key-1"));
+
+        File databasePath = new File(temporaryFolder.newFolder("workspace"), "test-db");
+        FileUtils.writeStringToFile(new File(databasePath.getPath() + H2Url.DATABASE_SUFFIX), "migrated",
+                StandardCharsets.UTF_8);
+        images.store("key-1", "lineage", databasePath, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void should_have_nothing_to_lease_before_replenishing() throws IOException {
+        assertThat(pool.lease(), is(nullValue()));
+    }
+
+    @Test
+    public void should_lease_migrated_sandboxes_until_pool_is_empty() throws IOException {
+        assertThat(pool.replenish(images, "key-1", 2), is(2));
+
+        File first = pool.lease();
+        File second = pool.lease();
+
+        assertThat(first, is(notNullValue()));
+        assertThat(second, is(notNullValue()));
+        assertThat(first, is(not(second)));
+        assertThat(read(first), is("migrated"));
+        assertThat(pool.lease(), is(nullValue()));
+    }
+
+    @Test
+    public void should_only_top_up_to_pool_size() throws IOException {
+        pool.replenish(images, "key-1", 2);
+        pool.lease();
+
+        assertThat(pool.replenish(images, "key-1", 2), is(1));
+        assertThat(pool.replenish(images, "key-1", 2), is(0));
+    }
+
+    @Test
+    public void should_not_replenish_without_exact_image() throws IOException {
+        assertThat(pool.replenish(images, "key-2", 2), is(0));
+        assertThat(pool.lease(), is(nullValue()));
+    }
+
+    @Test
+    public void should_delete_released_sandbox() throws IOException {
+        pool.replenish(images, "key-1", 1);
+        File leased = pool.lease();
+
+        SandboxPool.release(leased);
+
+        assertThat(new File(leased.getPath() + H2Url.DATABASE_SUFFIX).exists(), is(false));
+    }
+
+    @Test
+    public void should_clear_ready_sandboxes_of_other_versions_but_keep_their_leases() throws IOException {
+        SandboxPool oldPool = new SandboxPool(new File(poolsRoot, "key-0"));
+        oldPool.replenish(images, "key-1", 2);
+        File inUse = oldPool.lease();
+
+        pool.replenish(images, "key-1", 1);
+
+        assertThat(oldPool.lease(), is(nullValue()));
+        assertThat(read(inUse), is("migrated"));
+    }
+
+    @Test
+    public void should_clear_abandoned_leases_of_other_versions_when_replenishing() throws IOException {
+        SandboxPool oldPool = new SandboxPool(new File(poolsRoot, "key-0"));
+        oldPool.replenish(images, "key-1", 1);
+        File leased = oldPool.lease();
+        File leasedFile = new File(leased.getPath() + H2Url.DATABASE_SUFFIX);
+        leasedFile.setLastModified(System.currentTimeMillis() - SandboxPool.ABANDONED_MILLIS - 1000);
+
+        pool.replenish(images, "key-1", 1);
+
+        assertThat(leasedFile.exists(), is(false));
+    }
+
+    @Test
+    public void should_clear_abandoned_leases_when_replenishing() throws IOException {
+        pool.replenish(images, "key-1", 1);
+        File leased = pool.lease();
+        File leasedFile = new File(leased.getPath() + H2Url.DATABASE_SUFFIX);
+        leasedFile.setLastModified(System.currentTimeMillis() - SandboxPool.ABANDONED_MILLIS - 1000);
+
+        pool.replenish(images, "key-1", 1);
+
+        assertThat(leasedFile.exists(), is(false));
+    }
+
+    private static String read(File path) throws IOException {
+        return FileUtils.readFileToString(new File(path.getPath() + H2Url.DATABASE_SUFFIX), StandardCharsets.UTF_8);
+    }
+}
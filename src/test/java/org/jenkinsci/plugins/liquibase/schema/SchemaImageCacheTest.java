@@ -0,0 +1,125 @@
+package org.jenkinsci.plugins.liquibase.schema;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class SchemaImageCacheTest {
+
+    private static final long NO_LIMIT = Long.MAX_VALUE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected SchemaImageCache cache;
+    protected File cacheRoot;
+    protected File databasePath;
+
+    @Before
+    public void setup() throws IOException {
+        cacheRoot = new File(temporaryFolder.getRoot(), "images");
+        cache = new SchemaImageCache(cacheRoot);
+        databasePath = new File(temporaryFolder.newFolder("workspace"), "test-db");
+    }
+
+    @Test
+    public void should_start_empty_when_no_image_exists() throws IOException {
+        writeDatabase("stale content");
+
+        assertThat(cache.restore("key-1", "lineage", databasePath), is(SchemaImageCache.Match.NONE));
+        assertThat(databaseFile().exists(), is(false));
+    }
+
+    @Test
+    public void should_restore_exact_image() throws IOException {
+        writeDatabase("version 1");
+        cache.store("key-1", "lineage", databasePath, NO_LIMIT);
+        writeDatabase("modified by tests");
+
+        assertThat(cache.restore("key-1", "lineage", databasePath), is(SchemaImageCache.Match.EXACT));
+        assertThat(readDatabase(), is("version 1"));
+    }
+
+    @Test
+    public void should_restore_latest_image_of_same_lineage_when_changelog_changed() throws IOException {
+        writeDatabase("version 1");
+        cache.store("key-1", "lineage", databasePath, NO_LIMIT);
+        writeDatabase("other changelog");
+        cache.store("key-other", "other-lineage", databasePath, NO_LIMIT);
+
+        assertThat(cache.restore("key-2", "lineage", databasePath), is(SchemaImageCache.Match.BASE));
+        assertThat(readDatabase(), is("version 1"));
+    }
+
+    @Test
+    public void should_start_empty_without_lineage_even_when_earlier_images_exist() throws IOException {
+        writeDatabase("version 1");
+        cache.store("key-1", "lineage", databasePath, NO_LIMIT);
+
+        assertThat(cache.restore("key-2", "lineage", databasePath), is(SchemaImageCache.Match.BASE));
+        assertThat(cache.restore("key-2", null, databasePath), is(SchemaImageCache.Match.NONE));
+        assertThat(databaseFile().exists(), is(false));
+    }
+
+    @Test
+    public void should_evict_least_recently_used_images_over_budget() throws IOException {
+        long longAgo = System.currentTimeMillis() - 2 * SchemaImageCache.IN_USE_MILLIS;
+        writeDatabase("0123456789");
+        cache.store("oldest", "lineage", databasePath, NO_LIMIT);
+        new File(cacheRoot, "oldest" + H2Url.DATABASE_SUFFIX).setLastModified(longAgo);
+        cache.store("older", "lineage", databasePath, NO_LIMIT);
+        new File(cacheRoot, "older" + H2Url.DATABASE_SUFFIX).setLastModified(longAgo + 1000);
+
+        cache.store("newest", "lineage", databasePath, 20);
+
+        assertThat(cache.getKeys(), not(hasItem("oldest")));
+        assertThat(cache.getKeys(), hasItem("older"));
+        assertThat(cache.getKeys(), hasItem("newest"));
+    }
+
+    @Test
+    public void should_not_evict_images_in_use() throws IOException {
+        writeDatabase("0123456789");
+        cache.store("recent", "lineage", databasePath, NO_LIMIT);
+
+        cache.store("newest", "lineage", databasePath, 10);
+
+        assertThat(cache.getKeys(), hasItem("recent"));
+    }
+
+    @Test
+    public void should_parse_h2_file_urls() {
+        H2Url url = H2Url.parse("jdbc:h2:file:./target/db;MODE=PostgreSQL");
+
+        assertThat(url.getPath(), is("./target/db"));
+        assertThat(url.isAbsolute(), is(false));
+        assertThat(url.withPath("/work/target/db"), is("jdbc:h2:file:/work/target/db;MODE=PostgreSQL"));
+        assertThat(H2Url.parse("jdbc:h2:/var/db/app").getPath(), is("/var/db/app"));
+        assertThat(H2Url.parse("jdbc:h2:mem:test"), is((H2Url) null));
+        assertThat(H2Url.parse("jdbc:h2:tcp://localhost/~/test"), is((H2Url) null));
+        assertThat(H2Url.parse("jdbc:postgresql://localhost/app"), is((H2Url) null));
+    }
+
+    private File databaseFile() {
+        return new File(databasePath.getPath() + H2Url.DATABASE_SUFFIX);
+    }
+
+    private void writeDatabase(String content) throws IOException {
+        FileUtils.write(databaseFile(), content, StandardCharsets.UTF_8);
+    }
+
+    private String readDatabase() throws IOException {
+        return FileUtils.readFileToString(databaseFile(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,24 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import org.jenkinsci.plugins.liquibase.builder.RollbackBuilder;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LiquibaseRollbackStepTest {
+
+    @Test
+    public void should_accept_strategies_the_step_can_run() {
+        LiquibaseRollbackStep step = new LiquibaseRollbackStep();
+
+        step.setRollbackType(RollbackBuilder.RollbackStrategy.TAG.name());
+
+        assertThat(step.getRollbackType(), is("TAG"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_precomputed_script_strategy() {
+        new LiquibaseRollbackStep().setRollbackType(RollbackBuilder.RollbackStrategy.ARTIFACT.name());
+    }
+}
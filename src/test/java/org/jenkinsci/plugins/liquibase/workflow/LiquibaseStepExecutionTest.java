@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.model.Result;
+import hudson.tools.ToolProperty;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.jenkinsci.plugins.liquibase.install.LiquibaseInstallation;
+import org.jenkinsci.plugins.liquibase.integration.LiquibaseTestUtil;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the pipeline steps against H2 file databases.  Needs an unpacked Liquibase distribution:
+ * <pre>
+ * mvn test -Dtest=LiquibaseStepExecutionTest -Dliquibase.home=/opt/liquibase
+ * </pre>
+ */
+public class LiquibaseStepExecutionTest {
+
+    private static final String INSTALLATION_NAME = "pipeline";
+
+    private static final String SLEEPING_CHANGESET_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<databaseChangeLog xmlns=\"http://www.liquibase.org/xml/ns/dbchangelog\"\n" +
+            "        xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n" +
+            "        xsi:schemaLocation=\"http://www.liquibase.org/xml/ns/dbchangelog " +
+            "http://www.liquibase.org/xml/ns/dbchangelog/dbchangelog-3.5.xsd\">\n" +
+            "    <changeSet author=\"keith\" id=\"sleep\">\n" +
+            "        <sql>CREATE ALIAS SLEEP FOR \"java.lang.Thread.sleep\"</sql>\n" +
+            "        <sql>CALL SLEEP(600000)</sql>\n" +
+            "    </changeSet>\n" +
+            "</databaseChangeLog>\n";
+
+    @ClassRule
+    public static JenkinsRule jenkinsRule = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected WorkflowJob job;
+    protected File workspace;
+
+    @Before
+    public void setup() throws Exception {
+        String liquibaseHome = System.getProperty("liquibase.home");
+        assumeTrue("liquibase.home not set", liquibaseHome != null);
+        assumeTrue(new File("/bin/sh").canExecute());
+
+        String h2DriverUrl = org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        jenkinsRule.jenkins.getDescriptorByType(LiquibaseInstallation.DescriptorImpl.class).setInstallations(
+                new LiquibaseInstallation(INSTALLATION_NAME, liquibaseHome, h2DriverUrl,
+                        Collections.<ToolProperty<?>>emptyList()));
+        workspace = temporaryFolder.newFolder("workspace");
+        job = jenkinsRule.jenkins.createProject(WorkflowJob.class, RandomStringUtils.randomAlphabetic(8));
+    }
+
+    @Test
+    public void should_return_update_result() throws Exception {
+        File changeLog = LiquibaseTestUtil.createFileFromResource(workspace,
+                "/example-changesets/sunny-day-changeset.xml");
+        String url = LiquibaseTestUtil.composeJdbcUrl(new File(temporaryFolder.getRoot(), "update"));
+        job.setDefinition(new CpsFlowDefinition("node {\n" +
+                "  ws('" + workspace.getAbsolutePath() + "') {\n" +
+                "    def result = liquibaseUpdate(installationName: '" + INSTALLATION_NAME + "', changeLogFile: '" +
+                changeLog.getName() + "', url: '" + url + "')\n" +
+                "    echo \"exitStatus=${result.exitStatus} skipped=${result.skipped} " +
+                "changeSets=${result.changeSets.size()} first=${result.changeSets[0].id}/" +
+                "${result.changeSets[0].outcome}\"\n" +
+                "  }\n" +
+                "}", true));
+
+        WorkflowRun run = jenkinsRule.assertBuildStatusSuccess(job.scheduleBuild2(0));
+
+        jenkinsRule.assertLogContains("exitStatus=0 skipped=false changeSets=4 first=create-table/EXECUTED", run);
+    }
+
+    @Test
+    public void should_kill_liquibase_and_release_database_when_stopped() throws Exception {
+        File changeLog = new File(workspace, "sleeping-changeset.xml");
+        FileUtils.write(changeLog, SLEEPING_CHANGESET_XML, StandardCharsets.UTF_8);
+        File database = new File(temporaryFolder.getRoot(), "stopped");
+        String url = LiquibaseTestUtil.composeJdbcUrl(database);
+        job.setDefinition(new CpsFlowDefinition("node {\n" +
+                "  ws('" + workspace.getAbsolutePath() + "') {\n" +
+                "    liquibaseUpdate(installationName: '" + INSTALLATION_NAME + "', changeLogFile: '" +
+                changeLog.getName() + "', url: '" + url + "')\n" +
+                "  }\n" +
+                "}", true));
+
+        WorkflowRun run = job.scheduleBuild2(0).waitForStart();
+        jenkinsRule.waitForMessage("$ ", run);
+        File databaseFile = new File(database.getAbsolutePath() + ".mv.db");
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (!databaseFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        run.doStop();
+
+        jenkinsRule.assertBuildStatus(Result.ABORTED, jenkinsRule.waitForCompletion(run));
+        // H2 refuses a second process while Liquibase still has the file open
+        try (Connection connection = DriverManager.getConnection(url)) {
+            assertThat(connection.isValid(1), is(true));
+        }
+    }
+}
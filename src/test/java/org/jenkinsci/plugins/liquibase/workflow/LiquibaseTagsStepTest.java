@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.liquibase.workflow;
+
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.security.ACL;
+import org.acegisecurity.Authentication;
+import org.jenkinsci.plugins.liquibase.report.TagIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LiquibaseTagsStepTest {
+
+    private static final String DATABASE = "jdbc:sqlserver://db.example.com;databaseName=app";
+
+    protected TagIndex index;
+    protected LiquibaseTagsStep step;
+
+    @Before
+    public void setup() throws IOException {
+        index = new TagIndex();
+        index.record(new TagIndex.Entry("v1", DATABASE, "team/app", 1, "hash", 1000L));
+        index.record(new TagIndex.Entry("v2", DATABASE, "secret/app", 2, "hash", 2000L));
+        index.record(new TagIndex.Entry("v3", "jdbc:sqlserver://db.example.com;databaseName=reports", "team/app", 3,
+                "hash", 3000L));
+        step = new LiquibaseTagsStep();
+    }
+
+    @Test
+    public void should_only_return_tags_applied_by_visible_jobs() {
+        List<Map<String, Object>> tags = step.query(index, entry -> entry.getJob().startsWith("team/"));
+
+        assertThat(tags.size(), is(2));
+        assertThat(tags.get(0).get("tag"), is((Object) "v3"));
+        assertThat(tags.get(1).get("tag"), is((Object) "v1"));
+    }
+
+    @Test
+    public void should_match_url_exactly_as_configured() {
+        step.setUrl(DATABASE + ";password=secret");
+
+        List<Map<String, Object>> tags = step.query(index, entry -> true);
+
+        assertThat(tags.size(), is(2));
+        assertThat(tags.get(0).get("tag"), is((Object) "v2"));
+        assertThat(tags.get(1).get("tag"), is((Object) "v1"));
+    }
+
+    @Test
+    public void should_need_read_permission_on_job() {
+        Authentication authentication = mock(Authentication.class);
+        Job<?, ?> readable = jobWithReadPermission(authentication, true);
+        Job<?, ?> hidden = jobWithReadPermission(authentication, false);
+
+        assertThat(LiquibaseTagsStep.canRead(authentication, readable), is(true));
+        assertThat(LiquibaseTagsStep.canRead(authentication, hidden), is(false));
+        assertThat(LiquibaseTagsStep.canRead(authentication, null), is(false));
+    }
+
+    private static Job<?, ?> jobWithReadPermission(Authentication authentication, boolean granted) {
+        Job<?, ?> job = mock(Job.class);
+        ACL acl = mock(ACL.class);
+        when(acl.hasPermission(authentication, Item.READ)).thenReturn(granted);
+        when(job.getACL()).thenReturn(acl);
+        return job;
+    }
+}